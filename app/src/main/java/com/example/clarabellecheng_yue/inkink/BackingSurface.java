@@ -0,0 +1,163 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Build;
+
+/**
+ * The bitmap committed strokes are drawn into.
+ * On a size change the existing pixels are copied into the new bitmap,
+ * anchored at the top left corner, which is also how strokes are stored
+ * (View coordinates), so the copy matches what a replay would draw.
+ * The previous bitmap is kept as a spare and reused by the next size
+ * change when it fits, so rotating back and forth allocates no new bitmap
+ * (MainActivity handles rotation itself, so the View and its surface stay).
+ * Surfaces resized one after the other, like the layers of a LayerStack,
+ * share one spare: each takes the bitmap the one before gave up, and a
+ * rotation leaves one spare bitmap behind rather than one per surface.
+ * An opaque surface uses RGB_565 and half the memory; it is filled with
+ * the paper color instead of being cleared to transparent.
+ */
+public class BackingSurface
+{
+    /**
+     * The last replaced bitmap, for the next size change to reuse.
+     */
+    private static class Spare {
+        Bitmap bitmap;
+    }
+
+    private Bitmap bitmap;
+    private Canvas canvas;
+    private final Spare spare; //last replaced bitmap, reused when it fits
+    private final boolean ownsSpare; //release() frees the spare too
+    private boolean opaque;
+    private int paperColor = Color.WHITE;
+
+    public BackingSurface()
+    {
+        spare = new Spare();
+        ownsSpare = true;
+    }
+
+    /**
+     * @param sharesSpareWith surface whose spare bitmap this one uses and
+     * refills; that surface's release() frees it
+     */
+    public BackingSurface(BackingSurface sharesSpareWith)
+    {
+        spare = sharesSpareWith.spare;
+        ownsSpare = false;
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public Canvas getCanvas() {
+        return canvas;
+    }
+
+    public int getWidth() {
+        return bitmap == null ? 0 : bitmap.getWidth();
+    }
+
+    public int getHeight() {
+        return bitmap == null ? 0 : bitmap.getHeight();
+    }
+
+    public boolean isOpaque() {
+        return opaque;
+    }
+
+    /**
+     * @param paperColor fill color of an opaque surface
+     */
+    public void setPaperColor(int paperColor) {
+        this.paperColor = paperColor;
+    }
+
+    /**
+     * Changes the size, keeping the pixels that still fit (top left anchored).
+     * @param width new width
+     * @param height new height
+     * @param opaque true for an RGB_565 surface filled with the paper color
+     * @return true if old pixels were copied, false if the surface starts empty
+     */
+    public boolean resize(int width, int height, boolean opaque)
+    {
+        if(bitmap != null && bitmap.getWidth() == width && bitmap.getHeight() == height
+                && this.opaque == opaque) {
+            return true;
+        }
+        Bitmap old = bitmap;
+        this.opaque = opaque;
+        bitmap = obtain(width, height, opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888);
+        canvas = new Canvas(bitmap);
+        clear();
+        if(old == null) return false;
+
+        canvas.drawBitmap(old, 0, 0, null);
+        if(spare.bitmap != null) spare.bitmap.recycle();
+        spare.bitmap = old;
+        return true;
+    }
+
+    /**
+     * Switches between RGB_565 and ARGB_8888 keeping the pixels,
+     * e.g. before the first eraser stroke, which needs alpha.
+     */
+    public void setOpaque(boolean opaque)
+    {
+        if(bitmap == null) {
+            this.opaque = opaque;
+            return;
+        }
+        resize(bitmap.getWidth(), bitmap.getHeight(), opaque);
+    }
+
+    /**
+     * empties the surface: transparent, or the paper color when opaque
+     */
+    public void clear()
+    {
+        bitmap.eraseColor(opaque ? paperColor : Color.TRANSPARENT);
+    }
+
+    /**
+     * frees the bitmap, and the spare unless it is shared from another surface
+     */
+    public void release()
+    {
+        if(bitmap != null) bitmap.recycle();
+        if(ownsSpare && spare.bitmap != null) {
+            spare.bitmap.recycle();
+            spare.bitmap = null;
+        }
+        bitmap = null;
+        canvas = null;
+    }
+
+    /**
+     * @return the spare bitmap if it can be reused for this size, else a new one
+     */
+    private Bitmap obtain(int width, int height, Bitmap.Config config)
+    {
+        Bitmap reuse = spare.bitmap;
+        spare.bitmap = null;
+        if(reuse != null) {
+            if(reuse.getWidth() == width && reuse.getHeight() == height && reuse.getConfig() == config) {
+                return reuse;
+            }
+            int bytesPerPixel = config == Bitmap.Config.RGB_565 ? 2 : 4;
+            if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                    && reuse.getAllocationByteCount() >= width * height * bytesPerPixel) {
+                reuse.reconfigure(width, height, config);
+                return reuse;
+            }
+            reuse.recycle();
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+}
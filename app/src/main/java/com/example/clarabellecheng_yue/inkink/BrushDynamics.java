@@ -0,0 +1,75 @@
+package com.example.clarabellecheng_yue.inkink;
+
+/**
+ * Width of the pressure brush at each touch sample: pressing harder draws
+ * wider, moving faster draws thinner, like ink running out of a nib.
+ * The speed is smoothed over a few samples and the width eases toward
+ * where it should be, so one noisy sample does not show as a bulge.
+ * The width never goes above the brush size, which stays the stroke's
+ * width for its bounds and hit testing.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class BrushDynamics
+{
+    static final float MIN_PRESSURE_SCALE = 0.35f; //width with no pressure, of the brush size
+    static final float MIN_SPEED_SCALE = 0.4f; //width when moving very fast
+    static final float SPEED_THINNING = 0.3f; //per pixel per millisecond
+    static final float SPEED_SMOOTHING = 0.3f; //weight of the newest speed sample
+    static final float WIDTH_EASING = 0.5f; //share of the way to the new width taken per sample
+
+    private float size;
+    private float lastX, lastY;
+    private long lastTime;
+    private float speed; //pixels per millisecond, smoothed
+    private float width;
+
+    /**
+     * starts a stroke at its first sample
+     * @param size brush size, the widest the stroke gets
+     * @param pressure MotionEvent pressure, about 0 to 1
+     * @param time event time in milliseconds
+     * @return width at the first sample
+     */
+    public float start(float size, float x, float y, float pressure, long time)
+    {
+        this.size = size;
+        lastX = x;
+        lastY = y;
+        lastTime = time;
+        speed = 0;
+        width = target(pressure);
+        return width;
+    }
+
+    /**
+     * feeds one sample, accepted by the stroke or not
+     * @return width at this sample
+     */
+    public float update(float x, float y, float pressure, long time)
+    {
+        long elapsed = time - lastTime;
+        if(elapsed > 0) {
+            //samples batched with the same time keep the last speed
+            float dx = x - lastX, dy = y - lastY;
+            float current = (float)Math.sqrt(dx * dx + dy * dy) / elapsed;
+            speed += SPEED_SMOOTHING * (current - speed);
+            lastTime = time;
+        }
+        lastX = x;
+        lastY = y;
+        width += WIDTH_EASING * (target(pressure) - width);
+        return width;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    private float target(float pressure)
+    {
+        float p = Math.max(0, Math.min(1, pressure));
+        float byPressure = MIN_PRESSURE_SCALE + (1 - MIN_PRESSURE_SCALE) * p;
+        float bySpeed = Math.max(MIN_SPEED_SCALE, 1 / (1 + SPEED_THINNING * speed));
+        return Math.max(StrokeMesh.MIN_WIDTH, size * byPressure * bySpeed);
+    }
+}
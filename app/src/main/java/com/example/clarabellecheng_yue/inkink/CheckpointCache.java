@@ -0,0 +1,177 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Snapshots of the drawing taken every few strokes, keyed by the number
+ * of strokes they contain. Undo restores the closest snapshot at or below
+ * the wanted stroke count and only replays the strokes after it.
+ * The total size is capped by a byte budget, least recently used
+ * snapshots are dropped first.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ * @param <T> snapshot type (a Bitmap in DrawingView)
+ */
+public class CheckpointCache<T>
+{
+    /**
+     * Told about snapshots leaving the cache, so their memory can be freed.
+     */
+    public interface Listener<T> {
+        void onRemoved(T snapshot);
+    }
+
+    private final LinkedHashMap<Integer, Entry<T>> entries =
+            new LinkedHashMap<>(16, 0.75f, true); //access order = LRU
+
+    private int interval;
+    private long budgetBytes;
+    private long usedBytes;
+    private Listener<T> listener;
+
+    /**
+     * @param interval take a snapshot every interval strokes
+     * @param budgetBytes maximum bytes kept in snapshots
+     */
+    public CheckpointCache(int interval, long budgetBytes)
+    {
+        if(interval < 1) throw new IllegalArgumentException("interval must be >= 1");
+        this.interval = interval;
+        this.budgetBytes = budgetBytes;
+    }
+
+    public void setListener(Listener<T> listener) {
+        this.listener = listener;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public void setInterval(int interval)
+    {
+        if(interval < 1) throw new IllegalArgumentException("interval must be >= 1");
+        this.interval = interval;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * changes the byte budget, evicting right away if needed
+     */
+    public void setBudgetBytes(long budgetBytes)
+    {
+        this.budgetBytes = budgetBytes;
+        trim();
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param strokeCount number of strokes committed so far
+     * @return true if a snapshot should be taken at this stroke count
+     */
+    public boolean wants(int strokeCount)
+    {
+        return strokeCount > 0 && strokeCount % interval == 0
+                && !entries.containsKey(strokeCount) && budgetBytes > 0;
+    }
+
+    /**
+     * stores a snapshot, replacing any other one with the same stroke count
+     * @param strokeCount number of strokes drawn into the snapshot
+     * @param snapshot the snapshot
+     * @param bytes memory held by the snapshot
+     */
+    public void put(int strokeCount, T snapshot, long bytes)
+    {
+        Entry<T> old = entries.put(strokeCount, new Entry<>(snapshot, bytes));
+        usedBytes += bytes;
+        if(old != null) removed(old);
+        trim();
+    }
+
+    /**
+     * @param strokeCount wanted stroke count
+     * @return stroke count of the closest snapshot at or below strokeCount,
+     * or 0 if there is none (replay from an empty canvas)
+     */
+    public int floorKey(int strokeCount)
+    {
+        int best = 0;
+        for(Integer key : entries.keySet()) {
+            if(key <= strokeCount && key > best) best = key;
+        }
+        return best;
+    }
+
+    /**
+     * @param strokeCount exact stroke count
+     * @return the snapshot, or null; counts as a use for LRU
+     */
+    public T get(int strokeCount)
+    {
+        Entry<T> e = entries.get(strokeCount);
+        return e == null ? null : e.snapshot;
+    }
+
+    /**
+     * Drops every snapshot holding more than strokeCount strokes.
+     * Called when the strokes after strokeCount are replaced,
+     * e.g. a new stroke after an undo throws the redo list away.
+     */
+    public void invalidateAbove(int strokeCount)
+    {
+        Iterator<Map.Entry<Integer, Entry<T>>> it = entries.entrySet().iterator();
+        while(it.hasNext()) {
+            Map.Entry<Integer, Entry<T>> e = it.next();
+            if(e.getKey() > strokeCount) {
+                it.remove();
+                removed(e.getValue());
+            }
+        }
+    }
+
+    /**
+     * drops every snapshot
+     */
+    public void clear()
+    {
+        invalidateAbove(-1);
+    }
+
+    private void trim()
+    {
+        Iterator<Entry<T>> it = entries.values().iterator();
+        while(usedBytes > budgetBytes && it.hasNext()) {
+            Entry<T> e = it.next(); //eldest in access order
+            it.remove();
+            removed(e);
+        }
+    }
+
+    private void removed(Entry<T> e)
+    {
+        usedBytes -= e.bytes;
+        if(listener != null) listener.onRemoved(e.snapshot);
+    }
+
+    private static class Entry<T> {
+        final T snapshot;
+        final long bytes;
+
+        Entry(T snapshot, long bytes) {
+            this.snapshot = snapshot;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -6,15 +6,26 @@ import android.content.Context;
 import android.util.AttributeSet;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.view.MotionEvent;
 import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.view.MotionEvent;
 import android.util.TypedValue;
 import android.widget.Toast;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Created by Clarabelle Cheng-Yue on 3/26/2016.
@@ -23,30 +34,126 @@ public class DrawingView extends View
 {
     /**
      * instance variables:
-     * Path drawPath
+     * LiveStroke[] live
      * Paint drawPaint, canvasPaint
      * int paintColor
-     * Canvas drawCanvas
      * Bitmap canvasBitmap
+     * BackingSurface surface
+     * LayerStack layers
      * float brushSize, lastBrushSize
      * boolean erase
-     * ArrayList<Path> paths
-     * LinkedList<Path> undonePaths
+     * StrokeStore strokes
+     * PaintCache paints
+     * SessionJournal journal
+     * StrokeIndex index
+     * TileCanvas tiles
+     * SyncClient sync
      */
-    private Path drawPath; //drawing path
+    //strokes in progress, one per finger, allocated up front so touches allocate nothing
+    private static final int MAX_POINTERS = 10;
+    private final LiveStroke[] live = new LiveStroke[MAX_POINTERS];
+    private Path replayPath; //scratch path for redrawing stored strokes
+    private PathSink replaySink;
     private Paint drawPaint, canvasPaint; //drawing and canvas paint
 
     private int paintColor = 0xFF660000; //initial color
 
-    private Canvas drawCanvas; //canvas
+    private Bitmap canvasBitmap; //canvas bitmap: the layers composited
 
-    private Bitmap canvasBitmap; //canvas bitmap
+    private BackingSurface surface; //owns canvasBitmap, kept across size changes
+    private LayerStack layers; //template, ink and scratch layers, each in its own bitmap
+    private int activeLayer = LayerStack.BASE_LAYER; //id of the layer new strokes go on
+    private final Rect templateRect = new Rect();
+    private boolean lowMemorySurface; //allow RGB_565 while nothing needs alpha
+    private int paperColor = 0; //drawn under the drawing when there is no template
+    private final float[] strokeBounds = new float[4];
 
     private float brushSize, lastBrushSize;
     private boolean erase=false;
 
-    private ArrayList<Path> paths; //paths are pushed into the stack
-    private LinkedList<Path> undonePaths; //paths that are popped from the stack are added to undoPaths
+    private StrokeStore strokes; //packed strokes, also keeps the undone ones for redo
+    private PaintCache paints; //one shared Paint per color/width/eraser
+    private SessionJournal journal; //autosave, may be null
+    private boolean restoring; //ignore touches and edits until the journal is read back
+    private int templateResId; //drawable shown behind the drawing, 0 for none
+
+    private StrokeIndex index; //grid over stroke bounds, in drawing coordinates
+    private final StrokeIndex.IntList found = new StrokeIndex.IntList(); //index query results
+
+    //object eraser: touches remove whole strokes, as one undoable FLAG_DELETE entry per gesture
+    private boolean objectErase;
+    private final StrokeIndex.IntList erased = new StrokeIndex.IntList(); //removed by this gesture
+    private boolean erasing; //a gesture is in progress, its FLAG_DELETE entry is the last stroke
+    private float lastEraseX, lastEraseY;
+
+    //bucket fill: a touch fills the area around it on the active layer, as one FLAG_FILL entry
+    private boolean fillMode;
+    private int fillTolerance = 32; //per ARGB channel
+    private FloodFill floodFill; //created on first use, keeps its buffers
+    private ExecutorService fillPool; //bands of large fills, null on one core
+
+    //tiled mode: pan/zoom over an unbounded drawing kept in tiles
+    private boolean tiled;
+    private TileCanvas tiles;
+    private float viewX, viewY, viewScale = 1; //drawing to View: scale, then translate
+    private final Matrix viewMatrix = new Matrix();
+    private final RectF viewport = new RectF(); //visible area in drawing coordinates
+    private boolean panning; //two fingers down in tiled mode
+    private float panX, panY, panSpan; //last midpoint and finger distance
+
+    //simplification: finished strokes are refitted as cubic curves within simplifyError pixels
+    private float simplifyError = 1f; //0 keeps strokes as drawn
+    private final StrokeSimplifier simplifier = new StrokeSimplifier(); //UI thread, short strokes
+    private final StrokeSimplifier workerSimplifier = new StrokeSimplifier(); //simplifyWorker only
+    private ExecutorService simplifyWorker; //long strokes, created on first use
+    private final SimplifyStats simplifyStats = new SimplifyStats();
+
+    //pressure brush: width follows pressure and speed, strokes are drawn as triangle strips
+    private boolean pressureBrush;
+    private MeshCache meshes; //strips of finished pressure strokes
+    private final StrokeMesh replayMesh = new StrokeMesh(); //strips built again for drawStroke
+
+    //low latency mode: the live stroke is drawn by an InkOverlay, ahead of the samples
+    private InkOverlay inkOverlay; //null when off
+    private LiveStroke overlayLive; //the stroke in progress inkOverlay shows, or null
+    private boolean overlayClearPending; //clear inkOverlay once the committed stroke is drawn
+    private final InkPredictor predictor = new InkPredictor(40);
+    private long predictMillis = 16; //about a frame
+    private final float[] predicted = new float[2];
+    private long touchTime; //event time of the sample being handled
+
+    //stroke timing and playback
+    private long lastStrokeEnd; //event time the last stroke or erase gesture ended, 0 before the first
+    private long eraseDownTime; //event time the object erase gesture started
+    private StrokePlayer player; //non-null while the drawing is played back
+    private ReplayCanvas replayCanvas;
+    private long replayFrameTime; //uptime of the last playback frame
+
+    //shared canvas: local strokes are sent as they are drawn, remote ones
+    //are drawn like live strokes and committed when they end
+    private SyncClient sync; //null when not connected
+    private int syncStrokeId; //id of the last local stroke sent
+    private final HashMap<Long, LiveStroke> remote = new HashMap<>(); //by sender and stroke id
+    private final ArrayList<LiveStroke> remoteLive = new ArrayList<>(); //the same, for drawing
+    private final ArrayList<LiveStroke> remoteSpare = new ArrayList<>();
+    private final ArrayList<LiveStroke> remoteEnded = new ArrayList<>(); //ended during an erase gesture, not committed yet
+
+    //instrumentation: nothing is measured while frameStats is null
+    private FrameStats frameStats;
+    private int frameSegments; //curves drawn or replayed since the last frame
+    private boolean statsOverlay; //draw the numbers over the drawing
+    private Paint statsPaint, statsBackPaint;
+    private final StringBuilder statsText = new StringBuilder(64);
+    private final Rect statsArea = new Rect(); //where the numbers are, in View coordinates
+
+    private final Rect dirtyRect = new Rect(); //area changed by the current touch event
+    private final Rect clipRect = new Rect();
+    private final RectF pathBounds = new RectF();
+
+    private static final int CHECKPOINT_INTERVAL = 20; //strokes between snapshots
+    private static final int SIMPLIFY_ASYNC_POINTS = 400; //longer strokes are fitted off the UI thread
+    private static final long MAX_REPLAY_GAP_MILLIS = 2000; //longer pauses are shortened in playback
+    private static final long REPLAY_BUDGET_NANOS = 6000000; //stroke drawing per playback frame
 
     //CONSTRUCTOR
     public DrawingView(Context context, AttributeSet attrs)
@@ -65,19 +172,17 @@ public class DrawingView extends View
         brushSize = getResources().getInteger(R.integer.medium_size);
         lastBrushSize = brushSize;
 
-        //instantiate new Path and Paint objects
-        drawPath = new Path();
-        drawPaint = new Paint();
-
-        //set the initial color of drawPaint
-        drawPaint.setColor(paintColor);
+        //instantiate the Path objects
+        for(int i = 0; i < MAX_POINTERS; i++) {
+            live[i] = new LiveStroke();
+        }
+        replayPath = new Path();
+        replaySink = new PathSink(replayPath);
 
-        //set initial path properties
-        drawPaint.setAntiAlias(true);
-        drawPaint.setStrokeWidth(brushSize);
-        drawPaint.setStyle(Paint.Style.STROKE);
-        drawPaint.setStrokeJoin(Paint.Join.ROUND);
-        drawPaint.setStrokeCap(Paint.Cap.ROUND);
+        //drawPaint always comes from the cache with the current
+        //color, size and eraser settings (round cap and join)
+        paints = new PaintCache();
+        updateDrawPaint();
 
         //instantiate the Paint object canvasPaint
         //Note:
@@ -87,15 +192,31 @@ public class DrawingView extends View
         //Happens when source of color must fit into small space
         canvasPaint = new Paint(Paint.DITHER_FLAG);
 
-        paths = new ArrayList<>();
-        undonePaths = new LinkedList<>();
+        strokes = new StrokeStore();
+        surface = new BackingSurface();
+        index = new StrokeIndex(TileCanvas.TILE_SIZE);
+        meshes = new MeshCache(Runtime.getRuntime().maxMemory() / 32);
+
+        //by default the layers' undo snapshots may use an eighth of the heap
+        layers = new LayerStack(surface, CHECKPOINT_INTERVAL, Runtime.getRuntime().maxMemory() / 8);
+    }
+
+    /**
+     * Picks the shared Paint matching the current brush settings.
+     * Cached paints are never modified, so strokes that were already
+     * drawn keep their own color, width and eraser mode.
+     */
+    private void updateDrawPaint()
+    {
+        drawPaint = paints.get(paintColor, brushSize, erase);
     }
 
     /**
      * Called when custom View is assigned a size.
-     * Makes a new canvas of appropriate size.
-     * Instantiates Canvas drawCanvas and Bitmap canvasBitmap
-     * using width and height values
+     * Resizes every layer and the composite: the drawing is copied over
+     * (top left anchored, like the stored strokes) and only strokes
+     * reaching into newly exposed areas are replayed there.
+     * Updates Bitmap canvasBitmap
      * @param w width of canvas
      * @param h height of canvas
      * @param oldw old width
@@ -106,31 +227,299 @@ public class DrawingView extends View
     {
         //call superclass method from View
         super.onSizeChanged(w, h, oldw, oldh);
-        canvasBitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-        drawCanvas = new Canvas(canvasBitmap);
+        if(w == 0 || h == 0 || tiled) return; //tiles do not depend on the View size
+        int oldWidth = surface.getWidth();
+        int oldHeight = surface.getHeight();
+        //(old snapshots have the old size, the layers drop them)
+        boolean copied = layers.resize(w, h, wantsOpaqueSurface());
+        canvasBitmap = surface.getBitmap();
+        if(copied) {
+            //strokes may reach past the old edges, draw them where the surface grew
+            if(w > oldWidth) replayArea(oldWidth, 0, w, h);
+            if(h > oldHeight) replayArea(0, oldHeight, Math.min(w, oldWidth), h);
+        }
+        else {
+            //the fresh bitmap is empty, put the committed strokes back
+            redrawCommitted();
+        }
 //view given size
     }
 
+    /**
+     * Clears the given area of every layer and replays, in order, every
+     * stroke reaching into it, clipped to it, each into its own layer.
+     * Strokes outside the area cannot change its pixels, and the index
+     * finds the others without a full walk.
+     */
+    private void replayArea(float left, float top, float right, float bottom)
+    {
+        if(canvasBitmap == null) return;
+        for(int i = 1; i < layers.size(); i++) { //all but the template
+            Canvas canvas = layers.getAt(i).getCanvas();
+            canvas.save();
+            canvas.clipRect(left - 1, top - 1, right + 1, bottom + 1); //anti-aliased edges
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.SRC);
+        }
+        index.query(left - 1, top - 1, right + 1, bottom + 1, strokes.size(), found);
+        for(int i = 0; i < found.size(); i++) {
+            drawStroke(layerOf(found.get(i)).getCanvas(), found.get(i));
+        }
+        redrawLive(null); //still clipped, outside the area they were not cleared
+        for(int i = 1; i < layers.size(); i++) {
+            layers.getAt(i).getCanvas().restore();
+        }
+        layers.invalidate(left, top, right, bottom);
+    }
+
+    /**
+     * @return the layer a stroke is drawn on; strokes naming no ink
+     * layer (corrupt ids) go on the base layer
+     */
+    private LayerStack.Layer layerOf(int stroke)
+    {
+        int id = strokes.getLayer(stroke);
+        return layers.ensure(id < LayerStack.BASE_LAYER ? LayerStack.BASE_LAYER : id);
+    }
+
+    /**
+     * Lets the composite of the layers use RGB_565 (half the memory)
+     * while it can: a paper color must be set, which is then baked into
+     * the composite. The layers themselves always keep their alpha, so the
+     * eraser and templates work either way.
+     * @param lowMemory true to allow RGB_565
+     */
+    public void setLowMemorySurface(boolean lowMemory)
+    {
+        lowMemorySurface = lowMemory;
+        updateSurfaceConfig();
+    }
+
+    /**
+     * Sets the color under the drawing while no template is shown,
+     * 0 (the default) leaves it transparent.
+     * @param color ARGB color
+     */
+    public void setPaperColor(int color)
+    {
+        paperColor = color;
+        surface.setPaperColor(color);
+        //an opaque composite has the old paper baked in
+        layers.setPaperColor(color);
+        updateSurfaceConfig();
+        invalidate();
+    }
+
+    /**
+     * @return true if the composite needs no alpha channel
+     */
+    private boolean wantsOpaqueSurface()
+    {
+        return lowMemorySurface && Color.alpha(paperColor) == 0xFF;
+    }
+
+    /**
+     * converts the surface when RGB_565 starts or stops being possible
+     */
+    private void updateSurfaceConfig()
+    {
+        boolean opaque = wantsOpaqueSurface();
+        if(surface.getBitmap() == null || surface.isOpaque() == opaque) return;
+        //only the composite changes, it is composited again from the layers
+        //(undo snapshots are per layer and stay valid)
+        layers.setOpaque(opaque);
+        canvasBitmap = surface.getBitmap();
+        invalidate();
+    }
+
     /**
      * Each time the user draws using touch, View is invalidated,
-     * causing onDraw() to execute
+     * causing onDraw() to execute.
+     * Finished strokes are already rasterized into their layers and the
+     * layers into canvasBitmap, so a frame only costs one bitmap blit plus
+     * the live paths of the fingers down, no matter how many strokes or
+     * layers the drawing has. The composite is only redone where a layer
+     * changed since the last frame.
      * @param canvas canvas, created in onSizeChanged, for drawing on top of
      */
     @Override
-    //TODO: fix onDraw so that correct Paths are there after Undo is called
     protected void onDraw(Canvas canvas)
     {
-        //draws the canvas
-        //canvas.drawBitmap(canvasBitmap, 0, 0, canvasPaint);
-        //draws the drawing path
-        //canvas.drawPath(drawPath, drawPaint);
-//draw view
-        for(Path p : paths) {
-            canvas.drawPath(p, drawPaint);
+        if(frameStats == null) {
+            drawFrame(canvas);
+            return;
+        }
+        long start = System.nanoTime();
+        int allocations = threadAllocations();
+        drawFrame(canvas);
+        int allocated = threadAllocations() - allocations;
+        frameStats.recordDocument(strokes.size(), getBitmapBytes());
+        frameStats.recordFrame(System.nanoTime() - start, frameSegments, allocated);
+        frameSegments = 0;
+        if(statsOverlay) drawStats(canvas);
+    }
+
+    private void drawFrame(Canvas canvas)
+    {
+        //this pass shows the stroke the overlay had, it can go now
+        if(overlayClearPending) {
+            overlayClearPending = false;
+            if(inkOverlay != null) inkOverlay.clear();
+        }
+        //paper under the drawing, a template replaces it
+        if(paperColor != 0 && templateResId == 0) {
+            canvas.drawColor(paperColor);
+        }
+        if(player != null) {
+            drawReplay(canvas);
+            return;
+        }
+        if(tiled) {
+            drawTemplate(canvas);
+            //only the tiles inside the View are drawn or rasterized
+            viewport.set(-viewX / viewScale, -viewY / viewScale,
+                    (getWidth() - viewX) / viewScale, (getHeight() - viewY) / viewScale);
+            tiles.draw(canvas, viewMatrix, viewport);
+            canvas.save();
+            canvas.concat(viewMatrix);
+            drawLive(canvas);
+            canvas.restore();
+            return;
+        }
+        //draws the committed strokes,
+        //only the part inside the invalidated rectangle
+        if(canvasBitmap != null) {
+            layers.compose();
+            if(canvas.getClipBounds(clipRect)) {
+                canvas.drawBitmap(canvasBitmap, clipRect, clipRect, canvasPaint);
+            }
+            else {
+                canvas.drawBitmap(canvasBitmap, 0, 0, canvasPaint);
+            }
+        }
+        drawLive(canvas);
+    }
+
+    /**
+     * draws the paths of every stroke in progress, in one pass
+     */
+    private void drawLive(Canvas canvas)
+    {
+        for(int i = 0; i < MAX_POINTERS; i++) {
+            LiveStroke stroke = live[i];
+            //(the eraser is drawn straight into its layer in touch_move,
+            //CLEAR on the view canvas would punch a hole in the window)
+            //(in low latency mode inkOverlay draws its stroke)
+            //(pressure strokes are drawn into their layer as they grow, see drawLiveMesh)
+            if(stroke.active && !stroke.erase && !stroke.pressure && stroke != overlayLive) {
+                canvas.drawPath(stroke.path, stroke.paint);
+                frameSegments += stroke.builder.getPointCount();
+            }
+        }
+        for(int i = 0; i < remoteLive.size(); i++) {
+            LiveStroke stroke = remoteLive.get(i);
+            if(!stroke.erase && !stroke.pressure) {
+                canvas.drawPath(stroke.path, stroke.paint);
+                frameSegments += stroke.builder.getPointCount();
+            }
+        }
+    }
+
+    /**
+     * Shows a decoded template on the template layer, under every ink layer.
+     * @param resId drawable the template was decoded from
+     * @param bitmap the decoded template, stretched to the View
+     */
+    public void setTemplate(int resId, Bitmap bitmap)
+    {
+        templateResId = resId;
+        layers.setTemplate(bitmap);
+        invalidate();
+    }
+
+    /**
+     * Tiled mode has no layer bitmaps: the template is drawn under the
+     * tiles, fixed to the View, if its layer is visible.
+     */
+    private void drawTemplate(Canvas canvas)
+    {
+        Bitmap template = layers.getTemplate();
+        if(template == null || template.isRecycled() || !layers.get(LayerStack.TEMPLATE_LAYER).isVisible()) return;
+        templateRect.set(0, 0, getWidth(), getHeight());
+        canvas.drawBitmap(template, null, templateRect, canvasPaint);
+    }
+
+    /**
+     * @return drawable resource of the current template, 0 for none
+     */
+    public int getTemplateResId() {
+        return templateResId;
+    }
+
+    /**
+     * Draws what the user sees, the template and the committed strokes,
+     * into another canvas, without the scratch layers. Used by
+     * ExportService to take its snapshot, so it must stay cheap: one blit
+     * of the composite unless a scratch layer is showing.
+     * @param canvas canvas of the same size as this View
+     */
+    public void drawSnapshot(Canvas canvas)
+    {
+        if(tiled) {
+            drawTemplate(canvas);
+            tiles.draw(canvas, viewMatrix, viewport);
+        }
+        else if(canvasBitmap == null) {
+            return;
+        }
+        else if(layers.hasVisibleScratch()) {
+            layers.drawVisible(canvas);
+        }
+        else {
+            layers.compose();
+            canvas.drawBitmap(canvasBitmap, 0, 0, canvasPaint);
+        }
+    }
 
+    /**
+     * Copies the committed strokes and the ink layers' settings for an
+     * SVG or PDF export, without the template (ExportService adds it).
+     * The page is the View's size from the drawing origin, in tiled mode
+     * too. Cheap enough for the UI thread: one copy of the stroke arrays.
+     */
+    public VectorExport newVectorExport()
+    {
+        VectorExport export = new VectorExport(strokes, getWidth(), getHeight());
+        for(int i = 0; i < layers.size(); i++) {
+            LayerStack.Layer layer = layers.getAt(i);
+            if(layer.getKind() == LayerStack.KIND_TEMPLATE) continue;
+            export.addLayer(layer.getId(), layer.isVisible() && layer.getKind() == LayerStack.KIND_INK,
+                    layer.getAlpha(), blendModeName(layer.getBlendMode()));
         }
+        if(templateResId == 0) export.setPaperColor(paperColor);
+        return export;
+    }
 
-        canvas.drawPath(drawPath, drawPaint);
+    /**
+     * @return the PDF (and CSS) name of a layer blend mode, null for normal
+     * and for modes vector formats do not have, which export as normal
+     */
+    static String blendModeName(PorterDuff.Mode mode)
+    {
+        if(mode == null) return null;
+        switch(mode) {
+            case MULTIPLY:
+                return "Multiply";
+            case SCREEN:
+                return "Screen";
+            case OVERLAY:
+                return "Overlay";
+            case DARKEN:
+                return "Darken";
+            case LIGHTEN:
+                return "Lighten";
+            default:
+                return null;
+        }
     }
 
     /**
@@ -139,52 +528,394 @@ public class DrawingView extends View
      * @return
      */
     @Override
-    //TODO: fix the last case.
     public boolean onTouchEvent(MotionEvent event) {
-        //detects user touch by location
-        float touchX = event.getX();
-        float touchY = event.getY();
+        if(restoring) return false;
+        if(player != null) {
+            //a touch ends playback, the drawing is back as it was
+            if(event.getActionMasked() == MotionEvent.ACTION_DOWN) stopReplay();
+            return true;
+        }
+        if(tiled && panZoom(event)) return true;
+        long handlingStart = frameStats != null ? System.nanoTime() : 0;
+
+        //the touch_ methods grow dirtyRect around what they changed
+        dirtyRect.setEmpty();
+        for(int i = 0; i < MAX_POINTERS; i++) {
+            live[i].builder.clearDirty();
+        }
+        touchTime = event.getEventTime();
 
-        switch (event.getAction())
+        //every finger draws its own stroke, told apart by pointer id;
+        //the finger an event is about is at getActionIndex()
+        int pointer = event.getActionIndex();
+        //detects user touch by location, in drawing coordinates
+        float touchX = toDrawingX(event.getX(pointer));
+        float touchY = toDrawingY(event.getY(pointer));
+
+        switch (event.getActionMasked())
         {
             //User touches the View.
             //Move to that position to start drawing.
             case MotionEvent.ACTION_DOWN:
-                touch_start(touchX, touchY);
-                invalidate();
+                if(fillMode) fillAt(touchX, touchY);
+                else if(objectErase) erase_start(touchX, touchY);
+                else touch_start(event.getPointerId(pointer), touchX, touchY, event.getPressure(pointer));
+                break;
+            //Another finger joins in with a stroke of its own
+            //(the object eraser follows the first finger only, the bucket fills once)
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if(!objectErase && !fillMode) {
+                    touch_start(event.getPointerId(pointer), touchX, touchY, event.getPressure(pointer));
+                }
                 break;
             //When user moves finger on View,
             //draw the path along their touch
             case MotionEvent.ACTION_MOVE:
-                touch_move(touchX, touchY);
-                invalidate();
+                if(erasing) erase_move(event);
+                else touch_move(event);
                 break;
             //Touch is lifted off View,
             //draw path and reset for next drawing operation.
             case MotionEvent.ACTION_UP:
-                touch_up();
-                invalidate();
+                if(erasing) erase_up();
+                else touch_up(event.getPointerId(pointer));
+                break;
+            case MotionEvent.ACTION_POINTER_UP:
+                if(!objectErase) touch_up(event.getPointerId(pointer));
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                if(erasing) erase_up();
+                else touch_cancel();
                 break;
             default:
                 return false;
         }
 
-        //after break from switch, invalidate View
-        invalidate(); //calls implicitly onDraw()
+        for(int i = 0; i < MAX_POINTERS; i++) {
+            StrokeBuilder builder = live[i].builder;
+            if(live[i].active && builder.isDirty() && live[i] != overlayLive) {
+                addDirty(builder.getDirtyLeft(), builder.getDirtyTop(),
+                        builder.getDirtyRight(), builder.getDirtyBottom(), live[i].width);
+            }
+        }
+
+        if(frameStats != null) {
+            if(statsOverlay && !dirtyRect.isEmpty()) dirtyRect.union(statsArea);
+            frameStats.recordTouch(System.nanoTime() - handlingStart,
+                    SystemClock.uptimeMillis() - event.getEventTime());
+        }
+
+        //after break from switch, invalidate only the changed area,
+        //once per event (calls implicitly onDraw())
+        if(!dirtyRect.isEmpty()) {
+            invalidate(dirtyRect);
+        }
+        return true;
+    }
+
+    /**
+     * Grows dirtyRect to cover the given box (drawing coordinates)
+     * plus half the brush (and a pixel for anti-aliasing) on every side.
+     */
+    private void addDirty(float left, float top, float right, float bottom)
+    {
+        addDirty(left, top, right, bottom, brushSize);
+    }
+
+    /**
+     * @param width brush width of the stroke that changed the box
+     */
+    private void addDirty(float left, float top, float right, float bottom, float width)
+    {
+        float pad = width / 2 + 2;
+        dirtyRect.union((int)Math.floor((left - pad) * viewScale + viewX),
+                (int)Math.floor((top - pad) * viewScale + viewY),
+                (int)Math.ceil((right + pad) * viewScale + viewX),
+                (int)Math.ceil((bottom + pad) * viewScale + viewY));
+    }
+
+    private float toDrawingX(float x) {
+        return (x - viewX) / viewScale;
+    }
+
+    private float toDrawingY(float y) {
+        return (y - viewY) / viewScale;
+    }
+
+    /**
+     * Tiled mode: two fingers pan and zoom instead of drawing.
+     * A stroke in progress when the second finger comes down is dropped.
+     * @return true if the event was used for pan/zoom
+     */
+    private boolean panZoom(MotionEvent event)
+    {
+        int action = event.getActionMasked();
+        if(action == MotionEvent.ACTION_POINTER_DOWN && event.getPointerCount() == 2) {
+            //in tiled mode a second finger pans instead of drawing
+            touch_cancel();
+            panning = true;
+            panX = (event.getX(0) + event.getX(1)) / 2;
+            panY = (event.getY(0) + event.getY(1)) / 2;
+            panSpan = span(event);
+            invalidate();
+            return true;
+        }
+        if(!panning) return false;
+        if(action == MotionEvent.ACTION_MOVE && event.getPointerCount() >= 2) {
+            float x = (event.getX(0) + event.getX(1)) / 2;
+            float y = (event.getY(0) + event.getY(1)) / 2;
+            float span = span(event);
+            float factor = panSpan > 0 ? span / panSpan : 1;
+            //zoom around the midpoint, then follow it
+            float scale = Math.max(0.1f, Math.min(10f, viewScale * factor));
+            factor = scale / viewScale;
+            setViewport(x - (panX - viewX) * factor, y - (panY - viewY) * factor, scale);
+            panX = x;
+            panY = y;
+            panSpan = span;
+        }
+        else if(action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            panning = false;
+        }
         return true;
     }
 
+    private static float span(MotionEvent event)
+    {
+        float dx = event.getX(0) - event.getX(1);
+        float dy = event.getY(0) - event.getY(1);
+        return (float)Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Turns the tiled (pan/zoom) mode on or off.
+     * In tiled mode committed strokes live in TileCanvas tiles allocated only
+     * where there is ink, and only visible tiles are drawn; the View sized
+     * layers are released. Evicted tiles go to the cache directory.
+     * Tiles hold the visible layers flattened, without their opacity
+     * and blend modes.
+     * @param enabled true for tiled mode
+     */
+    public void setTiledMode(boolean enabled)
+    {
+        if(enabled == tiled) return;
+        cancelRemote();
+        tiled = enabled;
+        if(tiled) {
+            //two screens worth of tiles in memory, the rest on disk
+            int across = getWidth() / TileCanvas.TILE_SIZE + 2;
+            int down = getHeight() / TileCanvas.TILE_SIZE + 2;
+            tiles = new TileCanvas(strokes, index, renderer,
+                    new File(getContext().getCacheDir(), "tiles"), Math.max(64, 2 * across * down));
+            //tiles coming back from disk are read in the background, draw them once they are
+            tiles.setOnTileRead(new Runnable() {
+                @Override
+                public void run() {
+                    postInvalidate();
+                }
+            });
+            //the layers' bitmaps and snapshots go, tiles hold every layer
+            layers.release();
+            canvasBitmap = null;
+        }
+        else {
+            tiles.release();
+            tiles = null;
+            setViewport(0, 0, 1);
+            if(getWidth() > 0 && getHeight() > 0) {
+                layers.resize(getWidth(), getHeight(), wantsOpaqueSurface());
+                canvasBitmap = surface.getBitmap();
+                redrawCommitted();
+            }
+        }
+        invalidate();
+    }
+
+    /**
+     * @return true in tiled (pan/zoom) mode
+     */
+    public boolean isTiledMode() {
+        return tiled;
+    }
+
+    /**
+     * Moves the view over the drawing in tiled mode.
+     * @param x View x of the drawing origin
+     * @param y View y of the drawing origin
+     * @param scale zoom factor
+     */
+    public void setViewport(float x, float y, float scale)
+    {
+        if(!tiled) {
+            x = 0;
+            y = 0;
+            scale = 1;
+        }
+        viewX = x;
+        viewY = y;
+        viewScale = scale;
+        viewMatrix.setScale(scale, scale);
+        viewMatrix.postTranslate(x, y);
+        viewport.set(-viewX / viewScale, -viewY / viewScale,
+                (getWidth() - viewX) / viewScale, (getHeight() - viewY) / viewScale);
+        invalidate();
+    }
+
+    /**
+     * @return tiles held in memory in tiled mode, 0 otherwise
+     */
+    public int getTileCount() {
+        return tiled ? tiles.getTileCount() : 0;
+    }
+
+    private final TileCanvas.StrokeRenderer renderer = new TileCanvas.StrokeRenderer() {
+        @Override
+        public void drawStroke(Canvas canvas, int stroke) {
+            if(layerOf(stroke).isVisible()) DrawingView.this.drawStroke(canvas, stroke);
+        }
+    };
+
+    /**
+     * Indexes the last stroke of strokes, replacing undone ones.
+     */
+    private void indexLastStroke()
+    {
+        int stroke = strokes.size() - 1;
+        index.truncate(stroke);
+        strokes.getBounds(stroke, strokeBounds);
+        index.add(stroke, strokeBounds[0], strokeBounds[1], strokeBounds[2], strokeBounds[3]);
+    }
+
+    /**
+     * Indexes every stroke again, after the whole drawing was replaced.
+     */
+    private void rebuildIndex()
+    {
+        index.clear();
+        meshes.clear();
+        for(int i = 0; i < strokes.size(); i++) {
+            strokes.getBounds(i, strokeBounds);
+            index.add(i, strokeBounds[0], strokeBounds[1], strokeBounds[2], strokeBounds[3]);
+        }
+    }
+
+    /**
+     * Adds the layers the strokes name that do not exist yet,
+     * after the whole drawing was replaced.
+     */
+    private void syncLayers()
+    {
+        for(int i = 0; i < strokes.size(); i++) {
+            layerOf(i);
+        }
+    }
+
+    /**
+     * Adds a layer: an ink layer goes on top of the other ink layers and
+     * becomes the active one, a scratch layer goes on top of everything
+     * and is left out of exports.
+     * @param kind LayerStack.KIND_INK or LayerStack.KIND_SCRATCH
+     * @return id of the new layer
+     */
+    public int addLayer(int kind)
+    {
+        int id = layers.add(kind);
+        if(kind == LayerStack.KIND_INK) activeLayer = id;
+        return id;
+    }
+
+    /**
+     * @return the layers, bottom to top; change them through the DrawingView setters
+     */
+    public LayerStack getLayers() {
+        return layers;
+    }
+
+    /**
+     * @param id layer new strokes go on, and the only one the erasers touch
+     */
+    public void setActiveLayer(int id)
+    {
+        if(id >= LayerStack.BASE_LAYER && layers.get(id) != null) activeLayer = id;
+    }
+
+    public int getActiveLayer() {
+        return activeLayer;
+    }
+
+    public void setLayerVisible(int id, boolean visible)
+    {
+        layers.setVisible(id, visible);
+        if(tiled) tiles.clear();
+        invalidate();
+    }
+
+    /**
+     * @param alpha opacity of the layer, 0 to 255; ignored in tiled mode
+     */
+    public void setLayerAlpha(int id, int alpha)
+    {
+        layers.setAlpha(id, alpha);
+        invalidate();
+    }
+
+    /**
+     * @param mode how the layer mixes with the ones under it, null for normal; ignored in tiled mode
+     */
+    public void setLayerBlendMode(int id, PorterDuff.Mode mode)
+    {
+        layers.setBlendMode(id, mode);
+        invalidate();
+    }
+
+    /**
+     * @param index new position from the bottom, kept among the layers of the same kind
+     */
+    public void moveLayer(int id, int index)
+    {
+        layers.move(id, index);
+        invalidate();
+    }
+
+    /**
+     * Removes every stroke on a layer, as one undoable step like a
+     * gesture of the object eraser.
+     */
+    public void clearLayer(int id)
+    {
+        LayerStack.Layer layer = layers.get(id);
+        if(layer == null || restoring) return;
+        dropRedo();
+        erased.clear();
+        for(int i = 0; i < strokes.size(); i++) {
+            if(strokes.isVisible(i) && layerOf(i) == layer) erased.add(i);
+        }
+        if(erased.size() == 0) return;
+        strokes.addDelete(erased);
+        erased.clear();
+        indexLastStroke();
+        if(journal != null) journal.appendStroke(strokes, strokes.size() - 1);
+        if(tiled) {
+            tiles.clear();
+        }
+        else {
+            //nothing is left on the layer
+            layer.clear();
+            layers.invalidateAll();
+        }
+        takeCheckpoint();
+        invalidate();
+    }
+
     /**
      * sets the new color
      * @param newColor the new color
      */
     public void setColor(String newColor)
     {
-        //invalidates the View
-        invalidate();
         //new color is set
         paintColor = Color.parseColor(newColor);
-        drawPaint.setColor(paintColor);
+        updateDrawPaint();
     }
 
     public void setBrushSize(float newSize){
@@ -192,7 +923,7 @@ public class DrawingView extends View
         float pixelAmount = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
                 newSize, getResources().getDisplayMetrics());
         brushSize=pixelAmount;
-        drawPaint.setStrokeWidth(brushSize);
+        updateDrawPaint();
 //update size
     }
 
@@ -206,55 +937,1377 @@ public class DrawingView extends View
 
     public void setErase(boolean isErase) {
         erase = isErase;
-        if(erase) drawPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
-        else drawPaint.setXfermode(null);
+        objectErase = false; //either brush or pixel eraser from now on
+        if(isErase) fillMode = false; //a color pick keeps the bucket
+        updateDrawPaint();
     }
 
-    public void startNew(){
-        drawCanvas.drawColor(0, PorterDuff.Mode.CLEAR);
-        invalidate();
+    /**
+     * Switches the object eraser on or off: while on, touches remove the
+     * strokes they cross instead of drawing. Each gesture is one undo step.
+     * @param enabled true for the object eraser
+     */
+    public void setObjectErase(boolean enabled)
+    {
+        objectErase = enabled;
+        if(enabled) fillMode = false;
     }
 
-    public void OnClickUndo()
-    {
-        if(paths.size() > 0) {
-            undonePaths.add(paths.remove(paths.size() - 1));
-            invalidate();
-        }
+    public boolean isObjectErase() {
+        return objectErase;
     }
 
-    public void onClickRedo(){
-        if(undonePaths.size() > 0){
-            paths.add(undonePaths.remove(undonePaths.size()-1));
-            invalidate();
+    /**
+     * Switches the bucket fill on or off: while on, a touch fills the area
+     * around it with the current color, on the active layer, as one undo
+     * step. Areas are found on what is shown (every visible layer).
+     * Not available in tiled mode.
+     * @param enabled true for the bucket fill
+     */
+    public void setFillMode(boolean enabled)
+    {
+        fillMode = enabled;
+        if(enabled) {
+            objectErase = false;
+            erase = false;
+            updateDrawPaint();
         }
     }
 
-    private float mX, mY;
-    private static final float TOUCH_TOLERANCE = 4;
+    public boolean isFillMode() {
+        return fillMode;
+    }
 
-    private void touch_start(float x, float y){
-        undonePaths.clear();
-        drawPath.reset();
-        drawPath.moveTo(x, y);
-        mX = x;
-        mY = y;
+    /**
+     * @param tolerance how far, per ARGB channel, a color may be from the
+     * touched one and still be filled, 0 to 255
+     */
+    public void setFillTolerance(int tolerance)
+    {
+        fillTolerance = Math.max(0, Math.min(255, tolerance));
     }
 
-    private void touch_move(float x, float y){
-        float dx = Math.abs(x - mX);
-        float dy = Math.abs(y - mY);
-        if(dx >= TOUCH_TOLERANCE || dy >= TOUCH_TOLERANCE) {
-            drawPath.quadTo(mX, mY, (x + mX) / 2, (y + mY) /2);
-            mX = x;
-            mY = y;
+    /**
+     * Switches the pressure brush on or off: while on, ink strokes get
+     * wider with pressure and thinner with speed, up to the brush size,
+     * and are drawn as triangle strips. The eraser keeps its fixed width.
+     * Applies to strokes started from now on.
+     * @param enabled true for the pressure brush
+     */
+    public void setPressureBrush(boolean enabled)
+    {
+        pressureBrush = enabled;
+    }
+
+    public boolean isPressureBrush() {
+        return pressureBrush;
+    }
+
+    public void startNew(){
+        if(restoring) return; //the restored drawing would replace the new one
+        long start = System.nanoTime();
+        cancelRemote();
+        strokes.clear();
+        index.clear();
+        meshes.clear();
+        if(tiled) tiles.clear();
+        layers.clearCheckpoints();
+        if(journal != null) journal.appendClear();
+        layers.clearStrokes();
+        invalidate();
+        recordOperation(FrameStats.OP_NEW, start);
+    }
+
+    public void OnClickUndo()
+    {
+        if(restoring) return;
+        long start = System.nanoTime();
+        if(strokes.undo()) {
+            if(journal != null) journal.appendUndo();
+            if(tiled) {
+                //only the tiles under the undone stroke are rasterized again
+                index.getBounds(strokes.size(), strokeBounds);
+                tiles.invalidate(strokeBounds);
+            }
+            else if(strokes.isDelete(strokes.size())) {
+                //removed strokes come back, only where they were
+                index.getBounds(strokes.size(), strokeBounds);
+                replayArea(strokeBounds[0], strokeBounds[1], strokeBounds[2], strokeBounds[3]);
+            }
+            else {
+                //only the layer the stroke was on is rasterized again
+                redrawLayer(layerOf(strokes.size()));
+            }
+            invalidate();
+            recordOperation(FrameStats.OP_UNDO, start);
+        }
+    }
+
+    public void onClickRedo(){
+        if(restoring) return;
+        long start = System.nanoTime();
+        if(strokes.redo()){
+            if(journal != null) journal.appendStroke(strokes, strokes.size() - 1);
+            //redo only adds on top, no need to replay the others
+            //(the stroke is still indexed, undo does not touch the index)
+            index.getBounds(strokes.size() - 1, strokeBounds);
+            if(strokes.isDelete(strokes.size() - 1)) {
+                //a removal takes pixels away instead
+                if(tiled) tiles.invalidate(strokeBounds);
+                else replayArea(strokeBounds[0], strokeBounds[1], strokeBounds[2], strokeBounds[3]);
+                takeCheckpoint();
+            }
+            else if(tiled) {
+                tiles.commitStroke(strokes.size() - 1, strokeBounds);
+            }
+            else {
+                drawStroke(layerOf(strokes.size() - 1).getCanvas(), strokes.size() - 1);
+                layers.invalidate(strokeBounds[0], strokeBounds[1], strokeBounds[2], strokeBounds[3]);
+                takeCheckpoint();
+            }
+            invalidate();
+            recordOperation(FrameStats.OP_REDO, start);
+        }
+    }
+
+    private void recordOperation(int op, long start)
+    {
+        if(frameStats != null) frameStats.recordOperation(op, System.nanoTime() - start);
+    }
+
+    /**
+     * @return a player of the drawing as it is now, at 1x
+     */
+    public StrokePlayer newPlayer()
+    {
+        return new StrokePlayer(strokes, MAX_REPLAY_GAP_MILLIS);
+    }
+
+    /**
+     * Plays the drawing back in the View the way it was drawn, from an
+     * empty page. A touch stops playback and shows the drawing again.
+     * Not available in tiled mode.
+     * @param speed 1 for real time, up to StrokePlayer.MAX_SPEED
+     * @return false if there is nothing to play
+     */
+    public boolean startReplay(float speed)
+    {
+        if(tiled || canvasBitmap == null || strokes.size() == 0 || restoring) return false;
+        stopReplay();
+        touch_cancel();
+        cancelRemote();
+        player = newPlayer();
+        player.setSpeed(speed);
+        replayCanvas = new ReplayCanvas(canvasBitmap.getWidth(), canvasBitmap.getHeight());
+        replayFrameTime = SystemClock.uptimeMillis();
+        invalidate();
+        return true;
+    }
+
+    /**
+     * ends playback, the committed drawing shows again
+     */
+    public void stopReplay()
+    {
+        if(player == null) return;
+        player = null;
+        replayCanvas.release();
+        replayCanvas = null;
+        invalidate();
+    }
+
+    public boolean isReplaying() {
+        return player != null;
+    }
+
+    /**
+     * @param speed playback speed, see StrokePlayer.setSpeed
+     */
+    public void setReplaySpeed(float speed)
+    {
+        if(player != null) player.setSpeed(speed);
+    }
+
+    /**
+     * One playback frame: commits the strokes due, within
+     * REPLAY_BUDGET_NANOS, and asks for the next frame until the
+     * drawing is complete.
+     */
+    private void drawReplay(Canvas canvas)
+    {
+        long now = SystemClock.uptimeMillis();
+        player.advance(now - replayFrameTime, REPLAY_BUDGET_NANOS, replayCanvas);
+        replayFrameTime = now;
+        replayCanvas.drawFrame(canvas, player);
+        if(player.isFinished()) {
+            //the last frame is the drawing itself
+            stopReplay();
+        }
+        else {
+            invalidate();
+        }
+    }
+
+    /**
+     * Turns instrumentation on or off. While on, every frame, touch
+     * event, undo, redo and clear is measured into stats; while off
+     * (null) none of it is, and the cost is a null check.
+     * Allocations are counted with Debug's allocation counter, which is
+     * started here and slows allocation down a little.
+     * @param stats receives the measurements, null to stop
+     */
+    @SuppressWarnings("deprecation")
+    public void setFrameStats(FrameStats stats)
+    {
+        if(stats != null && frameStats == null) Debug.startAllocCounting();
+        else if(stats == null && frameStats != null) Debug.stopAllocCounting();
+        frameStats = stats;
+        frameSegments = 0;
+        invalidate();
+    }
+
+    public FrameStats getFrameStats() {
+        return frameStats;
+    }
+
+    /**
+     * @return objects allocated on this thread since setFrameStats started counting
+     */
+    @SuppressWarnings("deprecation")
+    private static int threadAllocations() {
+        return Debug.getThreadAllocCount();
+    }
+
+    /**
+     * Shows the instrumentation numbers in the top left corner,
+     * while setFrameStats has been given a FrameStats.
+     * @param show true to show them
+     */
+    public void setStatsOverlay(boolean show)
+    {
+        statsOverlay = show;
+        if(show && statsPaint == null) {
+            statsPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            statsPaint.setColor(Color.WHITE);
+            statsPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 12,
+                    getResources().getDisplayMetrics()));
+            statsBackPaint = new Paint();
+            statsBackPaint.setColor(0xA0000000);
+            float line = statsPaint.getFontSpacing();
+            statsArea.set(0, 0, (int)(statsPaint.measureText("draw 000000 us p95 000000 us") + line),
+                    (int)(4 * line + line / 2));
+        }
+        invalidate();
+    }
+
+    /**
+     * draws the last frame's numbers, reusing statsText so it allocates nothing
+     */
+    private void drawStats(Canvas canvas)
+    {
+        FrameStats.Histogram draw = frameStats.getDrawTime();
+        FrameStats.Histogram touch = frameStats.getTouchLatency();
+        float line = statsPaint.getFontSpacing();
+        float x = line / 2, y = line;
+        canvas.drawRect(statsArea, statsBackPaint);
+
+        statsText.setLength(0);
+        statsText.append("draw ").append(frameStats.getLastDrawMicros())
+                .append(" us p95 ").append(draw.getPercentile(0.95)).append(" us");
+        canvas.drawText(statsText, 0, statsText.length(), x, y, statsPaint);
+        statsText.setLength(0);
+        statsText.append("touch p95 ").append(touch.getPercentile(0.95) / 1000)
+                .append(" ms max ").append(touch.getMax() / 1000).append(" ms");
+        canvas.drawText(statsText, 0, statsText.length(), x, y + line, statsPaint);
+        statsText.setLength(0);
+        statsText.append("strokes ").append(frameStats.getStrokes())
+                .append(" curves ").append(frameStats.getLastSegments());
+        canvas.drawText(statsText, 0, statsText.length(), x, y + 2 * line, statsPaint);
+        statsText.setLength(0);
+        statsText.append("bitmaps ").append(frameStats.getBitmapBytes() >> 20)
+                .append(" MB allocs ").append(frameStats.getLastAllocations());
+        canvas.drawText(statsText, 0, statsText.length(), x, y + 3 * line, statsPaint);
+    }
+
+    /**
+     * @return bytes held by the layers and their composite, the tiles and the undo snapshots
+     */
+    private long getBitmapBytes()
+    {
+        return tiled ? tiles.getTileBytes() : layers.getBitmapBytes();
+    }
+
+    /**
+     * Sets how many strokes are drawn between two undo snapshots.
+     * Smaller values make undo faster but use the memory budget sooner.
+     * @param interval strokes between snapshots, at least 1
+     */
+    public void setUndoCheckpointInterval(int interval)
+    {
+        layers.setCheckpointInterval(interval);
+    }
+
+    /**
+     * Sets how much memory undo snapshots may hold, split evenly between
+     * the layers. Least recently used snapshots are dropped past this budget,
+     * 0 turns snapshots off (undo then always replays from the start).
+     * @param bytes memory budget in bytes
+     */
+    public void setUndoMemoryBudget(long bytes)
+    {
+        layers.setCheckpointBudget(bytes);
+    }
+
+    /**
+     * Rebuilds every layer from the strokes stack, e.g. after the whole
+     * drawing was replaced.
+     */
+    private void redrawCommitted()
+    {
+        if(tiled) {
+            //tiles are rasterized again when they are drawn
+            tiles.clear();
+            return;
+        }
+        for(int i = 1; i < layers.size(); i++) {
+            redrawLayer(layers.getAt(i));
+        }
+    }
+
+    /**
+     * Rebuilds one layer from the strokes stack,
+     * each stroke with the paint it was drawn with.
+     * Starts from the layer's closest snapshot so only the strokes
+     * after it are replayed, and only those on this layer are drawn.
+     * Only needed when strokes are taken away (undo),
+     * onDraw itself never replays strokes.
+     */
+    private void redrawLayer(LayerStack.Layer layer)
+    {
+        if(tiled) {
+            tiles.clear();
+            return;
+        }
+        Canvas canvas = layer.getCanvas();
+        if(canvas == null) return;
+        CheckpointCache<Bitmap> checkpoints = layer.getCheckpoints();
+        int count = strokes.size();
+        int start = checkpoints.floorKey(count);
+        //a snapshot still shows the strokes removed after it was taken,
+        //go back to one from before the lowest of them
+        int deleted = strokes.lowestDeleted(start, count);
+        while(deleted < start) {
+            start = checkpoints.floorKey(deleted);
+            deleted = Math.min(deleted, strokes.lowestDeleted(start, count));
+        }
+        Bitmap snapshot = start > 0 ? checkpoints.get(start) : null;
+
+        layer.clear();
+        if(snapshot != null) {
+            canvas.drawBitmap(snapshot, 0, 0, null);
+        }
+        else {
+            start = 0;
+        }
+        for(int i = start; i < count; i++) {
+            if(layerOf(i) == layer) drawStroke(canvas, i);
+        }
+        redrawLive(layer);
+        layers.invalidateAll();
+    }
+
+    /**
+     * Draws again what the strokes in progress, local and remote, already
+     * put into their layer (eraser paths, pressure strips), after a replay
+     * cleared it. Without this the start of such a stroke stays missing,
+     * finishing it only draws the strip from meshDrawn on.
+     * @param layer only the strokes on this layer, or null for all of them
+     */
+    private void redrawLive(LayerStack.Layer layer)
+    {
+        for(int i = 0; i < MAX_POINTERS; i++) {
+            if(live[i].active) redrawLive(live[i], layer);
+        }
+        for(int i = 0; i < remoteLive.size(); i++) {
+            redrawLive(remoteLive.get(i), layer);
+        }
+    }
+
+    private void redrawLive(LiveStroke stroke, LayerStack.Layer layer)
+    {
+        if(layer != null && stroke.layer != layer) return;
+        Canvas canvas = stroke.layer.getCanvas();
+        if(stroke.pressure) {
+            if(stroke.meshDrawn < 3) return;
+            canvas.drawVertices(Canvas.VertexMode.TRIANGLE_STRIP, 2 * stroke.meshDrawn,
+                    stroke.mesh.getVertices(), 0, null, 0, null, 0, null, 0, 0, paints.getMesh(stroke.color));
+        }
+        else if(stroke.erase) {
+            canvas.drawPath(stroke.path, stroke.paint);
+        }
+    }
+
+    /**
+     * Draws one stored stroke with the paint it was drawn with.
+     * The Path is rebuilt into a scratch object, none is kept per stroke.
+     * @param canvas canvas to draw into
+     * @param stroke index in strokes
+     */
+    private void drawStroke(Canvas canvas, int stroke)
+    {
+        if(!strokes.isVisible(stroke)) return; //removed, or a removal
+        long start = System.nanoTime();
+        if(strokes.isPressure(stroke)) {
+            //(only ever drawn into layer and tile bitmaps, whose canvases draw vertices)
+            float[] mesh = meshes.get(stroke);
+            if(mesh == null) {
+                replayMesh.build(strokes, stroke, strokes.getPointCount(stroke));
+                mesh = meshes.put(stroke, replayMesh.getVertices(), replayMesh.getVertexCount());
+            }
+            canvas.drawVertices(Canvas.VertexMode.TRIANGLE_STRIP, mesh.length, mesh, 0,
+                    null, 0, null, 0, null, 0, 0, paints.getMesh(strokes.getColor(stroke)));
+            frameSegments += strokes.getSegmentCount(stroke);
+            simplifyStats.recordRender(false, strokes.getSegmentCount(stroke), System.nanoTime() - start);
+            return;
+        }
+        replayPath.rewind();
+        strokes.replay(stroke, replaySink);
+        frameSegments += strokes.getSegmentCount(stroke);
+        canvas.drawPath(replayPath, strokes.isFill(stroke) ? paints.getFill(strokes.getColor(stroke))
+                : paints.get(strokes.getColor(stroke), strokes.getWidth(stroke), strokes.isErase(stroke)));
+        simplifyStats.recordRender(strokes.isCubic(stroke), strokes.getSegmentCount(stroke),
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Turns the low latency mode on or off. While on, the stroke in
+     * progress is drawn by the overlay's render thread as soon as samples
+     * arrive, with a predicted piece predictMillis ahead of the finger,
+     * instead of in this View's draw pass. Finished strokes are committed
+     * here as usual.
+     * @param overlay an InkOverlay covering this View, or null to turn it off
+     */
+    public void setInkOverlay(InkOverlay overlay)
+    {
+        if(inkOverlay != null) inkOverlay.clear();
+        inkOverlay = overlay;
+        overlayLive = null;
+    }
+
+    /**
+     * @param millis how far ahead of the last sample the low latency mode
+     * predicts the finger, 0 for no prediction
+     */
+    public void setPredictionMillis(long millis)
+    {
+        predictMillis = millis;
+    }
+
+    /**
+     * Sets how far, in pixels, simplified strokes may stray from the
+     * curve that was drawn. Applies to strokes finished from now on.
+     * @param pixels error bound, 0 to keep strokes as drawn
+     */
+    public void setSimplifyError(float pixels)
+    {
+        simplifyError = pixels;
+    }
+
+    /**
+     * @return segment and render time counters of stroke simplification
+     */
+    public SimplifyStats getSimplifyStats() {
+        return simplifyStats;
+    }
+
+    /**
+     * Replaces the stroke just finished with its cubic fit. Short strokes
+     * are fitted right away, long ones on simplifyWorker; the stroke is
+     * drawn as it was meanwhile and keeps its pixels (they differ by at
+     * most simplifyError), only later replays use the fit.
+     * @param stroke index of the finished stroke
+     * @param builder the builder holding its points
+     */
+    private void simplify(final int stroke, StrokeBuilder builder)
+    {
+        final int count = strokes.getPointCount(stroke);
+        if(simplifyError <= 0 || count < 3) return;
+        if(count < SIMPLIFY_ASYNC_POINTS) {
+            long start = System.nanoTime();
+            int fitted = simplifier.fit(builder.getPoints(), count, simplifyError);
+            applySimplified(stroke, builder.getPoints(), count, simplifier.getOutput(), fitted,
+                    System.nanoTime() - start);
+            return;
+        }
+        if(simplifyWorker == null) simplifyWorker = Executors.newSingleThreadExecutor();
+        final float[] raw = Arrays.copyOf(builder.getPoints(), 2 * count);
+        final float error = simplifyError;
+        simplifyWorker.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                final int fitted = workerSimplifier.fit(raw, count, error);
+                final float[] xy = Arrays.copyOf(workerSimplifier.getOutput(), 2 * fitted);
+                final long nanos = System.nanoTime() - start;
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        applySimplified(stroke, raw, count, xy, fitted, nanos);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * UI thread: puts a fit in place, unless the stroke was replaced
+     * (undo and a new stroke, clear, load) while it was being fitted.
+     */
+    private void applySimplified(int stroke, float[] raw, int count, float[] fitted, int fittedCount, long nanos)
+    {
+        int segments = StrokeSimplifier.cubicSegments(fittedCount);
+        if(segments == 0 || segments >= count || !strokes.samePoints(stroke, raw, count)) return;
+        strokes.replacePoints(stroke, fitted, fittedCount, strokes.getFlags(stroke) | StrokeStore.FLAG_CUBIC);
+        //control points may stick out of the old box
+        strokes.getBounds(stroke, strokeBounds);
+        index.update(stroke, strokeBounds[0], strokeBounds[1], strokeBounds[2], strokeBounds[3]);
+        simplifyStats.recordSimplified(count, segments, nanos);
+    }
+
+    @Override
+    protected void onDetachedFromWindow()
+    {
+        super.onDetachedFromWindow();
+        stopSync();
+        if(simplifyWorker != null) {
+            simplifyWorker.shutdownNow();
+            simplifyWorker = null;
+        }
+        if(fillPool != null) {
+            fillPool.shutdown();
+            fillPool = null;
+            floodFill = null;
+        }
+    }
+
+    /**
+     * Writes the drawing in the StrokeStore binary format.
+     * @param file file to (over)write
+     */
+    public void saveDocument(File file) throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            strokes.write(out.getChannel());
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Replaces the drawing with one saved by saveDocument.
+     * @param file file to read
+     * @throws IOException also while the autosaved session is read back
+     */
+    public void loadDocument(File file) throws IOException
+    {
+        if(restoring) throw new IOException("the autosaved drawing is still being read back");
+        cancelRemote();
+        FileInputStream in = new FileInputStream(file);
+        try {
+            strokes.read(in.getChannel());
+        }
+        finally {
+            in.close();
+        }
+        rebuildIndex();
+        syncLayers();
+        layers.clearCheckpoints();
+        if(journal != null) {
+            journal.appendClear();
+            for(int i = 0; i < strokes.size(); i++) {
+                journal.appendStroke(strokes, i);
+            }
+        }
+        redrawCommitted();
+        invalidate();
+    }
+
+    /**
+     * Autosaves the drawing into journal from now on, after replacing
+     * the current drawing with the session the journal holds.
+     * Touches and edits (undo, redo, new, clearing a layer, loading) are
+     * ignored until that session has been read back: the restored drawing
+     * replaces the one on screen, and the journal must match it.
+     * If autosave stops after an error, the user is told once.
+     * @param journal the session journal, or null to stop journaling
+     */
+    public void attachJournal(SessionJournal journal)
+    {
+        if(this.journal != null) this.journal.setFailureListener(null);
+        this.journal = journal;
+        if(journal == null) {
+            restoring = false;
+            return;
+        }
+        restoring = true;
+        journal.setFailureListener(new SessionJournal.FailureListener() {
+            @Override
+            public void onJournalFailed(IOException error) {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(getContext(), "Autosave stopped, save the drawing to keep it",
+                                Toast.LENGTH_LONG).show();
+                    }
+                });
+            }
+        });
+        journal.restore(new SessionJournal.RestoreCallback() {
+            @Override
+            public void onRestored(final StrokeStore restored, final long millis) {
+                //writer thread, hand the drawing over to the UI thread
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(frameStats != null) frameStats.recordOperation(FrameStats.OP_RESTORE, millis * 1000000);
+                        strokes.copyFrom(restored);
+                        rebuildIndex();
+                        syncLayers();
+                        layers.clearCheckpoints();
+                        redrawCommitted();
+                        restoring = false;
+                        invalidate();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Joins a shared canvas: strokes drawn here are sent to the relay as
+     * they are drawn, and the other devices' strokes show up as they are
+     * drawn there, then become part of this drawing (undo, save, export).
+     * Undo, clear, fills and the object eraser stay on this device. Like a
+     * local stroke, a remote stroke that is committed here throws away
+     * what could still be redone; one in progress does not.
+     * @param host address of a SyncRelay
+     * @param port its port
+     * @return the client, connecting in the background, for its stats
+     */
+    public SyncClient startSync(String host, int port)
+    {
+        stopSync();
+        RemoteEvents events = new RemoteEvents();
+        sync = new SyncClient(host, port, events);
+        events.client = sync;
+        sync.start();
+        return sync;
+    }
+
+    /**
+     * leaves the shared canvas, the remote strokes in progress are dropped
+     */
+    public void stopSync()
+    {
+        if(sync == null) return;
+        SyncClient closing = sync;
+        sync = null;
+        closing.close();
+    }
+
+    /**
+     * @return the shared canvas connection, null when there is none
+     */
+    public SyncClient getSync() {
+        return sync;
+    }
+
+    /**
+     * A remote stroke event, queued from the sync thread to the UI thread.
+     */
+    private static class RemoteEvent {
+        byte type; //SyncProtocol START, POINTS (one sample), END or CANCEL
+        long key; //sender and stroke id
+        int color, flags, layer;
+        float width, x, y, w;
+    }
+
+    /**
+     * Hands what SyncClient decodes over to the UI thread: events are
+     * queued under a lock, and one posted run() handles every event
+     * queued by then, so a burst of frames costs one message, and the
+     * sync thread never waits for drawing.
+     */
+    private class RemoteEvents implements SyncClient.Listener, Runnable
+    {
+        SyncClient client;
+        private ArrayList<RemoteEvent> queued = new ArrayList<>();
+        private ArrayList<RemoteEvent> handling = new ArrayList<>();
+        private final ArrayList<RemoteEvent> spare = new ArrayList<>();
+        private boolean posted;
+
+        @Override
+        public void onRemoteStart(int sender, int stroke, int color, float width, int flags, int layer,
+                                  float x, float y, float w) {
+            synchronized(this) {
+                RemoteEvent e = queue(SyncProtocol.START, sender, stroke);
+                e.color = color;
+                e.width = width;
+                e.flags = flags;
+                e.layer = layer;
+                e.x = x;
+                e.y = y;
+                e.w = w;
+            }
+        }
+
+        @Override
+        public void onRemotePoint(int sender, int stroke, float x, float y, float w) {
+            synchronized(this) {
+                RemoteEvent e = queue(SyncProtocol.POINTS, sender, stroke);
+                e.x = x;
+                e.y = y;
+                e.w = w;
+            }
+        }
+
+        @Override
+        public void onRemoteEnd(int sender, int stroke, boolean cancelled) {
+            synchronized(this) {
+                queue(cancelled ? SyncProtocol.CANCEL : SyncProtocol.END, sender, stroke);
+            }
+        }
+
+        @Override
+        public void onSyncClosed(IOException error) {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    if(sync != client) return; //left or joined another since
+                    sync = null;
+                    Toast.makeText(getContext(), "Shared canvas disconnected", Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+
+        /**
+         * sync thread, holding the lock
+         */
+        private RemoteEvent queue(byte type, int sender, int stroke)
+        {
+            RemoteEvent e = spare.isEmpty() ? new RemoteEvent() : spare.remove(spare.size() - 1);
+            e.type = type;
+            e.key = ((long)sender << 32) | (stroke & 0xFFFFFFFFL);
+            queued.add(e);
+            if(!posted) {
+                posted = true;
+                post(this);
+            }
+            return e;
+        }
+
+        /**
+         * UI thread: draws every event queued so far
+         */
+        @Override
+        public void run()
+        {
+            synchronized(this) {
+                ArrayList<RemoteEvent> swap = handling;
+                handling = queued;
+                queued = swap;
+                posted = false;
+            }
+            handleRemote(handling);
+            synchronized(this) {
+                spare.addAll(handling);
+            }
+            handling.clear();
+        }
+    }
+
+    /**
+     * Draws a batch of remote stroke events, on the UI thread. Remote
+     * strokes are built like local ones, without decimation (the device
+     * that drew them did that), and invalidate only what they changed.
+     * While the drawing is being restored or played back, or before the
+     * View has its size, new ones are dropped.
+     */
+    private void handleRemote(ArrayList<RemoteEvent> events)
+    {
+        dirtyRect.setEmpty();
+        for(int i = 0; i < remoteLive.size(); i++) {
+            remoteLive.get(i).builder.clearDirty();
+        }
+        long now = SystemClock.uptimeMillis();
+        for(int i = 0; i < events.size(); i++) {
+            RemoteEvent e = events.get(i);
+            LiveStroke stroke = remote.get(e.key);
+            if(e.type == SyncProtocol.START) {
+                if(stroke == null && !restoring && player == null && (tiled || canvasBitmap != null)) {
+                    startRemote(e, now);
+                }
+            }
+            else if(stroke == null) {
+                //started before this device joined, or dropped
+            }
+            else if(e.type == SyncProtocol.POINTS) {
+                if(stroke.builder.move(e.x, e.y, stroke.sink) && stroke.pressure) {
+                    stroke.mesh.add(e.x, e.y, e.w);
+                }
+            }
+            else if(e.type == SyncProtocol.END && erasing) {
+                //the erase gesture replaces its entry as the last stroke, this one waits
+                //for erase_up, still drawn live
+                stroke.upTime = now;
+                remote.remove(e.key);
+                remoteEnded.add(stroke);
+            }
+            else {
+                if(e.type == SyncProtocol.END) finishStroke(stroke, now);
+                else dropLive(stroke);
+                remote.remove(e.key);
+                remoteLive.remove(stroke);
+                remoteSpare.add(stroke);
+                if(e.type == SyncProtocol.END) takeCheckpoint();
+            }
+        }
+        //what is left in progress shows as it grew
+        for(int i = 0; i < remoteLive.size(); i++) {
+            LiveStroke stroke = remoteLive.get(i);
+            StrokeBuilder builder = stroke.builder;
+            if(!builder.isDirty()) continue;
+            if(stroke.pressure) drawLiveMesh(stroke);
+            else if(stroke.erase) drawLiveErase(stroke);
+            addDirty(builder.getDirtyLeft(), builder.getDirtyTop(),
+                    builder.getDirtyRight(), builder.getDirtyBottom(), stroke.width);
+        }
+        if(!dirtyRect.isEmpty()) invalidate(dirtyRect);
+    }
+
+    private void startRemote(RemoteEvent e, long now)
+    {
+        LiveStroke stroke = remoteSpare.isEmpty() ? new LiveStroke(0) : remoteSpare.remove(remoteSpare.size() - 1);
+        stroke.active = true;
+        stroke.pointerId = -1;
+        stroke.downTime = now;
+        stroke.color = e.color;
+        stroke.width = e.width;
+        stroke.erase = (e.flags & StrokeStore.FLAG_ERASE) != 0;
+        stroke.pressure = (e.flags & StrokeStore.FLAG_PRESSURE) != 0 && !stroke.erase;
+        stroke.paint = paints.get(e.color, e.width, stroke.erase);
+        //(layers are matched by id, the template layer takes no strokes)
+        stroke.layer = layers.ensure(Math.max(LayerStack.BASE_LAYER, e.layer));
+        stroke.path.reset();
+        stroke.builder.start(e.x, e.y, stroke.sink);
+        if(stroke.pressure) {
+            stroke.mesh.start(e.x, e.y, e.w);
+            stroke.meshDrawn = 0;
+        }
+        remote.put(e.key, stroke);
+        remoteLive.add(stroke);
+    }
+
+    /**
+     * drops the remote strokes in progress, before the drawing is replaced or redrawn
+     */
+    private void cancelRemote()
+    {
+        for(int i = 0; i < remoteLive.size(); i++) {
+            dropLive(remoteLive.get(i));
+        }
+        remoteSpare.addAll(remoteLive);
+        remoteLive.clear();
+        remote.clear();
+        remoteEnded.clear();
+    }
+
+    /**
+     * commits the remote strokes that ended during the erase gesture, in order
+     */
+    private void commitRemoteEnded()
+    {
+        for(int i = 0; i < remoteEnded.size(); i++) {
+            LiveStroke stroke = remoteEnded.get(i);
+            finishStroke(stroke, stroke.upTime);
+            remoteLive.remove(stroke);
+            remoteSpare.add(stroke);
+            takeCheckpoint();
+        }
+        remoteEnded.clear();
+    }
+
+    /**
+     * snapshots the layer of the last stroke if the stroke count is due for one
+     */
+    private void takeCheckpoint()
+    {
+        int count = strokes.size();
+        if(canvasBitmap == null || count == 0) return;
+        LayerStack.Layer layer = layerOf(count - 1);
+        if(!layer.getCheckpoints().wants(count)) return;
+        for(int i = 0; i < MAX_POINTERS; i++) {
+            //another finger's eraser or pressure stroke is already in the layer, unfinished
+            if(live[i].active && (live[i].erase || live[i].pressure) && live[i].layer == layer) return;
+        }
+        for(int i = 0; i < remoteLive.size(); i++) {
+            LiveStroke stroke = remoteLive.get(i);
+            if((stroke.erase || stroke.pressure) && stroke.layer == layer) return;
+        }
+        Bitmap snapshot = layer.getBitmap().copy(layer.getBitmap().getConfig(), false);
+        if(snapshot != null) {
+            layer.getCheckpoints().put(count, snapshot, snapshot.getByteCount());
+        }
+    }
+
+    /**
+     * A stroke in progress: one per finger, reused from stroke to stroke
+     * (strokes drawn on other devices have a pool of their own).
+     * The builder feeds path with TOUCH_TOLERANCE decimation and quadTo
+     * smoothing; the brush is the one set when the finger went down.
+     * A pressure stroke also gives every sample the builder accepts to
+     * mesh, with the width dynamics has for it.
+     */
+    private static class LiveStroke
+    {
+        final StrokeBuilder builder;
+        final Path path = new Path();
+        final PathSink sink = new PathSink(path);
+        final BrushDynamics dynamics = new BrushDynamics();
+        final StrokeMesh mesh = new StrokeMesh();
+        boolean pressure; //drawn with mesh, stored as FLAG_PRESSURE
+        int meshDrawn; //vertices of mesh already in the layer
+        boolean active;
+        int pointerId;
+        long downTime; //event time of the first sample
+        int color;
+        float width;
+        boolean erase;
+        Paint paint;
+        LayerStack.Layer layer; //layer the stroke goes on
+        int syncId; //id the stroke is sent to sync with
+        long upTime; //event time a remote stroke ended, while its commit waits
+
+        LiveStroke() {
+            builder = new StrokeBuilder();
+        }
+
+        /**
+         * @param tolerance StrokeBuilder tolerance, 0 for remote strokes
+         * (their samples were decimated by the device that drew them)
+         */
+        LiveStroke(float tolerance) {
+            builder = new StrokeBuilder(tolerance);
+        }
+    }
+
+    /**
+     * @return the stroke in progress of a finger, or null
+     */
+    private LiveStroke findLive(int pointerId)
+    {
+        for(int i = 0; i < MAX_POINTERS; i++) {
+            if(live[i].active && live[i].pointerId == pointerId) return live[i];
+        }
+        return null;
+    }
+
+    /**
+     * Throws away the undone strokes, a new one is about to be added.
+     */
+    private void dropRedo()
+    {
+        strokes.discardRedo();
+        index.truncate(strokes.size());
+        meshes.truncate(strokes.size());
+        //snapshots past this point belong to the thrown away redo strokes
+        layers.invalidateCheckpointsAbove(strokes.size());
+    }
+
+    /**
+     * @param pressure MotionEvent pressure of the first sample
+     */
+    private void touch_start(int pointerId, float x, float y, float pressure){
+        LiveStroke stroke = null;
+        for(int i = 0; i < MAX_POINTERS && stroke == null; i++) {
+            if(!live[i].active) stroke = live[i];
+        }
+        if(stroke == null) return; //more fingers than MAX_POINTERS, this one does not draw
+        LayerStack.Layer layer = layers.ensure(activeLayer);
+        if(!layer.isVisible()) return; //a hidden layer takes no strokes
+
+        dropRedo();
+        stroke.active = true;
+        stroke.pointerId = pointerId;
+        stroke.downTime = touchTime;
+        stroke.color = paintColor;
+        stroke.width = brushSize;
+        stroke.erase = erase;
+        stroke.paint = drawPaint;
+        stroke.layer = layer;
+        stroke.path.reset();
+        stroke.builder.start(x, y, stroke.sink);
+        stroke.pressure = pressureBrush && !erase;
+        float startWidth = 0;
+        if(stroke.pressure) {
+            startWidth = stroke.dynamics.start(brushSize, x, y, pressure, touchTime);
+            stroke.mesh.start(x, y, startWidth);
+            stroke.meshDrawn = 0;
+        }
+        if(sync != null) {
+            stroke.syncId = ++syncStrokeId;
+            int flags = (erase ? StrokeStore.FLAG_ERASE : 0) | (stroke.pressure ? StrokeStore.FLAG_PRESSURE : 0);
+            sync.getEncoder().start(stroke.syncId, paintColor, brushSize, flags, layer.getId(), x, y, startWidth);
+        }
+        //the pixel eraser draws into the bitmap, only ink goes on the overlay,
+        //and only one stroke at a time (the overlay draws fixed width strokes)
+        if(inkOverlay != null && !erase && !stroke.pressure && overlayLive == null) {
+            overlayLive = stroke;
+            predictor.reset();
+            predictor.setMaxDistance(Math.max(40, 2 * brushSize));
+            predictor.add(x, y, touchTime);
+            inkOverlay.beginStroke(x, y, paintColor, brushSize, touchTime, viewX, viewY, viewScale);
+        }
+    }
+
+    /**
+     * Feeds every sample of an ACTION_MOVE to the stroke of each finger,
+     * the batched historical ones first and then the current one,
+     * so fast strokes keep their shape.
+     * @param event the move event
+     */
+    private void touch_move(MotionEvent event){
+        int history = event.getHistorySize();
+        for(int p = 0; p < event.getPointerCount(); p++) {
+            LiveStroke stroke = findLive(event.getPointerId(p));
+            if(stroke == null) continue;
+            StrokeBuilder builder = stroke.builder;
+            boolean onOverlay = stroke == overlayLive;
+            boolean changed = false;
+            for(int h = 0; h < history; h++) {
+                float x = toDrawingX(event.getHistoricalX(p, h)), y = toDrawingY(event.getHistoricalY(p, h));
+                if(stroke.pressure) {
+                    changed |= movePressure(stroke, x, y, event.getHistoricalPressure(p, h),
+                            event.getHistoricalEventTime(h));
+                    continue;
+                }
+                changed |= moveLive(stroke, x, y);
+                if(onOverlay) predictor.add(x, y, event.getHistoricalEventTime(h));
+            }
+            float x = toDrawingX(event.getX(p)), y = toDrawingY(event.getY(p));
+            if(stroke.pressure) {
+                changed |= movePressure(stroke, x, y, event.getPressure(p), touchTime);
+                if(changed) drawLiveMesh(stroke);
+                continue;
+            }
+            changed |= moveLive(stroke, x, y);
+            if(onOverlay) {
+                //every sample moves the prediction, even those too close to be accepted
+                predictor.add(x, y, touchTime);
+                boolean ahead = predictor.predict(predictMillis, predicted);
+                inkOverlay.update(builder.getPoints(), builder.getPointCount(), ahead,
+                        predicted[0], predicted[1], touchTime);
+            }
+            if(changed && stroke.erase) drawLiveErase(stroke);
+        }
+    }
+
+    /**
+     * Feeds one sample to a stroke, and to sync if the builder accepts it.
+     * @return true if the sample was accepted
+     */
+    private boolean moveLive(LiveStroke stroke, float x, float y)
+    {
+        if(!stroke.builder.move(x, y, stroke.sink)) return false;
+        if(sync != null) sync.getEncoder().point(stroke.syncId, x, y, 0);
+        return true;
+    }
+
+    /**
+     * Draws an eraser stroke's path into its layer (or the tiles): the
+     * eraser cannot be drawn on the View's canvas like the other strokes.
+     */
+    private void drawLiveErase(LiveStroke stroke)
+    {
+        StrokeBuilder builder = stroke.builder;
+        float pad = stroke.width / 2 + 1;
+        if(tiled) {
+            tiles.drawLive(stroke.path, stroke.paint, builder.getDirtyLeft() - pad,
+                    builder.getDirtyTop() - pad, builder.getDirtyRight() + pad,
+                    builder.getDirtyBottom() + pad);
+        }
+        else {
+            //erases its own layer only, the others show through
+            stroke.layer.getCanvas().drawPath(stroke.path, stroke.paint);
+            layers.invalidate(builder.getDirtyLeft() - pad, builder.getDirtyTop() - pad,
+                    builder.getDirtyRight() + pad, builder.getDirtyBottom() + pad);
+        }
+    }
+
+    private void touch_up(int pointerId){
+        LiveStroke stroke = findLive(pointerId);
+        if(stroke == null) return;
+        if(sync != null) sync.getEncoder().end(stroke.syncId);
+        finishStroke(stroke, touchTime);
+        if(stroke == overlayLive) {
+            //the overlay keeps showing it until the next onDraw has the committed pixels
+            inkOverlay.endStroke();
+            overlayLive = null;
+            overlayClearPending = true;
+        }
+        takeCheckpoint();
+    }
+
+    /**
+     * Commits a finished stroke, local or remote: the rest of it goes
+     * into its layer, and it is stored, indexed and journaled.
+     * @param upTime event time the stroke ended
+     */
+    private void finishStroke(LiveStroke stroke, long upTime)
+    {
+        //local strokes dropped the redo strokes at touch_start already, a remote
+        //one only does now, so another device drawing does not take redo away early
+        dropRedo();
+        StrokeBuilder builder = stroke.builder;
+        int flags = stroke.erase ? StrokeStore.FLAG_ERASE : 0;
+        builder.end(stroke.sink);
+        //the live path turns into bitmap pixels everywhere along the stroke
+        stroke.path.computeBounds(pathBounds, true);
+        addDirty(pathBounds.left, pathBounds.top, pathBounds.right, pathBounds.bottom, stroke.width);
+        float[] points = builder.getPoints();
+        int pointCount = builder.getPointCount();
+        if(stroke.pressure) {
+            //the last line and the end cap, the rest is in the layer already
+            stroke.mesh.end();
+            drawLiveMesh(stroke);
+            flags |= StrokeStore.FLAG_PRESSURE;
+            points = stroke.mesh.getPoints();
+            pointCount = stroke.mesh.getPointCount();
+        }
+        else if(!tiled) {
+            stroke.layer.getCanvas().drawPath(stroke.path, stroke.paint);
+            float pad = stroke.width / 2 + 1;
+            layers.invalidate(pathBounds.left - pad, pathBounds.top - pad,
+                    pathBounds.right + pad, pathBounds.bottom + pad);
+        }
+        strokes.add(points, pointCount, stroke.color, stroke.width, flags);
+        strokes.setLayer(strokes.size() - 1, stroke.layer.getId());
+        int gap = lastStrokeEnd == 0 ? 0 : (int)Math.min(Integer.MAX_VALUE, stroke.downTime - lastStrokeEnd);
+        int duration = (int)Math.min(Integer.MAX_VALUE, upTime - stroke.downTime);
+        strokes.setTiming(strokes.size() - 1, gap, duration);
+        lastStrokeEnd = Math.max(lastStrokeEnd, upTime);
+        indexLastStroke();
+        if(stroke.pressure) {
+            //tessellated once, replays draw this strip
+            meshes.put(strokes.size() - 1, stroke.mesh.getVertices(), stroke.mesh.getVertexCount());
+        }
+        if(tiled) tiles.commitStroke(strokes.size() - 1, strokeBounds);
+        if(journal != null) {
+            journal.appendStroke(points, pointCount, stroke.color, stroke.width, flags,
+                    gap, duration, stroke.layer.getId());
+        }
+        //(a pressure stroke's widths go with its samples, it is kept as drawn)
+        if(!stroke.pressure) simplify(strokes.size() - 1, builder);
+        stroke.path.reset(); //the stroke now lives in its layer and strokes
+        stroke.active = false;
+    }
+
+    /**
+     * drops every stroke in progress, e.g. when the gesture is cancelled
+     */
+    private void touch_cancel()
+    {
+        for(int i = 0; i < MAX_POINTERS; i++) {
+            if(live[i].active && sync != null) sync.getEncoder().cancel(live[i].syncId);
+            dropLive(live[i]);
+        }
+        if(overlayLive != null) {
+            inkOverlay.clear();
+            overlayLive = null;
+        }
+        invalidate();
+    }
+
+    /**
+     * drops a stroke in progress without committing it
+     */
+    private void dropLive(LiveStroke stroke)
+    {
+        if(stroke.active && stroke.pressure) {
+            //its strip is already in the layer, draw the area again without it
+            stroke.path.computeBounds(pathBounds, true);
+            float pad = stroke.width / 2 + 1;
+            strokeBounds[0] = pathBounds.left - pad;
+            strokeBounds[1] = pathBounds.top - pad;
+            strokeBounds[2] = pathBounds.right + pad;
+            strokeBounds[3] = pathBounds.bottom + pad;
+            if(tiled) tiles.invalidate(strokeBounds);
+            else replayArea(strokeBounds[0], strokeBounds[1], strokeBounds[2], strokeBounds[3]);
+        }
+        stroke.path.reset();
+        stroke.active = false;
+    }
+
+    /**
+     * Feeds one sample to a pressure stroke: every sample moves the width,
+     * those the builder accepts add a piece of strip.
+     * @return true if the sample was accepted
+     */
+    private boolean movePressure(LiveStroke stroke, float x, float y, float pressure, long time)
+    {
+        float width = stroke.dynamics.update(x, y, pressure, time);
+        if(!stroke.builder.move(x, y, stroke.sink)) return false;
+        stroke.mesh.add(x, y, width);
+        if(sync != null) sync.getEncoder().point(stroke.syncId, x, y, width);
+        return true;
+    }
+
+    /**
+     * Draws the vertices a pressure stroke added since its last draw into
+     * its layer (or the tiles), joined on to those drawn before, so each
+     * piece of strip is drawn exactly once while the stroke grows.
+     * Layer canvases draw vertices on every API level, the View's
+     * hardware canvas would not.
+     */
+    private void drawLiveMesh(LiveStroke stroke)
+    {
+        StrokeMesh mesh = stroke.mesh;
+        int first = StrokeMesh.getJoinStart(stroke.meshDrawn);
+        int count = mesh.getVertexCount() - first;
+        if(count < 3) return;
+        StrokeBuilder builder = stroke.builder;
+        float pad = stroke.width / 2 + 1;
+        float left = builder.getDirtyLeft() - pad, top = builder.getDirtyTop() - pad;
+        float right = builder.getDirtyRight() + pad, bottom = builder.getDirtyBottom() + pad;
+        Paint paint = paints.getMesh(stroke.color);
+        if(tiled) {
+            tiles.drawLive(mesh.getVertices(), first, count, paint, left, top, right, bottom);
+        }
+        else {
+            stroke.layer.getCanvas().drawVertices(Canvas.VertexMode.TRIANGLE_STRIP, 2 * count,
+                    mesh.getVertices(), 2 * first, null, 0, null, 0, null, 0, 0, paint);
+            layers.invalidate(left, top, right, bottom);
+        }
+        stroke.meshDrawn = mesh.getVertexCount();
+    }
+
+    /**
+     * Bucket fill at a touch. The composite (what is shown) is read with
+     * one getPixels, FloodFill finds the area, and only its box of the
+     * active layer is read, changed and written back. The fill is stored
+     * as its rectangles, which undo, redo and tiles replay.
+     */
+    private void fillAt(float x, float y)
+    {
+        if(tiled || canvasBitmap == null) return;
+        LayerStack.Layer layer = layers.ensure(activeLayer);
+        if(!layer.isVisible()) return;
+        if(floodFill == null) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            if(cores > 1) fillPool = Executors.newFixedThreadPool(cores);
+            floodFill = new FloodFill(fillPool, cores);
+        }
+        layers.compose();
+        int w = canvasBitmap.getWidth(), h = canvasBitmap.getHeight();
+        int[] pixels = floodFill.getPixels(w, h);
+        canvasBitmap.getPixels(pixels, 0, w, 0, 0, w, h);
+        if(!floodFill.fill((int)x, (int)y, fillTolerance)) return;
+
+        int left = floodFill.getLeft(), top = floodFill.getTop();
+        int boxWidth = floodFill.getRight() - left, boxHeight = floodFill.getBottom() - top;
+        Bitmap bitmap = layer.getBitmap();
+        bitmap.getPixels(pixels, 0, boxWidth, left, top, boxWidth, boxHeight);
+        floodFill.apply(pixels, paintColor);
+        bitmap.setPixels(pixels, 0, boxWidth, left, top, boxWidth, boxHeight);
+        layers.invalidate(left, top, floodFill.getRight(), floodFill.getBottom());
+
+        dropRedo();
+        strokes.add(floodFill.getRects(), 2 * floodFill.getRectCount(), paintColor, 0, StrokeStore.FLAG_FILL);
+        int stroke = strokes.size() - 1;
+        strokes.setLayer(stroke, layer.getId());
+        strokes.setTiming(stroke, lastStrokeEnd == 0 ? 0 : (int)Math.min(Integer.MAX_VALUE, touchTime - lastStrokeEnd), 0);
+        lastStrokeEnd = Math.max(lastStrokeEnd, touchTime);
+        indexLastStroke();
+        if(journal != null) journal.appendStroke(strokes, stroke);
+        takeCheckpoint();
+        addDirty(left, top, floodFill.getRight(), floodFill.getBottom(), 0);
+    }
+
+    private void erase_start(float x, float y){
+        dropRedo();
+        erased.clear();
+        erasing = true;
+        eraseDownTime = touchTime;
+        lastEraseX = x;
+        lastEraseY = y;
+        eraseAlong(x, y);
+    }
+
+    private void erase_move(MotionEvent event){
+        int history = event.getHistorySize();
+        for(int h = 0; h < history; h++) {
+            eraseAlong(toDrawingX(event.getHistoricalX(h)), toDrawingY(event.getHistoricalY(h)));
+        }
+        eraseAlong(toDrawingX(event.getX()), toDrawingY(event.getY()));
+    }
+
+    private void erase_up(){
+        if(erased.size() > 0) {
+            lastStrokeEnd = Math.max(lastStrokeEnd, touchTime);
+            takeCheckpoint();
+        }
+        erased.clear();
+        erasing = false;
+        commitRemoteEnded();
+    }
+
+    /**
+     * Removes the strokes crossed by the finger since the last sample.
+     * The gesture's FLAG_DELETE entry is replaced by one naming every
+     * stroke removed so far, so the whole gesture stays one undo step.
+     * That entry is always the last stroke: remote strokes ending
+     * meanwhile are committed by erase_up.
+     */
+    private void eraseAlong(float x, float y)
+    {
+        float radius = Math.max(brushSize / 2, StrokeBuilder.TOUCH_TOLERANCE);
+        index.hitTest(strokes, lastEraseX, lastEraseY, x, y, radius, found);
+        lastEraseX = x;
+        lastEraseY = y;
+        //strokes on other layers are left alone
+        int hits = 0;
+        for(int i = 0; i < found.size(); i++) {
+            if(onActiveLayer(found.get(i))) hits++;
+        }
+        if(hits == 0) return;
+
+        if(erased.size() > 0) {
+            strokes.undo(); //the entry is replaced by add below
+            if(journal != null) journal.appendUndo();
+        }
+        for(int i = 0; i < found.size(); i++) {
+            if(onActiveLayer(found.get(i))) erased.add(found.get(i));
+        }
+        strokes.addDelete(erased);
+        strokes.setTiming(strokes.size() - 1,
+                lastStrokeEnd == 0 ? 0 : (int)Math.min(Integer.MAX_VALUE, eraseDownTime - lastStrokeEnd),
+                (int)Math.min(Integer.MAX_VALUE, touchTime - eraseDownTime));
+        indexLastStroke();
+        if(journal != null) journal.appendStroke(strokes, strokes.size() - 1);
+
+        //only the newly removed strokes change pixels
+        for(int i = 0; i < found.size(); i++) {
+            if(!onActiveLayer(found.get(i))) continue;
+            strokes.getBounds(found.get(i), strokeBounds);
+            if(tiled) tiles.invalidate(strokeBounds);
+            else replayArea(strokeBounds[0], strokeBounds[1], strokeBounds[2], strokeBounds[3]);
+            addDirty(strokeBounds[0], strokeBounds[1], strokeBounds[2], strokeBounds[3]);
         }
     }
 
-    private void touch_up(){
-        drawPath.lineTo(mX, mY);
-        drawCanvas.drawPath(drawPath, drawPaint);
-        paths.add(drawPath);
-        drawPath = new Path();
+    private boolean onActiveLayer(int stroke) {
+        return layerOf(stroke).getId() == activeLayer;
     }
 }
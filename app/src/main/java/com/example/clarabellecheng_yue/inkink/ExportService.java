@@ -0,0 +1,460 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Saves the drawing as an image without blocking the UI thread.
+ * The UI thread only copies the drawing into a reusable snapshot bitmap,
+ * scaling and PNG/WebP/JPEG encoding run on a background thread.
+ * Big canvases can be written as several tiles (one image each) so only
+ * one tile has to be held and encoded at a time.
+ * Vector exports (SVG and PDF, see VectorExport) copy the strokes instead
+ * and write them on the same background thread.
+ * Progress and timings are reported back on the UI thread.
+ */
+public class ExportService
+{
+    /**
+     * Where encoded images go, called on the background thread.
+     */
+    public interface Destination {
+        /**
+         * @param tile index of the tile, 0 for a single image
+         * @param tileCount number of tiles in this export
+         * @param mimeType image/png, image/webp or image/jpeg
+         * @return stream for the encoded image, closed by ExportService
+         */
+        OutputStream openTile(int tile, int tileCount, String mimeType) throws IOException;
+
+        /**
+         * Removes whatever openTile created for a tile that could not be
+         * encoded or written, after its stream was closed.
+         * @param tile index of the tile
+         */
+        void discardTile(int tile);
+    }
+
+    /**
+     * Called on the UI thread.
+     */
+    public interface Listener {
+        void onExportProgress(int tilesDone, int tileCount);
+        void onExportFinished(Result result);
+    }
+
+    /**
+     * What to write.
+     */
+    public static class Options {
+        public Bitmap.CompressFormat format = Bitmap.CompressFormat.PNG;
+        public int quality = 100; //ignored by PNG
+        public float scale = 1f; //output size relative to the view
+        public int tileSize = 0; //max output tile width and height, 0 for one image
+    }
+
+    /**
+     * How an export went.
+     */
+    public static class Result {
+        public boolean success;
+        public Exception error; //IOException, or e.g. a SecurityException from the destination
+        public int width, height; //output size
+        public int tileCount;
+        public long snapshotMillis; //time the UI thread spent
+        public long encodeMillis; //time on the background thread
+        public long bytes; //vector exports: bytes written
+    }
+
+    //what export and exportVector did
+    public static final int STARTED = 0;
+    public static final int BUSY = 1; //the last export is still running
+    public static final int NO_SIZE = 2; //the view has not been laid out yet
+
+    private static final int TEMPLATE_QUALITY = 90;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private Bitmap snapshot; //reused between exports of the same size
+    private Bitmap tile; //reused between tiles and exports
+    private volatile boolean busy;
+
+    /**
+     * @return true while an export is running
+     */
+    public boolean isBusy() {
+        return busy;
+    }
+
+    /**
+     * Copies the drawing and starts encoding it in the background.
+     * Must be called on the UI thread.
+     * @param view drawing to export
+     * @param options format, scale and tiling
+     * @param destination where the images go
+     * @param listener told about progress and the result, may be null
+     * @return STARTED, BUSY or NO_SIZE
+     */
+    public int export(DrawingView view, final Options options,
+                      final Destination destination, final Listener listener)
+    {
+        int w = view.getWidth();
+        int h = view.getHeight();
+        if(busy) return BUSY;
+        if(w == 0 || h == 0) return NO_SIZE;
+        busy = true;
+        boolean started = false;
+        try {
+            final Result result = new Result();
+            long start = SystemClock.uptimeMillis();
+            if(snapshot == null || snapshot.getWidth() != w || snapshot.getHeight() != h) {
+                if(snapshot != null) snapshot.recycle();
+                snapshot = null; //not left recycled if the new one cannot be made
+                snapshot = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+            }
+            snapshot.eraseColor(Color.TRANSPARENT);
+            view.drawSnapshot(new Canvas(snapshot));
+            result.snapshotMillis = SystemClock.uptimeMillis() - start;
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long encodeStart = SystemClock.uptimeMillis();
+                    try {
+                        encode(options, destination, listener, result);
+                        result.success = true;
+                    }
+                    catch(IOException e) {
+                        result.error = e;
+                    }
+                    catch(RuntimeException e) {
+                        //e.g. no permission for the Gallery, it must not end the app
+                        result.error = e;
+                    }
+                    finally {
+                        result.encodeMillis = SystemClock.uptimeMillis() - encodeStart;
+                        finish(listener, result);
+                    }
+                }
+            });
+            started = true;
+        }
+        finally {
+            //e.g. out of memory for the snapshot: the next export must not see it busy
+            if(!started) busy = false;
+        }
+        return STARTED;
+    }
+
+    /**
+     * Copies the drawing and writes it as name.svg and name.pdf in the
+     * background. A visible template is written once per template and
+     * size as template-<resource id>-<w>x<h>.jpg in the same directory, which the SVG
+     * refers to and the PDF embeds. Must be called on the UI thread.
+     * @param view drawing to export
+     * @param directory where the files go, created if needed
+     * @param name file name without extension
+     * @param listener told about progress (one step per file) and the result, may be null
+     * @return STARTED, BUSY or NO_SIZE
+     */
+    public int exportVector(DrawingView view, final File directory, final String name, final Listener listener)
+    {
+        int w = view.getWidth();
+        int h = view.getHeight();
+        if(busy) return BUSY;
+        if(w == 0 || h == 0) return NO_SIZE;
+        busy = true;
+        boolean started = false;
+        Bitmap templateCopy = null;
+        try {
+            final Result result = new Result();
+            long start = SystemClock.uptimeMillis();
+            final VectorExport export = view.newVectorExport();
+            result.width = w;
+            result.height = h;
+            result.tileCount = 2;
+
+            //the template is encoded once, a copy is only taken when its file is missing
+            File jpeg = null;
+            Bitmap template = view.getLayers().getTemplate();
+            if(view.getTemplateResId() != 0 && template != null && !template.isRecycled()
+                    && view.getLayers().get(LayerStack.TEMPLATE_LAYER).isVisible()) {
+                jpeg = new File(directory, "template-" + view.getTemplateResId() + "-"
+                        + template.getWidth() + "x" + template.getHeight() + ".jpg");
+                if(!jpeg.exists()) {
+                    templateCopy = Bitmap.createBitmap(template.getWidth(), template.getHeight(), Bitmap.Config.ARGB_8888);
+                    templateCopy.eraseColor(Color.WHITE); //no alpha in JPEG
+                    new Canvas(templateCopy).drawBitmap(template, 0, 0, null);
+                }
+                export.setTemplate(new FileTemplate(jpeg, template.getWidth(), template.getHeight()));
+            }
+            result.snapshotMillis = SystemClock.uptimeMillis() - start;
+
+            final File templateFile = jpeg;
+            final Bitmap templateBitmap = templateCopy;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long encodeStart = SystemClock.uptimeMillis();
+                    try {
+                        if(!directory.isDirectory() && !directory.mkdirs()) {
+                            throw new IOException("could not create " + directory);
+                        }
+                        if(templateBitmap != null) writeTemplate(templateBitmap, templateFile);
+                        File svg = new File(directory, name + ".svg");
+                        File pdf = new File(directory, name + ".pdf");
+                        writeVector(export, svg, false);
+                        progress(listener, 1, 2);
+                        writeVector(export, pdf, true);
+                        progress(listener, 2, 2);
+                        result.bytes = svg.length() + pdf.length();
+                        result.success = true;
+                    }
+                    catch(IOException e) {
+                        result.error = e;
+                    }
+                    catch(RuntimeException e) {
+                        result.error = e;
+                    }
+                    finally {
+                        if(templateBitmap != null) templateBitmap.recycle();
+                        result.encodeMillis = SystemClock.uptimeMillis() - encodeStart;
+                        finish(listener, result);
+                    }
+                }
+            });
+            started = true;
+        }
+        finally {
+            if(!started) {
+                //the copy or the export could not be made, nothing runs in the background
+                busy = false;
+                if(templateCopy != null) templateCopy.recycle();
+            }
+        }
+        return STARTED;
+    }
+
+    /**
+     * background thread: ends an export however it went, the next one can start
+     */
+    private void finish(final Listener listener, final Result result)
+    {
+        busy = false;
+        if(listener == null) return;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onExportFinished(result);
+            }
+        });
+    }
+
+    /**
+     * stops the background thread, pending exports are dropped
+     */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * background thread: scales snapshot tile by tile and encodes each tile
+     */
+    private void encode(Options options, Destination destination,
+                        final Listener listener, Result result) throws IOException
+    {
+        int outW = Math.max(1, Math.round(snapshot.getWidth() * options.scale));
+        int outH = Math.max(1, Math.round(snapshot.getHeight() * options.scale));
+        int tileW = options.tileSize > 0 ? Math.min(options.tileSize, outW) : outW;
+        int tileH = options.tileSize > 0 ? Math.min(options.tileSize, outH) : outH;
+        int cols = (outW + tileW - 1) / tileW;
+        int rows = (outH + tileH - 1) / tileH;
+        final int tileCount = cols * rows;
+        result.width = outW;
+        result.height = outH;
+        result.tileCount = tileCount;
+
+        String mimeType = mimeType(options.format);
+        Matrix matrix = new Matrix();
+        for(int row = 0; row < rows; row++) {
+            for(int col = 0; col < cols; col++) {
+                //edge tiles are smaller
+                int w = Math.min(tileW, outW - col * tileW);
+                int h = Math.min(tileH, outH - row * tileH);
+                Bitmap out = tileBitmap(w, h);
+                if(options.format == Bitmap.CompressFormat.JPEG) {
+                    out.eraseColor(Color.WHITE); //no alpha in JPEG
+                }
+                else {
+                    out.eraseColor(Color.TRANSPARENT);
+                }
+                matrix.setScale(options.scale, options.scale);
+                matrix.postTranslate(-col * tileW, -row * tileH);
+                new Canvas(out).drawBitmap(snapshot, matrix, scalePaint);
+
+                final int index = row * cols + col;
+                OutputStream stream = destination.openTile(index, tileCount, mimeType);
+                boolean written = false;
+                try {
+                    try {
+                        if(!out.compress(options.format, options.quality, stream)) {
+                            throw new IOException("could not encode tile " + index);
+                        }
+                    }
+                    finally {
+                        stream.close();
+                    }
+                    written = true;
+                }
+                finally {
+                    //no half written image is left behind
+                    if(!written) destination.discardTile(index);
+                }
+                if(listener != null) {
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onExportProgress(index + 1, tileCount);
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * background thread: writes one vector document, removing it if writing fails
+     */
+    private static void writeVector(VectorExport export, File file, boolean pdf) throws IOException
+    {
+        OutputStream out = new FileOutputStream(file);
+        boolean written = false;
+        try {
+            if(pdf) export.writePdf(out);
+            else export.writeSvg(out);
+            written = true;
+        }
+        finally {
+            out.close();
+            if(!written) file.delete();
+        }
+    }
+
+    /**
+     * background thread: encodes the template next to the documents
+     */
+    private static void writeTemplate(Bitmap template, File file) throws IOException
+    {
+        File partial = new File(file.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(partial);
+        boolean written = false;
+        try {
+            if(!template.compress(Bitmap.CompressFormat.JPEG, TEMPLATE_QUALITY, out)) {
+                throw new IOException("could not encode " + file);
+            }
+            written = true;
+        }
+        finally {
+            out.close();
+            if(!written) partial.delete();
+        }
+        //a template file is only ever complete, it is reused by later exports
+        if(!partial.renameTo(file)) throw new IOException("could not write " + file);
+    }
+
+    /**
+     * A template encoded to a JPEG file, which an SVG refers to by name
+     * and a PDF embeds by copying.
+     */
+    private static class FileTemplate implements VectorExport.Template {
+        private final File file;
+        private final int width, height;
+
+        FileTemplate(File file, int width, int height) {
+            this.file = file;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public String getHref() {
+            return file.getName();
+        }
+
+        @Override
+        public void writeJpeg(OutputStream out) throws IOException
+        {
+            InputStream in = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while((read = in.read(buffer)) > 0) out.write(buffer, 0, read);
+            }
+            finally {
+                in.close();
+            }
+        }
+    }
+
+    private void progress(final Listener listener, final int done, final int count)
+    {
+        if(listener == null) return;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onExportProgress(done, count);
+            }
+        });
+    }
+
+    /**
+     * @return a w x h bitmap, reusing the last tile when it is the same size
+     */
+    private Bitmap tileBitmap(int w, int h)
+    {
+        if(tile != null && tile.getWidth() == w && tile.getHeight() == h) return tile;
+        if(tile != null) tile.recycle();
+        tile = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        return tile;
+    }
+
+    static String mimeType(Bitmap.CompressFormat format)
+    {
+        switch(format) {
+            case JPEG:
+                return "image/jpeg";
+            case WEBP:
+                return "image/webp";
+            default:
+                return "image/png";
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Bucket fill on a copy of the drawing's pixels.
+ * The caller reads the pixels into getPixels() with one bulk copy, fill()
+ * finds the area connected to the seed (4 neighbours) whose colors are
+ * within a tolerance of the seed's, and the result is handed out as the
+ * box it covers, as rectangles (what a FLAG_FILL stroke stores) and as
+ * pixels written by apply(), which only touches that box.
+ *
+ * Comparing colors is the per pixel work, so on large canvases it runs in
+ * horizontal bands on the pool into a byte mask; the connected area is then
+ * walked one scanline span at a time on the mask alone, and apply() writes
+ * in bands as well. Buffers are kept from fill to fill.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class FloodFill
+{
+    public static final int PARALLEL_PIXELS = 1 << 18; //fewer pixels are done on the calling thread
+
+    private static final byte OTHER = 0, MATCH = 1, FILLED = 2;
+
+    private final ExecutorService pool; //null to stay on the calling thread
+    private final int bands;
+
+    private int[] pixels = new int[0];
+    private byte[] mask = new byte[0];
+    private int width, height;
+
+    private int[] stack = new int[5 * 64]; //x, y, parent span x0, x1, direction of runs still to walk
+    private float[] rects = new float[64]; //left, top, right, bottom of each rectangle
+    private int rectCount;
+    private int[] spans = new int[0], lastSpans = new int[0]; //x0, x1, rect of each span in a row
+
+    private int seedColor, tolerance, fillColor;
+    private int[] target; //box apply() writes into
+    private int left, top, right, bottom; //filled box, right and bottom exclusive
+    private int filled; //pixels
+
+    private interface Band {
+        void run(int from, int to);
+    }
+
+    //marks the pixels close to the seed color as MATCH
+    private final Band classify = new Band() {
+        @Override
+        public void run(int from, int to) {
+            int seed = seedColor;
+            int a = seed >>> 24, r = (seed >> 16) & 0xFF, g = (seed >> 8) & 0xFF, b = seed & 0xFF;
+            for(int i = from * width, end = to * width; i < end; i++) {
+                int c = pixels[i];
+                //most pixels of a plain area are exactly the seed color
+                boolean close = c == seed || Math.abs((c >>> 24) - a) <= tolerance
+                        && Math.abs(((c >> 16) & 0xFF) - r) <= tolerance
+                        && Math.abs(((c >> 8) & 0xFF) - g) <= tolerance
+                        && Math.abs((c & 0xFF) - b) <= tolerance;
+                mask[i] = close ? MATCH : OTHER;
+            }
+        }
+    };
+
+    //writes fillColor over the FILLED pixels of the box, held in target with the box's stride
+    private final Band write = new Band() {
+        @Override
+        public void run(int from, int to) {
+            int stride = right - left;
+            for(int y = from; y < to; y++) {
+                int m = y * width + left, p = (y - top) * stride;
+                for(int x = left; x < right; x++, m++, p++) {
+                    if(mask[m] == FILLED) target[p] = fillColor;
+                }
+            }
+        }
+    };
+
+    /**
+     * @param pool runs the bands of large fills, null for none
+     * @param bands number of bands a large fill is split into, e.g. the number of cores
+     */
+    public FloodFill(ExecutorService pool, int bands)
+    {
+        this.pool = pool;
+        this.bands = Math.max(1, bands);
+    }
+
+    /**
+     * Sizes the pixel buffer for the next fill.
+     * @return the buffer to read the canvas into, rows of width pixels
+     */
+    public int[] getPixels(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+        if(pixels.length < width * height) {
+            pixels = new int[width * height];
+            mask = new byte[width * height];
+        }
+        if(spans.length < 3 * (width / 2 + 1)) {
+            spans = new int[3 * (width / 2 + 1)];
+            lastSpans = new int[spans.length];
+        }
+        return pixels;
+    }
+
+    /**
+     * Finds the area to fill in the pixels read into getPixels().
+     * @param x seed, in pixels
+     * @param y
+     * @param tolerance how far each ARGB channel may be from the seed's, 0 to 255
+     * @return false if the seed is outside the canvas
+     */
+    public boolean fill(int x, int y, int tolerance)
+    {
+        rectCount = 0;
+        filled = 0;
+        if(x < 0 || y < 0 || x >= width || y >= height) return false;
+        seedColor = pixels[y * width + x];
+        this.tolerance = tolerance;
+        inBands(0, height, classify);
+
+        left = x;
+        right = x + 1;
+        top = y;
+        bottom = y + 1;
+        int size = push(0, x, y, x, x, 0);
+        while(size > 0) {
+            size -= 5;
+            int sx = stack[size], sy = stack[size + 1];
+            int px0 = stack[size + 2], px1 = stack[size + 3], dir = stack[size + 4];
+            int row = sy * width;
+            if(mask[row + sx] != MATCH) continue;
+            //the whole run of matching pixels on this row
+            int x0 = sx, x1 = sx;
+            while(x0 > 0 && mask[row + x0 - 1] == MATCH) x0--;
+            while(x1 < width - 1 && mask[row + x1 + 1] == MATCH) x1++;
+            Arrays.fill(mask, row + x0, row + x1 + 1, FILLED);
+            filled += x1 - x0 + 1;
+            left = Math.min(left, x0);
+            right = Math.max(right, x1 + 1);
+            top = Math.min(top, sy);
+            bottom = Math.max(bottom, sy + 1);
+            //one seed per run of matching pixels on the row ahead; the row this
+            //span came from was filled under the parent span, only the parts
+            //reaching past it are looked at
+            int ahead = dir == 0 ? 1 : dir;
+            size = pushRuns(size, sy + ahead, x0, x1, x0, x1, ahead);
+            if(dir == 0) {
+                size = pushRuns(size, sy - 1, x0, x1, x0, x1, -1);
+            }
+            else {
+                if(x0 < px0) size = pushRuns(size, sy - dir, x0, px0 - 1, x0, x1, -dir);
+                if(x1 > px1) size = pushRuns(size, sy - dir, px1 + 1, x1, x0, x1, -dir);
+            }
+        }
+        buildRects();
+        return true;
+    }
+
+    /**
+     * pushes the start of every run of MATCH pixels in row y between from and to
+     * @return the new stack size
+     */
+    private int pushRuns(int size, int y, int from, int to, int x0, int x1, int dir)
+    {
+        if(y < 0 || y >= height) return size;
+        int row = y * width;
+        int i = from;
+        while(i <= to) {
+            while(i <= to && mask[row + i] != MATCH) i++;
+            if(i > to) break;
+            size = push(size, i, y, x0, x1, dir);
+            while(i <= to && mask[row + i] == MATCH) i++;
+        }
+        return size;
+    }
+
+    private int push(int size, int x, int y, int x0, int x1, int dir)
+    {
+        if(size + 5 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+        stack[size] = x;
+        stack[size + 1] = y;
+        stack[size + 2] = x0;
+        stack[size + 3] = x1;
+        stack[size + 4] = dir;
+        return size + 5;
+    }
+
+    /**
+     * Turns the filled pixels into rectangles: the spans of each row,
+     * a span exactly under one of the row above growing that rectangle
+     * instead, so a plain area is a handful of rectangles.
+     */
+    private void buildRects()
+    {
+        int last = 0;
+        for(int y = top; y < bottom; y++) {
+            int row = y * width, count = 0, l = 0;
+            int x = left;
+            while(x < right) {
+                if(mask[row + x] != FILLED) {
+                    x++;
+                    continue;
+                }
+                int x0 = x;
+                while(x < right && mask[row + x] == FILLED) x++;
+                //spans of both rows are in x order
+                while(l < last && lastSpans[3 * l] < x0) l++;
+                int rect;
+                if(l < last && lastSpans[3 * l] == x0 && lastSpans[3 * l + 1] == x) {
+                    rect = lastSpans[3 * l + 2];
+                    rects[4 * rect + 3] = y + 1;
+                }
+                else {
+                    rect = addRect(x0, y, x, y + 1);
+                }
+                spans[3 * count] = x0;
+                spans[3 * count + 1] = x;
+                spans[3 * count + 2] = rect;
+                count++;
+            }
+            int[] swap = lastSpans;
+            lastSpans = spans;
+            spans = swap;
+            last = count;
+        }
+    }
+
+    private int addRect(float l, float t, float r, float b)
+    {
+        if(4 * rectCount + 4 > rects.length) rects = Arrays.copyOf(rects, rects.length * 2);
+        rects[4 * rectCount] = l;
+        rects[4 * rectCount + 1] = t;
+        rects[4 * rectCount + 2] = r;
+        rects[4 * rectCount + 3] = b;
+        return rectCount++;
+    }
+
+    /**
+     * Writes color over the filled pixels. target holds the box
+     * getLeft()..getRight() by getTop()..getBottom(), a row every
+     * getRight() - getLeft() ints, e.g. read from the layer to change;
+     * nothing outside the box has to be read or written back.
+     * @param target pixels of the box, the buffer from getPixels() may be reused
+     * @param color ARGB color written as is
+     */
+    public void apply(int[] target, int color)
+    {
+        if(filled == 0) return;
+        this.target = target;
+        fillColor = color;
+        inBands(top, bottom, write);
+        this.target = null;
+    }
+
+    /**
+     * runs band over rows from..to, split between the pool's threads when large
+     */
+    private void inBands(int from, int to, final Band band)
+    {
+        int rows = to - from;
+        if(pool == null || bands < 2 || rows < bands || rows * (long)width < PARALLEL_PIXELS) {
+            band.run(from, to);
+            return;
+        }
+        final CountDownLatch done = new CountDownLatch(bands);
+        for(int b = 0; b < bands; b++) {
+            final int y0 = from + rows * b / bands, y1 = from + rows * (b + 1) / bands;
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        band.run(y0, y1);
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        boolean interrupted = false;
+        while(true) {
+            try {
+                done.await();
+                break;
+            }
+            catch(InterruptedException e) {
+                //the bands write into our buffers, they have to finish first
+                interrupted = true;
+            }
+        }
+        if(interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * @return true if the last fill covers the pixel
+     */
+    public boolean isFilled(int x, int y) {
+        return filled > 0 && x >= 0 && y >= 0 && x < width && y < height && mask[y * width + x] == FILLED;
+    }
+
+    /**
+     * @return pixels the last fill covers, 0 if the seed was outside
+     */
+    public int getFilledPixels() {
+        return filled;
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    /**
+     * @return right edge of the filled box, exclusive
+     */
+    public int getRight() {
+        return right;
+    }
+
+    /**
+     * @return bottom edge of the filled box, exclusive
+     */
+    public int getBottom() {
+        return bottom;
+    }
+
+    /**
+     * @return left, top, right, bottom of each rectangle of the last fill
+     * (edges exclusive), i.e. two x,y points per rectangle; not to be modified
+     */
+    public float[] getRects() {
+        return rects;
+    }
+
+    public int getRectCount() {
+        return rectCount;
+    }
+}
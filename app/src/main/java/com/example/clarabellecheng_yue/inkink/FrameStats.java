@@ -0,0 +1,288 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * What DrawingView measures about itself once instrumentation is turned
+ * on: how long frames take to draw, how long a touch takes to reach
+ * invalidate(), how long undo, redo, clear and restoring the autosaved
+ * session take, how many curves and allocations each frame has, and the
+ * size of the drawing and of its bitmaps. A DrawingView without a FrameStats measures nothing.
+ * Times go into histograms with power of two buckets, which cost a few
+ * increments per sample and never allocate.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class FrameStats
+{
+    /**
+     * Told after every frame DrawingView draws, on the UI thread.
+     */
+    public interface Listener {
+        void onFrame(FrameStats stats);
+    }
+
+    public static final int OP_UNDO = 0;
+    public static final int OP_REDO = 1;
+    public static final int OP_NEW = 2;
+    public static final int OP_RESTORE = 3; //reading the autosaved session back
+
+    /**
+     * Counts of values in buckets [0, 1), [1, 2), [2, 4), [4, 8)...
+     */
+    public static class Histogram
+    {
+        private static final int BUCKETS = 32;
+
+        private final String name;
+        private final String unit;
+        private final long[] buckets = new long[BUCKETS];
+        private long count, sum, max;
+
+        public Histogram(String name, String unit)
+        {
+            this.name = name;
+            this.unit = unit;
+        }
+
+        public void record(long value)
+        {
+            if(value < 0) value = 0;
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+            buckets[bucket]++;
+            count++;
+            sum += value;
+            if(value > max) max = value;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public float getMean() {
+            return count == 0 ? 0 : sum / (float)count;
+        }
+
+        /**
+         * @param fraction 0.5 for the median, 0.95...
+         * @return upper end of the bucket holding that share of the values
+         * (at most getMax()), 0 if nothing was recorded
+         */
+        public long getPercentile(double fraction)
+        {
+            long wanted = (long)Math.ceil(fraction * count);
+            long seen = 0;
+            for(int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if(seen >= wanted && seen > 0) return Math.min(max, (1L << i) - 1);
+            }
+            return max;
+        }
+
+        /**
+         * @return values in bucket i, which holds [2^(i-1), 2^i), bucket 0 holds 0
+         */
+        public long getBucket(int i) {
+            return buckets[i];
+        }
+
+        public void reset()
+        {
+            for(int i = 0; i < BUCKETS; i++) buckets[i] = 0;
+            count = sum = max = 0;
+        }
+    }
+
+    private final Histogram drawTime = new Histogram("draw", "us");
+    private final Histogram touchTime = new Histogram("touch", "us"); //onTouchEvent itself
+    private final Histogram touchLatency = new Histogram("touch_to_invalidate", "us");
+    private final Histogram segments = new Histogram("segments_per_frame", "curves");
+    private final Histogram allocations = new Histogram("allocations_per_frame", "objects");
+    private final Histogram[] operations = {
+            new Histogram("undo", "us"), new Histogram("redo", "us"), new Histogram("new", "us"),
+            new Histogram("restore", "us")
+    };
+    private final Histogram[] all = {
+            drawTime, touchTime, touchLatency, segments, allocations,
+            operations[OP_UNDO], operations[OP_REDO], operations[OP_NEW], operations[OP_RESTORE]
+    };
+
+    private long frames;
+    private int lastSegments, lastAllocations;
+    private long lastDrawMicros;
+    private int strokes; //strokes in the drawing, removals included
+    private long bitmapBytes; //backing bitmap, tiles and undo snapshots
+    private Listener listener;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * counts one frame and tells the listener
+     * @param drawNanos time onDraw took
+     * @param frameSegments curves drawn or replayed since the last frame
+     * @param frameAllocations objects the UI thread allocated during the frame, -1 if unknown
+     */
+    public void recordFrame(long drawNanos, int frameSegments, int frameAllocations)
+    {
+        frames++;
+        lastDrawMicros = drawNanos / 1000;
+        lastSegments = frameSegments;
+        lastAllocations = frameAllocations;
+        drawTime.record(lastDrawMicros);
+        segments.record(frameSegments);
+        if(frameAllocations >= 0) allocations.record(frameAllocations);
+        if(listener != null) listener.onFrame(this);
+    }
+
+    /**
+     * @param handlingNanos time onTouchEvent took
+     * @param latencyMillis from the event's time stamp to invalidate()
+     */
+    public void recordTouch(long handlingNanos, long latencyMillis)
+    {
+        touchTime.record(handlingNanos / 1000);
+        touchLatency.record(latencyMillis * 1000);
+    }
+
+    /**
+     * @param op one of the OP_ values
+     * @param nanos time the operation took, redrawing included
+     */
+    public void recordOperation(int op, long nanos)
+    {
+        operations[op].record(nanos / 1000);
+    }
+
+    /**
+     * @param strokeCount strokes in the drawing
+     * @param bytes memory held by bitmaps
+     */
+    public void recordDocument(int strokeCount, long bytes)
+    {
+        strokes = strokeCount;
+        bitmapBytes = bytes;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getLastDrawMicros() {
+        return lastDrawMicros;
+    }
+
+    public int getLastSegments() {
+        return lastSegments;
+    }
+
+    public int getLastAllocations() {
+        return lastAllocations;
+    }
+
+    public int getStrokes() {
+        return strokes;
+    }
+
+    public long getBitmapBytes() {
+        return bitmapBytes;
+    }
+
+    public Histogram getDrawTime() {
+        return drawTime;
+    }
+
+    public Histogram getTouchTime() {
+        return touchTime;
+    }
+
+    public Histogram getTouchLatency() {
+        return touchLatency;
+    }
+
+    public Histogram getSegments() {
+        return segments;
+    }
+
+    public Histogram getAllocations() {
+        return allocations;
+    }
+
+    /**
+     * @param op one of the OP_ values
+     */
+    public Histogram getOperation(int op) {
+        return operations[op];
+    }
+
+    public void reset()
+    {
+        for(Histogram histogram : all) histogram.reset();
+        frames = 0;
+        lastDrawMicros = 0;
+        lastSegments = lastAllocations = 0;
+    }
+
+    /**
+     * Writes one line per histogram:
+     * name,unit,count,mean,p50,p95,p99,max, then the bucket counts.
+     */
+    public void writeCsv(Writer out) throws IOException
+    {
+        out.write("name,unit,count,mean,p50,p95,p99,max");
+        for(int i = 0; i < Histogram.BUCKETS; i++) {
+            out.write(",b" + i);
+        }
+        out.write('\n');
+        for(Histogram h : all) {
+            out.write(String.format(Locale.US, "%s,%s,%d,%.2f,%d,%d,%d,%d", h.name, h.unit, h.count,
+                    h.getMean(), h.getPercentile(0.5), h.getPercentile(0.95), h.getPercentile(0.99), h.max));
+            for(int i = 0; i < Histogram.BUCKETS; i++) {
+                out.write("," + h.buckets[i]);
+            }
+            out.write('\n');
+        }
+        out.write(String.format(Locale.US, "strokes,strokes,%d,,,,,\n", strokes));
+        out.write(String.format(Locale.US, "bitmap_bytes,bytes,%d,,,,,\n", bitmapBytes));
+    }
+
+    /**
+     * Writes the counters and histograms as one JSON object.
+     */
+    public void writeJson(Writer out) throws IOException
+    {
+        out.write(String.format(Locale.US, "{\"frames\":%d,\"strokes\":%d,\"bitmap_bytes\":%d,\"histograms\":{",
+                frames, strokes, bitmapBytes));
+        for(int i = 0; i < all.length; i++) {
+            Histogram h = all[i];
+            if(i > 0) out.write(',');
+            out.write(String.format(Locale.US,
+                    "\"%s\":{\"unit\":\"%s\",\"count\":%d,\"mean\":%.2f,\"p50\":%d,\"p95\":%d,\"p99\":%d,\"max\":%d,\"buckets\":[",
+                    h.name, h.unit, h.count, h.getMean(), h.getPercentile(0.5), h.getPercentile(0.95),
+                    h.getPercentile(0.99), h.max));
+            //trailing empty buckets are left out
+            int last = Histogram.BUCKETS - 1;
+            while(last > 0 && h.buckets[last] == 0) last--;
+            for(int b = 0; b <= last; b++) {
+                if(b > 0) out.write(',');
+                out.write(Long.toString(h.buckets[b]));
+            }
+            out.write("]}");
+        }
+        out.write("}}\n");
+    }
+}
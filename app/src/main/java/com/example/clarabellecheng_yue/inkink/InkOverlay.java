@@ -0,0 +1,325 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+/**
+ * Low latency ink: a transparent SurfaceView laid over DrawingView that
+ * draws the stroke in progress from its own render thread, plus a
+ * predicted piece past the last touch sample (see InkPredictor).
+ * A frame is posted as soon as new points arrive instead of waiting for
+ * the next View draw pass. Committed strokes stay in DrawingView; the
+ * overlay is cleared once DrawingView has drawn the finished stroke.
+ *
+ * The render thread measures, for every frame, the time from the newest
+ * touch sample in it to the frame being posted, and reports the average
+ * and worst of each stroke to a LatencyListener.
+ */
+public class InkOverlay extends SurfaceView implements SurfaceHolder.Callback
+{
+    /**
+     * Input to frame post latency of one stroke, called on the UI thread.
+     */
+    public interface LatencyListener {
+        void onStrokeLatency(int frames, float averageMillis, float maxMillis);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private LatencyListener latencyListener;
+
+    //shared with the render thread, guarded by lock
+    private final Object lock = new Object();
+    private float[] points = new float[512]; //accepted x,y of the live stroke
+    private int pointCount;
+    private boolean predicted;
+    private float predictedX, predictedY;
+    private long sampleTime; //uptime of the newest sample
+    private int color;
+    private float width;
+    private float offsetX, offsetY, scale = 1; //drawing to overlay coordinates
+    private boolean ended; //no more points for this stroke
+    private int generation; //counts strokes, so the render thread notices a new one
+    private boolean changed; //something to draw
+    private Thread renderThread;
+    private boolean running;
+
+    //render thread only
+    private float[] renderPoints = new float[512];
+    private int renderCount;
+    private int renderGeneration;
+    private long measuredTime; //sample time of the last frame measured
+    private final Path renderPath = new Path();
+    private final Paint renderPaint = new Paint();
+    private int frames;
+    private long latencySum, latencyMax;
+
+    public InkOverlay(Context context, AttributeSet attrs)
+    {
+        super(context, attrs);
+        getHolder().addCallback(this);
+        getHolder().setFormat(PixelFormat.TRANSPARENT);
+        setZOrderOnTop(true);
+        renderPaint.setAntiAlias(true);
+        renderPaint.setStyle(Paint.Style.STROKE);
+        renderPaint.setStrokeJoin(Paint.Join.ROUND);
+        renderPaint.setStrokeCap(Paint.Cap.ROUND);
+    }
+
+    /**
+     * @param listener receives the latency of each stroke, or null
+     */
+    public void setLatencyListener(LatencyListener listener) {
+        latencyListener = listener;
+    }
+
+    /**
+     * Starts showing a new stroke.
+     * @param time uptime of the first sample, MotionEvent.getEventTime()
+     * @param viewX View x of the drawing origin (DrawingView's pan)
+     * @param viewY View y of the drawing origin
+     * @param viewScale DrawingView's zoom
+     */
+    public void beginStroke(float x, float y, int color, float width, long time,
+                            float viewX, float viewY, float viewScale)
+    {
+        synchronized(lock) {
+            points[0] = x;
+            points[1] = y;
+            pointCount = 1;
+            generation++;
+            predicted = false;
+            sampleTime = time;
+            this.color = color;
+            this.width = width;
+            offsetX = viewX;
+            offsetY = viewY;
+            scale = viewScale;
+            ended = false;
+            changed = true;
+            lock.notify();
+        }
+    }
+
+    /**
+     * Adds the points accepted since the last call and the new prediction.
+     * @param xy accepted x,y pairs of the whole stroke (StrokeBuilder.getPoints())
+     * @param count accepted points so far; those past the ones already sent are copied
+     * @param hasPrediction false to show no predicted piece
+     * @param time uptime of the newest sample
+     */
+    public void update(float[] xy, int count, boolean hasPrediction, float px, float py, long time)
+    {
+        synchronized(lock) {
+            if(ended) return;
+            if(2 * count > points.length) {
+                float[] bigger = new float[Math.max(2 * count, 2 * points.length)];
+                System.arraycopy(points, 0, bigger, 0, 2 * pointCount);
+                points = bigger;
+            }
+            if(count > pointCount) {
+                System.arraycopy(xy, 2 * pointCount, points, 2 * pointCount, 2 * (count - pointCount));
+                pointCount = count;
+            }
+            predicted = hasPrediction;
+            predictedX = px;
+            predictedY = py;
+            sampleTime = time;
+            changed = true;
+            lock.notify();
+        }
+    }
+
+    /**
+     * Finishes the stroke: the prediction goes, the points stay until clear().
+     */
+    public void endStroke()
+    {
+        synchronized(lock) {
+            if(ended) return;
+            ended = true;
+            predicted = false;
+            changed = true;
+            lock.notify();
+        }
+    }
+
+    /**
+     * Clears the overlay, once DrawingView shows the finished stroke.
+     */
+    public void clear()
+    {
+        synchronized(lock) {
+            ended = true;
+            predicted = false;
+            pointCount = 0;
+            changed = true;
+            lock.notify();
+        }
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder)
+    {
+        synchronized(lock) {
+            running = true;
+            changed = true;
+        }
+        renderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                renderLoop();
+            }
+        }, "InkOverlay");
+        renderThread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height)
+    {
+        synchronized(lock) {
+            changed = true;
+            lock.notify();
+        }
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder)
+    {
+        //the surface must not be used once this returns
+        synchronized(lock) {
+            running = false;
+            lock.notify();
+        }
+        try {
+            renderThread.join();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        renderThread = null;
+    }
+
+    /**
+     * render thread: draws whenever the stroke changes, one frame for
+     * any number of updates that came in while the last one was drawn
+     */
+    private void renderLoop()
+    {
+        while(true) {
+            boolean strokeEnded, hasPrediction;
+            float px, py, x, y, s;
+            long time;
+            synchronized(lock) {
+                while(running && !changed) {
+                    try {
+                        lock.wait();
+                    }
+                    catch(InterruptedException e) {
+                        return;
+                    }
+                }
+                if(!running) return;
+                changed = false;
+                if(generation != renderGeneration || pointCount < renderCount) {
+                    //a new stroke, or cleared
+                    renderGeneration = generation;
+                    renderCount = 0;
+                }
+                if(2 * pointCount > renderPoints.length) {
+                    float[] bigger = new float[points.length];
+                    System.arraycopy(renderPoints, 0, bigger, 0, 2 * renderCount);
+                    renderPoints = bigger;
+                }
+                //only the points added since the last frame are copied
+                System.arraycopy(points, 2 * renderCount, renderPoints, 2 * renderCount,
+                        2 * (pointCount - renderCount));
+                renderCount = pointCount;
+                renderPaint.setColor(color);
+                renderPaint.setStrokeWidth(width);
+                strokeEnded = ended;
+                hasPrediction = predicted;
+                px = predictedX;
+                py = predictedY;
+                time = sampleTime;
+                x = offsetX;
+                y = offsetY;
+                s = scale;
+            }
+
+            Canvas canvas = getHolder().lockCanvas();
+            if(canvas == null) continue; //surface going away
+            try {
+                canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                if(renderCount > 0) {
+                    buildPath(hasPrediction, px, py);
+                    canvas.translate(x, y);
+                    canvas.scale(s, s);
+                    canvas.drawPath(renderPath, renderPaint);
+                }
+            }
+            finally {
+                getHolder().unlockCanvasAndPost(canvas);
+            }
+            measure(renderCount > 0 ? time : 0, strokeEnded);
+        }
+    }
+
+    /**
+     * the same curves StrokeBuilder makes, then a line to the prediction
+     */
+    private void buildPath(boolean hasPrediction, float px, float py)
+    {
+        renderPath.rewind();
+        float mX = renderPoints[0], mY = renderPoints[1];
+        renderPath.moveTo(mX, mY);
+        for(int i = 1; i < renderCount; i++) {
+            float x = renderPoints[2 * i], y = renderPoints[2 * i + 1];
+            renderPath.quadTo(mX, mY, (x + mX) / 2, (y + mY) / 2);
+            mX = x;
+            mY = y;
+        }
+        renderPath.lineTo(mX, mY);
+        if(hasPrediction) renderPath.lineTo(px, py);
+    }
+
+    /**
+     * render thread: adds a frame's latency, reports the stroke after its last frame
+     * @param sampleTime newest sample in the frame, 0 if it showed no ink
+     */
+    private void measure(long sampleTime, boolean strokeEnded)
+    {
+        if(sampleTime != 0 && sampleTime != measuredTime) {
+            //frames without new samples (the end, a clear) are not input latency
+            long latency = SystemClock.uptimeMillis() - sampleTime;
+            measuredTime = sampleTime;
+            frames++;
+            latencySum += latency;
+            latencyMax = Math.max(latencyMax, latency);
+        }
+        if(!strokeEnded || frames == 0) return;
+
+        final int count = frames;
+        final float average = latencySum / (float)frames;
+        final float max = latencyMax;
+        frames = 0;
+        latencySum = 0;
+        latencyMax = 0;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if(latencyListener != null) latencyListener.onStrokeLatency(count, average, max);
+            }
+        });
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.clarabellecheng_yue.inkink;
+
+/**
+ * Guesses where the finger will be a few milliseconds after the last
+ * touch sample, so the low latency overlay can draw ink ahead of the
+ * samples it has. The last few samples are kept in a small ring; the
+ * velocity over them (and half the change in velocity) is extrapolated,
+ * and the guess is capped in distance so a jerk does not throw ink far
+ * off. No guess is made once the finger stops or slows to a crawl.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class InkPredictor
+{
+    private static final int HISTORY = 4;
+    private static final long STALE_MILLIS = 50; //older samples say nothing about the motion
+
+    private final float[] xs = new float[HISTORY];
+    private final float[] ys = new float[HISTORY];
+    private final long[] times = new long[HISTORY];
+    private int count; //samples held, at most HISTORY
+    private int next; //ring slot of the next sample
+
+    private float maxDistance;
+
+    /**
+     * @param maxDistance farthest a prediction may be from the last sample, in pixels
+     */
+    public InkPredictor(float maxDistance)
+    {
+        this.maxDistance = maxDistance;
+    }
+
+    public void setMaxDistance(float maxDistance) {
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * forgets the samples, called when a stroke starts
+     */
+    public void reset()
+    {
+        count = 0;
+        next = 0;
+    }
+
+    /**
+     * @param timeMillis sample time, e.g. MotionEvent.getEventTime()
+     */
+    public void add(float x, float y, long timeMillis)
+    {
+        if(count > 0 && timeMillis <= times[slot(0)]) {
+            //same timestamp, keep the newer position only
+            xs[slot(0)] = x;
+            ys[slot(0)] = y;
+            return;
+        }
+        xs[next] = x;
+        ys[next] = y;
+        times[next] = timeMillis;
+        next = (next + 1) % HISTORY;
+        if(count < HISTORY) count++;
+    }
+
+    /**
+     * @param ahead milliseconds past the last sample to predict
+     * @param out receives the predicted x, y
+     * @return false if there is no useful prediction
+     */
+    public boolean predict(long ahead, float[] out)
+    {
+        if(count < 2 || ahead <= 0) return false;
+        int last = slot(0), prev = slot(1);
+        long dt = times[last] - times[prev];
+        if(dt <= 0 || dt > STALE_MILLIS) return false;
+        float vx = (xs[last] - xs[prev]) / dt;
+        float vy = (ys[last] - ys[prev]) / dt;
+
+        if(count >= 3) {
+            //average with the velocity before, and add half the change
+            int first = slot(2);
+            long dt0 = times[prev] - times[first];
+            if(dt0 > 0 && dt0 <= STALE_MILLIS) {
+                float vx0 = (xs[prev] - xs[first]) / dt0;
+                float vy0 = (ys[prev] - ys[first]) / dt0;
+                float ax = (vx - vx0) / ((dt + dt0) / 2f);
+                float ay = (vy - vy0) / ((dt + dt0) / 2f);
+                vx += ax * ahead / 2;
+                vy += ay * ahead / 2;
+            }
+        }
+
+        float dx = vx * ahead, dy = vy * ahead;
+        float distance = (float)Math.sqrt(dx * dx + dy * dy);
+        if(distance < 0.5f) return false; //resting finger
+        if(distance > maxDistance) {
+            dx *= maxDistance / distance;
+            dy *= maxDistance / distance;
+        }
+        out[0] = xs[last] + dx;
+        out[1] = ys[last] + dy;
+        return true;
+    }
+
+    /**
+     * @param back 0 for the newest sample, 1 for the one before...
+     */
+    private int slot(int back)
+    {
+        return (next - 1 - back + 2 * HISTORY) % HISTORY;
+    }
+}
@@ -0,0 +1,469 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+
+import java.util.ArrayList;
+
+/**
+ * The layers of a drawing, bottom to top: the template, ink layers and
+ * scratch layers on top. Strokes name their layer by id (StrokeStore.getLayer).
+ *
+ * Every layer keeps its strokes rasterized in a bitmap of its own, with
+ * undo snapshots of its own, so a change to one layer (a stroke, an undo,
+ * the pixel eraser) never redraws another. Layers are shown with their
+ * visibility, opacity and blend mode, flattened into the composite only
+ * where something changed (invalidate, then compose), so a frame still
+ * costs one blit of the composite however many layers there are.
+ *
+ * Scratch layers are for notes and guides: they are left out of
+ * snapshots and exports (drawVisible).
+ */
+public class LayerStack
+{
+    public static final int KIND_TEMPLATE = 0;
+    public static final int KIND_INK = 1;
+    public static final int KIND_SCRATCH = 2;
+
+    public static final int TEMPLATE_LAYER = -1; //id of the template layer
+    public static final int BASE_LAYER = 0; //id of the first ink layer, strokes from before layers are on it
+
+    /**
+     * One layer: its pixels, its undo snapshots and how it is shown.
+     */
+    public static class Layer
+    {
+        private final int id;
+        private final int kind;
+        private final BackingSurface surface; //always ARGB_8888, shares the composite's spare
+        private final CheckpointCache<Bitmap> checkpoints;
+        private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG); //alpha and blend mode
+        private boolean visible = true;
+        private PorterDuff.Mode blendMode; //null for normal
+
+        Layer(int id, int kind, int checkpointInterval, BackingSurface composite)
+        {
+            this.id = id;
+            this.kind = kind;
+            surface = new BackingSurface(composite);
+            checkpoints = new CheckpointCache<>(checkpointInterval, 0);
+            checkpoints.setListener(new CheckpointCache.Listener<Bitmap>() {
+                @Override
+                public void onRemoved(Bitmap snapshot) {
+                    snapshot.recycle();
+                }
+            });
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getKind() {
+            return kind;
+        }
+
+        public boolean isVisible() {
+            return visible;
+        }
+
+        public int getAlpha() {
+            return paint.getAlpha();
+        }
+
+        /**
+         * @return the blend mode, null for normal (source over)
+         */
+        public PorterDuff.Mode getBlendMode() {
+            return blendMode;
+        }
+
+        /**
+         * @return the layer's pixels, null while the stack has no size
+         */
+        public Bitmap getBitmap() {
+            return surface.getBitmap();
+        }
+
+        public Canvas getCanvas() {
+            return surface.getCanvas();
+        }
+
+        public CheckpointCache<Bitmap> getCheckpoints() {
+            return checkpoints;
+        }
+
+        /**
+         * empties the layer's pixels
+         */
+        public void clear()
+        {
+            if(surface.getBitmap() != null) surface.clear();
+        }
+    }
+
+    private final ArrayList<Layer> layers = new ArrayList<>(); //bottom to top
+    private final BackingSurface composite;
+    private final Rect dirty = new Rect(); //area of the composite out of date
+    private final Rect full = new Rect();
+    private int width, height;
+    private int paperColor;
+    private int nextId = BASE_LAYER + 1;
+    private int checkpointInterval;
+    private long checkpointBudget; //shared by the ink and scratch layers
+    private Bitmap template; //decoded template, stretched over the template layer
+
+    /**
+     * @param composite receives the flattened layers; its opaque setting
+     * and paper color are the caller's
+     * @param checkpointInterval strokes between undo snapshots
+     * @param checkpointBudget memory all undo snapshots may hold together
+     */
+    public LayerStack(BackingSurface composite, int checkpointInterval, long checkpointBudget)
+    {
+        this.composite = composite;
+        this.checkpointInterval = checkpointInterval;
+        this.checkpointBudget = checkpointBudget;
+        layers.add(new Layer(TEMPLATE_LAYER, KIND_TEMPLATE, checkpointInterval, composite));
+        layers.add(new Layer(BASE_LAYER, KIND_INK, checkpointInterval, composite));
+        shareBudget();
+    }
+
+    public int size() {
+        return layers.size();
+    }
+
+    /**
+     * @param index 0 for the bottom layer
+     */
+    public Layer getAt(int index) {
+        return layers.get(index);
+    }
+
+    /**
+     * @return the layer with this id, or null
+     */
+    public Layer get(int id)
+    {
+        for(int i = 0; i < layers.size(); i++) {
+            if(layers.get(i).id == id) return layers.get(i);
+        }
+        return null;
+    }
+
+    /**
+     * Adds a layer: ink layers go under the scratch layers, scratch layers on top.
+     * @param kind KIND_INK or KIND_SCRATCH
+     * @return id of the new layer
+     */
+    public int add(int kind)
+    {
+        return add(nextId, kind);
+    }
+
+    /**
+     * Makes sure strokes naming this layer have one to go on,
+     * e.g. after loading a drawing with more layers.
+     * @return the layer, added as an ink layer if it did not exist
+     */
+    public Layer ensure(int id)
+    {
+        Layer layer = get(id);
+        if(layer == null) layer = get(add(id, KIND_INK));
+        return layer;
+    }
+
+    private int add(int id, int kind)
+    {
+        if(kind == KIND_TEMPLATE) throw new IllegalArgumentException("there is one template layer");
+        Layer layer = new Layer(id, kind, checkpointInterval, composite);
+        int at = layers.size();
+        if(kind == KIND_INK) {
+            while(at > 1 && layers.get(at - 1).kind == KIND_SCRATCH) at--;
+        }
+        layers.add(at, layer);
+        nextId = Math.max(nextId, id + 1);
+        shareBudget();
+        if(width > 0) layer.surface.resize(width, height, false);
+        return id;
+    }
+
+    /**
+     * Moves a layer within its own kind's range, the template stays at the bottom.
+     * @param index wanted position, 0 for the bottom
+     */
+    public void move(int id, int index)
+    {
+        Layer layer = get(id);
+        if(layer == null || layer.kind == KIND_TEMPLATE) return;
+        layers.remove(layer);
+        int firstScratch = 1;
+        while(firstScratch < layers.size() && layers.get(firstScratch).kind != KIND_SCRATCH) firstScratch++;
+        if(layer.kind == KIND_INK) index = Math.max(1, Math.min(firstScratch, index));
+        else index = Math.max(firstScratch, Math.min(layers.size(), index));
+        layers.add(index, layer);
+        invalidateAll();
+    }
+
+    public void setVisible(int id, boolean visible)
+    {
+        Layer layer = get(id);
+        if(layer == null || layer.visible == visible) return;
+        layer.visible = visible;
+        invalidateAll();
+    }
+
+    /**
+     * @param alpha opacity of the whole layer, 0 to 255
+     */
+    public void setAlpha(int id, int alpha)
+    {
+        Layer layer = get(id);
+        if(layer == null) return;
+        layer.paint.setAlpha(alpha);
+        invalidateAll();
+    }
+
+    /**
+     * @param mode how the layer mixes with the ones under it, null for normal
+     */
+    public void setBlendMode(int id, PorterDuff.Mode mode)
+    {
+        Layer layer = get(id);
+        if(layer == null) return;
+        layer.blendMode = mode;
+        layer.paint.setXfermode(mode == null ? null : new PorterDuffXfermode(mode));
+        invalidateAll();
+    }
+
+    /**
+     * Shows a template on the template layer, stretched to the drawing.
+     * The template layer only holds pixels while there is one.
+     * @param bitmap decoded template, kept to redraw it on a size change; null for none
+     */
+    public void setTemplate(Bitmap bitmap)
+    {
+        template = bitmap;
+        Layer layer = layers.get(0);
+        if(bitmap == null) layer.surface.release();
+        else drawTemplate();
+        invalidateAll();
+    }
+
+    /**
+     * @return the template shown, or null
+     */
+    public Bitmap getTemplate() {
+        return template;
+    }
+
+    private void drawTemplate()
+    {
+        Layer layer = layers.get(0);
+        if(template == null || template.isRecycled() || width == 0) return;
+        layer.surface.resize(width, height, false);
+        layer.surface.clear();
+        full.set(0, 0, width, height);
+        layer.surface.getCanvas().drawBitmap(template, null, full, null);
+    }
+
+    /**
+     * @param color drawn under the layers when the composite is opaque
+     */
+    public void setPaperColor(int color)
+    {
+        paperColor = color;
+        invalidateAll();
+    }
+
+    /**
+     * Sizes every layer, keeping the pixels that still fit (top left
+     * anchored, see BackingSurface), and the composite along with them.
+     * @param opaque true for an RGB_565 composite filled with the paper color
+     * @return true if old pixels were kept, false if every layer starts empty
+     */
+    public boolean resize(int width, int height, boolean opaque)
+    {
+        this.width = width;
+        this.height = height;
+        boolean copied = composite.resize(width, height, opaque);
+        for(int i = 1; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            //old snapshots have the old size
+            if(layer.surface.getWidth() != width || layer.surface.getHeight() != height) {
+                layer.checkpoints.clear();
+            }
+            copied &= layer.surface.resize(width, height, false);
+        }
+        drawTemplate();
+        invalidateAll();
+        return copied;
+    }
+
+    /**
+     * switches the composite between RGB_565 and ARGB_8888, the layers keep theirs
+     */
+    public void setOpaque(boolean opaque)
+    {
+        composite.setOpaque(opaque);
+        invalidateAll();
+    }
+
+    /**
+     * frees every layer's pixels and snapshots, e.g. for tiled mode
+     */
+    public void release()
+    {
+        for(int i = 0; i < layers.size(); i++) {
+            layers.get(i).surface.release();
+            layers.get(i).checkpoints.clear();
+        }
+        composite.release();
+        width = height = 0;
+        dirty.setEmpty();
+    }
+
+    /**
+     * empties every layer but the template, e.g. for a new drawing
+     */
+    public void clearStrokes()
+    {
+        for(int i = 1; i < layers.size(); i++) {
+            layers.get(i).clear();
+        }
+        invalidateAll();
+    }
+
+    /**
+     * Marks an area of the composite as out of date, e.g. where a layer changed.
+     * Nothing is redrawn before compose().
+     */
+    public void invalidate(float left, float top, float right, float bottom)
+    {
+        dirty.union((int)Math.floor(left) - 1, (int)Math.floor(top) - 1,
+                (int)Math.ceil(right) + 1, (int)Math.ceil(bottom) + 1);
+    }
+
+    public void invalidateAll() {
+        dirty.set(0, 0, width, height);
+    }
+
+    /**
+     * Brings the composite up to date: the out of date area is cleared
+     * and every visible layer is drawn over it, bottom to top.
+     * Costs nothing when nothing changed.
+     */
+    public void compose()
+    {
+        Canvas canvas = composite.getCanvas();
+        if(canvas == null || !dirty.intersect(0, 0, width, height)) {
+            dirty.setEmpty();
+            return;
+        }
+        canvas.save();
+        canvas.clipRect(dirty);
+        canvas.drawColor(composite.isOpaque() ? paperColor : Color.TRANSPARENT, PorterDuff.Mode.SRC);
+        for(int i = 0; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            if(layer.visible && layer.surface.getBitmap() != null) {
+                canvas.drawBitmap(layer.surface.getBitmap(), 0, 0, layer.paint);
+            }
+        }
+        canvas.restore();
+        dirty.setEmpty();
+    }
+
+    /**
+     * @return true if some layer that is shown must not be exported
+     */
+    public boolean hasVisibleScratch()
+    {
+        for(int i = 0; i < layers.size(); i++) {
+            if(layers.get(i).visible && layers.get(i).kind == KIND_SCRATCH) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Draws the visible layers, without the scratch ones, into another
+     * canvas, for a snapshot that must leave them out.
+     */
+    public void drawVisible(Canvas canvas)
+    {
+        for(int i = 0; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            if(layer.visible && layer.kind != KIND_SCRATCH && layer.surface.getBitmap() != null) {
+                canvas.drawBitmap(layer.surface.getBitmap(), 0, 0, layer.paint);
+            }
+        }
+    }
+
+    public void setCheckpointInterval(int interval)
+    {
+        checkpointInterval = interval;
+        for(int i = 0; i < layers.size(); i++) {
+            layers.get(i).checkpoints.setInterval(interval);
+        }
+    }
+
+    /**
+     * @param bytes memory all undo snapshots may hold, split between the layers
+     */
+    public void setCheckpointBudget(long bytes)
+    {
+        checkpointBudget = bytes;
+        shareBudget();
+    }
+
+    /**
+     * drops every layer's undo snapshots
+     */
+    public void clearCheckpoints()
+    {
+        for(int i = 0; i < layers.size(); i++) {
+            layers.get(i).checkpoints.clear();
+        }
+    }
+
+    /**
+     * drops the snapshots of every layer holding more than strokeCount strokes
+     */
+    public void invalidateCheckpointsAbove(int strokeCount)
+    {
+        for(int i = 0; i < layers.size(); i++) {
+            layers.get(i).checkpoints.invalidateAbove(strokeCount);
+        }
+    }
+
+    /**
+     * @return bytes held by the layers, their snapshots and the composite
+     */
+    public long getBitmapBytes()
+    {
+        long bytes = bytes(composite.getBitmap());
+        for(int i = 0; i < layers.size(); i++) {
+            bytes += bytes(layers.get(i).surface.getBitmap()) + layers.get(i).checkpoints.getUsedBytes();
+        }
+        return bytes;
+    }
+
+    private static long bytes(Bitmap bitmap) {
+        return bitmap == null ? 0 : bitmap.getRowBytes() * (long)bitmap.getHeight();
+    }
+
+    /**
+     * gives every layer that takes strokes the same part of the snapshot budget
+     */
+    private void shareBudget()
+    {
+        int inked = layers.size() - 1; //all but the template
+        for(int i = 1; i < layers.size(); i++) {
+            layers.get(i).checkpoints.setBudgetBytes(checkpointBudget / inked);
+        }
+    }
+}
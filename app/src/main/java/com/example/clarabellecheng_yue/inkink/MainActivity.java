@@ -5,6 +5,7 @@ import android.view.View;
 import android.app.Activity;
 
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.LinearLayout;
 import java.util.UUID;
@@ -14,11 +15,21 @@ import android.app.Dialog;
 import android.content.DialogInterface;
 import android.view.View.OnClickListener;
 import android.widget.Toast;
+import android.content.ContentValues;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.net.Uri;
+import android.util.Log;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
 
 public class MainActivity extends Activity implements OnClickListener
 {
+    private static final String TAG = "InkInk";
 
-    int picNumber = 0; // 0 mean transparent
+    int picNumber = 0; // next template in the pic_btn cycle, starts transparent
 
     /**
      * DrawingView drawView - the instance of DrawingView class
@@ -32,6 +43,96 @@ public class MainActivity extends Activity implements OnClickListener
     //need to make this ImageButton
     private Button UndoButton, RedoButton;
 
+    private final ExportService exportService = new ExportService();
+    private final TimeLapse timeLapse = new TimeLapse();
+    private SessionJournal journal; //autosave, kept when the activity is recreated
+    private TemplateBackgrounds templates; //decoded pic_btn backgrounds
+    private SyncRelay relay; //shared canvas hosted on this device, or null
+    private String syncAddress = "192.168.0.2:" + SyncRelay.DEFAULT_PORT; //last one joined
+
+    /**
+     * Puts a decoded template behind the drawing.
+     */
+    private final TemplateBackgrounds.Callback templateCallback = new TemplateBackgrounds.Callback() {
+        @Override
+        public void onTemplateReady(int index, int resId, Bitmap bitmap) {
+            drawView.setTemplate(resId, bitmap);
+        }
+    };
+
+    /**
+     * Creates one Gallery entry per exported image, on the export thread.
+     */
+    private final ExportService.Destination galleryDestination = new ExportService.Destination() {
+        private Uri opened; //entry of the tile being written
+
+        @Override
+        public OutputStream openTile(int tile, int tileCount, String mimeType) throws IOException {
+            String name = UUID.randomUUID().toString();
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.Images.Media.TITLE, name);
+            values.put(MediaStore.Images.Media.DISPLAY_NAME, name);
+            values.put(MediaStore.Images.Media.DESCRIPTION, "drawing");
+            values.put(MediaStore.Images.Media.MIME_TYPE, mimeType);
+            Uri uri = getContentResolver().insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+            if(uri == null) throw new IOException("could not create Gallery entry");
+            opened = uri;
+            OutputStream out = null;
+            try {
+                out = getContentResolver().openOutputStream(uri);
+            }
+            finally {
+                if(out == null) discardTile(tile);
+            }
+            if(out == null) throw new IOException("could not open " + uri);
+            return out;
+        }
+
+        @Override
+        public void discardTile(int tile) {
+            if(opened == null) return;
+            try {
+                getContentResolver().delete(opened, null, null);
+            }
+            catch(RuntimeException e) {
+                //the export's own error is the one to report
+                Log.e(TAG, "could not remove " + opened, e);
+            }
+            opened = null;
+        }
+    };
+
+    /**
+     * Reports the export result, called on the UI thread.
+     */
+    private final ExportService.Listener exportListener = new ExportService.Listener() {
+        @Override
+        public void onExportProgress(int tilesDone, int tileCount) {
+            //single image exports finish right after their only tile
+        }
+
+        @Override
+        public void onExportFinished(ExportService.Result result) {
+            if(getResources().getBoolean(R.bool.frame_stats)) {
+                Log.d(TAG, "export " + result.width + "x" + result.height
+                        + " tiles=" + result.tileCount
+                        + " snapshot=" + result.snapshotMillis + "ms"
+                        + " encode=" + result.encodeMillis + "ms");
+            }
+            if(result.error != null) Log.e(TAG, "export failed", result.error);
+            if(result.success){
+                Toast savedToast = Toast.makeText(getApplicationContext(),
+                        "Drawing saved to Gallery!", Toast.LENGTH_SHORT);
+                savedToast.show();
+            }
+            else{
+                Toast unsavedToast = Toast.makeText(getApplicationContext(),
+                        "Oops! Image could not be saved.", Toast.LENGTH_SHORT);
+                unsavedToast.show();
+            }
+        }
+    };
+
     /**
      * Sets initial settings for the app when first start app
      * @param savedInstanceState state of View
@@ -44,6 +145,22 @@ public class MainActivity extends Activity implements OnClickListener
 
         //initialize DrawingView drawView
         drawView = (DrawingView)findViewById(R.id.drawing);
+        if(getResources().getBoolean(R.bool.low_latency_ink)) {
+            InkOverlay overlay = (InkOverlay)findViewById(R.id.ink_overlay);
+            overlay.setVisibility(View.VISIBLE);
+            overlay.setLatencyListener(new InkOverlay.LatencyListener() {
+                @Override
+                public void onStrokeLatency(int frames, float averageMillis, float maxMillis) {
+                    Log.d(TAG, "ink latency over " + frames + " frames: average " + averageMillis
+                            + " ms, max " + maxMillis + " ms");
+                }
+            });
+            drawView.setInkOverlay(overlay);
+        }
+        if(getResources().getBoolean(R.bool.frame_stats)) {
+            drawView.setFrameStats(new FrameStats());
+            drawView.setStatsOverlay(true);
+        }
         //gets the first paint button as starting color
         LinearLayout paintLayout = (LinearLayout)findViewById(R.id.paint_colors);
         //store initial button to the currPaint button
@@ -57,26 +174,335 @@ public class MainActivity extends Activity implements OnClickListener
         drawBtn = (ImageButton)findViewById(R.id.draw_btn);
         //sets up a click listener for this draw button
         drawBtn.setOnClickListener(this);
+        //long press: draw on a new layer above the others
+        drawBtn.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                drawView.addLayer(LayerStack.KIND_INK);
+                Toast.makeText(getApplicationContext(), "New layer", Toast.LENGTH_SHORT).show();
+                return true;
+            }
+        });
 
         eraseBtn = (ImageButton)findViewById(R.id.erase_btn);
         eraseBtn.setOnClickListener(this);
+        //long press: erase whole strokes instead of pixels
+        eraseBtn.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                drawView.setObjectErase(true);
+                Toast.makeText(getApplicationContext(), "Stroke eraser", Toast.LENGTH_SHORT).show();
+                return true;
+            }
+        });
 
         newBtn = (ImageButton)findViewById(R.id.new_btn);
         newBtn.setOnClickListener(this);
+        //long press: bucket fill with the current color, the draw button goes back to the brush
+        newBtn.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                drawView.setFillMode(true);
+                Toast.makeText(getApplicationContext(), "Fill", Toast.LENGTH_SHORT).show();
+                return true;
+            }
+        });
 
         saveBtn = (ImageButton)findViewById(R.id.save_btn);
         saveBtn.setOnClickListener(this);
+        //long press: render the drawing being drawn as a time-lapse image sequence
+        saveBtn.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                saveTimeLapse();
+                return true;
+            }
+        });
 
         UndoButton = (Button) findViewById(R.id.Undo_Button);
         UndoButton.setOnClickListener(this);
+        //long press: play the drawing back at 10x, a touch stops it
+        UndoButton.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                drawView.startReplay(10);
+                return true;
+            }
+        });
 
         RedoButton = (Button) findViewById(R.id.Redo_Button);
         RedoButton.setOnClickListener(this);
+        //long press: switch the pressure brush on or off
+        RedoButton.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                drawView.setPressureBrush(!drawView.isPressureBrush());
+                Toast.makeText(getApplicationContext(),
+                        drawView.isPressureBrush() ? "Pressure brush" : "Fixed brush", Toast.LENGTH_SHORT).show();
+                return true;
+            }
+        });
 
         picBtn = (ImageButton)findViewById(R.id.pic_btn);
         picBtn.setOnClickListener(this);
+        //long press: join, host or leave a shared canvas
+        picBtn.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                showSyncDialog();
+                return true;
+            }
+        });
 
+        //templates are decoded at the size of the drawing,
+        //up to an eighth of the heap is kept decoded
+        templates = new TemplateBackgrounds(getResources(),
+                (int)(Runtime.getRuntime().maxMemory() / 8));
+        drawView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+            @Override
+            public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                                       int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                templates.setTargetSize(right - left, bottom - top);
+                templates.prefetch(picNumber);
+            }
+        });
+
+        //continue the autosaved session, the same journal survives recreation
+        //(rotation does not recreate the activity, see configChanges)
+        journal = (SessionJournal)getLastNonConfigurationInstance();
+        if(journal == null) {
+            journal = new SessionJournal(new File(getFilesDir(), "session"));
+        }
+        drawView.attachJournal(journal);
+
+
+    }
 
+    @Override
+    public Object onRetainNonConfigurationInstance()
+    {
+        return journal;
+    }
+
+    @Override
+    protected void onPause()
+    {
+        super.onPause();
+        journal.flush();
+        if(drawView.getFrameStats() != null) dumpFrameStats(drawView.getFrameStats());
+        if(drawView.getSync() != null) dumpSyncStats(drawView.getSync().getStats());
+    }
+
+    /**
+     * Asks for the address of a shared canvas to join (host:port), or
+     * hosts one here: a SyncRelay in this process that the other devices
+     * join at this device's address.
+     */
+    private void showSyncDialog()
+    {
+        final EditText address = new EditText(this);
+        address.setSingleLine(true);
+        address.setText(syncAddress);
+        AlertDialog.Builder syncDialog = new AlertDialog.Builder(this);
+        syncDialog.setTitle("Shared canvas");
+        syncDialog.setMessage("Address of the device hosting it (host:port)");
+        syncDialog.setView(address);
+        syncDialog.setPositiveButton("Join", new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int which) {
+                String text = address.getText().toString().trim();
+                int colon = text.lastIndexOf(':');
+                try {
+                    int port = colon < 0 ? SyncRelay.DEFAULT_PORT : Integer.parseInt(text.substring(colon + 1));
+                    drawView.startSync(colon < 0 ? text : text.substring(0, colon), port);
+                    syncAddress = text;
+                }
+                catch(IllegalArgumentException e) {
+                    //not a port number, or not an address
+                    Toast.makeText(getApplicationContext(), "Oops! Not an address.", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+        syncDialog.setNeutralButton("Host", new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int which) {
+                try {
+                    if(relay == null) {
+                        relay = new SyncRelay(SyncRelay.DEFAULT_PORT);
+                        relay.start();
+                    }
+                    drawView.startSync("127.0.0.1", relay.getPort());
+                    Toast.makeText(getApplicationContext(), "Shared canvas on port " + relay.getPort(),
+                            Toast.LENGTH_SHORT).show();
+                }
+                catch(IOException e) {
+                    Log.e(TAG, "could not host a shared canvas", e);
+                    Toast.makeText(getApplicationContext(), "Oops! Could not host.", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+        syncDialog.setNegativeButton("Leave", new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int which) {
+                leaveSync();
+            }
+        });
+        syncDialog.show();
+    }
+
+    /**
+     * leaves the shared canvas, and stops hosting it
+     */
+    private void leaveSync()
+    {
+        SyncClient sync = drawView.getSync();
+        if(sync != null) {
+            dumpSyncStats(sync.getStats());
+            drawView.stopSync();
+        }
+        if(relay != null) {
+            relay.close();
+            relay = null;
+        }
+    }
+
+    /**
+     * Writes the shared canvas numbers (bytes per stroke, latency) to
+     * sync_stats.json in the app's external files directory.
+     */
+    private void dumpSyncStats(SyncStats stats)
+    {
+        File dir = getExternalFilesDir(null);
+        if(dir == null) dir = getFilesDir(); //no external storage
+        try {
+            FileWriter json = new FileWriter(new File(dir, "sync_stats.json"));
+            try {
+                stats.writeJson(json);
+            }
+            finally {
+                json.close();
+            }
+            Log.d(TAG, "sync stats written to " + dir);
+        }
+        catch(IOException e) {
+            Log.e(TAG, "could not write sync stats", e);
+        }
+    }
+
+    /**
+     * Renders a 30 fps time-lapse at 20x into the timelapse folder
+     * of the app's external files directory.
+     */
+    private void saveTimeLapse()
+    {
+        File dir = getExternalFilesDir(null);
+        if(dir == null) dir = getFilesDir(); //no external storage
+        StrokePlayer player = drawView.newPlayer();
+        player.setSpeed(20);
+        boolean started = timeLapse.render(player, drawView.getWidth(), drawView.getHeight(), Color.WHITE, 30,
+                new File(dir, "timelapse"), new TimeLapse.Listener() {
+                    @Override
+                    public void onTimeLapseProgress(int frame, int frameCount) {
+                        Log.d(TAG, "time-lapse frame " + frame + " of " + frameCount);
+                    }
+
+                    @Override
+                    public void onTimeLapseFinished(int frames, IOException error) {
+                        if(error != null) Log.e(TAG, "time-lapse failed", error);
+                        Toast.makeText(getApplicationContext(), error == null
+                                ? "Time-lapse saved, " + frames + " frames" : "Oops! Time-lapse could not be saved.",
+                                Toast.LENGTH_SHORT).show();
+                    }
+                });
+        if(!started) {
+            Toast.makeText(getApplicationContext(), "Still rendering the last time-lapse.", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Writes the drawing as SVG and PDF into the export folder of the
+     * app's external files directory, in the background.
+     */
+    private void saveVector()
+    {
+        File dir = getExternalFilesDir(null);
+        if(dir == null) dir = getFilesDir(); //no external storage
+        int status = exportService.exportVector(drawView, new File(dir, "export"),
+                "drawing-" + System.currentTimeMillis(), new ExportService.Listener() {
+                    @Override
+                    public void onExportProgress(int filesDone, int fileCount) {
+                    }
+
+                    @Override
+                    public void onExportFinished(ExportService.Result result) {
+                        if(getResources().getBoolean(R.bool.frame_stats)) {
+                            Log.d(TAG, "vector export " + result.width + "x" + result.height
+                                    + " bytes=" + result.bytes
+                                    + " snapshot=" + result.snapshotMillis + "ms"
+                                    + " write=" + result.encodeMillis + "ms");
+                        }
+                        if(result.error != null) Log.e(TAG, "vector export failed", result.error);
+                        Toast.makeText(getApplicationContext(), result.success
+                                ? "Drawing saved as SVG and PDF!" : "Oops! Drawing could not be saved.",
+                                Toast.LENGTH_SHORT).show();
+                    }
+                });
+        exportRefused(status);
+    }
+
+    /**
+     * Tells the user why an export did not start, if it did not.
+     * @param status what ExportService.export or exportVector returned
+     */
+    private void exportRefused(int status)
+    {
+        if(status == ExportService.BUSY) {
+            Toast.makeText(getApplicationContext(), "Still saving the last drawing.", Toast.LENGTH_SHORT).show();
+        }
+        else if(status == ExportService.NO_SIZE) {
+            Toast.makeText(getApplicationContext(), "Nothing to save yet.", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Writes the instrumentation numbers to frame_stats.json and
+     * frame_stats.csv in the app's external files directory.
+     */
+    private void dumpFrameStats(FrameStats stats)
+    {
+        File dir = getExternalFilesDir(null);
+        if(dir == null) dir = getFilesDir(); //no external storage
+        try {
+            FileWriter json = new FileWriter(new File(dir, "frame_stats.json"));
+            try {
+                stats.writeJson(json);
+            }
+            finally {
+                json.close();
+            }
+            FileWriter csv = new FileWriter(new File(dir, "frame_stats.csv"));
+            try {
+                stats.writeCsv(csv);
+            }
+            finally {
+                csv.close();
+            }
+            Log.d(TAG, "frame stats written to " + dir);
+        }
+        catch(IOException e) {
+            Log.e(TAG, "could not write frame stats", e);
+        }
+    }
+
+    @Override
+    protected void onDestroy()
+    {
+        exportService.shutdown();
+        timeLapse.shutdown();
+        templates.shutdown();
+        leaveSync();
+        if(!isChangingConfigurations()) {
+            drawView.attachJournal(null);
+            journal.close();
+        }
+        super.onDestroy();
     }
 
     /**
@@ -116,6 +542,8 @@ public class MainActivity extends Activity implements OnClickListener
         if(view.getId()==R.id.draw_btn)
         {
             //draw button clicked, so set up dialog of three button sizes
+            //(back to the brush from the bucket)
+            drawView.setFillMode(false);
             final Dialog brushDialog = new Dialog(this);
             brushDialog.setTitle("Brush size:");
 
@@ -199,6 +627,16 @@ public class MainActivity extends Activity implements OnClickListener
                     dialog.dismiss();
                 }
             });
+            //switching between the fixed page and pan/zoom keeps the drawing
+            newDialog.setNeutralButton(drawView.isTiledMode() ? "Fixed page" : "Pan & zoom",
+                    new DialogInterface.OnClickListener() {
+                public void onClick(DialogInterface dialog, int which) {
+                    boolean tiled = !drawView.isTiledMode();
+                    drawView.setTiledMode(tiled);
+                    Toast.makeText(getApplicationContext(), tiled ? "Pan & zoom, two fingers to move"
+                            : "Fixed page", Toast.LENGTH_SHORT).show();
+                }
+            });
             newDialog.setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
                 public void onClick(DialogInterface dialog, int which) {
                     dialog.cancel();
@@ -213,26 +651,19 @@ public class MainActivity extends Activity implements OnClickListener
             AlertDialog.Builder saveDialog = new AlertDialog.Builder(this);
             saveDialog.setTitle("Save drawing");
             saveDialog.setMessage("Save drawing to device Gallery?");
-            drawView.setDrawingCacheEnabled(true);
             saveDialog.setPositiveButton("Yes", new DialogInterface.OnClickListener() {
                 public void onClick(DialogInterface dialog, int which)
                 {
-                    //save drawing
-                    drawView.setDrawingCacheEnabled(true);
-                    String imgSaved = MediaStore.Images.Media.insertImage(
-                            getContentResolver(), drawView.getDrawingCache(),
-                            UUID.randomUUID().toString()+".png", "drawing");
-                    if(imgSaved!=null){
-                        Toast savedToast = Toast.makeText(getApplicationContext(),
-                                "Drawing saved to Gallery!", Toast.LENGTH_SHORT);
-                        savedToast.show();
-                    }
-                    else{
-                        Toast unsavedToast = Toast.makeText(getApplicationContext(),
-                                "Oops! Image could not be saved.", Toast.LENGTH_SHORT);
-                        unsavedToast.show();
-                    }
-                    drawView.destroyDrawingCache();
+                    //save drawing: only the snapshot is taken here,
+                    //encoding and writing happen in the background
+                    exportRefused(exportService.export(drawView, new ExportService.Options(),
+                            galleryDestination, exportListener));
+                }
+            });
+            saveDialog.setNeutralButton("SVG + PDF", new DialogInterface.OnClickListener() {
+                public void onClick(DialogInterface dialog, int which)
+                {
+                    saveVector();
                 }
             });
             saveDialog.setNegativeButton("Cancel", new DialogInterface.OnClickListener()
@@ -271,37 +702,9 @@ public class MainActivity extends Activity implements OnClickListener
             drawView.onClickRedo();
         }
         else if(view.getId() == R.id.pic_btn){
-
-            if(picNumber == 0)
-            {
-                drawView.setBackgroundResource(R.drawable.aa);
-                picNumber++;
-            }
-            else if(picNumber == 1)
-            {
-                drawView.setBackgroundResource(R.drawable.bb);
-                picNumber++;
-            }
-            else if(picNumber == 2)
-            {
-                drawView.setBackgroundResource(R.drawable.c);
-                picNumber++;
-            }
-            else if(picNumber == 3)
-            {
-                drawView.setBackgroundResource(R.drawable.cc);
-                picNumber++;
-            }
-            else if(picNumber == 4)
-            {
-                drawView.setBackgroundResource(R.drawable.d);
-                picNumber++;
-            }
-            else if(picNumber == 5)
-            {
-                drawView.setBackgroundResource(R.drawable.white);
-                picNumber = 0;
-            }
+            //instant when prefetched, otherwise shown once decoded
+            templates.show(picNumber, templateCallback);
+            picNumber = (picNumber + 1) % templates.count();
         }
     }
 }
@@ -0,0 +1,98 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Triangle strips of finished StrokeStore.FLAG_PRESSURE strokes, keyed by
+ * stroke index, so replaying a stroke (undo, resizes, tiles) draws its
+ * vertices without tessellating it again. The total size is capped by a
+ * byte budget, least recently drawn strips are dropped first and built
+ * again from the stroke when next needed.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class MeshCache
+{
+    private final LinkedHashMap<Integer, float[]> meshes =
+            new LinkedHashMap<>(64, 0.75f, true); //access order = LRU
+
+    private long budgetBytes;
+    private long usedBytes;
+
+    /**
+     * @param budgetBytes maximum bytes kept in strips
+     */
+    public MeshCache(long budgetBytes)
+    {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * @return the strip of a stroke, x,y pairs filling the array, or null if not cached
+     */
+    public float[] get(int stroke) {
+        return meshes.get(stroke);
+    }
+
+    /**
+     * Keeps a copy of a stroke's strip.
+     * @param vertices x,y pairs, see StrokeMesh.getVertices
+     * @param vertexCount vertices used
+     * @return the copy, exactly 2 * vertexCount long
+     */
+    public float[] put(int stroke, float[] vertices, int vertexCount)
+    {
+        float[] copy = new float[2 * vertexCount];
+        System.arraycopy(vertices, 0, copy, 0, copy.length);
+        float[] old = meshes.put(stroke, copy);
+        if(old != null) usedBytes -= 4L * old.length;
+        usedBytes += 4L * copy.length;
+        trim();
+        return copy;
+    }
+
+    /**
+     * forgets the strips of strokes from index strokes on, e.g. when redo strokes are thrown away
+     */
+    public void truncate(int strokes)
+    {
+        Iterator<Map.Entry<Integer, float[]>> it = meshes.entrySet().iterator();
+        while(it.hasNext()) {
+            Map.Entry<Integer, float[]> e = it.next();
+            if(e.getKey() >= strokes) {
+                usedBytes -= 4L * e.getValue().length;
+                it.remove();
+            }
+        }
+    }
+
+    public void clear()
+    {
+        meshes.clear();
+        usedBytes = 0;
+    }
+
+    public void setBudgetBytes(long budgetBytes)
+    {
+        this.budgetBytes = budgetBytes;
+        trim();
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public int size() {
+        return meshes.size();
+    }
+
+    private void trim()
+    {
+        Iterator<float[]> it = meshes.values().iterator();
+        while(usedBytes > budgetBytes && it.hasNext()) {
+            usedBytes -= 4L * it.next().length;
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+
+import java.util.HashMap;
+
+/**
+ * Hands out one shared stroke Paint per (color, width, eraser) combination,
+ * one fill Paint per color for bucket fills and one per color for the
+ * triangle strips of pressure strokes.
+ * Paints returned from here are shared by every stroke using them,
+ * so they must never be modified afterwards.
+ */
+public class PaintCache
+{
+    private final HashMap<Long, Paint> paints = new HashMap<>();
+    private final HashMap<Integer, Paint> erasers = new HashMap<>(); //color does not matter for CLEAR
+    private final HashMap<Integer, Paint> fills = new HashMap<>();
+    private final HashMap<Integer, Paint> meshes = new HashMap<>();
+
+    private final PorterDuffXfermode clear = new PorterDuffXfermode(PorterDuff.Mode.CLEAR);
+    private final PorterDuffXfermode src = new PorterDuffXfermode(PorterDuff.Mode.SRC);
+
+    /**
+     * @param color ARGB color
+     * @param width stroke width in pixels
+     * @param erase true for an eraser paint
+     * @return the shared Paint for these settings
+     */
+    public Paint get(int color, float width, boolean erase)
+    {
+        int widthBits = Float.floatToIntBits(width);
+        if(erase) {
+            Paint p = erasers.get(widthBits);
+            if(p == null) {
+                p = newStrokePaint(0, width);
+                p.setXfermode(clear);
+                erasers.put(widthBits, p);
+            }
+            return p;
+        }
+        long key = ((long)color << 32) | (widthBits & 0xFFFFFFFFL);
+        Paint p = paints.get(key);
+        if(p == null) {
+            p = newStrokePaint(color, width);
+            paints.put(key, p);
+        }
+        return p;
+    }
+
+    /**
+     * Paint of a FLAG_FILL stroke: no anti-aliasing and SRC, so its
+     * rectangles set exactly the pixels FloodFill.apply() wrote.
+     * @param color ARGB color
+     */
+    public Paint getFill(int color)
+    {
+        Paint p = fills.get(color);
+        if(p == null) {
+            p = new Paint();
+            p.setColor(color);
+            p.setStyle(Paint.Style.FILL);
+            p.setXfermode(src);
+            fills.put(color, p);
+        }
+        return p;
+    }
+
+    /**
+     * Paint of a FLAG_PRESSURE stroke's triangle strip (see StrokeMesh):
+     * the strip is the outline, so it is filled.
+     * @param color ARGB color
+     */
+    public Paint getMesh(int color)
+    {
+        Paint p = meshes.get(color);
+        if(p == null) {
+            p = new Paint();
+            p.setColor(color);
+            p.setAntiAlias(true);
+            p.setStyle(Paint.Style.FILL);
+            meshes.put(color, p);
+        }
+        return p;
+    }
+
+    /**
+     * @return number of distinct paints created so far
+     */
+    public int size()
+    {
+        return paints.size() + erasers.size() + fills.size() + meshes.size();
+    }
+
+    /**
+     * same properties DrawingView has always used for drawPaint
+     */
+    private static Paint newStrokePaint(int color, float width)
+    {
+        Paint p = new Paint();
+        p.setColor(color);
+        p.setAntiAlias(true);
+        p.setStrokeWidth(width);
+        p.setStyle(Paint.Style.STROKE);
+        p.setStrokeJoin(Paint.Join.ROUND);
+        p.setStrokeCap(Paint.Cap.ROUND);
+        return p;
+    }
+}
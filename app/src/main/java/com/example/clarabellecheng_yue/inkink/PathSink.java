@@ -0,0 +1,40 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import android.graphics.Path;
+
+/**
+ * Feeds the curves of a StrokeBuilder or StrokeStore into an android.graphics.Path.
+ */
+public class PathSink implements StrokeBuilder.Sink
+{
+    private final Path path;
+
+    public PathSink(Path path)
+    {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void moveTo(float x, float y) {
+        path.moveTo(x, y);
+    }
+
+    @Override
+    public void quadTo(float cx, float cy, float x, float y) {
+        path.quadTo(cx, cy, x, y);
+    }
+
+    @Override
+    public void cubicTo(float x1, float y1, float x2, float y2, float x, float y) {
+        path.cubicTo(x1, y1, x2, y2, x, y);
+    }
+
+    @Override
+    public void lineTo(float x, float y) {
+        path.lineTo(x, y);
+    }
+}
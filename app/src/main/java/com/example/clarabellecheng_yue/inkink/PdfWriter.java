@@ -0,0 +1,365 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Writes a VectorExport as a one page PDF 1.4 document, objects one
+ * after the other as the strokes are reached; only their offsets are
+ * kept, for the cross-reference table at the end.
+ *
+ * The page is flipped to y down once, so stroke points are written as
+ * they are stored; quadratic curves become cubic ones. Each layer is a
+ * transparency group Form XObject painted with its opacity and blend
+ * mode. An eraser ends the layer's current form and starts a new one
+ * that paints the old one through a luminosity soft mask, white with the
+ * eraser stroked in black, so it masks exactly the strokes before it.
+ * The template is one JPEG image XObject. Stream lengths are separate
+ * objects written after their stream, and all forms share one resource
+ * dictionary written at the end, so nothing is written twice.
+ */
+class PdfWriter implements VectorExport.Backend, StrokeBuilder.Sink
+{
+    private final VectorOutput out;
+    private final StrokeMesh mesh = new StrokeMesh();
+
+    private long[] offsets = new long[64]; //by object number
+    private int objects;
+    private int pages, page, resources; //object numbers
+    private int template;
+    private final int[] alphaStates = new int[255]; //ExtGState per stroke alpha, 0 until used
+    private final StrokeIndex.IntList forms = new StrokeIndex.IntList(); //every Form XObject
+    private final StrokeIndex.IntList maskStates = new StrokeIndex.IntList(); //ExtGState per eraser
+    private final StrokeIndex.IntList layerForms = new StrokeIndex.IntList(); //top form per layer
+    private final StrokeIndex.IntList layerStates = new StrokeIndex.IntList(); //ExtGState per layer, 0 for none
+    private final StrokeIndex.IntList layerStateAlphas = new StrokeIndex.IntList();
+    private final ArrayList<String> layerStateBlends = new ArrayList<>();
+
+    private int width, height, paperColor;
+    private VectorExport.Layer layer; //being written
+    private int form, formLength; //current form and its length object
+    private long streamStart;
+    private boolean closing; //close each subpath, for fills and outlines
+    private boolean open;
+    private float curX, curY;
+
+    PdfWriter(VectorOutput out) {
+        this.out = out;
+    }
+
+    @Override
+    public void begin(VectorExport export) throws IOException
+    {
+        width = export.getWidth();
+        height = export.getHeight();
+        paperColor = export.getPaperColor();
+        out.write("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n"); //binary comment: the file is not 7 bit text
+        int catalog = reserve();
+        pages = reserve();
+        page = reserve();
+        resources = reserve();
+        startObject(catalog);
+        out.write("<< /Type /Catalog /Pages ").write(pages).write(" 0 R >>\n");
+        endObject();
+        startObject(pages);
+        out.write("<< /Type /Pages /Kids [").write(page).write(" 0 R] /Count 1 >>\n");
+        endObject();
+
+        VectorExport.Template image = export.getTemplate();
+        if(image != null) {
+            template = reserve();
+            int length = reserve();
+            startObject(template);
+            out.write("<< /Type /XObject /Subtype /Image /Width ").write(image.getWidth())
+                    .write(" /Height ").write(image.getHeight())
+                    .write(" /ColorSpace /DeviceRGB /BitsPerComponent 8 /Filter /DCTDecode /Length ")
+                    .write(length).write(" 0 R >>\n");
+            startStream();
+            image.writeJpeg(out.asStream());
+            endStream(length);
+        }
+        out.check();
+    }
+
+    @Override
+    public void beginLayer(VectorExport.Layer layer, StrokeIndex.IntList erasers) throws IOException
+    {
+        this.layer = layer;
+        startForm(0, 0);
+        out.check();
+    }
+
+    @Override
+    public void stroke(StrokeStore strokes, int stroke) throws IOException
+    {
+        int color = strokes.getColor(stroke);
+        boolean filled = strokes.isFill(stroke) || strokes.isPressure(stroke);
+        boolean translucent = beginAlpha(color >>> 24);
+        rgb(color).write(filled ? " rg\n" : " RG\n");
+        closing = filled;
+        if(strokes.isPressure(stroke)) {
+            mesh.build(strokes, stroke, strokes.getPointCount(stroke));
+            mesh.outline(this);
+        }
+        else {
+            if(!filled) out.number(strokes.getWidth(stroke)).write(" w\n");
+            strokes.replay(stroke, this);
+        }
+        endPath(filled ? "f\n" : "S\n");
+        if(translucent) out.write("Q\n");
+        out.check();
+    }
+
+    @Override
+    public void erase(StrokeStore strokes, int stroke) throws IOException
+    {
+        int erased = form;
+        endStream(formLength);
+
+        int mask = reserve();
+        int length = reserve();
+        forms.add(mask);
+        startObject(mask);
+        formDictionary(length, "/Group << /S /Transparency /CS /DeviceGray >>");
+        startStream();
+        out.write("1 g 0 0 ").write(width).write(' ').write(height).write(" re f\n0 G 1 J 1 j ")
+                .number(strokes.getWidth(stroke)).write(" w\n");
+        closing = false;
+        strokes.replay(stroke, this);
+        endPath("S\n");
+        endStream(length);
+
+        int state = reserve();
+        maskStates.add(state);
+        startObject(state);
+        out.write("<< /Type /ExtGState /SMask << /Type /Mask /S /Luminosity /G ").write(mask).write(" 0 R >> >>\n");
+        endObject();
+
+        startForm(erased, state);
+        out.check();
+    }
+
+    @Override
+    public void endLayer() throws IOException
+    {
+        endStream(formLength);
+        layerForms.add(form);
+        //opacity and blend mode are applied where the page paints the form
+        boolean needed = layer.getAlpha() < 255 || layer.getBlendMode() != null;
+        layerStates.add(needed ? reserve() : 0);
+        layerStateAlphas.add(layer.getAlpha());
+        layerStateBlends.add(layer.getBlendMode());
+        out.check();
+    }
+
+    @Override
+    public void end() throws IOException
+    {
+        int layerCount = layerForms.size();
+        int content = reserve();
+        int length = reserve();
+        startObject(content);
+        out.write("<< /Length ").write(length).write(" 0 R >>\n");
+        startStream();
+        out.write("1 0 0 -1 0 ").write(height).write(" cm\n");
+        if(template != 0) {
+            out.write("q ").write(width).write(" 0 0 -").write(height).write(" 0 ").write(height)
+                    .write(" cm /X").write(template).write(" Do Q\n");
+        }
+        else if(paperColor != 0) {
+            boolean translucent = beginAlpha(paperColor >>> 24);
+            rgb(paperColor).write(" rg 0 0 ").write(width).write(' ').write(height).write(" re f\n");
+            if(translucent) out.write("Q\n");
+        }
+        for(int l = 0; l < layerCount; l++) {
+            int state = layerStates.get(l);
+            out.write("q ");
+            if(state != 0) out.write("/G").write(state).write(" gs ");
+            out.write("/X").write(layerForms.get(l)).write(" Do Q\n");
+        }
+        endStream(length);
+
+        for(int l = 0; l < layerCount; l++) {
+            int state = layerStates.get(l);
+            if(state == 0) continue;
+            startObject(state);
+            out.write("<< /Type /ExtGState");
+            int alpha = layerStateAlphas.get(l);
+            if(alpha < 255) {
+                out.write(" /CA ").number(alpha / 255f, 3).write(" /ca ").number(alpha / 255f, 3);
+            }
+            String blend = layerStateBlends.get(l);
+            if(blend != null) out.write(" /BM /").write(blend);
+            out.write(" >>\n");
+            endObject();
+        }
+        for(int alpha = 0; alpha < alphaStates.length; alpha++) {
+            if(alphaStates[alpha] == 0) continue;
+            startObject(alphaStates[alpha]);
+            out.write("<< /Type /ExtGState /CA ").number(alpha / 255f, 3)
+                    .write(" /ca ").number(alpha / 255f, 3).write(" >>\n");
+            endObject();
+        }
+
+        startObject(resources);
+        out.write("<< /XObject <<");
+        if(template != 0) out.write(" /X").write(template).write(' ').write(template).write(" 0 R");
+        for(int i = 0; i < forms.size(); i++) {
+            out.write(" /X").write(forms.get(i)).write(' ').write(forms.get(i)).write(" 0 R");
+        }
+        out.write(" >>\n/ExtGState <<");
+        for(int i = 0; i < maskStates.size(); i++) state(maskStates.get(i));
+        for(int l = 0; l < layerCount; l++) {
+            if(layerStates.get(l) != 0) state(layerStates.get(l));
+        }
+        for(int alpha = 0; alpha < alphaStates.length; alpha++) {
+            if(alphaStates[alpha] != 0) out.write(" /A").write(alpha).write(' ').write(alphaStates[alpha]).write(" 0 R");
+        }
+        out.write(" >> >>\n");
+        endObject();
+
+        startObject(page);
+        out.write("<< /Type /Page /Parent ").write(pages).write(" 0 R /MediaBox [0 0 ").write(width).write(' ').write(height)
+                .write("]\n/Group << /S /Transparency /CS /DeviceRGB >> /Resources ").write(resources)
+                .write(" 0 R /Contents ").write(content).write(" 0 R >>\n");
+        endObject();
+
+        long xref = out.position();
+        out.write("xref\n0 ").write(objects + 1).write("\n0000000000 65535 f \n");
+        for(int n = 1; n <= objects; n++) {
+            long offset = offsets[n];
+            for(long digit = 1000000000L; digit > 0; digit /= 10) out.write((char)('0' + offset / digit % 10));
+            out.write(" 00000 n \n");
+        }
+        out.write("trailer\n<< /Size ").write(objects + 1).write(" /Root 1 0 R >>\nstartxref\n").write(xref).write("\n%%EOF\n");
+        out.check();
+    }
+
+    @Override
+    public void moveTo(float x, float y)
+    {
+        if(closing && open) out.write("h\n");
+        point(x, y).write(" m\n");
+        open = true;
+    }
+
+    @Override
+    public void quadTo(float cx, float cy, float x, float y)
+    {
+        //the cubic with control points 2/3 of the way to the quadratic's one
+        cubicTo(curX + 2 * (cx - curX) / 3, curY + 2 * (cy - curY) / 3,
+                x + 2 * (cx - x) / 3, y + 2 * (cy - y) / 3, x, y);
+    }
+
+    @Override
+    public void cubicTo(float x1, float y1, float x2, float y2, float x, float y)
+    {
+        point(x1, y1).write(' ');
+        point(x2, y2).write(' ');
+        point(x, y).write(" c\n");
+    }
+
+    @Override
+    public void lineTo(float x, float y)
+    {
+        point(x, y).write(" l\n");
+    }
+
+    private VectorOutput point(float x, float y)
+    {
+        curX = x;
+        curY = y;
+        return out.number(x).write(' ').number(y);
+    }
+
+    private void endPath(String paint)
+    {
+        if(closing && open) out.write("h ");
+        out.write(paint);
+        open = false;
+    }
+
+    /**
+     * starts a layer form, painting the form before an eraser through its mask first
+     * @param erased form the eraser masks, 0 for none
+     * @param maskState its soft mask ExtGState
+     */
+    private void startForm(int erased, int maskState)
+    {
+        form = reserve();
+        formLength = reserve();
+        forms.add(form);
+        startObject(form);
+        formDictionary(formLength, "/Group << /S /Transparency >>");
+        startStream();
+        if(erased != 0) out.write("q /G").write(maskState).write(" gs /X").write(erased).write(" Do Q\n");
+        out.write("1 J 1 j\n");
+    }
+
+    private void formDictionary(int length, String group)
+    {
+        out.write("<< /Type /XObject /Subtype /Form /BBox [0 0 ").write(width).write(' ').write(height)
+                .write("] ").write(group).write("\n/Resources ").write(resources)
+                .write(" 0 R /Length ").write(length).write(" 0 R >>\n");
+    }
+
+    /**
+     * sets a constant alpha inside q for a translucent color
+     * @return true if it did, and Q must follow
+     */
+    private boolean beginAlpha(int alpha)
+    {
+        if(alpha >= 255) return false;
+        if(alphaStates[alpha] == 0) alphaStates[alpha] = reserve();
+        out.write("q /A").write(alpha).write(" gs\n");
+        return true;
+    }
+
+    private VectorOutput rgb(int color)
+    {
+        return out.number(((color >> 16) & 0xFF) / 255f, 3).write(' ')
+                .number(((color >> 8) & 0xFF) / 255f, 3).write(' ')
+                .number((color & 0xFF) / 255f, 3);
+    }
+
+    private void state(int object) {
+        out.write(" /G").write(object).write(' ').write(object).write(" 0 R");
+    }
+
+    private int reserve()
+    {
+        objects++;
+        if(objects == offsets.length) offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+        return objects;
+    }
+
+    private void startObject(int object)
+    {
+        offsets[object] = out.position();
+        out.write(object).write(" 0 obj\n");
+    }
+
+    private void endObject() {
+        out.write("endobj\n");
+    }
+
+    private void startStream()
+    {
+        out.write("stream\n");
+        streamStart = out.position();
+    }
+
+    /**
+     * ends the current object's stream and writes its length object
+     */
+    private void endStream(int lengthObject)
+    {
+        long length = out.position() - streamStart;
+        out.write("\nendstream\n");
+        endObject();
+        startObject(lengthObject);
+        out.write(length).write('\n');
+        endObject();
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+
+/**
+ * The committed image of a StrokePlayer: finished strokes are drawn into
+ * a bitmap once, frames blit it and add the stroke in progress on top.
+ * Used by DrawingView to play a drawing back on screen and by TimeLapse
+ * to render one offline, so it may live on any one thread.
+ */
+public class ReplayCanvas implements StrokePlayer.Renderer
+{
+    private final Bitmap bitmap;
+    private final Canvas canvas;
+    private final PaintCache paints = new PaintCache();
+    private final Path path = new Path();
+    private final PathSink sink = new PathSink(path);
+    private final StrokeMesh mesh = new StrokeMesh();
+    private final float[] bounds = new float[4];
+    private final float[] other = new float[4];
+
+    /**
+     * @param width size of the image, in drawing coordinates
+     * @param height
+     */
+    public ReplayCanvas(int width, int height)
+    {
+        bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        canvas = new Canvas(bitmap);
+    }
+
+    @Override
+    public void commitStroke(StrokeStore strokes, int stroke)
+    {
+        drawStroke(canvas, strokes, stroke, strokes.getPointCount(stroke));
+    }
+
+    /**
+     * clears the removal's area and draws the strokes still visible there again
+     */
+    @Override
+    public void removeStrokes(StrokeStore strokes, int removal)
+    {
+        strokes.getBounds(removal, bounds);
+        canvas.save();
+        canvas.clipRect(bounds[0] - 1, bounds[1] - 1, bounds[2] + 1, bounds[3] + 1);
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.SRC);
+        for(int i = 0; i < strokes.size(); i++) {
+            if(!strokes.isVisible(i)) continue;
+            strokes.getBounds(i, other);
+            if(other[0] < bounds[2] && bounds[0] < other[2] && other[1] < bounds[3] && bounds[1] < other[3]) {
+                commitStroke(strokes, i);
+            }
+        }
+        canvas.restore();
+    }
+
+    /**
+     * Draws the current frame: the committed strokes and the drawn part
+     * of the stroke in progress. An eraser in progress only shows once it
+     * is finished, clearing the target would clear what is under the drawing.
+     * @param target canvas in drawing coordinates
+     */
+    public void drawFrame(Canvas target, StrokePlayer player)
+    {
+        target.drawBitmap(bitmap, 0, 0, null);
+        int stroke = player.getPartialStroke();
+        if(stroke >= 0 && !player.getStrokes().isErase(stroke)) {
+            drawStroke(target, player.getStrokes(), stroke, player.getPartialPoints());
+        }
+    }
+
+    public void release() {
+        bitmap.recycle();
+    }
+
+    private void drawStroke(Canvas target, StrokeStore strokes, int stroke, int points)
+    {
+        //(hardware canvases of this API level cannot draw vertices, the
+        //part of a pressure stroke in progress shows as its centre line there)
+        if(strokes.isPressure(stroke) && !target.isHardwareAccelerated()) {
+            mesh.build(strokes, stroke, points);
+            target.drawVertices(Canvas.VertexMode.TRIANGLE_STRIP, 2 * mesh.getVertexCount(), mesh.getVertices(), 0,
+                    null, 0, null, 0, null, 0, 0, paints.getMesh(strokes.getColor(stroke)));
+            return;
+        }
+        path.rewind();
+        strokes.replay(stroke, sink, points);
+        target.drawPath(path, strokes.isFill(stroke) ? paints.getFill(strokes.getColor(stroke))
+                : paints.get(strokes.getColor(stroke), strokes.getWidth(stroke), strokes.isErase(stroke)));
+    }
+}
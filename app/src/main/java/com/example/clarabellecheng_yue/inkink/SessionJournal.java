@@ -0,0 +1,523 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe record of the drawing session, so rotation or process death
+ * does not lose any work.
+ *
+ * Every change (new stroke, undo, clear) is appended to a journal file by a
+ * background writer thread; the caller only copies the stroke into a record.
+ * The writer fsyncs in batches (every SYNC_RECORDS records, or SYNC_DELAY_MS
+ * after the first unsynced one) and, every COMPACT_RECORDS records, writes a
+ * StrokeStore snapshot and starts an empty journal.
+ *
+ * Files carry a generation number: snapshot-N.ink holds everything before
+ * journal-N.log. A new snapshot is written under a temporary name and renamed,
+ * so a crash at any point leaves one consistent generation to restore from.
+ * Records carry a CRC32; restore stops at the first torn or corrupt record.
+ *
+ * Plain Java on purpose, it is unit tested on the JVM.
+ */
+public class SessionJournal
+{
+    /**
+     * Called on the writer thread once the session has been read back.
+     */
+    public interface RestoreCallback {
+        /**
+         * @param restored the drawing, owned by the callee
+         * @param millis time spent loading the snapshot and replaying the journal
+         */
+        void onRestored(StrokeStore restored, long millis);
+    }
+
+    /**
+     * Told once, on the writer thread, when an error stops the journal.
+     */
+    public interface FailureListener {
+        /**
+         * @param error the first error, nothing is journaled after it
+         */
+        void onJournalFailed(IOException error);
+    }
+
+    static final int REC_ADD = 1;
+    static final int REC_UNDO = 2;
+    static final int REC_CLEAR = 3;
+
+    static final int SYNC_RECORDS = 16;
+    static final long SYNC_DELAY_MS = 1000;
+    static final int COMPACT_RECORDS = 500;
+
+    private final File dir;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+
+    //everything below is only touched on the writer thread
+    private final StrokeStore shadow = new StrokeStore(); //the drawing as the journal knows it
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer smallRecord = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+    private final int compactRecords;
+    private boolean loaded;
+    private int generation;
+    private RandomAccessFile journalFile;
+    private FileChannel journal;
+    private int unsynced;
+    private boolean syncScheduled;
+    private int recordsSinceSnapshot;
+    private IOException failure; //first write error, the journal stops after it
+    private volatile FailureListener failureListener;
+
+    /**
+     * @param dir directory holding the session files, created if missing
+     */
+    public SessionJournal(File dir)
+    {
+        this(dir, COMPACT_RECORDS);
+    }
+
+    /**
+     * @param dir directory holding the session files, created if missing
+     * @param compactRecords records between two snapshots
+     */
+    public SessionJournal(File dir, int compactRecords)
+    {
+        this.dir = dir;
+        this.compactRecords = compactRecords;
+    }
+
+    /**
+     * Reads the session back in the background: latest snapshot plus journal tail.
+     * Call before appending anything so the journal continues from there.
+     * If the session cannot be read the journal fails, see setFailureListener,
+     * and the callback still gets an empty drawing.
+     * @param callback told about the result on the writer thread
+     */
+    public void restore(final RestoreCallback callback)
+    {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                StrokeStore restored = new StrokeStore();
+                try {
+                    load();
+                    restored.copyFrom(shadow);
+                }
+                catch(IOException e) {
+                    fail(e);
+                    restored = new StrokeStore();
+                }
+                catch(RuntimeException e) {
+                    //a snapshot or record that reads back as nonsense
+                    fail(new IOException("could not restore the session", e));
+                    restored = new StrokeStore();
+                }
+                finally {
+                    callback.onRestored(restored, (System.nanoTime() - start) / 1000000);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param listener told when an error stops the journal, or null
+     */
+    public void setFailureListener(FailureListener listener) {
+        failureListener = listener;
+    }
+
+    /**
+     * Journals a finished stroke. Copies the points, so the caller may reuse xy.
+     * @param xy accepted x,y pairs
+     * @param count number of points
+     * @param color ARGB color
+     * @param width stroke width
+     * @param flags StrokeStore.FLAG_ values
+     */
+    public void appendStroke(float[] xy, int count, int color, float width, int flags)
+    {
+        appendStroke(xy, count, color, width, flags, 0, 0, 0);
+    }
+
+    /**
+     * Journals a new stroke, when it was drawn (see StrokeStore.setTiming)
+     * and the layer it is on.
+     * @param gapMillis time since the stroke before ended
+     * @param durationMillis time from finger down to up
+     * @param layer id of the layer
+     */
+    public void appendStroke(float[] xy, int count, int color, float width, int flags,
+                             int gapMillis, int durationMillis, int layer)
+    {
+        final ByteBuffer record = ByteBuffer.allocate(8 + 32 + 8 * count).order(ByteOrder.LITTLE_ENDIAN);
+        record.position(8); //length and crc go first, filled in by the writer
+        record.putInt(REC_ADD).putInt(color).putInt(Float.floatToIntBits(width))
+                .putInt(flags).putInt(count);
+        record.asFloatBuffer().put(xy, 0, 2 * count);
+        record.position(record.position() + 8 * count);
+        //after the points, so journals from before timing and layers still read
+        record.putInt(gapMillis).putInt(durationMillis).putInt(layer);
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                append(record);
+            }
+        });
+    }
+
+    /**
+     * Journals a stroke that is already in a store, e.g. one that was redone.
+     * @param store store holding the stroke
+     * @param stroke index of the stroke
+     */
+    public void appendStroke(StrokeStore store, int stroke)
+    {
+        int count = store.getPointCount(stroke);
+        float[] xy = new float[2 * count];
+        for(int i = 0; i < count; i++) {
+            xy[2 * i] = store.getX(stroke, i);
+            xy[2 * i + 1] = store.getY(stroke, i);
+        }
+        appendStroke(xy, count, store.getColor(stroke), store.getWidth(stroke), store.getFlags(stroke),
+                store.getGapMillis(stroke), store.getDurationMillis(stroke), store.getLayer(stroke));
+    }
+
+    /**
+     * journals an undo of the last stroke
+     */
+    public void appendUndo()
+    {
+        appendSmall(REC_UNDO);
+    }
+
+    /**
+     * journals clearing the whole drawing
+     */
+    public void appendClear()
+    {
+        appendSmall(REC_CLEAR);
+    }
+
+    /**
+     * fsyncs everything appended so far, in the background
+     */
+    public void flush()
+    {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                sync();
+            }
+        });
+    }
+
+    /**
+     * Flushes, closes the files and stops the writer thread
+     * once all queued records are written.
+     */
+    public void close()
+    {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                sync();
+                closeJournal();
+            }
+        });
+        writer.shutdown();
+    }
+
+    /**
+     * Waits for the writer thread after close(), for tests and benchmarks.
+     * @return true if the writer finished in time
+     */
+    public boolean awaitClosed(long millis) throws InterruptedException
+    {
+        return writer.awaitTermination(millis, TimeUnit.MILLISECONDS);
+    }
+
+    private void appendSmall(final int type)
+    {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                smallRecord.clear();
+                smallRecord.position(8);
+                smallRecord.putInt(type);
+                append(smallRecord);
+            }
+        });
+    }
+
+    /**
+     * writer thread: frames, writes and applies one record
+     * @param record buffer whose payload starts at 8 and ends at its position
+     */
+    private void append(ByteBuffer record)
+    {
+        if(failure != null) return;
+        try {
+            load();
+            int length = record.position() - 8;
+            crc.reset();
+            crc.update(record.array(), record.arrayOffset() + 8, length);
+            record.putInt(0, length);
+            record.putInt(4, (int)crc.getValue());
+            record.flip();
+            while(record.hasRemaining()) {
+                journal.write(record);
+            }
+            record.position(8);
+            apply(record, shadow);
+
+            recordsSinceSnapshot++;
+            if(recordsSinceSnapshot >= compactRecords) {
+                compact();
+            }
+            else if(++unsynced >= SYNC_RECORDS) {
+                sync();
+            }
+            else if(!syncScheduled) {
+                syncScheduled = true;
+                writer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        sync();
+                    }
+                }, SYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch(IOException e) {
+            fail(e);
+        }
+    }
+
+    private void sync()
+    {
+        syncScheduled = false;
+        if(journal == null || unsynced == 0 || failure != null) return;
+        try {
+            journal.force(false);
+            unsynced = 0;
+        }
+        catch(IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * writer thread: snapshot the shadow drawing and start a new generation
+     */
+    private void compact() throws IOException
+    {
+        int next = generation + 1;
+        File tmp = new File(dir, "snapshot-" + next + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            shadow.write(out.getChannel());
+            out.getChannel().force(true);
+        }
+        finally {
+            out.close();
+        }
+        if(!tmp.renameTo(snapshotFile(next))) {
+            throw new IOException("could not rename " + tmp);
+        }
+        //the new snapshot is in place, the old generation is not needed anymore
+        closeJournal();
+        snapshotFile(generation).delete();
+        journalFile(generation).delete();
+        generation = next;
+        openJournal(0);
+        unsynced = 0;
+        recordsSinceSnapshot = 0;
+    }
+
+    /**
+     * writer thread: reads the newest generation into shadow, once
+     */
+    private void load() throws IOException
+    {
+        if(loaded) return;
+        loaded = true;
+        if(!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("could not create " + dir);
+        }
+
+        //newest snapshot wins, anything older is left over from a crash
+        generation = 0;
+        File[] files = dir.listFiles();
+        if(files != null) {
+            for(File f : files) {
+                int g = generationOf(f.getName(), "snapshot-", ".ink");
+                if(g > generation) generation = g;
+            }
+        }
+        shadow.clear();
+        if(generation > 0) {
+            FileInputStream in = new FileInputStream(snapshotFile(generation));
+            try {
+                shadow.read(in.getChannel());
+            }
+            finally {
+                in.close();
+            }
+        }
+
+        long validLength = replay(journalFile(generation));
+        if(files != null) {
+            for(File f : files) {
+                String name = f.getName();
+                if(generationOf(name, "snapshot-", ".ink") > 0 && !f.equals(snapshotFile(generation))
+                        || generationOf(name, "journal-", ".log") >= 0 && !f.equals(journalFile(generation))
+                        || name.endsWith(".tmp")) {
+                    f.delete();
+                }
+            }
+        }
+        openJournal(validLength);
+    }
+
+    /**
+     * applies every intact record of a journal to shadow
+     * @return length of the intact part, anything after it is torn or corrupt
+     */
+    private long replay(File file) throws IOException
+    {
+        if(!file.exists()) return 0;
+        ByteBuffer data;
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            data = ByteBuffer.allocate((int)channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while(data.hasRemaining()) {
+                if(channel.read(data) < 0) break;
+            }
+            data.flip();
+        }
+        finally {
+            in.close();
+        }
+
+        int valid = 0;
+        while(data.remaining() >= 12) {
+            int start = data.position();
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if(length < 4 || length > data.remaining()) break;
+            crc.reset();
+            crc.update(data.array(), data.arrayOffset() + start + 8, length);
+            if((int)crc.getValue() != checksum) break;
+            ByteBuffer payload = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+            payload.limit(length);
+            apply(payload, shadow);
+            data.position(start + 8 + length);
+            valid = data.position();
+            recordsSinceSnapshot++;
+        }
+        return valid;
+    }
+
+    /**
+     * applies one record payload (type and fields) to a store
+     */
+    static void apply(ByteBuffer payload, StrokeStore store)
+    {
+        int type = payload.getInt();
+        switch(type) {
+            case REC_ADD:
+                int color = payload.getInt();
+                float width = Float.intBitsToFloat(payload.getInt());
+                int flags = payload.getInt();
+                int count = payload.getInt();
+                float[] xy = new float[2 * count];
+                payload.asFloatBuffer().get(xy);
+                payload.position(payload.position() + 8 * count);
+                int stroke = store.add(xy, count, color, width, flags);
+                if(payload.remaining() >= 8) store.setTiming(stroke, payload.getInt(), payload.getInt());
+                if(payload.remaining() >= 4) store.setLayer(stroke, payload.getInt());
+                break;
+            case REC_UNDO:
+                store.undo();
+                //the journal never redoes, a redone stroke is journaled as a new one
+                store.discardRedo();
+                break;
+            case REC_CLEAR:
+                store.clear();
+                break;
+            default:
+                //unknown record from a newer version, skip it
+                break;
+        }
+    }
+
+    private void openJournal(long validLength) throws IOException
+    {
+        journalFile = new RandomAccessFile(journalFile(generation), "rw");
+        journal = journalFile.getChannel();
+        journal.truncate(validLength); //drop a torn tail
+        journal.position(validLength);
+    }
+
+    private void closeJournal()
+    {
+        if(journalFile == null) return;
+        try {
+            journalFile.close();
+        }
+        catch(IOException e) {
+            fail(e);
+        }
+        journalFile = null;
+        journal = null;
+    }
+
+    private void fail(IOException e)
+    {
+        if(failure != null) return;
+        failure = e;
+        FailureListener listener = failureListener;
+        if(listener != null) listener.onJournalFailed(e);
+    }
+
+    /**
+     * @return the first error the writer ran into, or null; read after awaitClosed
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    private File snapshotFile(int g) {
+        return new File(dir, "snapshot-" + g + ".ink");
+    }
+
+    private File journalFile(int g) {
+        return new File(dir, "journal-" + g + ".log");
+    }
+
+    /**
+     * @return the generation in a file name like prefix + N + suffix, or -1
+     */
+    private static int generationOf(String name, String prefix, String suffix)
+    {
+        if(!name.startsWith(prefix) || !name.endsWith(suffix)) return -1;
+        try {
+            return Integer.parseInt(name.substring(prefix.length(), name.length() - suffix.length()));
+        }
+        catch(NumberFormatException e) {
+            return -1;
+        }
+    }
+}
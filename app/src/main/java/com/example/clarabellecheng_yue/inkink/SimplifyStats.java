@@ -0,0 +1,111 @@
+package com.example.clarabellecheng_yue.inkink;
+
+/**
+ * Counters for stroke simplification: how many curves it removed, how
+ * long fitting took, and what replaying strokes costs per curve with and
+ * without it, from which the render time saved so far is estimated.
+ * Updated from the UI and the simplifier thread, read from either.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class SimplifyStats
+{
+    private long strokes; //strokes simplified
+    private long segmentsBefore, segmentsAfter;
+    private long fitNanos;
+
+    private long quadSegments, quadNanos; //replays of strokes as drawn
+    private long cubicSegments, cubicNanos; //replays of simplified strokes
+
+    /**
+     * counts one simplified stroke
+     * @param before curves of the stroke as drawn
+     * @param after cubic segments it was replaced with
+     * @param nanos time spent fitting
+     */
+    public synchronized void recordSimplified(int before, int after, long nanos)
+    {
+        strokes++;
+        segmentsBefore += before;
+        segmentsAfter += after;
+        fitNanos += nanos;
+    }
+
+    /**
+     * counts one stroke replay
+     * @param cubic true if the stroke was simplified
+     * @param segments curves replayed
+     * @param nanos time the replay and draw took
+     */
+    public synchronized void recordRender(boolean cubic, int segments, long nanos)
+    {
+        if(cubic) {
+            cubicSegments += segments;
+            cubicNanos += nanos;
+        }
+        else {
+            quadSegments += segments;
+            quadNanos += nanos;
+        }
+    }
+
+    public synchronized long getStrokes() {
+        return strokes;
+    }
+
+    public synchronized long getSegmentsBefore() {
+        return segmentsBefore;
+    }
+
+    public synchronized long getSegmentsAfter() {
+        return segmentsAfter;
+    }
+
+    public synchronized long getFitNanos() {
+        return fitNanos;
+    }
+
+    /**
+     * @return share of curves removed, 0 to 1
+     */
+    public synchronized float getReduction()
+    {
+        return segmentsBefore == 0 ? 0 : 1 - segmentsAfter / (float)segmentsBefore;
+    }
+
+    /**
+     * @return average replay time per curve, in nanoseconds, 0 before any replay
+     */
+    public synchronized float getNanosPerSegment(boolean cubic)
+    {
+        if(cubic) return cubicSegments == 0 ? 0 : cubicNanos / (float)cubicSegments;
+        return quadSegments == 0 ? 0 : quadNanos / (float)quadSegments;
+    }
+
+    /**
+     * Estimates the render time saved so far: simplified strokes replayed as
+     * they were drawn would have cost their original curves at the measured
+     * per curve rate of unsimplified strokes.
+     * @return nanoseconds saved, 0 until both kinds of stroke have been replayed
+     */
+    public synchronized long getEstimatedSavedNanos()
+    {
+        if(quadSegments == 0 || cubicSegments == 0 || segmentsAfter == 0) return 0;
+        double replays = cubicSegments / (double)segmentsAfter; //times each simplified curve was drawn
+        double unsimplified = replays * segmentsBefore * quadNanos / quadSegments;
+        return Math.max(0, (long)(unsimplified - cubicNanos));
+    }
+
+    public synchronized void reset()
+    {
+        strokes = segmentsBefore = segmentsAfter = fitNanos = 0;
+        quadSegments = quadNanos = cubicSegments = cubicNanos = 0;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "simplified " + strokes + " strokes, " + segmentsBefore + " -> " + segmentsAfter
+                + " curves (" + Math.round(getReduction() * 100) + "% fewer), fit " + fitNanos / 1000000
+                + " ms, render saved ~" + getEstimatedSavedNanos() / 1000000 + " ms";
+    }
+}
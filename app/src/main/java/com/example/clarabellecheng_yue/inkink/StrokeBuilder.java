@@ -0,0 +1,200 @@
+package com.example.clarabellecheng_yue.inkink;
+
+/**
+ * Turns raw touch samples into a smoothed stroke.
+ * A sample is only accepted once it is TOUCH_TOLERANCE away from the
+ * last accepted one, and each accepted point adds a quadratic curve
+ * ending halfway to it (the same smoothing DrawingView has always used).
+ * The curves are handed to a Sink, so DrawingView can feed an
+ * android.graphics.Path and tests can feed plain arrays.
+ * Accepted points are kept in a reusable array and the bounding box of
+ * new curves is tracked for dirty-rectangle invalidation.
+ * Nothing is allocated per sample.
+ */
+public class StrokeBuilder
+{
+    /**
+     * Receives the curves of the stroke being built.
+     */
+    public interface Sink {
+        void moveTo(float x, float y);
+        void quadTo(float cx, float cy, float x, float y);
+        void cubicTo(float x1, float y1, float x2, float y2, float x, float y); //simplified strokes only
+        void lineTo(float x, float y);
+    }
+
+    public static final float TOUCH_TOLERANCE = 4;
+
+    private final float tolerance;
+
+    private float[] points = new float[256]; //accepted x,y pairs
+    private int pointCount;
+    private int sampleCount; //every sample fed, accepted or not
+
+    private float mX, mY; //last accepted point
+    private float endX, endY; //where the curves currently end
+
+    private float dirtyLeft, dirtyTop, dirtyRight, dirtyBottom;
+    private boolean dirty;
+
+    public StrokeBuilder()
+    {
+        this(TOUCH_TOLERANCE);
+    }
+
+    /**
+     * @param tolerance distance (on either axis) a sample must move to be accepted
+     */
+    public StrokeBuilder(float tolerance)
+    {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * starts a new stroke at the given point
+     */
+    public void start(float x, float y, Sink sink)
+    {
+        pointCount = 0;
+        sampleCount = 1;
+        addPoint(x, y);
+        mX = x;
+        mY = y;
+        endX = x;
+        endY = y;
+        sink.moveTo(x, y);
+        addDirty(x, y, x, y);
+    }
+
+    /**
+     * feeds one sample
+     * @return true if the sample was accepted and a curve was added
+     */
+    public boolean move(float x, float y, Sink sink)
+    {
+        sampleCount++;
+        float dx = Math.abs(x - mX);
+        float dy = Math.abs(y - mY);
+        if(dx < tolerance && dy < tolerance) return false;
+
+        float newEndX = (x + mX) / 2;
+        float newEndY = (y + mY) / 2;
+        sink.quadTo(mX, mY, newEndX, newEndY);
+        //the new curve stays inside the box of its three points
+        addDirty(Math.min(endX, Math.min(mX, newEndX)), Math.min(endY, Math.min(mY, newEndY)),
+                Math.max(endX, Math.max(mX, newEndX)), Math.max(endY, Math.max(mY, newEndY)));
+        addPoint(x, y);
+        mX = x;
+        mY = y;
+        endX = newEndX;
+        endY = newEndY;
+        return true;
+    }
+
+    /**
+     * feeds a batch of recorded samples in one pass
+     * @param xy x,y pairs
+     * @param offset index of the first x in xy
+     * @param count number of samples (pairs)
+     * @return number of accepted samples
+     */
+    public int move(float[] xy, int offset, int count, Sink sink)
+    {
+        int accepted = 0;
+        for(int i = 0; i < count; i++) {
+            if(move(xy[offset + 2 * i], xy[offset + 2 * i + 1], sink)) accepted++;
+        }
+        return accepted;
+    }
+
+    /**
+     * finishes the stroke with a line to the last accepted point
+     */
+    public void end(Sink sink)
+    {
+        sink.lineTo(mX, mY);
+        addDirty(Math.min(endX, mX), Math.min(endY, mY), Math.max(endX, mX), Math.max(endY, mY));
+        endX = mX;
+        endY = mY;
+    }
+
+    /**
+     * @return accepted x,y pairs; only the first 2 * getPointCount() values are used
+     */
+    public float[] getPoints() {
+        return points;
+    }
+
+    /**
+     * @return number of accepted points, including the start point
+     */
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * @return number of samples fed since start, including the start point
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return true if curves were added since the last clearDirty()
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public float getDirtyLeft() {
+        return dirtyLeft;
+    }
+
+    public float getDirtyTop() {
+        return dirtyTop;
+    }
+
+    public float getDirtyRight() {
+        return dirtyRight;
+    }
+
+    public float getDirtyBottom() {
+        return dirtyBottom;
+    }
+
+    /**
+     * forgets the bounds collected so far, called once per touch event
+     */
+    public void clearDirty()
+    {
+        dirty = false;
+    }
+
+    private void addDirty(float left, float top, float right, float bottom)
+    {
+        if(!dirty) {
+            dirtyLeft = left;
+            dirtyTop = top;
+            dirtyRight = right;
+            dirtyBottom = bottom;
+            dirty = true;
+            return;
+        }
+        if(left < dirtyLeft) dirtyLeft = left;
+        if(top < dirtyTop) dirtyTop = top;
+        if(right > dirtyRight) dirtyRight = right;
+        if(bottom > dirtyBottom) dirtyBottom = bottom;
+    }
+
+    private void addPoint(float x, float y)
+    {
+        if(2 * pointCount + 2 > points.length) {
+            float[] bigger = new float[points.length * 2];
+            System.arraycopy(points, 0, bigger, 0, 2 * pointCount);
+            points = bigger;
+        }
+        points[2 * pointCount] = x;
+        points[2 * pointCount + 1] = y;
+        pointCount++;
+    }
+}
@@ -0,0 +1,402 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Uniform grid over stroke bounding boxes, so the strokes touching an
+ * area can be found without walking the whole drawing.
+ * Strokes are identified by their StrokeStore index and added in order;
+ * undo needs no update because queries take the current stroke count
+ * as a limit, and truncate() forgets strokes replaced after an undo.
+ * Query results come back in drawing order, ready to be replayed.
+ * hitTest() refines a query down to the stroke segments themselves,
+ * for the object eraser and selection.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class StrokeIndex
+{
+    /**
+     * Growable int array, reused between queries.
+     */
+    public static class IntList {
+        int[] values = new int[16];
+        int size;
+
+        public int size() {
+            return size;
+        }
+
+        public int get(int i) {
+            return values[i];
+        }
+
+        public void clear() {
+            size = 0;
+        }
+
+        void add(int value) {
+            if(size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+
+    private final float cellSize;
+    private final HashMap<Long, IntList> cells = new HashMap<>();
+
+    private float[] bounds = new float[4 * 256]; //left, top, right, bottom per stroke
+    private int count;
+
+    private int[] seen = new int[256]; //query stamp per stroke, to skip duplicates
+    private int stamp;
+
+    private final IntList candidates = new IntList(); //hitTest scratch
+    private static final int CUBIC_STEPS = 8; //lines per cubic segment in hitTest
+
+    /**
+     * @param cellSize width and height of a grid cell
+     */
+    public StrokeIndex(float cellSize)
+    {
+        this.cellSize = cellSize;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * @return number of strokes indexed, undone ones included
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Indexes the next stroke. Strokes must be added in StrokeStore order.
+     * @param stroke index of the stroke, must equal size()
+     */
+    public void add(int stroke, float left, float top, float right, float bottom)
+    {
+        if(stroke != count) throw new IllegalArgumentException("expected stroke " + count + ", got " + stroke);
+        if(4 * count + 4 > bounds.length) bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        if(count == seen.length) seen = Arrays.copyOf(seen, seen.length * 2);
+        bounds[4 * count] = left;
+        bounds[4 * count + 1] = top;
+        bounds[4 * count + 2] = right;
+        bounds[4 * count + 3] = bottom;
+        seen[count] = 0;
+        count++;
+
+        int x0 = cell(left), y0 = cell(top), x1 = cell(right), y1 = cell(bottom);
+        for(int cy = y0; cy <= y1; cy++) {
+            for(int cx = x0; cx <= x1; cx++) {
+                long key = key(cx, cy);
+                IntList list = cells.get(key);
+                if(list == null) {
+                    list = new IntList();
+                    cells.put(key, list);
+                }
+                list.add(stroke);
+            }
+        }
+    }
+
+    /**
+     * Forgets every stroke from newCount on, e.g. undone strokes
+     * that a new stroke replaces.
+     */
+    public void truncate(int newCount)
+    {
+        if(newCount >= count) return;
+        for(int stroke = newCount; stroke < count; stroke++) {
+            int x0 = cell(bounds[4 * stroke]), y0 = cell(bounds[4 * stroke + 1]);
+            int x1 = cell(bounds[4 * stroke + 2]), y1 = cell(bounds[4 * stroke + 3]);
+            for(int cy = y0; cy <= y1; cy++) {
+                for(int cx = x0; cx <= x1; cx++) {
+                    long key = key(cx, cy);
+                    IntList list = cells.get(key);
+                    if(list == null) continue;
+                    //ids are in order, the truncated ones are at the end
+                    while(list.size > 0 && list.values[list.size - 1] >= newCount) list.size--;
+                    if(list.size == 0) cells.remove(key);
+                }
+            }
+        }
+        count = newCount;
+    }
+
+    /**
+     * Moves an indexed stroke to new bounds, after its points were rewritten.
+     */
+    public void update(int stroke, float left, float top, float right, float bottom)
+    {
+        int o = 4 * stroke;
+        int ox0 = cell(bounds[o]), oy0 = cell(bounds[o + 1]), ox1 = cell(bounds[o + 2]), oy1 = cell(bounds[o + 3]);
+        int x0 = cell(left), y0 = cell(top), x1 = cell(right), y1 = cell(bottom);
+        bounds[o] = left;
+        bounds[o + 1] = top;
+        bounds[o + 2] = right;
+        bounds[o + 3] = bottom;
+        //leave the cells no longer covered
+        for(int cy = oy0; cy <= oy1; cy++) {
+            for(int cx = ox0; cx <= ox1; cx++) {
+                if(cx >= x0 && cx <= x1 && cy >= y0 && cy <= y1) continue;
+                long key = key(cx, cy);
+                IntList list = cells.get(key);
+                if(list == null) continue;
+                int i = Arrays.binarySearch(list.values, 0, list.size, stroke);
+                if(i < 0) continue;
+                System.arraycopy(list.values, i + 1, list.values, i, list.size - i - 1);
+                list.size--;
+                if(list.size == 0) cells.remove(key);
+            }
+        }
+        //join the new ones, keeping each list in order
+        for(int cy = y0; cy <= y1; cy++) {
+            for(int cx = x0; cx <= x1; cx++) {
+                if(cx >= ox0 && cx <= ox1 && cy >= oy0 && cy <= oy1) continue;
+                long key = key(cx, cy);
+                IntList list = cells.get(key);
+                if(list == null) {
+                    list = new IntList();
+                    cells.put(key, list);
+                }
+                int i = -1 - Arrays.binarySearch(list.values, 0, list.size, stroke);
+                list.add(0);
+                System.arraycopy(list.values, i, list.values, i + 1, list.size - i - 1);
+                list.values[i] = stroke;
+            }
+        }
+    }
+
+    /**
+     * forgets every stroke
+     */
+    public void clear()
+    {
+        cells.clear();
+        count = 0;
+    }
+
+    /**
+     * @param stroke indexed stroke
+     * @param out receives left, top, right, bottom
+     */
+    public void getBounds(int stroke, float[] out)
+    {
+        System.arraycopy(bounds, 4 * stroke, out, 0, 4);
+    }
+
+    /**
+     * Finds the strokes whose bounding box overlaps an area.
+     * @param limit only strokes below this index count (the current stroke count)
+     * @param out cleared and filled with stroke indexes in drawing order
+     */
+    public void query(float left, float top, float right, float bottom, int limit, IntList out)
+    {
+        out.clear();
+        if(++stamp == 0) { //wrapped, forget old stamps
+            Arrays.fill(seen, 0);
+            stamp = 1;
+        }
+        int x0 = cell(left), y0 = cell(top), x1 = cell(right), y1 = cell(bottom);
+        boolean sorted = x0 == x1 && y0 == y1; //one cell lists are already in order
+        for(int cy = y0; cy <= y1; cy++) {
+            for(int cx = x0; cx <= x1; cx++) {
+                IntList list = cells.get(key(cx, cy));
+                if(list == null) continue;
+                for(int i = 0; i < list.size; i++) {
+                    int stroke = list.values[i];
+                    if(stroke >= limit || seen[stroke] == stamp) continue;
+                    seen[stroke] = stamp;
+                    if(bounds[4 * stroke] < right && bounds[4 * stroke + 2] > left
+                            && bounds[4 * stroke + 1] < bottom && bounds[4 * stroke + 3] > top) {
+                        out.add(stroke);
+                    }
+                }
+            }
+        }
+        if(!sorted) Arrays.sort(out.values, 0, out.size);
+    }
+
+    /**
+     * @return true if any stroke below limit overlaps the area
+     */
+    public boolean any(float left, float top, float right, float bottom, int limit)
+    {
+        int x0 = cell(left), y0 = cell(top), x1 = cell(right), y1 = cell(bottom);
+        for(int cy = y0; cy <= y1; cy++) {
+            for(int cx = x0; cx <= x1; cx++) {
+                IntList list = cells.get(key(cx, cy));
+                if(list == null) continue;
+                for(int i = 0; i < list.size; i++) {
+                    int stroke = list.values[i];
+                    if(stroke < limit && bounds[4 * stroke] < right && bounds[4 * stroke + 2] > left
+                            && bounds[4 * stroke + 1] < bottom && bounds[4 * stroke + 3] > top) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the strokes a finger moving from x0,y0 to x1,y1 touches: the
+     * visible strokes (see StrokeStore.isVisible) whose segments, grown by
+     * half the stroke width, come within radius of that segment.
+     * Pixel eraser strokes are skipped, there is nothing to see of them.
+     * Only the grid cells around the segment are looked at, so the cost
+     * does not grow with the size of the drawing.
+     * @param strokes the indexed drawing
+     * @param radius half the width of the finger
+     * @param out cleared and filled in drawing order, the topmost stroke last
+     */
+    public void hitTest(StrokeStore strokes, float x0, float y0, float x1, float y1,
+                        float radius, IntList out)
+    {
+        query(Math.min(x0, x1) - radius, Math.min(y0, y1) - radius,
+                Math.max(x0, x1) + radius, Math.max(y0, y1) + radius, strokes.size(), candidates);
+        out.clear();
+        for(int c = 0; c < candidates.size; c++) {
+            int stroke = candidates.values[c];
+            if(!strokes.isVisible(stroke) || strokes.isErase(stroke)) continue;
+            float reach = radius + strokes.getWidth(stroke) / 2;
+            if(strokes.isFill(stroke) ? touchesFill(strokes, stroke, x0, y0, x1, y1, reach * reach)
+                    : strokes.isPressure(stroke) ? touchesPressure(strokes, stroke, x0, y0, x1, y1, radius)
+                    : touches(strokes, stroke, x0, y0, x1, y1, reach * reach)) {
+                out.add(stroke);
+            }
+        }
+    }
+
+    /**
+     * @return true if a segment of the stroke polyline comes within
+     * sqrt(reachSq) of the segment x0,y0 - x1,y1
+     */
+    private static boolean touches(StrokeStore strokes, int stroke, float x0, float y0,
+                                   float x1, float y1, float reachSq)
+    {
+        int count = strokes.getPointCount(stroke);
+        float ax = strokes.getX(stroke, 0), ay = strokes.getY(stroke, 0);
+        if(strokes.isCubic(stroke)) {
+            //each segment as a few lines, close enough for a finger
+            for(int i = 1; i + 2 < count; i += 3) {
+                float c1x = strokes.getX(stroke, i), c1y = strokes.getY(stroke, i);
+                float c2x = strokes.getX(stroke, i + 1), c2y = strokes.getY(stroke, i + 1);
+                float ex = strokes.getX(stroke, i + 2), ey = strokes.getY(stroke, i + 2);
+                for(int step = 1; step <= CUBIC_STEPS; step++) {
+                    float t = step / (float)CUBIC_STEPS, mt = 1 - t;
+                    float bx = mt * mt * mt * ax + 3 * t * mt * mt * c1x + 3 * t * t * mt * c2x + t * t * t * ex;
+                    float by = mt * mt * mt * ay + 3 * t * mt * mt * c1y + 3 * t * t * mt * c2y + t * t * t * ey;
+                    if(segmentDistanceSq(ax, ay, bx, by, x0, y0, x1, y1) <= reachSq) return true;
+                    ax = bx;
+                    ay = by;
+                }
+            }
+            return false;
+        }
+        if(count == 1) return segmentDistanceSq(ax, ay, ax, ay, x0, y0, x1, y1) <= reachSq;
+        for(int i = 1; i < count; i++) {
+            float bx = strokes.getX(stroke, i), by = strokes.getY(stroke, i);
+            if(segmentDistanceSq(ax, ay, bx, by, x0, y0, x1, y1) <= reachSq) return true;
+            ax = bx;
+            ay = by;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if a segment between two samples of a FLAG_PRESSURE
+     * stroke, grown by half the wider sample's width, comes within radius
+     * of the segment x0,y0 - x1,y1
+     */
+    private static boolean touchesPressure(StrokeStore strokes, int stroke, float x0, float y0,
+                                           float x1, float y1, float radius)
+    {
+        int samples = strokes.getSampleCount(stroke);
+        if(samples == 0) return false;
+        float ax = strokes.getX(stroke, 0), ay = strokes.getY(stroke, 0), aw = strokes.getX(stroke, 1);
+        if(samples == 1) {
+            float reach = radius + aw / 2;
+            return segmentDistanceSq(ax, ay, ax, ay, x0, y0, x1, y1) <= reach * reach;
+        }
+        for(int i = 1; i < samples; i++) {
+            float bx = strokes.getX(stroke, 2 * i), by = strokes.getY(stroke, 2 * i);
+            float bw = strokes.getX(stroke, 2 * i + 1);
+            float reach = radius + Math.max(aw, bw) / 2;
+            if(segmentDistanceSq(ax, ay, bx, by, x0, y0, x1, y1) <= reach * reach) return true;
+            ax = bx;
+            ay = by;
+            aw = bw;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the segment x0,y0 - x1,y1 starts in a rectangle of
+     * the fill or comes within sqrt(reachSq) of one of its edges
+     */
+    private static boolean touchesFill(StrokeStore strokes, int stroke, float x0, float y0,
+                                       float x1, float y1, float reachSq)
+    {
+        int count = strokes.getPointCount(stroke);
+        for(int i = 0; i + 1 < count; i += 2) {
+            float l = strokes.getX(stroke, i), t = strokes.getY(stroke, i);
+            float r = strokes.getX(stroke, i + 1), b = strokes.getY(stroke, i + 1);
+            if(x0 >= l && x0 <= r && y0 >= t && y0 <= b) return true;
+            if(segmentDistanceSq(l, t, r, t, x0, y0, x1, y1) <= reachSq
+                    || segmentDistanceSq(r, t, r, b, x0, y0, x1, y1) <= reachSq
+                    || segmentDistanceSq(r, b, l, b, x0, y0, x1, y1) <= reachSq
+                    || segmentDistanceSq(l, b, l, t, x0, y0, x1, y1) <= reachSq) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return squared distance between segments a-b and c-d, 0 if they cross
+     */
+    static float segmentDistanceSq(float ax, float ay, float bx, float by,
+                                   float cx, float cy, float dx, float dy)
+    {
+        float d1 = cross(cx, cy, dx, dy, ax, ay), d2 = cross(cx, cy, dx, dy, bx, by);
+        float d3 = cross(ax, ay, bx, by, cx, cy), d4 = cross(ax, ay, bx, by, dx, dy);
+        if(((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
+            return 0;
+        }
+        //otherwise the closest pair has an end point in it
+        return Math.min(Math.min(pointDistanceSq(ax, ay, cx, cy, dx, dy), pointDistanceSq(bx, by, cx, cy, dx, dy)),
+                Math.min(pointDistanceSq(cx, cy, ax, ay, bx, by), pointDistanceSq(dx, dy, ax, ay, bx, by)));
+    }
+
+    /**
+     * @return squared distance from point p to segment a-b
+     */
+    static float pointDistanceSq(float px, float py, float ax, float ay, float bx, float by)
+    {
+        float vx = bx - ax, vy = by - ay;
+        float lengthSq = vx * vx + vy * vy;
+        float t = lengthSq == 0 ? 0 : ((px - ax) * vx + (py - ay) * vy) / lengthSq;
+        t = Math.max(0, Math.min(1, t));
+        float ex = ax + t * vx - px, ey = ay + t * vy - py;
+        return ex * ex + ey * ey;
+    }
+
+    private static float cross(float ax, float ay, float bx, float by, float px, float py)
+    {
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+
+    private int cell(float v)
+    {
+        return (int)Math.floor(v / cellSize);
+    }
+
+    static long key(int cx, int cy)
+    {
+        return ((long)cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
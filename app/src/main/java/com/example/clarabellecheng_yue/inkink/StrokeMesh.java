@@ -0,0 +1,294 @@
+package com.example.clarabellecheng_yue.inkink;
+
+/**
+ * Tessellates a variable width stroke into one triangle strip outline,
+ * for Canvas.drawVertices(VertexMode.TRIANGLE_STRIP, ...) instead of a Path.
+ *
+ * Samples are the points StrokeBuilder accepted, each with a width (see
+ * BrushDynamics), and the centre line is the same quadTo smoothing: each
+ * sample adds the curve ending halfway to it, end() the line to the last
+ * one. A curve is cut into steps of about STEP_LENGTH, and each step puts a
+ * left and a right vertex half the interpolated width off the curve along
+ * its normal. The round caps zigzag across the cap, so the start cap, the
+ * body and the end cap are one strip.
+ *
+ * Every curve is tessellated once, when its sample arrives, and only
+ * appends vertices: the live stroke draws the vertices added since its
+ * last draw plus the pair they join on to (see getJoinStart), and a
+ * finished stroke's strip is kept in a MeshCache, so drawing it again
+ * needs no tessellation at all.
+ *
+ * The samples are also kept in the StrokeStore.FLAG_PRESSURE layout, ready
+ * to be stored. Arrays are kept from stroke to stroke and only grow, so
+ * nothing is allocated per sample once they are large enough.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class StrokeMesh
+{
+    public static final float MIN_WIDTH = 0.5f; //thinner would drop out between pixels
+    static final float STEP_LENGTH = 3; //pixels of curve per vertex pair
+    static final int MAX_STEPS = 16; //vertex pairs per curve
+    static final int CAP_STEPS = 4; //vertex pairs over a quarter turn of a round cap
+
+    private static final float[] CAP_COS = new float[CAP_STEPS], CAP_SIN = new float[CAP_STEPS];
+
+    static {
+        for(int k = 0; k < CAP_STEPS; k++) {
+            double angle = k * Math.PI / 2 / CAP_STEPS;
+            CAP_COS[k] = (float)Math.cos(angle);
+            CAP_SIN[k] = (float)Math.sin(angle);
+        }
+    }
+
+    private float[] vertices = new float[2048]; //x,y pairs of the strip
+    private int vertexCount;
+    private float[] points = new float[512]; //StrokeStore.FLAG_PRESSURE points: x,y then width,0 per sample
+    private int sampleCount;
+
+    private float mX, mY, mW; //last sample
+    private float endX, endY, endW; //where the curves end, and the width there
+    private float dirX = 1, dirY; //unit tangent where the curves end
+    private boolean capped; //start cap written
+
+    /**
+     * starts a new stroke at its first sample
+     * @param width stroke width at the sample
+     */
+    public void start(float x, float y, float width)
+    {
+        vertexCount = 0;
+        sampleCount = 0;
+        addSample(x, y, width);
+        mX = endX = x;
+        mY = endY = y;
+        mW = endW = width;
+        dirX = 1;
+        dirY = 0;
+        capped = false;
+    }
+
+    /**
+     * adds an accepted sample and the curve ending halfway to it
+     * @param width stroke width at the sample
+     */
+    public void add(float x, float y, float width)
+    {
+        float newEndX = (x + mX) / 2, newEndY = (y + mY) / 2, newEndW = (width + mW) / 2;
+        curve(endX, endY, endW, mX, mY, newEndX, newEndY, newEndW);
+        addSample(x, y, width);
+        mX = x;
+        mY = y;
+        mW = width;
+        endX = newEndX;
+        endY = newEndY;
+        endW = newEndW;
+    }
+
+    /**
+     * finishes the stroke: the line to the last sample and the end cap
+     * (a stroke of one sample becomes a dot)
+     */
+    public void end()
+    {
+        curve(endX, endY, endW, (endX + mX) / 2, (endY + mY) / 2, mX, mY, mW);
+        if(!capped) {
+            startCap(mX, mY, radius(mW), dirX, dirY);
+            capped = true;
+        }
+        endCap(mX, mY, radius(mW), dirX, dirY);
+        endX = mX;
+        endY = mY;
+        endW = mW;
+    }
+
+    /**
+     * Tessellates a stored FLAG_PRESSURE stroke again, e.g. when its
+     * mesh is not cached.
+     * @param strokes the drawing
+     * @param stroke index of a FLAG_PRESSURE stroke
+     * @param pointLimit points to use, as for StrokeStore.replay
+     */
+    public void build(StrokeStore strokes, int stroke, int pointLimit)
+    {
+        int samples = Math.min(pointLimit, strokes.getPointCount(stroke)) / 2;
+        if(samples == 0) {
+            vertexCount = 0;
+            sampleCount = 0;
+            return;
+        }
+        start(strokes.getX(stroke, 0), strokes.getY(stroke, 0), strokes.getX(stroke, 1));
+        for(int i = 1; i < samples; i++) {
+            add(strokes.getX(stroke, 2 * i), strokes.getY(stroke, 2 * i), strokes.getX(stroke, 2 * i + 1));
+        }
+        end();
+    }
+
+    /**
+     * @return x,y pairs of the strip; only the first 2 * getVertexCount() values are used
+     */
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    /**
+     * @return number of vertices (x,y pairs) in the strip
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * Sends the outline of the strip to sink as one closed polygon, for
+     * output that fills shapes rather than drawing triangles: the start
+     * tip, down the left side, the end tip and back up the right side.
+     */
+    public void outline(StrokeBuilder.Sink sink)
+    {
+        if(vertexCount == 0) return;
+        float[] v = vertices;
+        int last = vertexCount - 1;
+        sink.moveTo(v[0], v[1]);
+        for(int i = 1; i < last; i += 2) sink.lineTo(v[2 * i], v[2 * i + 1]);
+        sink.lineTo(v[2 * last], v[2 * last + 1]);
+        for(int i = last - 1; i > 0; i -= 2) sink.lineTo(v[2 * i], v[2 * i + 1]);
+    }
+
+    /**
+     * @param drawn vertices already drawn
+     * @return first vertex to draw so the triangles after drawn are
+     * drawn and joined on to those before, but none twice
+     */
+    public static int getJoinStart(int drawn) {
+        return Math.max(0, drawn - 2);
+    }
+
+    /**
+     * @return the samples in the StrokeStore.FLAG_PRESSURE layout;
+     * only the first 2 * getPointCount() values are used
+     */
+    public float[] getPoints() {
+        return points;
+    }
+
+    /**
+     * @return number of StrokeStore points the samples take, two per sample
+     */
+    public int getPointCount() {
+        return 2 * sampleCount;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Adds the vertex pairs along the quadratic curve from x0,y0 (width w0)
+     * to x1,y1 (width w1) with control point cx,cy; the pair at x0,y0 is
+     * already there, or the start cap is written first.
+     */
+    private void curve(float x0, float y0, float w0, float cx, float cy, float x1, float y1, float w1)
+    {
+        float length = distance(x0, y0, cx, cy) + distance(cx, cy, x1, y1); //at least the curve's
+        if(length < 1e-3f) return;
+        if(!capped) {
+            //the first curve starts where the control point is, the chord has the direction
+            float tx = cx - x0, ty = cy - y0;
+            if(tx * tx + ty * ty < 1e-6f) {
+                tx = x1 - x0;
+                ty = y1 - y0;
+            }
+            float d = (float)Math.sqrt(tx * tx + ty * ty);
+            startCap(x0, y0, radius(w0), tx / d, ty / d);
+            capped = true;
+        }
+        int steps = Math.max(1, Math.min(MAX_STEPS, (int)(length / STEP_LENGTH) + 1));
+        for(int s = 1; s <= steps; s++) {
+            float t = s / (float)steps, mt = 1 - t;
+            float x = mt * mt * x0 + 2 * mt * t * cx + t * t * x1;
+            float y = mt * mt * y0 + 2 * mt * t * cy + t * t * y1;
+            float tx = mt * (cx - x0) + t * (x1 - cx); //half the derivative
+            float ty = mt * (cy - y0) + t * (y1 - cy);
+            float d = (float)Math.sqrt(tx * tx + ty * ty);
+            if(d > 1e-6f) {
+                dirX = tx / d;
+                dirY = ty / d;
+            }
+            pair(x, y, radius(w0 + (w1 - w0) * t), dirX, dirY);
+        }
+    }
+
+    /**
+     * left and right of x,y across the direction dx,dy
+     */
+    private void pair(float x, float y, float r, float dx, float dy)
+    {
+        vertex(x - dy * r, y + dx * r);
+        vertex(x + dy * r, y - dx * r);
+    }
+
+    /**
+     * The half circle behind x,y, from its tip to the first pair: the
+     * points at the same angle on either side make the pairs.
+     */
+    private void startCap(float x, float y, float r, float dx, float dy)
+    {
+        vertex(x - dx * r, y - dy * r);
+        for(int k = 1; k < CAP_STEPS; k++) {
+            float back = CAP_COS[k] * r, side = CAP_SIN[k] * r;
+            vertex(x - dx * back - dy * side, y - dy * back + dx * side);
+            vertex(x - dx * back + dy * side, y - dy * back - dx * side);
+        }
+        pair(x, y, r, dx, dy);
+    }
+
+    /**
+     * the half circle ahead of x,y, whose pair is already there, out to its tip
+     */
+    private void endCap(float x, float y, float r, float dx, float dy)
+    {
+        for(int k = CAP_STEPS - 1; k > 0; k--) {
+            float ahead = CAP_COS[k] * r, side = CAP_SIN[k] * r;
+            vertex(x + dx * ahead - dy * side, y + dy * ahead + dx * side);
+            vertex(x + dx * ahead + dy * side, y + dy * ahead - dx * side);
+        }
+        vertex(x + dx * r, y + dy * r);
+    }
+
+    private void vertex(float x, float y)
+    {
+        if(2 * vertexCount + 2 > vertices.length) {
+            float[] bigger = new float[vertices.length * 2];
+            System.arraycopy(vertices, 0, bigger, 0, 2 * vertexCount);
+            vertices = bigger;
+        }
+        vertices[2 * vertexCount] = x;
+        vertices[2 * vertexCount + 1] = y;
+        vertexCount++;
+    }
+
+    private void addSample(float x, float y, float width)
+    {
+        if(4 * sampleCount + 4 > points.length) {
+            float[] bigger = new float[points.length * 2];
+            System.arraycopy(points, 0, bigger, 0, 4 * sampleCount);
+            points = bigger;
+        }
+        int p = 4 * sampleCount;
+        points[p] = x;
+        points[p + 1] = y;
+        points[p + 2] = width;
+        points[p + 3] = 0;
+        sampleCount++;
+    }
+
+    private static float radius(float width)
+    {
+        return Math.max(MIN_WIDTH, width) / 2;
+    }
+
+    private static float distance(float x0, float y0, float x1, float y1)
+    {
+        float dx = x1 - x0, dy = y1 - y0;
+        return (float)Math.sqrt(dx * dx + dy * dy);
+    }
+}
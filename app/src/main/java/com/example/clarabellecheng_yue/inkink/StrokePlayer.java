@@ -0,0 +1,174 @@
+package com.example.clarabellecheng_yue.inkink;
+
+/**
+ * Plays a drawing back the way it was drawn, from the timing each stroke
+ * recorded (see StrokeStore.setTiming), at 1x to 100x speed.
+ *
+ * The player works on its own copy of the drawing and uses its undo/redo
+ * size as the play head: strokes below size() are finished and have been
+ * handed to the Renderer, which draws them once into a committed image.
+ * The stroke being drawn at the current time is only replayed up to the
+ * point reached, for the caller to draw on top each frame.
+ *
+ * advance() commits strokes until a time budget is used up, so a frame at
+ * 100x never has to draw hundreds of strokes: the play head waits for the
+ * strokes still due and playback slows down instead of dropping frames.
+ * Long pen-up pauses are shortened to maxGapMillis. Strokes from before
+ * timing was recorded take UNTIMED_POINT_MILLIS per point; fills appear at once.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class StrokePlayer
+{
+    /**
+     * Draws what the player commits.
+     */
+    public interface Renderer {
+        /**
+         * draws a finished stroke onto the committed image
+         */
+        void commitStroke(StrokeStore strokes, int stroke);
+
+        /**
+         * A FLAG_DELETE entry was played: its strokes are no longer visible
+         * and have to be taken off the committed image.
+         */
+        void removeStrokes(StrokeStore strokes, int removal);
+    }
+
+    public static final float MIN_SPEED = 1;
+    public static final float MAX_SPEED = 100;
+    static final int UNTIMED_POINT_MILLIS = 8; //about a 120 Hz touchscreen
+
+    private final StrokeStore strokes = new StrokeStore(); //size() strokes have been played
+    private final int count;
+    private final long[] starts, ends; //playback milliseconds of each stroke
+    private float speed = 1;
+    private double position; //playback milliseconds
+
+    /**
+     * @param drawing drawing to play, copied (its undone strokes are not)
+     * @param maxGapMillis longest pause between two strokes, longer ones are shortened
+     */
+    public StrokePlayer(StrokeStore drawing, long maxGapMillis)
+    {
+        strokes.copyFrom(drawing);
+        count = strokes.size();
+        starts = new long[count];
+        ends = new long[count];
+        long time = 0;
+        for(int i = 0; i < count; i++) {
+            time += Math.min(strokes.getGapMillis(i), maxGapMillis);
+            starts[i] = time;
+            long duration = strokes.getDurationMillis(i);
+            if(duration == 0 && !strokes.isDelete(i) && !strokes.isFill(i)) {
+                duration = UNTIMED_POINT_MILLIS * (long)strokes.getSampleCount(i);
+            }
+            time += duration;
+            ends[i] = time;
+        }
+        while(strokes.undo()) {
+            //back to the empty page
+        }
+    }
+
+    /**
+     * @param speed 1 for real time, clamped to MIN_SPEED..MAX_SPEED
+     */
+    public void setSpeed(float speed) {
+        this.speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @return the copy being played; strokes below size() have been committed
+     */
+    public StrokeStore getStrokes() {
+        return strokes;
+    }
+
+    /**
+     * @return playback length at 1x, in milliseconds
+     */
+    public long getDurationMillis() {
+        return count == 0 ? 0 : ends[count - 1];
+    }
+
+    public long getPositionMillis() {
+        return (long)position;
+    }
+
+    /**
+     * @return true once every stroke has been committed
+     */
+    public boolean isFinished() {
+        return strokes.size() == count;
+    }
+
+    /**
+     * Moves the play head and commits the strokes finished by then,
+     * as many as fit in the budget (always at least one that is due).
+     * @param elapsedMillis real time since the last call
+     * @param budgetNanos time this call may spend committing, Long.MAX_VALUE for no limit
+     * @param renderer draws the committed strokes
+     * @return number of strokes committed
+     */
+    public int advance(long elapsedMillis, long budgetNanos, Renderer renderer)
+    {
+        position = Math.min(getDurationMillis(), position + elapsedMillis * (double)speed);
+        long deadline = System.nanoTime() + budgetNanos;
+        int committed = 0;
+        while(strokes.size() < count && ends[strokes.size()] <= position) {
+            if(committed > 0 && System.nanoTime() - deadline >= 0) {
+                //out of time: hold the play head at the strokes still due
+                position = ends[strokes.size()];
+                break;
+            }
+            strokes.redo();
+            int stroke = strokes.size() - 1;
+            if(strokes.isDelete(stroke)) renderer.removeStrokes(strokes, stroke);
+            else renderer.commitStroke(strokes, stroke);
+            committed++;
+        }
+        return committed;
+    }
+
+    /**
+     * @return the stroke being drawn at the play head, or -1 if there is none
+     */
+    public int getPartialStroke()
+    {
+        int stroke = strokes.size();
+        if(stroke == count || starts[stroke] > position || strokes.isDelete(stroke)) return -1;
+        return stroke;
+    }
+
+    /**
+     * @return points of getPartialStroke() drawn by the play head, 0 if there is none
+     */
+    public int getPartialPoints()
+    {
+        int stroke = getPartialStroke();
+        if(stroke < 0) return 0;
+        int points = strokes.getPointCount(stroke);
+        long duration = ends[stroke] - starts[stroke];
+        if(duration <= 0) return points;
+        //accepted points are about TOUCH_TOLERANCE apart, so even shares of
+        //the time keep the drawing speed roughly as it was
+        return Math.min(points, 1 + (int)((points - 1) * (position - starts[stroke]) / duration));
+    }
+
+    /**
+     * Sends the drawn part of getPartialStroke() to sink.
+     * @return false if there is no stroke in progress
+     */
+    public boolean replayPartial(StrokeBuilder.Sink sink)
+    {
+        int stroke = getPartialStroke();
+        if(stroke < 0) return false;
+        strokes.replay(stroke, sink, getPartialPoints());
+        return true;
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.clarabellecheng_yue.inkink;
+
+/**
+ * Fits a finished stroke with as few cubic Bezier segments as an error
+ * bound allows (Schneider's algorithm: least squares fit of each segment,
+ * a few Newton steps on the parameters, and a split at the worst point
+ * when the fit is still too far off).
+ * The fit follows the curve StrokeBuilder drew: its start, the midpoints
+ * between accepted points the quadratic curves pass through, and its end.
+ * Output is x0,y0 followed by c1, c2 and end point of every segment, the
+ * StrokeStore.FLAG_CUBIC layout. Scratch arrays are reused, so one
+ * instance should only be used by one thread at a time.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class StrokeSimplifier
+{
+    private static final int MAX_NEWTON_STEPS = 4;
+
+    private float[] samples = new float[256]; //x,y pairs the curve passes through
+    private double[] u = new double[128]; //parameter of each sample on the current segment
+    private float[] out = new float[256];
+    private int outCount; //points in out
+    private double errorSq;
+    private double lastMaxError; //squared, of the last maxError()
+
+    private final double[] bezier = new double[8]; //p0, c1, c2, p3 of the segment being fitted
+
+    /**
+     * Fits the curve StrokeBuilder drew through accepted points.
+     * @param xy accepted x,y pairs, as in StrokeBuilder.getPoints()
+     * @param count number of points
+     * @param error largest distance in pixels the fit may stray from the curve
+     * @return number of points written to getOutput(), 1 + 3 per segment;
+     *         0 if the stroke has fewer than 3 points
+     */
+    public int fit(float[] xy, int count, float error)
+    {
+        outCount = 0;
+        if(count < 3) return 0;
+
+        //start, the midpoints the quadratic curves end on, and the last point
+        int n = count + 1;
+        if(2 * n > samples.length) samples = new float[2 * n];
+        if(n > u.length) u = new double[n];
+        samples[0] = xy[0];
+        samples[1] = xy[1];
+        for(int i = 1; i < count; i++) {
+            samples[2 * i] = (xy[2 * i - 2] + xy[2 * i]) / 2;
+            samples[2 * i + 1] = (xy[2 * i - 1] + xy[2 * i + 1]) / 2;
+        }
+        samples[2 * count] = xy[2 * count - 2];
+        samples[2 * count + 1] = xy[2 * count - 1];
+
+        errorSq = (double)error * error;
+        addPoint(samples[0], samples[1]);
+        double t1x = samples[2] - samples[0], t1y = samples[3] - samples[1];
+        double t2x = samples[2 * n - 4] - samples[2 * n - 2], t2y = samples[2 * n - 3] - samples[2 * n - 1];
+        double l1 = Math.hypot(t1x, t1y), l2 = Math.hypot(t2x, t2y);
+        fitCubic(0, n - 1, t1x / l1, t1y / l1, t2x / l2, t2y / l2);
+        return outCount;
+    }
+
+    /**
+     * @return fitted points of the last fit(); only the first 2 * (returned count) values are used
+     */
+    public float[] getOutput() {
+        return out;
+    }
+
+    /**
+     * @return number of segments a FLAG_CUBIC stroke of count points has
+     */
+    public static int cubicSegments(int count) {
+        return count < 1 ? 0 : (count - 1) / 3;
+    }
+
+    /**
+     * Fits samples first..last with tangents t1 (leaving first) and t2
+     * (leaving last backwards), splitting until every piece is in bound.
+     */
+    private void fitCubic(int first, int last, double t1x, double t1y, double t2x, double t2y)
+    {
+        if(last - first == 1) {
+            //two points, tangents a third of the way
+            double d = distance(first, last) / 3;
+            setBezier(first, last, t1x * d, t1y * d, t2x * d, t2y * d);
+            emit();
+            return;
+        }
+
+        chordLengthParameterize(first, last);
+        generateBezier(first, last, t1x, t1y, t2x, t2y);
+        int split = maxError(first, last);
+        if(split < 0) {
+            emit();
+            return;
+        }
+        if(lastMaxError < errorSq * 4) {
+            //close, better parameters may be enough
+            for(int i = 0; i < MAX_NEWTON_STEPS; i++) {
+                reparameterize(first, last);
+                generateBezier(first, last, t1x, t1y, t2x, t2y);
+                split = maxError(first, last);
+                if(split < 0) {
+                    emit();
+                    return;
+                }
+            }
+        }
+
+        //split at the worst point, with a tangent shared by both halves
+        double cx = samples[2 * split - 2] - samples[2 * split + 2];
+        double cy = samples[2 * split - 1] - samples[2 * split + 3];
+        double cl = Math.hypot(cx, cy);
+        if(cl == 0) {
+            cx = samples[2 * split - 2] - samples[2 * split];
+            cy = samples[2 * split - 1] - samples[2 * split + 1];
+            cl = Math.hypot(cx, cy);
+            if(cl == 0) cl = 1;
+        }
+        cx /= cl;
+        cy /= cl;
+        fitCubic(first, split, t1x, t1y, cx, cy);
+        fitCubic(split, last, -cx, -cy, t2x, t2y);
+    }
+
+    /**
+     * @return index of the sample farthest from the current bezier,
+     *         or -1 if every sample is within the error bound
+     */
+    private int maxError(int first, int last)
+    {
+        double max = 0;
+        int split = (first + last + 1) / 2;
+        for(int i = first + 1; i < last; i++) {
+            double t = u[i - first];
+            double dx = evaluate(0, t) - samples[2 * i];
+            double dy = evaluate(1, t) - samples[2 * i + 1];
+            double d = dx * dx + dy * dy;
+            if(d >= max) {
+                max = d;
+                split = i;
+            }
+        }
+        lastMaxError = max;
+        return max <= errorSq ? -1 : split;
+    }
+
+    private void chordLengthParameterize(int first, int last)
+    {
+        u[0] = 0;
+        for(int i = first + 1; i <= last; i++) {
+            u[i - first] = u[i - first - 1] + distance(i - 1, i);
+        }
+        double total = u[last - first];
+        for(int i = first + 1; i <= last; i++) {
+            u[i - first] = total == 0 ? 1 : u[i - first] / total;
+        }
+    }
+
+    /**
+     * one Newton-Raphson step towards the closest parameter for every sample
+     */
+    private void reparameterize(int first, int last)
+    {
+        for(int i = first; i <= last; i++) {
+            double t = u[i - first];
+            double qx = evaluate(0, t) - samples[2 * i];
+            double qy = evaluate(1, t) - samples[2 * i + 1];
+            double d1x = derivative(0, t), d1y = derivative(1, t);
+            double d2x = secondDerivative(0, t), d2y = secondDerivative(1, t);
+            double numerator = qx * d1x + qy * d1y;
+            double denominator = d1x * d1x + d1y * d1y + qx * d2x + qy * d2y;
+            if(denominator != 0) u[i - first] = t - numerator / denominator;
+        }
+    }
+
+    /**
+     * Least squares lengths for the two tangents, falling back to a
+     * third of the chord when the system is degenerate.
+     */
+    private void generateBezier(int first, int last, double t1x, double t1y, double t2x, double t2y)
+    {
+        double c00 = 0, c01 = 0, c11 = 0, x0 = 0, x1 = 0;
+        double p0x = samples[2 * first], p0y = samples[2 * first + 1];
+        double p3x = samples[2 * last], p3y = samples[2 * last + 1];
+        for(int i = first; i <= last; i++) {
+            double t = u[i - first];
+            double mt = 1 - t;
+            double b0 = mt * mt * mt, b1 = 3 * t * mt * mt, b2 = 3 * t * t * mt, b3 = t * t * t;
+            double a1x = t1x * b1, a1y = t1y * b1;
+            double a2x = t2x * b2, a2y = t2y * b2;
+            c00 += a1x * a1x + a1y * a1y;
+            c01 += a1x * a2x + a1y * a2y;
+            c11 += a2x * a2x + a2y * a2y;
+            double tx = samples[2 * i] - (p0x * (b0 + b1) + p3x * (b2 + b3));
+            double ty = samples[2 * i + 1] - (p0y * (b0 + b1) + p3y * (b2 + b3));
+            x0 += a1x * tx + a1y * ty;
+            x1 += a2x * tx + a2y * ty;
+        }
+        double det = c00 * c11 - c01 * c01;
+        double alpha1 = det == 0 ? 0 : (x0 * c11 - x1 * c01) / det;
+        double alpha2 = det == 0 ? 0 : (c00 * x1 - c01 * x0) / det;
+        double chord = distance(first, last);
+        double epsilon = 1e-6 * chord;
+        if(alpha1 < epsilon || alpha2 < epsilon) {
+            alpha1 = chord / 3;
+            alpha2 = chord / 3;
+        }
+        setBezier(first, last, t1x * alpha1, t1y * alpha1, t2x * alpha2, t2y * alpha2);
+    }
+
+    private void setBezier(int first, int last, double d1x, double d1y, double d2x, double d2y)
+    {
+        bezier[0] = samples[2 * first];
+        bezier[1] = samples[2 * first + 1];
+        bezier[6] = samples[2 * last];
+        bezier[7] = samples[2 * last + 1];
+        bezier[2] = bezier[0] + d1x;
+        bezier[3] = bezier[1] + d1y;
+        bezier[4] = bezier[6] + d2x;
+        bezier[5] = bezier[7] + d2y;
+    }
+
+    private void emit()
+    {
+        addPoint((float)bezier[2], (float)bezier[3]);
+        addPoint((float)bezier[4], (float)bezier[5]);
+        addPoint((float)bezier[6], (float)bezier[7]);
+    }
+
+    /**
+     * @param axis 0 for x, 1 for y
+     */
+    private double evaluate(int axis, double t)
+    {
+        double mt = 1 - t;
+        return mt * mt * mt * bezier[axis] + 3 * t * mt * mt * bezier[2 + axis]
+                + 3 * t * t * mt * bezier[4 + axis] + t * t * t * bezier[6 + axis];
+    }
+
+    private double derivative(int axis, double t)
+    {
+        double mt = 1 - t;
+        return 3 * mt * mt * (bezier[2 + axis] - bezier[axis])
+                + 6 * t * mt * (bezier[4 + axis] - bezier[2 + axis])
+                + 3 * t * t * (bezier[6 + axis] - bezier[4 + axis]);
+    }
+
+    private double secondDerivative(int axis, double t)
+    {
+        return 6 * (1 - t) * (bezier[4 + axis] - 2 * bezier[2 + axis] + bezier[axis])
+                + 6 * t * (bezier[6 + axis] - 2 * bezier[4 + axis] + bezier[2 + axis]);
+    }
+
+    private double distance(int i, int j)
+    {
+        return Math.hypot(samples[2 * j] - samples[2 * i], samples[2 * j + 1] - samples[2 * i + 1]);
+    }
+
+    private void addPoint(float x, float y)
+    {
+        if(2 * outCount + 2 > out.length) {
+            float[] bigger = new float[out.length * 2];
+            System.arraycopy(out, 0, bigger, 0, 2 * outCount);
+            out = bigger;
+        }
+        out[2 * outCount] = x;
+        out[2 * outCount + 1] = y;
+        outCount++;
+    }
+}
@@ -0,0 +1,723 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * All strokes of a drawing packed into two growable primitive arrays:
+ * a fixed size int header per stroke and the accepted x,y points of
+ * every stroke one after another. No Path is kept per stroke; DrawingView
+ * rebuilds one through replay() only when a stroke has to be drawn again.
+ *
+ * Undo and redo just move the size: undone strokes stay at the end of the
+ * arrays until a new stroke replaces them.
+ *
+ * Removing whole strokes (the object eraser) is a stroke too: a FLAG_DELETE
+ * entry whose points are (stroke index, 0) pairs. The strokes it names are
+ * hidden while it is part of the drawing, so undo and redo of a removal are
+ * the same size moves and the document format needs no extra record.
+ *
+ * A FLAG_CUBIC stroke has been simplified (see StrokeSimplifier): its
+ * points are a start point and then c1, c2, end of each cubic segment.
+ * Its points are rewritten in place by replacePoints(), and the space it
+ * frees is reclaimed once a good part of the points array is unused.
+ *
+ * A FLAG_FILL stroke is a bucket fill (see FloodFill): its points are the
+ * top left and bottom right corner of each rectangle it covers, and it is
+ * replayed as closed rectangles, to be drawn with a fill paint.
+ *
+ * A FLAG_PRESSURE stroke has a width at every sample (see BrushDynamics):
+ * each sample takes two points, x,y and then width,0. replay() sends its
+ * centre line; it is drawn as the triangle strip StrokeMesh builds.
+ *
+ * Each stroke also records when it was drawn: the pen-up time before it
+ * and how long it took, so a drawing can be played back (StrokePlayer).
+ * Drawings from before version 3 read with 0 for both.
+ *
+ * And the layer it was drawn on (see LayerStack), by layer id; drawings
+ * from before version 4 have every stroke on layer 0.
+ *
+ * The same layout is the binary document format (little endian):
+ * magic, version, header ints per stroke, stroke count, point float count,
+ * then every header and then every point, written and read with one bulk copy.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class StrokeStore
+{
+    public static final int MAGIC = 0x214B4E49; //"INK!" in file order
+    public static final int VERSION = 6; //2: FLAG_DELETE and FLAG_CUBIC strokes, 3: timing, 4: layers, 5: FLAG_FILL, 6: FLAG_PRESSURE
+
+    //header fields, HEADER_INTS ints per stroke
+    static final int H_OFFSET = 0; //index of the first x in points
+    static final int H_COUNT = 1; //number of points
+    static final int H_COLOR = 2;
+    static final int H_WIDTH = 3; //Float.floatToIntBits of the width
+    static final int H_FLAGS = 4;
+    static final int H_GAP = 5; //milliseconds since the stroke before ended
+    static final int H_DURATION = 6; //milliseconds from finger down to up
+    static final int H_LAYER = 7; //id of the layer the stroke is on
+    static final int HEADER_INTS = 8;
+    static final int MIN_HEADER_INTS = 5; //version 1 and 2
+
+    static final int FILE_HEADER_INTS = 5;
+
+    public static final int FLAG_ERASE = 1;
+    public static final int FLAG_DELETE = 2; //removes the strokes listed in its points
+    public static final int FLAG_CUBIC = 4; //points are cubic Bezier segments
+    public static final int FLAG_FILL = 8; //points are corners of filled rectangles
+    public static final int FLAG_PRESSURE = 16; //points alternate x,y and width,0
+
+    private int[] headers = new int[64 * HEADER_INTS];
+    private int[] deletedBy = new int[64]; //per stroke, 1 + the FLAG_DELETE entry removing it, or 0
+    private float[] points = new float[4096];
+
+    private int size; //strokes in the drawing
+    private int total; //strokes in the drawing plus undone ones
+    private int pointsUsed; //floats used by all total strokes
+
+    /**
+     * Appends a stroke, dropping any undone strokes.
+     * @param xy accepted x,y pairs
+     * @param count number of points in xy
+     * @param color ARGB color
+     * @param width stroke width in pixels
+     * @param flags FLAG_ values
+     * @return index of the new stroke
+     */
+    public int add(float[] xy, int count, int color, float width, int flags)
+    {
+        discardRedo();
+        if((flags & FLAG_DELETE) != 0 && !validDelete(headers, xy, 0, count, size)) {
+            throw new IllegalArgumentException("removal of an invalid stroke");
+        }
+        ensureHeaders(size + 1);
+        ensurePoints(pointsUsed + 2 * count);
+
+        int h = size * HEADER_INTS;
+        headers[h + H_OFFSET] = pointsUsed;
+        headers[h + H_COUNT] = count;
+        headers[h + H_COLOR] = color;
+        headers[h + H_WIDTH] = Float.floatToIntBits(width);
+        headers[h + H_FLAGS] = flags;
+        headers[h + H_GAP] = 0;
+        headers[h + H_DURATION] = 0;
+        headers[h + H_LAYER] = 0;
+        System.arraycopy(xy, 0, points, pointsUsed, 2 * count);
+        pointsUsed += 2 * count;
+        deletedBy[size] = 0;
+
+        size++;
+        total = size;
+        if((flags & FLAG_DELETE) != 0) markDeleted(size - 1, size);
+        return size - 1;
+    }
+
+    /**
+     * Appends a FLAG_DELETE entry removing whole strokes, dropping any undone strokes.
+     * Undoing it brings the strokes back.
+     * @param targets indexes of visible strokes
+     * @return index of the new entry
+     */
+    public int addDelete(StrokeIndex.IntList targets)
+    {
+        float[] xy = new float[2 * targets.size()];
+        for(int i = 0; i < targets.size(); i++) {
+            xy[2 * i] = targets.get(i); //exact below 2^24 strokes
+        }
+        return add(xy, targets.size(), 0, 0, FLAG_DELETE);
+    }
+
+    /**
+     * @return true if a stroke was undone
+     */
+    public boolean undo()
+    {
+        if(size == 0) return false;
+        size--;
+        return true;
+    }
+
+    /**
+     * @return true if an undone stroke came back
+     */
+    public boolean redo()
+    {
+        if(size == total) return false;
+        size++;
+        return true;
+    }
+
+    /**
+     * forgets the undone strokes, their points are reused by the next add
+     */
+    public void discardRedo()
+    {
+        //thrown away removals no longer hide anything
+        for(int i = size; i < total; i++) {
+            if(isDelete(i)) markDeleted(i, 0);
+        }
+        total = size;
+        pointsUsed = size == 0 ? 0 : end(size - 1);
+    }
+
+    /**
+     * removes every stroke, keeps the arrays for reuse
+     */
+    public void clear()
+    {
+        size = 0;
+        total = 0;
+        pointsUsed = 0;
+    }
+
+    /**
+     * Makes this store a copy of other's drawing (not its undone strokes).
+     * @param other store to copy
+     */
+    public void copyFrom(StrokeStore other)
+    {
+        int floats = other.size == 0 ? 0 : other.end(other.size - 1);
+        clear();
+        ensureHeaders(other.size);
+        ensurePoints(floats);
+        System.arraycopy(other.headers, 0, headers, 0, other.size * HEADER_INTS);
+        System.arraycopy(other.points, 0, points, 0, floats);
+        size = other.size;
+        total = other.size;
+        pointsUsed = floats;
+        markAllDeleted();
+    }
+
+    /**
+     * @return number of strokes in the drawing
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of undone strokes that can be redone
+     */
+    public int redoCount() {
+        return total - size;
+    }
+
+    public int getPointCount(int stroke) {
+        return headers[stroke * HEADER_INTS + H_COUNT];
+    }
+
+    public float getX(int stroke, int point) {
+        return points[headers[stroke * HEADER_INTS + H_OFFSET] + 2 * point];
+    }
+
+    public float getY(int stroke, int point) {
+        return points[headers[stroke * HEADER_INTS + H_OFFSET] + 2 * point + 1];
+    }
+
+    public int getColor(int stroke) {
+        return headers[stroke * HEADER_INTS + H_COLOR];
+    }
+
+    public float getWidth(int stroke) {
+        return Float.intBitsToFloat(headers[stroke * HEADER_INTS + H_WIDTH]);
+    }
+
+    public int getFlags(int stroke) {
+        return headers[stroke * HEADER_INTS + H_FLAGS];
+    }
+
+    public boolean isErase(int stroke) {
+        return (getFlags(stroke) & FLAG_ERASE) != 0;
+    }
+
+    public boolean isDelete(int stroke) {
+        return (getFlags(stroke) & FLAG_DELETE) != 0;
+    }
+
+    public boolean isCubic(int stroke) {
+        return (getFlags(stroke) & FLAG_CUBIC) != 0;
+    }
+
+    public boolean isFill(int stroke) {
+        return (getFlags(stroke) & FLAG_FILL) != 0;
+    }
+
+    public boolean isPressure(int stroke) {
+        return (getFlags(stroke) & FLAG_PRESSURE) != 0;
+    }
+
+    /**
+     * @return number of positions the stroke went through: its points,
+     * or half of them for a FLAG_PRESSURE stroke
+     */
+    public int getSampleCount(int stroke)
+    {
+        int count = getPointCount(stroke);
+        return isPressure(stroke) ? count / 2 : count;
+    }
+
+    /**
+     * @return number of curves replay() sends for the stroke
+     */
+    public int getSegmentCount(int stroke)
+    {
+        int count = getPointCount(stroke);
+        if(isFill(stroke)) return 2 * count; //four lines per rectangle
+        if(isPressure(stroke)) return count / 2;
+        return isCubic(stroke) ? StrokeSimplifier.cubicSegments(count) : count;
+    }
+
+    /**
+     * @param stroke index of a stroke, undone ones included
+     * @return true if the stroke still holds exactly these points
+     */
+    public boolean samePoints(int stroke, float[] xy, int count)
+    {
+        if(stroke >= total || getPointCount(stroke) != count) return false;
+        int offset = headers[stroke * HEADER_INTS + H_OFFSET];
+        for(int i = 0; i < 2 * count; i++) {
+            if(points[offset + i] != xy[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Rewrites the points of a stroke with no more points than it has,
+     * e.g. with its simplified version.
+     * @param stroke index of a stroke, undone ones included
+     * @param xy new x,y pairs
+     * @param count number of points, at most getPointCount(stroke)
+     * @param flags new FLAG_ values
+     */
+    public void replacePoints(int stroke, float[] xy, int count, int flags)
+    {
+        int h = stroke * HEADER_INTS;
+        if(stroke >= total || count > headers[h + H_COUNT]) {
+            throw new IllegalArgumentException("cannot grow stroke " + stroke);
+        }
+        if(((flags ^ headers[h + H_FLAGS]) & FLAG_DELETE) != 0) {
+            throw new IllegalArgumentException("cannot change a removal");
+        }
+        System.arraycopy(xy, 0, points, headers[h + H_OFFSET], 2 * count);
+        headers[h + H_COUNT] = count;
+        headers[h + H_FLAGS] = flags;
+
+        int live = 0;
+        for(int i = 0; i < total; i++) {
+            live += 2 * headers[i * HEADER_INTS + H_COUNT];
+        }
+        if(pointsUsed - live > live) compact();
+    }
+
+    /**
+     * Records when a stroke was drawn.
+     * @param stroke index of a stroke, undone ones included
+     * @param gapMillis time between the stroke before ending and this one starting
+     * @param durationMillis time from finger down to finger up
+     */
+    public void setTiming(int stroke, int gapMillis, int durationMillis)
+    {
+        int h = stroke * HEADER_INTS;
+        headers[h + H_GAP] = Math.max(0, gapMillis);
+        headers[h + H_DURATION] = Math.max(0, durationMillis);
+    }
+
+    /**
+     * @return milliseconds between the stroke before ending and this one starting, 0 if unknown
+     */
+    public int getGapMillis(int stroke) {
+        return headers[stroke * HEADER_INTS + H_GAP];
+    }
+
+    /**
+     * @return milliseconds the stroke took to draw, 0 if unknown
+     */
+    public int getDurationMillis(int stroke) {
+        return headers[stroke * HEADER_INTS + H_DURATION];
+    }
+
+    /**
+     * Moves a stroke to another layer.
+     * @param stroke index of a stroke, undone ones included
+     * @param layer id of the layer
+     */
+    public void setLayer(int stroke, int layer) {
+        headers[stroke * HEADER_INTS + H_LAYER] = layer;
+    }
+
+    /**
+     * @return id of the layer the stroke is on, 0 unless setLayer was called
+     */
+    public int getLayer(int stroke) {
+        return headers[stroke * HEADER_INTS + H_LAYER];
+    }
+
+    /**
+     * @return true if the stroke draws something: it is not a FLAG_DELETE
+     * entry and no entry in the drawing removed it
+     */
+    public boolean isVisible(int stroke)
+    {
+        if(isDelete(stroke)) return false;
+        int by = deletedBy[stroke];
+        return by == 0 || by > size;
+    }
+
+    /**
+     * @return lowest stroke removed by a FLAG_DELETE entry in [from, to), or to if none
+     */
+    public int lowestDeleted(int from, int to)
+    {
+        int lowest = to;
+        for(int i = from; i < to; i++) {
+            if(!isDelete(i)) continue;
+            int offset = headers[i * HEADER_INTS + H_OFFSET];
+            for(int p = 0; p < getPointCount(i); p++) {
+                lowest = Math.min(lowest, (int)points[offset + 2 * p]);
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * @param flag one of the FLAG_ values
+     * @return true if any stroke of the drawing has the flag
+     */
+    public boolean hasFlag(int flag)
+    {
+        for(int i = 0; i < size; i++) {
+            if((headers[i * HEADER_INTS + H_FLAGS] & flag) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Computes the area a stroke can touch: the box of its points
+     * grown by half the stroke width (the widest sample's for a
+     * FLAG_PRESSURE stroke). The curves never leave the box
+     * of their points, so this is never too small.
+     * A FLAG_DELETE entry covers the strokes it removes.
+     * @param stroke index of the stroke
+     * @param out receives left, top, right, bottom
+     */
+    public void getBounds(int stroke, float[] out)
+    {
+        int h = stroke * HEADER_INTS;
+        int offset = headers[h + H_OFFSET];
+        int count = headers[h + H_COUNT];
+        if(isDelete(stroke)) {
+            float left = Float.POSITIVE_INFINITY, top = Float.POSITIVE_INFINITY;
+            float right = Float.NEGATIVE_INFINITY, bottom = Float.NEGATIVE_INFINITY;
+            for(int i = 0; i < count; i++) {
+                getBounds((int)points[offset + 2 * i], out);
+                left = Math.min(left, out[0]);
+                top = Math.min(top, out[1]);
+                right = Math.max(right, out[2]);
+                bottom = Math.max(bottom, out[3]);
+            }
+            out[0] = left;
+            out[1] = top;
+            out[2] = right;
+            out[3] = bottom;
+            return;
+        }
+        float left = Float.POSITIVE_INFINITY, top = Float.POSITIVE_INFINITY;
+        float right = Float.NEGATIVE_INFINITY, bottom = Float.NEGATIVE_INFINITY;
+        boolean pressure = (headers[h + H_FLAGS] & FLAG_PRESSURE) != 0;
+        int step = pressure ? 2 : 1;
+        float width = pressure ? 0 : getWidth(stroke);
+        for(int i = 0; i + step <= count; i += step) {
+            float x = points[offset + 2 * i];
+            float y = points[offset + 2 * i + 1];
+            if(x < left) left = x;
+            if(x > right) right = x;
+            if(y < top) top = y;
+            if(y > bottom) bottom = y;
+            if(pressure) width = Math.max(width, points[offset + 2 * i + 2]);
+        }
+        float pad = width / 2;
+        out[0] = left - pad;
+        out[1] = top - pad;
+        out[2] = right + pad;
+        out[3] = bottom + pad;
+    }
+
+    /**
+     * Sends the curves of a stroke to sink, exactly as StrokeBuilder
+     * produced them while the stroke was drawn, or its cubic segments
+     * once it has been simplified.
+     * @param stroke index of the stroke
+     * @param sink receives the curves
+     */
+    public void replay(int stroke, StrokeBuilder.Sink sink)
+    {
+        replay(stroke, sink, getPointCount(stroke));
+    }
+
+    /**
+     * Sends the curves of the start of a stroke to sink, as far as it
+     * had been drawn once its first points were down. A simplified stroke
+     * stops at the last whole cubic segment within those points, a fill
+     * at the last whole rectangle, a FLAG_PRESSURE stroke at the last
+     * whole sample (its widths are not sent).
+     * @param stroke index of the stroke
+     * @param sink receives the curves
+     * @param pointLimit number of points to replay, at most getPointCount(stroke)
+     */
+    public void replay(int stroke, StrokeBuilder.Sink sink, int pointLimit)
+    {
+        int h = stroke * HEADER_INTS;
+        int offset = headers[h + H_OFFSET];
+        int count = Math.min(pointLimit, headers[h + H_COUNT]);
+        if(count <= 0) return;
+
+        if((headers[h + H_FLAGS] & FLAG_FILL) != 0) {
+            for(int i = 0; i + 1 < count; i += 2) {
+                int p = offset + 2 * i;
+                float left = points[p], top = points[p + 1], right = points[p + 2], bottom = points[p + 3];
+                sink.moveTo(left, top);
+                sink.lineTo(right, top);
+                sink.lineTo(right, bottom);
+                sink.lineTo(left, bottom);
+            }
+            return;
+        }
+        //a FLAG_PRESSURE sample is two points, the second its width
+        int step = 1;
+        if((headers[h + H_FLAGS] & FLAG_PRESSURE) != 0) {
+            step = 2;
+            count /= 2;
+            if(count == 0) return;
+        }
+        float mX = points[offset];
+        float mY = points[offset + 1];
+        sink.moveTo(mX, mY);
+        if((headers[h + H_FLAGS] & FLAG_CUBIC) != 0) {
+            for(int i = 1; i + 2 < count; i += 3) {
+                int p = offset + 2 * i;
+                sink.cubicTo(points[p], points[p + 1], points[p + 2], points[p + 3], points[p + 4], points[p + 5]);
+            }
+            return;
+        }
+        for(int i = 1; i < count; i++) {
+            float x = points[offset + 2 * step * i];
+            float y = points[offset + 2 * step * i + 1];
+            sink.quadTo(mX, mY, (x + mX) / 2, (y + mY) / 2);
+            mX = x;
+            mY = y;
+        }
+        sink.lineTo(mX, mY);
+    }
+
+    /**
+     * @return bytes held by the backing arrays
+     */
+    public long getCapacityBytes()
+    {
+        return 4L * headers.length + 4L * points.length;
+    }
+
+    /**
+     * @return bytes the drawing takes in the binary format
+     */
+    public int getDocumentBytes()
+    {
+        int floats = size == 0 ? 0 : end(size - 1);
+        return 4 * (FILE_HEADER_INTS + size * HEADER_INTS + floats);
+    }
+
+    /**
+     * Writes the drawing (not the undone strokes) in the binary format.
+     * @param out channel to write to, not closed
+     */
+    public void write(WritableByteChannel out) throws IOException
+    {
+        int floats = size == 0 ? 0 : end(size - 1);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(getDocumentBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(HEADER_INTS).putInt(size).putInt(floats);
+
+        IntBuffer ints = buffer.asIntBuffer();
+        ints.put(headers, 0, size * HEADER_INTS);
+        buffer.position(buffer.position() + 4 * size * HEADER_INTS);
+        FloatBuffer floatBuffer = buffer.asFloatBuffer();
+        floatBuffer.put(points, 0, floats);
+
+        buffer.position(0);
+        while(buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Replaces the drawing with one read from the binary format.
+     * Older versions with fewer header ints are accepted, missing
+     * fields read as 0; newer ones with more have them skipped.
+     * The file is checked before anything is replaced, so on an
+     * error the drawing is left as it was.
+     * @param in channel positioned at the magic number, not closed
+     * @throws IOException on a read error or if the data is not a drawing
+     */
+    public void read(ReadableByteChannel in) throws IOException
+    {
+        ByteBuffer fileHeader = ByteBuffer.allocate(4 * FILE_HEADER_INTS).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(in, fileHeader);
+        if(fileHeader.getInt() != MAGIC) throw new IOException("not an InkInk drawing");
+        int version = fileHeader.getInt();
+        if(version < 1 || version > VERSION) throw new IOException("unsupported version " + version);
+        int headerInts = fileHeader.getInt();
+        int strokes = fileHeader.getInt();
+        int floats = fileHeader.getInt();
+        if(headerInts < MIN_HEADER_INTS || strokes < 0 || floats < 0) {
+            throw new IOException("corrupt drawing header");
+        }
+        //a corrupt header must not make us allocate gigabytes, or overflow
+        long bodyBytes = 4L * ((long)strokes * headerInts + floats);
+        long available = Integer.MAX_VALUE;
+        if(in instanceof FileChannel) {
+            FileChannel file = (FileChannel)in;
+            available = Math.min(available, file.size() - file.position());
+        }
+        if(bodyBytes > available) {
+            throw new IOException("corrupt drawing header: " + bodyBytes + " bytes of strokes");
+        }
+
+        ByteBuffer body = ByteBuffer.allocateDirect((int)bodyBytes).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(in, body);
+
+        //read and check into new arrays, the drawing is only replaced once they are valid
+        int[] readHeaders = new int[Math.max(strokes, 64) * HEADER_INTS];
+        float[] readPoints = new float[Math.max(floats, 4096)];
+        IntBuffer ints = body.asIntBuffer();
+        if(headerInts == HEADER_INTS) {
+            ints.get(readHeaders, 0, strokes * HEADER_INTS);
+        }
+        else {
+            int copied = Math.min(headerInts, HEADER_INTS);
+            for(int i = 0; i < strokes; i++) {
+                ints.position(i * headerInts);
+                ints.get(readHeaders, i * HEADER_INTS, copied);
+            }
+        }
+        body.position(4 * strokes * headerInts);
+        body.asFloatBuffer().get(readPoints, 0, floats);
+
+        for(int i = 0; i < strokes; i++) {
+            int h = i * HEADER_INTS;
+            int offset = readHeaders[h + H_OFFSET];
+            int count = readHeaders[h + H_COUNT];
+            if(offset < 0 || count < 0 || offset + 2L * count > floats
+                    || (readHeaders[h + H_FLAGS] & FLAG_DELETE) != 0
+                    && !validDelete(readHeaders, readPoints, offset, count, i)) {
+                throw new IOException("corrupt stroke " + i);
+            }
+        }
+
+        headers = readHeaders;
+        points = readPoints;
+        if(deletedBy.length < readHeaders.length / HEADER_INTS) {
+            deletedBy = new int[readHeaders.length / HEADER_INTS];
+        }
+        size = strokes;
+        total = strokes;
+        pointsUsed = floats;
+        markAllDeleted();
+    }
+
+    private static void readFully(ReadableByteChannel in, ByteBuffer buffer) throws IOException
+    {
+        while(buffer.hasRemaining()) {
+            if(in.read(buffer) < 0) throw new EOFException("drawing is truncated");
+        }
+        buffer.flip();
+    }
+
+    /**
+     * moves every stroke's points down over the space replacePoints() freed
+     */
+    private void compact()
+    {
+        int used = 0;
+        for(int i = 0; i < total; i++) {
+            int h = i * HEADER_INTS;
+            int floats = 2 * headers[h + H_COUNT];
+            //strokes are stored in order, so this never overwrites a later one
+            System.arraycopy(points, headers[h + H_OFFSET], points, used, floats);
+            headers[h + H_OFFSET] = used;
+            used += floats;
+        }
+        pointsUsed = used;
+    }
+
+    private int end(int stroke)
+    {
+        int h = stroke * HEADER_INTS;
+        return headers[h + H_OFFSET] + 2 * headers[h + H_COUNT];
+    }
+
+    /**
+     * @param headers headers of the strokes before the entry
+     * @param xy points of a FLAG_DELETE entry
+     * @param stroke index the entry has or will have
+     * @return true if the entry only names earlier strokes that are not removals
+     */
+    private static boolean validDelete(int[] headers, float[] xy, int offset, int count, int stroke)
+    {
+        for(int p = 0; p < count; p++) {
+            float target = xy[offset + 2 * p];
+            if(!(target >= 0 && target < stroke) || target != (int)target
+                    || (headers[(int)target * HEADER_INTS + H_FLAGS] & FLAG_DELETE) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * sets deletedBy of the strokes a FLAG_DELETE entry removes
+     * @param value 1 + the entry, or 0 to forget the entry
+     */
+    private void markDeleted(int stroke, int value)
+    {
+        int offset = headers[stroke * HEADER_INTS + H_OFFSET];
+        for(int p = 0; p < getPointCount(stroke); p++) {
+            int target = (int)points[offset + 2 * p];
+            if(value != 0 || deletedBy[target] == stroke + 1) deletedBy[target] = value;
+        }
+    }
+
+    private void markAllDeleted()
+    {
+        Arrays.fill(deletedBy, 0, total, 0);
+        for(int i = 0; i < total; i++) {
+            if(isDelete(i)) markDeleted(i, i + 1);
+        }
+    }
+
+    private void ensureHeaders(int strokes)
+    {
+        int needed = strokes * HEADER_INTS;
+        if(needed <= headers.length) return;
+        int[] bigger = new int[Math.max(needed, headers.length * 2)];
+        System.arraycopy(headers, 0, bigger, 0, total * HEADER_INTS);
+        headers = bigger;
+        int[] biggerDeleted = new int[bigger.length / HEADER_INTS];
+        System.arraycopy(deletedBy, 0, biggerDeleted, 0, total);
+        deletedBy = biggerDeleted;
+    }
+
+    private void ensurePoints(int floats)
+    {
+        if(floats <= points.length) return;
+        float[] bigger = new float[Math.max(floats, points.length * 2)];
+        System.arraycopy(points, 0, bigger, 0, pointsUsed);
+        points = bigger;
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.io.IOException;
+
+/**
+ * Writes a VectorExport as SVG 1.1, one path element per stroke, each
+ * written out as soon as it is reached.
+ *
+ * Path data is kept short: numbers in VectorOutput's compact form, a
+ * command letter only when the command changes, and no space before a
+ * minus sign. The template is one image in defs, a file next to the SVG
+ * referenced by name, and the page uses it.
+ *
+ * A layer is a group with its opacity and mix-blend-mode. Its erasers are
+ * masks: one nested group per eraser is opened at the start of the layer,
+ * the last eraser's outermost, and each eraser closes the innermost one,
+ * so it masks exactly the strokes before it.
+ */
+class SvgWriter implements VectorExport.Backend, StrokeBuilder.Sink
+{
+    private final VectorOutput out;
+    private final StrokeMesh mesh = new StrokeMesh();
+
+    private int width, height;
+    private char command; //last path command written, 0 before the first
+    private boolean closing; //close each subpath, for fills and outlines
+    private boolean open; //a subpath has been started
+
+    SvgWriter(VectorOutput out) {
+        this.out = out;
+    }
+
+    @Override
+    public void begin(VectorExport export) throws IOException
+    {
+        width = export.getWidth();
+        height = export.getHeight();
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" version=\"1.1\" width=\"")
+                .write(width).write("\" height=\"").write(height)
+                .write("\" viewBox=\"0 0 ").write(width).write(' ').write(height).write("\">\n");
+        VectorExport.Template template = export.getTemplate();
+        if(template != null) {
+            out.write("<defs><image id=\"template\" width=\"").write(width).write("\" height=\"").write(height)
+                    .write("\" preserveAspectRatio=\"none\" xlink:href=\"");
+            escaped(template.getHref());
+            out.write("\"/></defs>\n<use xlink:href=\"#template\"/>\n");
+        }
+        else if(export.getPaperColor() != 0) {
+            int paper = export.getPaperColor();
+            out.write("<rect width=\"").write(width).write("\" height=\"").write(height).write("\" fill=\"").hexColor(paper);
+            opacity("\" fill-opacity=\"", paper >>> 24);
+            out.write("\"/>\n");
+        }
+        out.check();
+    }
+
+    @Override
+    public void beginLayer(VectorExport.Layer layer, StrokeIndex.IntList erasers) throws IOException
+    {
+        out.write("<g id=\"layer").write(layer.getId());
+        opacity("\" opacity=\"", layer.getAlpha());
+        String blend = layer.getBlendMode();
+        if(blend != null) {
+            //PDF names are the CSS ones in camel case: ColorDodge, color-dodge
+            out.write("\" style=\"mix-blend-mode:");
+            for(int i = 0; i < blend.length(); i++) {
+                char c = blend.charAt(i);
+                if(Character.isUpperCase(c) && i > 0) out.write('-');
+                out.write(Character.toLowerCase(c));
+            }
+        }
+        out.write("\" fill=\"none\" stroke-linecap=\"round\" stroke-linejoin=\"round\">\n");
+        for(int k = erasers.size() - 1; k >= 0; k--) {
+            out.write("<g mask=\"url(#erase").write(erasers.get(k)).write(")\">\n");
+        }
+        out.check();
+    }
+
+    @Override
+    public void stroke(StrokeStore strokes, int stroke) throws IOException
+    {
+        int color = strokes.getColor(stroke);
+        if(strokes.isFill(stroke) || strokes.isPressure(stroke)) {
+            out.write("<path fill=\"").hexColor(color);
+            opacity("\" fill-opacity=\"", color >>> 24);
+            if(strokes.isFill(stroke)) out.write("\" shape-rendering=\"crispEdges");
+            out.write("\" d=\"");
+            closing = true;
+            if(strokes.isFill(stroke)) {
+                strokes.replay(stroke, this);
+            }
+            else {
+                mesh.build(strokes, stroke, strokes.getPointCount(stroke));
+                mesh.outline(this);
+            }
+        }
+        else {
+            out.write("<path stroke=\"").hexColor(color);
+            opacity("\" stroke-opacity=\"", color >>> 24);
+            out.write("\" stroke-width=\"").number(strokes.getWidth(stroke)).write("\" d=\"");
+            closing = false;
+            strokes.replay(stroke, this);
+        }
+        endPath();
+        out.write("\"/>\n");
+        out.check();
+    }
+
+    @Override
+    public void erase(StrokeStore strokes, int stroke) throws IOException
+    {
+        out.write("</g>\n<mask id=\"erase").write(stroke)
+                .write("\" maskUnits=\"userSpaceOnUse\" x=\"0\" y=\"0\" width=\"").write(width)
+                .write("\" height=\"").write(height).write("\"><rect width=\"").write(width)
+                .write("\" height=\"").write(height).write("\" fill=\"#fff\"/>");
+        out.write("<path fill=\"none\" stroke=\"#000\" stroke-linecap=\"round\" stroke-linejoin=\"round\" stroke-width=\"")
+                .number(strokes.getWidth(stroke)).write("\" d=\"");
+        closing = false;
+        strokes.replay(stroke, this);
+        endPath();
+        out.write("\"/></mask>\n");
+        out.check();
+    }
+
+    @Override
+    public void endLayer() throws IOException
+    {
+        out.write("</g>\n");
+        out.check();
+    }
+
+    @Override
+    public void end() throws IOException
+    {
+        out.write("</svg>\n");
+        out.check();
+    }
+
+    @Override
+    public void moveTo(float x, float y)
+    {
+        if(closing && open) out.write('Z');
+        command('M');
+        coord(x, true);
+        coord(y, false);
+        open = true;
+    }
+
+    @Override
+    public void quadTo(float cx, float cy, float x, float y)
+    {
+        coord(cx, command('Q'));
+        coord(cy, false);
+        coord(x, false);
+        coord(y, false);
+    }
+
+    @Override
+    public void cubicTo(float x1, float y1, float x2, float y2, float x, float y)
+    {
+        coord(x1, command('C'));
+        coord(y1, false);
+        coord(x2, false);
+        coord(y2, false);
+        coord(x, false);
+        coord(y, false);
+    }
+
+    @Override
+    public void lineTo(float x, float y)
+    {
+        coord(x, command('L'));
+        coord(y, false);
+    }
+
+    /**
+     * writes a command letter unless it repeats the last one (repeating M would mean L)
+     * @return true if the letter was written
+     */
+    private boolean command(char c)
+    {
+        if(c == command && c != 'M') return false;
+        out.write(c);
+        command = c;
+        return true;
+    }
+
+    /**
+     * writes a number of path data, after a space unless it follows its
+     * command letter or starts with a minus sign
+     */
+    private void coord(float value, boolean afterCommand)
+    {
+        if(!afterCommand && Math.round(value * 100.0) >= 0) out.write(' ');
+        out.number(value);
+    }
+
+    private void endPath()
+    {
+        if(closing && open) out.write('Z');
+        command = 0;
+        open = false;
+    }
+
+    /**
+     * writes attribute then the opacity, unless it is fully opaque
+     * @param alpha 0-255
+     */
+    private void opacity(String attribute, int alpha)
+    {
+        if(alpha >= 255) return;
+        out.write(attribute).number(alpha / 255f);
+    }
+
+    private void escaped(String text)
+    {
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(c == '&') out.write("&amp;");
+            else if(c == '<') out.write("&lt;");
+            else if(c == '"') out.write("&quot;");
+            else if(c > 0x7E) out.write("&#").write((long)c).write(';');
+            else out.write(c);
+        }
+    }
+}
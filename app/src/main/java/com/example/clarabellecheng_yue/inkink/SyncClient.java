@@ -0,0 +1,250 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.SecureRandom;
+import java.util.Iterator;
+
+/**
+ * One device's connection to a SyncRelay, on a thread of its own with a
+ * non-blocking socket, so the UI thread never waits for the network: it
+ * only adds samples to the SyncEncoder.
+ *
+ * Once per FRAME_MILLIS the thread flushes the encoder into one frame, if
+ * there is something to send and the last frame is out; a busy socket
+ * leaves the samples in the encoder, to go in the next frame. Frames from
+ * the other devices are decoded on this thread and handed to the
+ * listener, which must pass them to its own thread. Disconnecting cancels
+ * the remote strokes in progress.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class SyncClient
+{
+    public static final long FRAME_MILLIS = 16; //one display frame at 60 Hz
+
+    /**
+     * Told about remote strokes and the connection, on the client's thread.
+     */
+    public interface Listener extends SyncDecoder.Listener {
+        /**
+         * @param error why the connection ended, null after close()
+         */
+        void onSyncClosed(IOException error);
+    }
+
+    private final InetSocketAddress address;
+    private final Listener listener;
+    private final SyncStats stats = new SyncStats();
+    private final SyncEncoder encoder;
+    private final SyncDecoder decoder = new SyncDecoder();
+    private final SyncDecoder.Listener counting; //listener, counting the strokes received
+
+    private volatile Selector selector; //close() wakes it up
+    private SocketChannel channel;
+    private SelectionKey key;
+    private ByteBuffer in = ByteBuffer.allocate(16 * 1024);
+    private ByteBuffer out; //frame being written, from the encoder
+    private Thread thread;
+    private volatile boolean closed;
+    private volatile boolean connected;
+
+    /**
+     * @param host address of the relay
+     * @param port its port, see SyncRelay.DEFAULT_PORT
+     * @param listener told about remote strokes
+     */
+    public SyncClient(String host, int port, Listener listener)
+    {
+        address = new InetSocketAddress(host, port);
+        this.listener = listener;
+        counting = new SyncDecoder.Listener() {
+            @Override
+            public void onRemoteStart(int sender, int stroke, int color, float width, int flags, int layer,
+                                      float x, float y, float w) {
+                SyncClient.this.listener.onRemoteStart(sender, stroke, color, width, flags, layer, x, y, w);
+            }
+
+            @Override
+            public void onRemotePoint(int sender, int stroke, float x, float y, float w) {
+                SyncClient.this.listener.onRemotePoint(sender, stroke, x, y, w);
+            }
+
+            @Override
+            public void onRemoteEnd(int sender, int stroke, boolean cancelled) {
+                if(!cancelled) stats.recordStrokeReceived();
+                SyncClient.this.listener.onRemoteEnd(sender, stroke, cancelled);
+            }
+        };
+        encoder = new SyncEncoder(new SecureRandom().nextInt() & 0x7FFFFFFF, stats);
+    }
+
+    /**
+     * @return where the local strokes go, called from the UI thread
+     */
+    public SyncEncoder getEncoder() {
+        return encoder;
+    }
+
+    public SyncStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return true once the socket is connected, until it closes
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * connects and starts sending and receiving, on a thread of its own
+     */
+    public synchronized void start()
+    {
+        if(thread != null) return;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                IOException error = null;
+                try {
+                    serve();
+                }
+                catch(IOException e) {
+                    error = e;
+                }
+                finally {
+                    disconnect();
+                }
+                listener.onSyncClosed(closed ? null : error);
+            }
+        }, "SyncClient");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * disconnects and stops the thread; frames not sent yet are dropped
+     */
+    public void close()
+    {
+        closed = true;
+        Selector waiting = selector;
+        if(waiting != null) waiting.wakeup();
+        Thread running;
+        synchronized(this) {
+            running = thread;
+        }
+        if(running != null && running != Thread.currentThread()) {
+            try {
+                running.join();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void serve() throws IOException
+    {
+        selector = Selector.open();
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        key = channel.register(selector, SelectionKey.OP_CONNECT);
+        if(channel.connect(address)) connected();
+        long nextFlush = System.currentTimeMillis();
+        while(!closed) {
+            selector.select(Math.max(1, nextFlush - System.currentTimeMillis()));
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while(keys.hasNext()) {
+                SelectionKey ready = keys.next();
+                keys.remove();
+                if(ready.isConnectable() && channel.finishConnect()) connected();
+                if(ready.isValid() && ready.isReadable()) read();
+                if(ready.isValid() && ready.isWritable()) write();
+            }
+            long now = System.currentTimeMillis();
+            if(now >= nextFlush) {
+                nextFlush = now + FRAME_MILLIS;
+                if(connected && out == null) {
+                    out = encoder.flush(SyncProtocol.now());
+                    if(out != null) {
+                        stats.recordFrameSent(out.remaining());
+                        write();
+                    }
+                }
+            }
+        }
+    }
+
+    private void connected() throws IOException
+    {
+        channel.socket().setTcpNoDelay(true); //frames are small and should not wait
+        key.interestOps(SelectionKey.OP_READ);
+        connected = true;
+    }
+
+    /**
+     * writes as much of the frame as the socket takes now, the rest when it is writable
+     */
+    private void write() throws IOException
+    {
+        if(out == null) return;
+        channel.write(out);
+        if(out.hasRemaining()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+        else {
+            out = null;
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * reads what arrived and decodes every whole frame in it
+     */
+    private void read() throws IOException
+    {
+        if(channel.read(in) < 0) throw new IOException("relay closed the connection");
+        in.flip();
+        while(in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if(length <= 0 || length > SyncProtocol.MAX_FRAME_BYTES) throw new IOException("bad frame length " + length);
+            if(in.remaining() < 4 + length) {
+                if(in.capacity() < 4 + length) {
+                    //a frame larger than the buffer, make room for it
+                    ByteBuffer larger = ByteBuffer.allocate(4 + length);
+                    larger.put(in);
+                    in = larger;
+                    return;
+                }
+                break;
+            }
+            int end = in.position() + 4 + length;
+            int limit = in.limit();
+            in.position(in.position() + 4);
+            in.limit(end);
+            long sent = decoder.decode(in, counting);
+            stats.recordFrameReceived(4 + length, SyncProtocol.now() - sent);
+            in.limit(limit);
+            in.position(end);
+        }
+        in.compact();
+    }
+
+    private void disconnect()
+    {
+        connected = false;
+        decoder.cancelAll(counting);
+        try {
+            if(channel != null) channel.close();
+            if(selector != null) selector.close();
+        }
+        catch(IOException e) {
+            //closing anyway
+        }
+    }
+}
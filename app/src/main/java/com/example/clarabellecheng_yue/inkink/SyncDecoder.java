@@ -0,0 +1,141 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Reads SyncProtocol frames from other devices back into stroke events,
+ * undoing the quantization and the delta encoding. Samples of a stroke
+ * that started before this device joined are skipped, there is nothing
+ * to add them to, and the strokes of a device that left are cancelled.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class SyncDecoder
+{
+    /**
+     * Told about remote strokes, on the thread that decodes.
+     */
+    public interface Listener {
+        /**
+         * @param flags StrokeStore.FLAG_ERASE and FLAG_PRESSURE
+         * @param w width of the first sample, for FLAG_PRESSURE strokes
+         */
+        void onRemoteStart(int sender, int stroke, int color, float width, int flags, int layer, float x, float y, float w);
+
+        /**
+         * @param w width at the sample, for FLAG_PRESSURE strokes
+         */
+        void onRemotePoint(int sender, int stroke, float x, float y, float w);
+
+        /**
+         * @param cancelled true if the stroke is dropped rather than finished
+         */
+        void onRemoteEnd(int sender, int stroke, boolean cancelled);
+    }
+
+    private final HashMap<Long, int[]> strokes = new HashMap<>(); //sender and stroke to last x, y, width
+
+    /**
+     * Decodes one frame payload, without its length prefix.
+     * @param payload read from its position to its limit
+     * @return the time the frame was sent, see SyncProtocol.now()
+     * @throws IOException if the frame is corrupt
+     */
+    public long decode(ByteBuffer payload, Listener listener) throws IOException
+    {
+        int sender = SyncProtocol.getVarint(payload);
+        long sentMicros = SyncProtocol.getVarlong(payload);
+        while(payload.hasRemaining()) {
+            byte type = payload.get();
+            int stroke = SyncProtocol.getVarint(payload);
+            Long key = key(sender, stroke);
+            switch(type) {
+                case SyncProtocol.START: {
+                    int color = SyncProtocol.getInt(payload);
+                    float width = SyncProtocol.dequantize(SyncProtocol.getVarint(payload));
+                    int flags = SyncProtocol.getVarint(payload);
+                    int layer = SyncProtocol.getZigzag(payload);
+                    int[] last = new int[3];
+                    last[0] = SyncProtocol.getZigzag(payload);
+                    last[1] = SyncProtocol.getZigzag(payload);
+                    last[2] = SyncProtocol.getVarint(payload);
+                    strokes.put(key, last);
+                    listener.onRemoteStart(sender, stroke, color, width, flags, layer,
+                            SyncProtocol.dequantize(last[0]), SyncProtocol.dequantize(last[1]),
+                            SyncProtocol.dequantize(last[2]));
+                    break;
+                }
+                case SyncProtocol.POINTS: {
+                    int header = SyncProtocol.getVarint(payload);
+                    int count = header >>> 1;
+                    boolean widths = (header & 1) != 0;
+                    int[] last = strokes.get(key);
+                    for(int k = 0; k < count; k++) {
+                        int dx = SyncProtocol.getZigzag(payload);
+                        int dy = SyncProtocol.getZigzag(payload);
+                        int dw = widths ? SyncProtocol.getZigzag(payload) : 0;
+                        if(last == null) continue;
+                        last[0] += dx;
+                        last[1] += dy;
+                        last[2] += dw;
+                        listener.onRemotePoint(sender, stroke, SyncProtocol.dequantize(last[0]),
+                                SyncProtocol.dequantize(last[1]), SyncProtocol.dequantize(last[2]));
+                    }
+                    break;
+                }
+                case SyncProtocol.END:
+                case SyncProtocol.CANCEL:
+                    if(strokes.remove(key) != null) {
+                        listener.onRemoteEnd(sender, stroke, type == SyncProtocol.CANCEL);
+                    }
+                    break;
+                case SyncProtocol.LEAVE:
+                    leave(sender, listener);
+                    break;
+                default:
+                    throw new IOException("corrupt sync frame: message type " + type);
+            }
+        }
+        return sentMicros;
+    }
+
+    /**
+     * cancels the unfinished strokes of a device that left
+     */
+    private void leave(int sender, Listener listener)
+    {
+        Iterator<Long> it = strokes.keySet().iterator();
+        while(it.hasNext()) {
+            long key = it.next();
+            if((int)(key >>> 32) != sender) continue;
+            it.remove();
+            listener.onRemoteEnd(sender, (int)key, true);
+        }
+    }
+
+    /**
+     * cancels every unfinished remote stroke, when this device disconnects
+     */
+    public void cancelAll(Listener listener)
+    {
+        Iterator<Long> it = strokes.keySet().iterator();
+        while(it.hasNext()) {
+            long key = it.next();
+            it.remove();
+            listener.onRemoteEnd((int)(key >>> 32), (int)key, true);
+        }
+    }
+
+    /**
+     * @return number of remote strokes in progress
+     */
+    public int getOpenStrokes() {
+        return strokes.size();
+    }
+
+    private static Long key(int sender, int stroke) {
+        return ((long)sender << 32) | (stroke & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Collects what the local strokes do between two frames and writes it as
+ * one SyncProtocol frame. DrawingView calls start, point and end on the
+ * UI thread as samples are accepted; SyncClient calls flush on its own
+ * thread once per frame, or later when the socket is still busy with
+ * the last frame, so a slow link sends fewer, larger frames rather than
+ * falling behind.
+ *
+ * Within a frame the samples of a stroke are coalesced into one POINTS
+ * message, whichever order the fingers moved in. Entries and arrays are
+ * kept from frame to frame, so nothing is allocated per sample once they
+ * are large enough.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class SyncEncoder
+{
+    /**
+     * One stroke's state: what is waiting for the next frame and the last
+     * sample sent, which the next delta starts from.
+     */
+    private static class Pending {
+        int stroke;
+        boolean started; //START waiting
+        byte ended; //END or CANCEL waiting, 0 for none
+        int color, flags, layer;
+        float width;
+        int startX, startY, startW; //quantized first sample
+        int lastX, lastY, lastW; //quantized last sample sent or waiting
+        int[] deltas = new int[3 * 32]; //dx,dy,dw per waiting sample
+        int count;
+        int bytes; //sent so far, for the bytes per stroke
+    }
+
+    private final int sender;
+    private final ArrayList<Pending> pending = new ArrayList<>(); //strokes with something to send
+    private final ArrayList<Pending> spare = new ArrayList<>();
+    private ByteBuffer frame = ByteBuffer.allocate(4096);
+    private final SyncStats stats;
+
+    /**
+     * @param sender id of this device in every frame
+     * @param stats told the size of every stroke sent, may be null
+     */
+    public SyncEncoder(int sender, SyncStats stats)
+    {
+        this.sender = sender;
+        this.stats = stats;
+    }
+
+    public int getSender() {
+        return sender;
+    }
+
+    /**
+     * a stroke goes down
+     * @param stroke id unique among this device's strokes
+     * @param flags StrokeStore.FLAG_ERASE and FLAG_PRESSURE
+     * @param w width of the first sample, for FLAG_PRESSURE strokes
+     */
+    public synchronized void start(int stroke, int color, float width, int flags, int layer, float x, float y, float w)
+    {
+        Pending p = spare.isEmpty() ? new Pending() : spare.remove(spare.size() - 1);
+        p.stroke = stroke;
+        p.started = true;
+        p.ended = 0;
+        p.color = color;
+        p.width = width;
+        p.flags = flags;
+        p.layer = layer;
+        p.startX = p.lastX = SyncProtocol.quantize(x);
+        p.startY = p.lastY = SyncProtocol.quantize(y);
+        p.startW = p.lastW = SyncProtocol.quantize(w);
+        p.count = 0;
+        p.bytes = 0;
+        pending.add(p);
+    }
+
+    /**
+     * a sample the stroke accepted
+     * @param w width at the sample, for FLAG_PRESSURE strokes
+     */
+    public synchronized void point(int stroke, float x, float y, float w)
+    {
+        Pending p = find(stroke);
+        if(p == null || p.ended != 0) return;
+        int qx = SyncProtocol.quantize(x), qy = SyncProtocol.quantize(y), qw = SyncProtocol.quantize(w);
+        if(3 * p.count + 3 > p.deltas.length) p.deltas = Arrays.copyOf(p.deltas, 2 * p.deltas.length);
+        p.deltas[3 * p.count] = qx - p.lastX;
+        p.deltas[3 * p.count + 1] = qy - p.lastY;
+        p.deltas[3 * p.count + 2] = qw - p.lastW;
+        p.count++;
+        p.lastX = qx;
+        p.lastY = qy;
+        p.lastW = qw;
+    }
+
+    /**
+     * the stroke is finished and goes into the drawing
+     */
+    public synchronized void end(int stroke) {
+        finish(stroke, SyncProtocol.END);
+    }
+
+    /**
+     * the stroke is dropped, e.g. the gesture was cancelled
+     */
+    public synchronized void cancel(int stroke) {
+        finish(stroke, SyncProtocol.CANCEL);
+    }
+
+    /**
+     * @return true if a frame would have something in it
+     */
+    public synchronized boolean hasPending()
+    {
+        for(int i = 0; i < pending.size(); i++) {
+            Pending p = pending.get(i);
+            if(p.started || p.count > 0 || p.ended != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes everything waiting as one frame, length prefix included.
+     * @param sentMicros send time for the frame, see SyncProtocol.now()
+     * @return the frame, ready to be read, valid until the next flush;
+     * null if nothing is waiting
+     */
+    public synchronized ByteBuffer flush(long sentMicros)
+    {
+        if(!hasPending()) return null;
+        frame.clear();
+        ensure(4 + 3 * SyncProtocol.MAX_VARINT_BYTES);
+        frame.putInt(0); //length, once known
+        SyncProtocol.putVarint(frame, sender);
+        SyncProtocol.putVarlong(frame, sentMicros);
+        for(int i = 0; i < pending.size(); i++) {
+            Pending p = pending.get(i);
+            int before = frame.position();
+            //type, stroke and START's fields, then up to three varints per sample
+            ensure(12 * SyncProtocol.MAX_VARINT_BYTES + 3 * SyncProtocol.MAX_VARINT_BYTES * p.count);
+            if(p.started) {
+                frame.put(SyncProtocol.START);
+                SyncProtocol.putVarint(frame, p.stroke);
+                frame.putInt(p.color);
+                SyncProtocol.putVarint(frame, SyncProtocol.quantize(p.width));
+                SyncProtocol.putVarint(frame, p.flags);
+                SyncProtocol.putZigzag(frame, p.layer);
+                SyncProtocol.putZigzag(frame, p.startX);
+                SyncProtocol.putZigzag(frame, p.startY);
+                SyncProtocol.putVarint(frame, p.startW);
+                p.started = false;
+            }
+            if(p.count > 0) {
+                boolean widths = (p.flags & StrokeStore.FLAG_PRESSURE) != 0;
+                frame.put(SyncProtocol.POINTS);
+                SyncProtocol.putVarint(frame, p.stroke);
+                SyncProtocol.putVarint(frame, 2 * p.count + (widths ? 1 : 0));
+                for(int k = 0; k < p.count; k++) {
+                    SyncProtocol.putZigzag(frame, p.deltas[3 * k]);
+                    SyncProtocol.putZigzag(frame, p.deltas[3 * k + 1]);
+                    if(widths) SyncProtocol.putZigzag(frame, p.deltas[3 * k + 2]);
+                }
+                p.count = 0;
+            }
+            if(p.ended != 0) {
+                frame.put(p.ended);
+                SyncProtocol.putVarint(frame, p.stroke);
+            }
+            p.bytes += frame.position() - before;
+        }
+        //finished strokes are done with
+        for(int i = pending.size() - 1; i >= 0; i--) {
+            Pending p = pending.get(i);
+            if(p.ended == 0) continue;
+            if(stats != null && p.ended == SyncProtocol.END) stats.recordStrokeSent(p.bytes);
+            spare.add(pending.remove(i));
+        }
+        frame.putInt(0, frame.position() - 4);
+        frame.flip();
+        return frame;
+    }
+
+    private void finish(int stroke, byte type)
+    {
+        Pending p = find(stroke);
+        if(p != null && p.ended == 0) p.ended = type;
+    }
+
+    private Pending find(int stroke)
+    {
+        for(int i = pending.size() - 1; i >= 0; i--) {
+            if(pending.get(i).stroke == stroke) return pending.get(i);
+        }
+        return null;
+    }
+
+    /**
+     * makes room for bytes more in the frame, keeping what is written
+     */
+    private void ensure(int bytes)
+    {
+        if(frame.remaining() >= bytes) return;
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * frame.capacity(), frame.position() + bytes));
+        frame.flip();
+        larger.put(frame);
+        frame = larger;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format of the shared canvas (SyncEncoder, SyncDecoder, SyncRelay).
+ *
+ * A frame is what one device sends per display frame: an int payload
+ * length (big endian), then the payload, the varint sender id, the varint
+ * time it was sent (now(), microseconds) and messages up to its end.
+ * A message is a type byte and the varint stroke id, then
+ * START: int color, varint width, varint StrokeStore flags, zigzag layer,
+ * zigzag x, zigzag y, varint sample width;
+ * POINTS: varint count * 2 + 1 if samples have widths, then per sample
+ * zigzag dx, zigzag dy (and zigzag dwidth) from the one before;
+ * END and CANCEL: nothing more. SyncRelay sends LEAVE for a device that
+ * disconnected, its unfinished strokes are cancelled.
+ *
+ * Coordinates and widths are quantized to 1/QUANTUM pixel and sent as
+ * differences from the previous sample of the stroke, so a typical sample
+ * takes two or three bytes instead of eight. Varints are 7 bits per byte,
+ * low bits first; zigzag maps 0, -1, 1, -2... to 0, 1, 2, 3...
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+final class SyncProtocol
+{
+    static final byte START = 1;
+    static final byte POINTS = 2;
+    static final byte END = 3;
+    static final byte CANCEL = 4;
+    static final byte LEAVE = 5; //from the relay, the sender disconnected; stroke 0
+
+    static final float QUANTUM = 8; //steps per pixel
+    static final int MAX_FRAME_BYTES = 1 << 20; //larger lengths are corrupt data
+    static final int MAX_VARINT_BYTES = 5;
+
+    //wall clock at class load, advanced by nanoTime: comparable between
+    //devices as far as their clocks agree, and exact within one process
+    private static final long BASE_MICROS = System.currentTimeMillis() * 1000;
+    private static final long BASE_NANOS = System.nanoTime();
+
+    private SyncProtocol() {
+    }
+
+    /**
+     * @return microseconds since 1970, for frame send times and latency
+     */
+    static long now() {
+        return BASE_MICROS + (System.nanoTime() - BASE_NANOS) / 1000;
+    }
+
+    static int quantize(float value) {
+        return Math.round(value * QUANTUM);
+    }
+
+    static float dequantize(int steps) {
+        return steps / QUANTUM;
+    }
+
+    static void putVarint(ByteBuffer out, int value)
+    {
+        while((value & ~0x7F) != 0) {
+            out.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte)value);
+    }
+
+    static void putVarlong(ByteBuffer out, long value)
+    {
+        while((value & ~0x7FL) != 0) {
+            out.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte)value);
+    }
+
+    static void putZigzag(ByteBuffer out, int value) {
+        putVarint(out, (value << 1) ^ (value >> 31));
+    }
+
+    static int getVarint(ByteBuffer in) throws IOException
+    {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7) {
+            byte b = get(in);
+            value |= (b & 0x7F) << shift;
+            if(b >= 0) return value;
+        }
+        throw new IOException("corrupt sync frame: varint too long");
+    }
+
+    static long getVarlong(ByteBuffer in) throws IOException
+    {
+        long value = 0;
+        for(int shift = 0; shift < 70; shift += 7) {
+            byte b = get(in);
+            value |= (long)(b & 0x7F) << shift;
+            if(b >= 0) return value;
+        }
+        throw new IOException("corrupt sync frame: varint too long");
+    }
+
+    static int getZigzag(ByteBuffer in) throws IOException
+    {
+        int value = getVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int getInt(ByteBuffer in) throws IOException
+    {
+        if(in.remaining() < 4) throw new IOException("corrupt sync frame: truncated");
+        return in.getInt();
+    }
+
+    static byte get(ByteBuffer in) throws IOException
+    {
+        if(!in.hasRemaining()) throw new IOException("corrupt sync frame: truncated");
+        return in.get();
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * The board's server: passes every SyncProtocol frame a device sends on
+ * to all the other devices, as it is, without decoding the strokes. One
+ * thread and one non-blocking Selector serve every connection; a frame is
+ * copied once and queued to each receiver as a view of that copy.
+ *
+ * A receiver that falls MAX_QUEUED_BYTES behind is disconnected rather
+ * than slowing down the others. When a device disconnects the others get
+ * a LEAVE frame for it, so its unfinished strokes are cancelled.
+ *
+ * Runs inside the app (one tablet hosts the workshop, and the unit tests
+ * use it in-process) or on its own: java ...SyncRelay [port].
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class SyncRelay
+{
+    public static final int DEFAULT_PORT = 7654;
+    static final int MAX_QUEUED_BYTES = 4 << 20;
+
+    /**
+     * A device: its partial incoming frame and its outgoing queue.
+     */
+    private static class Connection {
+        final SocketChannel channel;
+        ByteBuffer in = ByteBuffer.allocate(16 * 1024);
+        final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        long queuedBytes;
+        int sender; //from its first frame
+        boolean identified;
+        SelectionKey key;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ArrayList<Connection> connections = new ArrayList<>();
+    private final ByteBuffer leave = ByteBuffer.allocate(32);
+    private Thread thread;
+    private volatile boolean closed;
+    private volatile int connectionCount;
+    private volatile long framesRelayed;
+
+    /**
+     * opens the server socket, start() serves it
+     * @param port port to listen on, 0 for any free one
+     */
+    public SyncRelay(int port) throws IOException
+    {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.socket().setReuseAddress(true);
+        server.socket().bind(new InetSocketAddress(port));
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * @return the port it listens on
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    public long getFramesRelayed() {
+        return framesRelayed;
+    }
+
+    /**
+     * serves connections on a thread of its own until close()
+     */
+    public synchronized void start()
+    {
+        if(thread != null) return;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "SyncRelay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * disconnects every device and stops the thread
+     */
+    public void close()
+    {
+        closed = true;
+        selector.wakeup();
+        Thread serving;
+        synchronized(this) {
+            serving = thread;
+        }
+        if(serving != null && serving != Thread.currentThread()) {
+            try {
+                serving.join();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        else {
+            shutdown();
+        }
+    }
+
+    private void serve()
+    {
+        try {
+            while(!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if(!key.isValid()) continue;
+                    if(key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection)key.attachment();
+                    try {
+                        if(key.isReadable()) read(connection);
+                        if(key.isValid() && key.isWritable()) write(connection);
+                    }
+                    catch(IOException e) {
+                        drop(connection);
+                    }
+                }
+            }
+        }
+        catch(IOException e) {
+            //the selector failed, nothing more can be served
+        }
+        finally {
+            shutdown();
+        }
+    }
+
+    private void accept() throws IOException
+    {
+        SocketChannel channel = server.accept();
+        if(channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true); //frames are small and should not wait
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connections.add(connection);
+        connectionCount = connections.size();
+    }
+
+    /**
+     * reads what arrived and relays every whole frame in it
+     */
+    private void read(Connection from) throws IOException
+    {
+        if(from.channel.read(from.in) < 0) {
+            drop(from);
+            return;
+        }
+        from.in.flip();
+        while(from.in.remaining() >= 4) {
+            int length = from.in.getInt(from.in.position());
+            if(length <= 0 || length > SyncProtocol.MAX_FRAME_BYTES) throw new IOException("bad frame length " + length);
+            if(from.in.remaining() < 4 + length) {
+                if(from.in.capacity() < 4 + length) {
+                    //a frame larger than the buffer, make room for it
+                    ByteBuffer larger = ByteBuffer.allocate(4 + length);
+                    larger.put(from.in);
+                    from.in = larger;
+                    return;
+                }
+                break;
+            }
+            ByteBuffer frame = ByteBuffer.allocate(4 + length);
+            int end = from.in.position() + 4 + length;
+            int limit = from.in.limit();
+            from.in.limit(end);
+            frame.put(from.in);
+            from.in.limit(limit);
+            frame.flip();
+            if(!from.identified) {
+                ByteBuffer payload = frame.duplicate();
+                payload.position(4);
+                from.sender = SyncProtocol.getVarint(payload);
+                from.identified = true;
+            }
+            broadcast(from, frame);
+        }
+        from.in.compact();
+    }
+
+    /**
+     * Queues a frame to everyone but its sender. Receivers that fail or
+     * fall too far behind are dropped after the loop, so that their LEAVE
+     * does not shift connections under it and every receiver gets the frame.
+     */
+    private void broadcast(Connection from, ByteBuffer frame)
+    {
+        framesRelayed++;
+        ArrayList<Connection> failed = null; //rare, only allocated when needed
+        for(int i = connections.size() - 1; i >= 0; i--) {
+            Connection to = connections.get(i);
+            if(to == from) continue;
+            to.out.add(frame.duplicate());
+            to.queuedBytes += frame.remaining();
+            try {
+                if(to.queuedBytes > MAX_QUEUED_BYTES) throw new IOException("receiver too slow");
+                write(to);
+            }
+            catch(IOException e) {
+                if(failed == null) failed = new ArrayList<>();
+                failed.add(to);
+            }
+        }
+        if(failed == null) return;
+        for(int i = 0; i < failed.size(); i++) {
+            drop(failed.get(i));
+        }
+    }
+
+    /**
+     * writes as much of the queue as the socket takes now, the rest when it is writable
+     */
+    private void write(Connection to) throws IOException
+    {
+        while(!to.out.isEmpty()) {
+            ByteBuffer head = to.out.peek();
+            to.queuedBytes -= to.channel.write(head);
+            if(head.hasRemaining()) break;
+            to.out.poll();
+        }
+        if(to.key.isValid()) {
+            to.key.interestOps(to.out.isEmpty() ? SelectionKey.OP_READ
+                    : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void drop(Connection connection)
+    {
+        if(!connections.remove(connection)) return;
+        connectionCount = connections.size();
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        }
+        catch(IOException e) {
+            //closing anyway
+        }
+        if(!connection.identified) return;
+        leave.clear();
+        leave.putInt(0);
+        SyncProtocol.putVarint(leave, connection.sender);
+        SyncProtocol.putVarlong(leave, SyncProtocol.now());
+        leave.put(SyncProtocol.LEAVE);
+        SyncProtocol.putVarint(leave, 0);
+        leave.putInt(0, leave.position() - 4);
+        leave.flip();
+        ByteBuffer frame = ByteBuffer.allocate(leave.remaining());
+        frame.put(leave);
+        frame.flip();
+        broadcast(connection, frame);
+    }
+
+    private void shutdown()
+    {
+        for(int i = connections.size() - 1; i >= 0; i--) {
+            try {
+                connections.get(i).channel.close();
+            }
+            catch(IOException e) {
+                //closing anyway
+            }
+        }
+        connections.clear();
+        connectionCount = 0;
+        try {
+            server.close();
+            selector.close();
+        }
+        catch(IOException e) {
+            //closing anyway
+        }
+    }
+
+    /**
+     * runs a relay on its own
+     * @param args the port, DEFAULT_PORT if none
+     */
+    public static void main(String[] args) throws IOException
+    {
+        SyncRelay relay = new SyncRelay(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT);
+        System.out.println("relaying on port " + relay.getPort());
+        relay.serve();
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * What a SyncClient measures: bytes and frames each way, the encoded size
+ * of every stroke sent, and the latency of every frame received, from
+ * the sender's SyncEncoder.flush to this device's decode. Latency between
+ * devices is only as good as their clocks agree; within one process (the
+ * in-process relay tests and benchmarks) it is exact.
+ * Recorded on the client's network thread and the thread flushing the
+ * encoder, read from any thread, so every method is synchronized.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class SyncStats
+{
+    private final FrameStats.Histogram strokeBytes = new FrameStats.Histogram("bytes_per_stroke", "bytes");
+    private final FrameStats.Histogram latency = new FrameStats.Histogram("latency", "us");
+    private final FrameStats.Histogram frameBytes = new FrameStats.Histogram("bytes_per_frame", "bytes");
+
+    private long framesSent, bytesSent, strokesSent;
+    private long framesReceived, bytesReceived, strokesReceived;
+
+    public synchronized void recordStrokeSent(int bytes)
+    {
+        strokesSent++;
+        strokeBytes.record(bytes);
+    }
+
+    /**
+     * @param bytes frame size, length prefix included
+     */
+    public synchronized void recordFrameSent(int bytes)
+    {
+        framesSent++;
+        bytesSent += bytes;
+        frameBytes.record(bytes);
+    }
+
+    /**
+     * @param bytes frame size, length prefix included
+     * @param latencyMicros receive time minus the frame's send time
+     */
+    public synchronized void recordFrameReceived(int bytes, long latencyMicros)
+    {
+        framesReceived++;
+        bytesReceived += bytes;
+        latency.record(latencyMicros);
+    }
+
+    public synchronized void recordStrokeReceived() {
+        strokesReceived++;
+    }
+
+    public synchronized long getFramesSent() {
+        return framesSent;
+    }
+
+    public synchronized long getBytesSent() {
+        return bytesSent;
+    }
+
+    public synchronized long getStrokesSent() {
+        return strokesSent;
+    }
+
+    public synchronized long getFramesReceived() {
+        return framesReceived;
+    }
+
+    public synchronized long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public synchronized long getStrokesReceived() {
+        return strokesReceived;
+    }
+
+    /**
+     * @return bytes sent per finished stroke, frame headers included
+     */
+    public synchronized float getBytesPerStroke() {
+        return strokesSent == 0 ? 0 : bytesSent / (float)strokesSent;
+    }
+
+    /**
+     * @return microseconds; p50, p95... through getPercentile
+     */
+    public synchronized long getLatencyPercentile(double fraction) {
+        return latency.getPercentile(fraction);
+    }
+
+    public synchronized long getMaxLatency() {
+        return latency.getMax();
+    }
+
+    /**
+     * @return encoded stroke sizes, messages only; p50, p95... through getPercentile
+     */
+    public synchronized long getStrokeBytesPercentile(double fraction) {
+        return strokeBytes.getPercentile(fraction);
+    }
+
+    public synchronized void reset()
+    {
+        strokeBytes.reset();
+        latency.reset();
+        frameBytes.reset();
+        framesSent = bytesSent = strokesSent = 0;
+        framesReceived = bytesReceived = strokesReceived = 0;
+    }
+
+    /**
+     * Writes the counters and histograms as one JSON object, the
+     * histograms as in FrameStats.writeJson without their buckets.
+     */
+    public synchronized void writeJson(Writer out) throws IOException
+    {
+        out.write(String.format(Locale.US,
+                "{\"frames_sent\":%d,\"bytes_sent\":%d,\"strokes_sent\":%d,\"bytes_per_stroke\":%.1f,"
+                        + "\"frames_received\":%d,\"bytes_received\":%d,\"strokes_received\":%d,\"histograms\":{",
+                framesSent, bytesSent, strokesSent, getBytesPerStroke(),
+                framesReceived, bytesReceived, strokesReceived));
+        FrameStats.Histogram[] all = {strokeBytes, frameBytes, latency};
+        for(int i = 0; i < all.length; i++) {
+            FrameStats.Histogram h = all[i];
+            if(i > 0) out.write(',');
+            out.write(String.format(Locale.US,
+                    "\"%s\":{\"unit\":\"%s\",\"count\":%d,\"mean\":%.2f,\"p50\":%d,\"p95\":%d,\"p99\":%d,\"max\":%d}",
+                    h.getName(), h.getUnit(), h.getCount(), h.getMean(), h.getPercentile(0.5),
+                    h.getPercentile(0.95), h.getPercentile(0.99), h.getMax()));
+        }
+        out.write("}}\n");
+    }
+}
@@ -0,0 +1,297 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decodes the background templates cycled by pic_btn.
+ * Templates are decoded on a background thread at the size of the
+ * DrawingView (inSampleSize), into recycled bitmaps when possible (inBitmap),
+ * and kept in an LRU cache capped in bytes. Showing a template also
+ * prefetches the next one in the cycle, so the next tap is instant.
+ */
+public class TemplateBackgrounds
+{
+    /**
+     * Called on the UI thread when a requested template is ready.
+     */
+    public interface Callback {
+        void onTemplateReady(int index, int resId, Bitmap bitmap);
+    }
+
+    //the pic_btn cycle, in order
+    public static final int[] TEMPLATES = {
+            R.drawable.aa, R.drawable.bb, R.drawable.c, R.drawable.cc, R.drawable.d, R.drawable.white
+    };
+
+    private final Resources resources;
+    private final LruCache<Integer, Bitmap> cache;
+    private final ArrayList<Bitmap> reusable = new ArrayList<>(); //evicted bitmaps for inBitmap
+    private final ExecutorService decoder = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private volatile int targetWidth, targetHeight;
+    private int requested = -1; //UI thread only
+    private Bitmap current; //bitmap on screen, never reused
+    private Bitmap pending; //decoded for show(), on its way to the UI thread, never reused
+
+    /**
+     * @param resources resources holding the templates
+     * @param maxBytes memory cap for decoded templates
+     */
+    public TemplateBackgrounds(Resources resources, int maxBytes)
+    {
+        this.resources = resources;
+        this.cache = new LruCache<Integer, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Integer key, Bitmap value) {
+                return value.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Integer key, Bitmap oldValue, Bitmap newValue) {
+                recycle(oldValue);
+            }
+        };
+    }
+
+    /**
+     * Sets the size templates are decoded for, normally the DrawingView size.
+     * Cached templates of another size are dropped.
+     */
+    public void setTargetSize(int width, int height)
+    {
+        if(width == targetWidth && height == targetHeight) return;
+        targetWidth = width;
+        targetHeight = height;
+        cache.evictAll();
+    }
+
+    /**
+     * @return number of templates in the cycle
+     */
+    public int count() {
+        return TEMPLATES.length;
+    }
+
+    /**
+     * Shows a template: right away if it is cached, otherwise once decoded.
+     * Only the latest request is answered. The next template is prefetched.
+     * Must be called on the UI thread.
+     * @param index position in TEMPLATES
+     * @param callback receives the bitmap on the UI thread
+     */
+    public void show(final int index, final Callback callback)
+    {
+        requested = index;
+        Bitmap cached = showCached(index);
+        if(cached != null) {
+            callback.onTemplateReady(index, TEMPLATES[index], cached);
+        }
+        else {
+            decoder.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final Bitmap bitmap = load(index, true);
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if(bitmap == null) return;
+                            if(requested != index) { //user tapped on
+                                dropPending(bitmap);
+                                return;
+                            }
+                            setCurrent(bitmap);
+                            callback.onTemplateReady(index, TEMPLATES[index], bitmap);
+                        }
+                    });
+                }
+            });
+        }
+        prefetch((index + 1) % TEMPLATES.length);
+    }
+
+    /**
+     * decodes a template in the background if it is not cached yet
+     */
+    public void prefetch(final int index)
+    {
+        decoder.execute(new Runnable() {
+            @Override
+            public void run() {
+                load(index, false);
+            }
+        });
+    }
+
+    /**
+     * stops the decoder thread and frees every cached template
+     */
+    public void shutdown()
+    {
+        decoder.shutdownNow();
+        cache.evictAll();
+    }
+
+    /**
+     * decoder thread: cached bitmap or a fresh decode put in the cache
+     * @param show true to mark the bitmap pending, so that an eviction before
+     * the UI thread shows it does not hand it to another decode
+     */
+    private Bitmap load(int index, boolean show)
+    {
+        Bitmap bitmap;
+        synchronized(reusable) {
+            //marked in the same step, an eviction either came first or sees the mark
+            bitmap = cache.get(index);
+            if(show) pending = bitmap;
+        }
+        if(bitmap != null) return bitmap;
+        int width = targetWidth;
+        int height = targetHeight;
+        if(width == 0 || height == 0) return null; //no layout yet
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, TEMPLATES[index], options);
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, width, height);
+        options.inJustDecodeBounds = false;
+        options.inMutable = true; //inBitmap only reuses mutable bitmaps
+        options.inBitmap = takeReusable(options);
+
+        try {
+            bitmap = BitmapFactory.decodeResource(resources, TEMPLATES[index], options);
+        }
+        catch(IllegalArgumentException e) {
+            //inBitmap did not fit after all
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeResource(resources, TEMPLATES[index], options);
+        }
+        if(bitmap != null) {
+            if(show) {
+                synchronized(reusable) {
+                    pending = bitmap;
+                }
+            }
+            cache.put(index, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return largest power of two that keeps the image at least as big as the view
+     */
+    static int sampleSize(int imageWidth, int imageHeight, int width, int height)
+    {
+        int sample = 1;
+        while(imageWidth / (sample * 2) >= width && imageHeight / (sample * 2) >= height) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    /**
+     * @return a recycled bitmap the decode can write into, or null
+     */
+    private Bitmap takeReusable(BitmapFactory.Options options)
+    {
+        synchronized(reusable) {
+            for(int i = 0; i < reusable.size(); i++) {
+                Bitmap candidate = reusable.get(i);
+                if(fits(candidate, options)) {
+                    return reusable.remove(i);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean fits(Bitmap candidate, BitmapFactory.Options options)
+    {
+        int sample = options.inSampleSize;
+        int w = (options.outWidth + sample - 1) / sample;
+        int h = (options.outHeight + sample - 1) / sample;
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            //any bitmap with enough bytes
+            return w * h * 4 <= candidate.getAllocationByteCount();
+        }
+        //before KitKat only the same size without sampling
+        return sample == 1 && candidate.getWidth() == options.outWidth
+                && candidate.getHeight() == options.outHeight;
+    }
+
+    /**
+     * keeps an evicted template for inBitmap, unless it is on screen
+     */
+    private void recycle(Bitmap bitmap)
+    {
+        synchronized(reusable) {
+            if(bitmap == current || bitmap == pending || !bitmap.isMutable()) return;
+            reusable.add(bitmap);
+            if(reusable.size() > 2) reusable.remove(0).recycle();
+        }
+    }
+
+    /**
+     * @return the cached template, made current in the same step as the
+     * lookup (see load), or null if it is not cached
+     */
+    private Bitmap showCached(int index)
+    {
+        Bitmap bitmap, old;
+        synchronized(reusable) {
+            bitmap = cache.get(index);
+            if(bitmap == null) return null;
+            old = current;
+            current = bitmap;
+            if(pending == bitmap) pending = null;
+        }
+        dropOld(old, bitmap);
+        return bitmap;
+    }
+
+    private void setCurrent(Bitmap bitmap)
+    {
+        Bitmap old;
+        synchronized(reusable) {
+            old = current;
+            current = bitmap;
+            if(pending == bitmap) pending = null;
+        }
+        dropOld(old, bitmap);
+    }
+
+    /**
+     * the old background was evicted while on screen, reuse it now
+     */
+    private void dropOld(Bitmap old, Bitmap bitmap)
+    {
+        if(old != null && old != bitmap && !cache.snapshot().containsValue(old)) {
+            recycle(old);
+        }
+    }
+
+    /**
+     * a pending bitmap that will not be shown after all can be reused again
+     */
+    private void dropPending(Bitmap bitmap)
+    {
+        synchronized(reusable) {
+            if(pending != bitmap) return;
+            pending = null;
+        }
+        //evicted while pending, reuse it now
+        if(!cache.snapshot().containsValue(bitmap)) {
+            recycle(bitmap);
+        }
+    }
+}
@@ -0,0 +1,725 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.RectF;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Committed strokes of the tiled (pan/zoom) mode, kept in TILE_SIZE square
+ * bitmaps in drawing coordinates. A tile is only allocated where the
+ * StrokeIndex says there is ink, and only when it is visible or a stroke is
+ * committed into it. At most maxTiles stay in memory; the least recently
+ * drawn ones beyond that are written to a PNG cache on disk in the background
+ * and read back, also in the background, when they become visible again; a
+ * placeholder shows until they are. A stroke committed into a tile that is
+ * only on disk waits as pending ink and is drawn into it once it is read.
+ * Tiles affected by an undo are dropped and rasterized again from the
+ * strokes the next time they are drawn, at most MAX_RASTER_PER_FRAME per
+ * frame. Zoomed out so far that the visible tiles would not fit in memory,
+ * a downscaled overview of the whole drawing is drawn instead.
+ * Cache files are only ever touched by the diskWriter thread.
+ */
+public class TileCanvas
+{
+    /**
+     * Draws one stored stroke, DrawingView's drawStroke.
+     */
+    public interface StrokeRenderer {
+        void drawStroke(Canvas canvas, int stroke);
+    }
+
+    public static final int TILE_SIZE = 256;
+
+    //tiles rasterized from the strokes in one draw, the others show a placeholder until the next frames
+    private static final int MAX_RASTER_PER_FRAME = 4;
+    //longest side of the overview bitmap
+    private static final int OVERVIEW_SIZE = 2048;
+
+    /**
+     * An evicted tile queued for diskWriter. Until the write starts it
+     * can be cancelled and its bitmap taken back as is; once started the
+     * bitmap belongs to the write, and is recycled when it lands.
+     */
+    private static class TileWrite {
+        final long key;
+        final Bitmap bitmap;
+        boolean started, cancelled; //guarded by this
+        boolean written; //diskWriter, read after finished hands it over
+
+        TileWrite(long key, Bitmap bitmap) {
+            this.key = key;
+            this.bitmap = bitmap;
+        }
+    }
+
+    private final StrokeStore strokes;
+    private final StrokeIndex index;
+    private final StrokeRenderer renderer;
+    private final File cacheDir;
+    private final int maxTiles;
+
+    private final LinkedHashMap<Long, Bitmap> tiles = new LinkedHashMap<>(64, 0.75f, true); //LRU
+    private final HashSet<Long> onDisk = new HashSet<>(); //written and still up to date
+    private final HashSet<Long> dirty = new HashSet<>(); //in memory, disk copy missing or stale
+    private final HashMap<Long, TileWrite> writing = new HashMap<>(); //evicted, the latest write of each
+    private final ExecutorService diskWriter = Executors.newSingleThreadExecutor();
+    private final ArrayList<TileWrite> finished = new ArrayList<>(); //done by diskWriter, guarded by this
+    private final HashSet<Long> reading = new HashSet<>(); //on disk, being read back for draw
+    private final HashMap<Long, Bitmap> read = new HashMap<>(); //read by diskWriter, guarded by this
+    private final HashMap<Long, StrokeIndex.IntList> pendingInk = new HashMap<>(); //committed while being read
+    private volatile Runnable onTileRead; //tells the View to draw again
+
+    private final Canvas tileCanvas = new Canvas();
+    private final StrokeIndex.IntList found = new StrokeIndex.IntList();
+    private final Matrix tileMatrix = new Matrix();
+    private final Paint tilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint placeholderPaint = new Paint();
+    private final RectF placeholder = new RectF(0, 0, TILE_SIZE, TILE_SIZE);
+
+    private Bitmap overview; //the whole drawing downscaled, null until zoomed out
+    private final Canvas overviewCanvas = new Canvas();
+    private final RectF overviewArea = new RectF(); //drawing area it covers
+    private float overviewScale;
+    private boolean overviewStale;
+    private final float[] bounds = new float[4];
+
+    /**
+     * @param strokes the drawing
+     * @param index spatial index over strokes, in drawing coordinates
+     * @param renderer draws single strokes
+     * @param cacheDir directory for evicted tiles, emptied here
+     * @param maxTiles tiles kept in memory
+     */
+    public TileCanvas(StrokeStore strokes, StrokeIndex index, StrokeRenderer renderer,
+                      File cacheDir, int maxTiles)
+    {
+        this.strokes = strokes;
+        this.index = index;
+        this.renderer = renderer;
+        this.cacheDir = cacheDir;
+        this.maxTiles = maxTiles;
+        placeholderPaint.setColor(0x20808080); //faint grey while a tile is read back
+        diskWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                if(!cacheDir.isDirectory()) cacheDir.mkdirs();
+                deleteCacheFiles();
+            }
+        });
+    }
+
+    /**
+     * @param callback run on the diskWriter thread when a tile read back
+     * for draw is ready, and from draw when tiles were left for the next
+     * frame, e.g. View.postInvalidate
+     */
+    public void setOnTileRead(Runnable callback) {
+        onTileRead = callback;
+    }
+
+    /**
+     * @return tiles currently held in memory
+     */
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * @return bytes held by in-memory tiles
+     */
+    public long getTileBytes() {
+        return (long)tiles.size() * TILE_SIZE * TILE_SIZE * 4
+                + (overview != null ? overview.getByteCount() : 0);
+    }
+
+    /**
+     * Draws the visible tiles, or the overview when there are more of
+     * them than fit in memory.
+     * @param canvas View canvas
+     * @param viewMatrix drawing to View coordinates
+     * @param viewport visible area in drawing coordinates
+     */
+    public void draw(Canvas canvas, Matrix viewMatrix, RectF viewport)
+    {
+        finishWrites();
+        int x0 = tile(viewport.left), y0 = tile(viewport.top);
+        int x1 = tile(viewport.right), y1 = tile(viewport.bottom);
+        if((long)(x1 - x0 + 1) * (y1 - y0 + 1) > maxTiles) {
+            drawOverview(canvas, viewMatrix);
+            return;
+        }
+        int rasterized = 0;
+        boolean more = false;
+        for(int ty = y0; ty <= y1; ty++) {
+            for(int tx = x0; tx <= x1; tx++) {
+                long key = StrokeIndex.key(tx, ty);
+                tileMatrix.set(viewMatrix);
+                tileMatrix.preTranslate(tx * TILE_SIZE, ty * TILE_SIZE);
+                if(onlyOnDisk(key)) {
+                    //no decoding in onDraw, a placeholder until it is read
+                    readLater(key);
+                    canvas.save();
+                    canvas.concat(tileMatrix);
+                    canvas.drawRect(placeholder, placeholderPaint);
+                    canvas.restore();
+                    continue;
+                }
+                if(!tiles.containsKey(key) && !writing.containsKey(key)) {
+                    //rasterized from the strokes, a few per frame
+                    float left = tx * TILE_SIZE, top = ty * TILE_SIZE;
+                    if(!index.any(left, top, left + TILE_SIZE, top + TILE_SIZE, strokes.size())) continue;
+                    if(rasterized == MAX_RASTER_PER_FRAME) {
+                        more = true;
+                        canvas.save();
+                        canvas.concat(tileMatrix);
+                        canvas.drawRect(placeholder, placeholderPaint);
+                        canvas.restore();
+                        continue;
+                    }
+                    rasterized++;
+                }
+                Bitmap bitmap = obtain(tx, ty, false);
+                if(bitmap == null) continue; //no ink here
+                canvas.drawBitmap(bitmap, tileMatrix, tilePaint);
+            }
+        }
+        trim();
+        if(more) {
+            Runnable callback = onTileRead;
+            if(callback != null) callback.run();
+        }
+    }
+
+    /**
+     * Draws a newly committed stroke into the tiles it covers.
+     * The stroke must already be in strokes and index.
+     * @param stroke index of the stroke
+     * @param bounds its bounds in drawing coordinates
+     */
+    public void commitStroke(int stroke, float[] bounds)
+    {
+        if(overview != null && !overviewStale) {
+            if(strokes.isDelete(stroke)) {
+                redrawOverview(bounds);
+            }
+            else if(overviewArea.contains(bounds[0], bounds[1], bounds[2], bounds[3])) {
+                overviewCanvas.setBitmap(overview);
+                overviewCanvas.save();
+                overviewCanvas.scale(overviewScale, overviewScale);
+                overviewCanvas.translate(-overviewArea.left, -overviewArea.top);
+                renderer.drawStroke(overviewCanvas, stroke);
+                overviewCanvas.restore();
+            }
+            else {
+                overviewStale = true; //the drawing grew, built again when next drawn
+            }
+        }
+        boolean erase = strokes.isErase(stroke);
+        for(int ty = tile(bounds[1]); ty <= tile(bounds[3]); ty++) {
+            for(int tx = tile(bounds[0]); tx <= tile(bounds[2]); tx++) {
+                long key = StrokeIndex.key(tx, ty);
+                if(onlyOnDisk(key)) {
+                    //drawn into it when diskWriter has read it, see finishWrites
+                    StrokeIndex.IntList pending = pendingInk.get(key);
+                    if(pending == null) {
+                        pending = new StrokeIndex.IntList();
+                        pendingInk.put(key, pending);
+                    }
+                    pending.add(stroke);
+                    readLater(key);
+                    continue;
+                }
+                Bitmap bitmap = tiles.get(key);
+                if(bitmap == null) {
+                    //rasterized from the index, which already holds the stroke
+                    if(!writing.containsKey(key)) {
+                        if(!erase) obtain(tx, ty, true);
+                        continue;
+                    }
+                    bitmap = obtain(tx, ty, true);
+                }
+                tileCanvas.setBitmap(bitmap);
+                tileCanvas.save();
+                tileCanvas.translate(-tx * TILE_SIZE, -ty * TILE_SIZE);
+                renderer.drawStroke(tileCanvas, stroke);
+                tileCanvas.restore();
+                changed(key);
+            }
+        }
+        trim();
+    }
+
+    /**
+     * Draws the live eraser path into the tiles holding ink in an area,
+     * so erasing shows while the finger moves. Tiles still on disk are
+     * only queued for reading.
+     */
+    public void drawLive(Path path, Paint paint, float left, float top, float right, float bottom)
+    {
+        for(int ty = tile(top); ty <= tile(bottom); ty++) {
+            for(int tx = tile(left); tx <= tile(right); tx++) {
+                long key = StrokeIndex.key(tx, ty);
+                if(onlyOnDisk(key)) {
+                    readLater(key);
+                    continue;
+                }
+                Bitmap bitmap = obtain(tx, ty, false);
+                if(bitmap == null) continue;
+                tileCanvas.setBitmap(bitmap);
+                tileCanvas.save();
+                tileCanvas.translate(-tx * TILE_SIZE, -ty * TILE_SIZE);
+                tileCanvas.drawPath(path, paint);
+                tileCanvas.restore();
+                changed(key);
+            }
+        }
+    }
+
+    /**
+     * Draws the newest vertices of a live pressure stroke into the tiles
+     * of an area, creating tiles where there was no ink yet; the stroke's
+     * commitStroke later draws the same pixels again. Tiles still on disk
+     * are only queued for reading and miss the live part.
+     * @param vertices triangle strip, x,y pairs
+     * @param first first vertex to draw
+     * @param count vertices to draw
+     */
+    public void drawLive(float[] vertices, int first, int count, Paint paint,
+                         float left, float top, float right, float bottom)
+    {
+        for(int ty = tile(top); ty <= tile(bottom); ty++) {
+            for(int tx = tile(left); tx <= tile(right); tx++) {
+                long key = StrokeIndex.key(tx, ty);
+                if(onlyOnDisk(key)) {
+                    readLater(key);
+                    continue;
+                }
+                Bitmap bitmap = obtain(tx, ty, true);
+                tileCanvas.setBitmap(bitmap);
+                tileCanvas.save();
+                tileCanvas.translate(-tx * TILE_SIZE, -ty * TILE_SIZE);
+                tileCanvas.drawVertices(Canvas.VertexMode.TRIANGLE_STRIP, 2 * count, vertices, 2 * first,
+                        null, 0, null, 0, null, 0, 0, paint);
+                tileCanvas.restore();
+                changed(key);
+            }
+        }
+        trim();
+    }
+
+    /**
+     * Forgets the tiles of an area, they are rasterized from the
+     * strokes again when next drawn (after undo).
+     */
+    public void invalidate(float[] bounds)
+    {
+        if(overview != null && !overviewStale) redrawOverview(bounds);
+        for(int ty = tile(bounds[1]); ty <= tile(bounds[3]); ty++) {
+            for(int tx = tile(bounds[0]); tx <= tile(bounds[2]); tx++) {
+                long key = StrokeIndex.key(tx, ty);
+                Bitmap bitmap = tiles.remove(key);
+                if(bitmap != null) bitmap.recycle();
+                TileWrite write = writing.remove(key);
+                if(write != null) discard(write);
+                dirty.remove(key);
+                reading.remove(key);
+                pendingInk.remove(key);
+                if(onDisk.remove(key)) deleteLater(key);
+            }
+        }
+    }
+
+    /**
+     * forgets every tile
+     */
+    public void clear()
+    {
+        for(Bitmap bitmap : tiles.values()) {
+            bitmap.recycle();
+        }
+        if(overview != null) {
+            overview.recycle();
+            overview = null;
+        }
+        tiles.clear();
+        dirty.clear();
+        onDisk.clear();
+        reading.clear(); //reads still queued are recycled by finishWrites
+        pendingInk.clear();
+        //writes already started finish first and are dropped by finishWrites
+        for(TileWrite write : writing.values()) {
+            discard(write);
+        }
+        writing.clear();
+        diskWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                deleteCacheFiles();
+            }
+        });
+    }
+
+    /**
+     * frees the tiles and stops the disk writer
+     */
+    public void release()
+    {
+        clear();
+        diskWriter.shutdown();
+    }
+
+    /**
+     * @param create true to allocate an empty tile even without ink
+     * @return the tile bitmap, from memory or rasterized; null if there is no ink
+     */
+    private Bitmap obtain(int tx, int ty, boolean create)
+    {
+        long key = StrokeIndex.key(tx, ty);
+        Bitmap bitmap = tiles.get(key);
+        if(bitmap != null) return bitmap;
+
+        TileWrite write = writing.remove(key);
+        if(write != null) {
+            //evicted but not written yet, take it back
+            bitmap = takeBack(write);
+            if(bitmap != null) {
+                tiles.put(key, bitmap);
+                dirty.add(key);
+                return bitmap;
+            }
+        }
+        if(onDisk.remove(key)) {
+            //callers wait for onlyOnDisk tiles, this is not decoded here;
+            //the index holds everything the disk copy did
+            reading.remove(key);
+            pendingInk.remove(key);
+            deleteLater(key);
+        }
+
+        float left = tx * TILE_SIZE, top = ty * TILE_SIZE;
+        if(!create && !index.any(left, top, left + TILE_SIZE, top + TILE_SIZE, strokes.size())) {
+            return null;
+        }
+        bitmap = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        tileCanvas.setBitmap(bitmap);
+        tileCanvas.save();
+        tileCanvas.translate(-left, -top);
+        index.query(left, top, left + TILE_SIZE, top + TILE_SIZE, strokes.size(), found);
+        for(int i = 0; i < found.size(); i++) {
+            renderer.drawStroke(tileCanvas, found.get(i));
+        }
+        tileCanvas.restore();
+        tiles.put(key, bitmap);
+        dirty.add(key);
+        return bitmap;
+    }
+
+    /**
+     * Draws the overview, building it first if the drawing changed in a
+     * way it could not follow. Building draws every stroke once; after
+     * that commits and undos only touch their area.
+     */
+    private void drawOverview(Canvas canvas, Matrix viewMatrix)
+    {
+        if(overview == null || overviewStale) {
+            if(overview != null) {
+                overview.recycle();
+                overview = null;
+            }
+            overviewStale = false;
+            int count = strokes.size();
+            if(count == 0) return;
+            index.getBounds(0, bounds);
+            overviewArea.set(bounds[0], bounds[1], bounds[2], bounds[3]);
+            for(int i = 1; i < count; i++) {
+                index.getBounds(i, bounds);
+                overviewArea.union(bounds[0], bounds[1], bounds[2], bounds[3]);
+            }
+            float size = Math.max(overviewArea.width(), overviewArea.height());
+            overviewScale = Math.min(1, OVERVIEW_SIZE / Math.max(1, size));
+            overview = Bitmap.createBitmap(Math.max(1, (int)Math.ceil(overviewArea.width() * overviewScale)),
+                    Math.max(1, (int)Math.ceil(overviewArea.height() * overviewScale)), Bitmap.Config.ARGB_8888);
+            overviewCanvas.setBitmap(overview);
+            overviewCanvas.save();
+            overviewCanvas.scale(overviewScale, overviewScale);
+            overviewCanvas.translate(-overviewArea.left, -overviewArea.top);
+            for(int i = 0; i < count; i++) {
+                renderer.drawStroke(overviewCanvas, i);
+            }
+            overviewCanvas.restore();
+        }
+        tileMatrix.set(viewMatrix);
+        tileMatrix.preTranslate(overviewArea.left, overviewArea.top);
+        tileMatrix.preScale(1 / overviewScale, 1 / overviewScale);
+        canvas.drawBitmap(overview, tileMatrix, tilePaint);
+    }
+
+    /**
+     * Clears an area of the overview and draws the strokes there again
+     * (after undo or an object erase).
+     */
+    private void redrawOverview(float[] bounds)
+    {
+        float pixel = 1 / overviewScale; //one overview pixel, for the edges
+        float left = bounds[0] - pixel, top = bounds[1] - pixel;
+        float right = bounds[2] + pixel, bottom = bounds[3] + pixel;
+        overviewCanvas.setBitmap(overview);
+        overviewCanvas.save();
+        overviewCanvas.scale(overviewScale, overviewScale);
+        overviewCanvas.translate(-overviewArea.left, -overviewArea.top);
+        overviewCanvas.clipRect(left, top, right, bottom);
+        overviewCanvas.drawColor(0, PorterDuff.Mode.CLEAR);
+        index.query(left - pixel, top - pixel, right + pixel, bottom + pixel, strokes.size(), found);
+        for(int i = 0; i < found.size(); i++) {
+            renderer.drawStroke(overviewCanvas, found.get(i));
+        }
+        overviewCanvas.restore();
+    }
+
+    /**
+     * @return true if the tile's only copy is its cache file
+     */
+    private boolean onlyOnDisk(long key)
+    {
+        return onDisk.contains(key) && !tiles.containsKey(key) && !writing.containsKey(key);
+    }
+
+    private void changed(long key)
+    {
+        dirty.add(key);
+        reading.remove(key);
+        if(onDisk.remove(key)) deleteLater(key);
+    }
+
+    /**
+     * queues reading a tile back from disk for draw, finishWrites hands it over
+     */
+    private void readLater(final long key)
+    {
+        if(!reading.add(key)) return;
+        diskWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmap = decode(key);
+                synchronized(TileCanvas.this) {
+                    Bitmap old = read.put(key, bitmap);
+                    if(old != null) old.recycle();
+                }
+                Runnable callback = onTileRead;
+                if(callback != null) callback.run();
+            }
+        });
+    }
+
+    /**
+     * queues deleting the cache file of a tile whose disk copy is stale,
+     * after any write of it still queued
+     */
+    private void deleteLater(final long key)
+    {
+        diskWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                file(key).delete();
+            }
+        });
+    }
+
+    /**
+     * @return the tile's disk copy, mutable, null if unreadable
+     */
+    private Bitmap decode(long key)
+    {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inMutable = true;
+        return BitmapFactory.decodeFile(file(key).getPath(), options);
+    }
+
+    /**
+     * evicts the least recently drawn tiles beyond maxTiles
+     */
+    private void trim()
+    {
+        Iterator<Map.Entry<Long, Bitmap>> it = tiles.entrySet().iterator();
+        while(tiles.size() > maxTiles && it.hasNext()) {
+            Map.Entry<Long, Bitmap> eldest = it.next();
+            it.remove();
+            final long key = eldest.getKey();
+            final Bitmap bitmap = eldest.getValue();
+            if(!dirty.remove(key)) {
+                bitmap.recycle(); //the disk copy is current
+                continue;
+            }
+            final TileWrite write = new TileWrite(key, bitmap);
+            writing.put(key, write);
+            diskWriter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    write(write);
+                }
+            });
+        }
+    }
+
+    /**
+     * Takes an evicted tile back to draw into. A write not started yet is
+     * cancelled and its bitmap reused; one being compressed keeps its
+     * bitmap, the tile continues in a copy.
+     * @return the bitmap, null if it could not be copied
+     */
+    private Bitmap takeBack(TileWrite write)
+    {
+        synchronized(write) {
+            if(!write.started) {
+                write.cancelled = true;
+                return write.bitmap;
+            }
+        }
+        return write.bitmap.copy(Bitmap.Config.ARGB_8888, true);
+    }
+
+    /**
+     * Forgets an evicted tile: a write not started yet is cancelled, one
+     * being compressed is dropped by finishWrites when it lands.
+     */
+    private void discard(TileWrite write)
+    {
+        synchronized(write) {
+            if(write.started) return;
+            write.cancelled = true;
+        }
+        write.bitmap.recycle();
+    }
+
+    /**
+     * disk thread: compresses an evicted tile, unless it was taken back
+     */
+    private void write(TileWrite write)
+    {
+        synchronized(write) {
+            if(write.cancelled) return;
+            write.started = true;
+        }
+        boolean written = false;
+        try {
+            FileOutputStream out = new FileOutputStream(file(write.key));
+            try {
+                written = write.bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch(IOException e) {
+            written = false;
+        }
+        write.written = written;
+        synchronized(this) {
+            //hand over on the next UI access, see finishWrites
+            finished.add(write);
+        }
+    }
+
+    /**
+     * Moves finished disk writes into onDisk and tiles read back into
+     * tiles, on the UI thread. Only the latest write of a tile counts:
+     * one that was taken back, evicted again or invalidated since only
+     * has its bitmap recycled. So has a tile read back that was loaded,
+     * changed or invalidated meanwhile. Pending ink is drawn into a tile
+     * read back before it is shown.
+     */
+    private void finishWrites()
+    {
+        synchronized(this) {
+            for(Map.Entry<Long, Bitmap> e : read.entrySet()) {
+                long key = e.getKey();
+                Bitmap bitmap = e.getValue();
+                StrokeIndex.IntList pending = pendingInk.remove(key);
+                if(!reading.remove(key) || tiles.containsKey(key) || !onDisk.contains(key)) {
+                    if(bitmap != null) bitmap.recycle();
+                }
+                else if(bitmap == null) {
+                    //unreadable, rasterized instead on the next draw, pending ink included
+                    onDisk.remove(key);
+                    deleteLater(key);
+                }
+                else {
+                    tiles.put(key, bitmap);
+                    if(pending != null) drawPending(key, bitmap, pending);
+                }
+            }
+            read.clear();
+            if(finished.isEmpty()) return;
+            for(int i = 0; i < finished.size(); i++) {
+                TileWrite write = finished.get(i);
+                if(writing.get(write.key) != write) {
+                    write.bitmap.recycle(); //superseded
+                    continue;
+                }
+                writing.remove(write.key);
+                if(write.written) {
+                    onDisk.add(write.key);
+                    write.bitmap.recycle();
+                }
+                else {
+                    //could not write, keep it in memory
+                    tiles.put(write.key, write.bitmap);
+                    dirty.add(write.key);
+                }
+            }
+            finished.clear();
+        }
+    }
+
+    /**
+     * draws strokes committed while a tile was on disk into it
+     */
+    private void drawPending(long key, Bitmap bitmap, StrokeIndex.IntList pending)
+    {
+        tileCanvas.setBitmap(bitmap);
+        tileCanvas.save();
+        tileCanvas.translate(-(int)(key >> 32) * TILE_SIZE, -(int)key * TILE_SIZE);
+        for(int i = 0; i < pending.size(); i++) {
+            int stroke = pending.get(i);
+            if(stroke < strokes.size()) renderer.drawStroke(tileCanvas, stroke);
+        }
+        tileCanvas.restore();
+        changed(key);
+    }
+
+    private void deleteCacheFiles()
+    {
+        File[] files = cacheDir.listFiles();
+        if(files == null) return;
+        for(File f : files) {
+            f.delete();
+        }
+    }
+
+    private File file(long key)
+    {
+        return new File(cacheDir, "tile_" + (int)(key >> 32) + "_" + (int)key + ".png");
+    }
+
+    private static int tile(float v)
+    {
+        return (int)Math.floor(v / TILE_SIZE);
+    }
+}
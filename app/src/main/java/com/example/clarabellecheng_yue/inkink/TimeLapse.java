@@ -0,0 +1,164 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Renders a drawing being drawn as a numbered PNG image sequence
+ * (frame-00000.png, frame-00001.png...), e.g. for a video encoder.
+ * Everything but copying the drawing runs on a background thread,
+ * with a StrokePlayer that has no frame budget: every frame shows
+ * exactly the strokes due at its time.
+ * Progress is reported back on the UI thread.
+ */
+public class TimeLapse
+{
+    /**
+     * Called on the UI thread.
+     */
+    public interface Listener {
+        void onTimeLapseProgress(int frame, int frameCount);
+
+        /**
+         * @param frames images written
+         * @param error why rendering stopped early, or null
+         */
+        void onTimeLapseFinished(int frames, IOException error);
+    }
+
+    private static final int PROGRESS_FRAMES = 10; //frames between progress reports
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean busy;
+    private volatile boolean cancelled;
+
+    /**
+     * @return true while a time-lapse is being rendered
+     */
+    public boolean isBusy() {
+        return busy;
+    }
+
+    /**
+     * Starts rendering in the background. Must be called on the UI thread.
+     * @param player player of the drawing (DrawingView.newPlayer()), its speed sets the time-lapse speed
+     * @param width frame size, in drawing coordinates
+     * @param height
+     * @param paperColor drawn under every frame
+     * @param fps frames per second of the result
+     * @param dir receives the images, created if needed
+     * @param listener told about progress and the result, may be null
+     * @return false if a time-lapse is still being rendered
+     */
+    public boolean render(final StrokePlayer player, final int width, final int height, final int paperColor,
+                          final int fps, final File dir, final Listener listener)
+    {
+        if(busy || width <= 0 || height <= 0) return false;
+        busy = true;
+        cancelled = false;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int frames = 0;
+                IOException error = null;
+                try {
+                    frames = renderFrames(player, width, height, paperColor, fps, dir, listener);
+                }
+                catch(IOException e) {
+                    error = e;
+                }
+                busy = false;
+                if(listener != null) {
+                    final int written = frames;
+                    final IOException failure = error;
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onTimeLapseFinished(written, failure);
+                        }
+                    });
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * stops the time-lapse being rendered after its current frame
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * stops the background thread, a time-lapse being rendered is dropped
+     */
+    public void shutdown()
+    {
+        cancelled = true;
+        executor.shutdown();
+    }
+
+    /**
+     * background thread: one image per frame until the drawing is finished
+     */
+    private int renderFrames(StrokePlayer player, int width, int height, int paperColor, int fps,
+                             File dir, final Listener listener) throws IOException
+    {
+        if(!dir.isDirectory() && !dir.mkdirs()) throw new IOException("could not create " + dir);
+        long frameMillis = 1000 / fps;
+        final int frameCount = (int)(player.getDurationMillis() / (frameMillis * player.getSpeed())) + 2;
+        ReplayCanvas replay = new ReplayCanvas(width, height);
+        Bitmap frame = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas frameCanvas = new Canvas(frame);
+        int frames = 0;
+        try {
+            //the first frame is the empty page, the last the finished drawing
+            while(!cancelled) {
+                frameCanvas.drawColor(paperColor);
+                replay.drawFrame(frameCanvas, player);
+                writeFrame(frame, new File(dir, String.format(Locale.US, "frame-%05d.png", frames)));
+                frames++;
+                if(listener != null && frames % PROGRESS_FRAMES == 0) {
+                    final int done = frames;
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onTimeLapseProgress(done, Math.max(done, frameCount));
+                        }
+                    });
+                }
+                if(player.isFinished()) break;
+                player.advance(frameMillis, Long.MAX_VALUE, replay);
+            }
+        }
+        finally {
+            replay.release();
+            frame.recycle();
+        }
+        return frames;
+    }
+
+    private static void writeFrame(Bitmap frame, File file) throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            if(!frame.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                throw new IOException("could not encode " + file);
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * A drawing exported as vector paths rather than pixels: SVG (SvgWriter)
+ * or PDF (PdfWriter), written from the stroke list instead of a
+ * rasterized snapshot, so it stays sharp at any size.
+ *
+ * Built on the UI thread from a copy of DrawingView's strokes and its
+ * layer settings, then written on a background thread. The writers walk
+ * the strokes layer by layer and stream every path into a small
+ * VectorOutput buffer as it is reached, so memory stays at the copied
+ * drawing plus fixed buffers however many strokes there are.
+ *
+ * Ink layers become groups with their opacity and blend mode, pixel
+ * eraser strokes become masks over the strokes before them on their
+ * layer, fills are filled rectangles and pressure strokes filled outlines
+ * (StrokeMesh.outline). The template is written once and referenced from
+ * the page. Scratch and hidden layers are left out, as in raster exports.
+ * Kept free of Android types so it can be unit tested on the JVM.
+ */
+public class VectorExport
+{
+    static final int BASE_LAYER = 0; //LayerStack.BASE_LAYER, gets strokes of unknown layers
+    static final int BUFFER_BYTES = 64 * 1024;
+    private static final int CANCEL_CHECK_STROKES = 256; //strokes between interrupt checks
+
+    /**
+     * An image drawn under the strokes, stretched over the whole page.
+     */
+    public interface Template {
+        int getWidth();
+        int getHeight();
+
+        /**
+         * @return where an SVG finds the image, e.g. the name of a file next to it
+         */
+        String getHref();
+
+        /**
+         * writes the image as a baseline JPEG, embedded in PDFs
+         */
+        void writeJpeg(OutputStream out) throws IOException;
+    }
+
+    /**
+     * An ink layer's settings.
+     */
+    public static class Layer {
+        final int id;
+        final boolean exported; //visible and not a scratch layer
+        final int alpha; //0-255
+        final String blendMode; //PDF blend mode name, e.g. "Multiply", or null for normal
+
+        Layer(int id, boolean exported, int alpha, String blendMode) {
+            this.id = id;
+            this.exported = exported;
+            this.alpha = alpha;
+            this.blendMode = blendMode;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getAlpha() {
+            return alpha;
+        }
+
+        public String getBlendMode() {
+            return blendMode;
+        }
+    }
+
+    /**
+     * Output format, driven stroke by stroke in drawing order.
+     */
+    interface Backend {
+        void begin(VectorExport export) throws IOException;
+
+        /**
+         * @param erasers visible eraser strokes on the layer, in order
+         */
+        void beginLayer(Layer layer, StrokeIndex.IntList erasers) throws IOException;
+
+        /**
+         * a visible stroke that adds ink: plain, simplified, fill or pressure
+         */
+        void stroke(StrokeStore strokes, int stroke) throws IOException;
+
+        /**
+         * the next of the layer's erasers
+         */
+        void erase(StrokeStore strokes, int stroke) throws IOException;
+
+        void endLayer() throws IOException;
+
+        void end() throws IOException;
+    }
+
+    private final StrokeStore strokes = new StrokeStore();
+    private final int width, height;
+    private final ArrayList<Layer> layers = new ArrayList<>();
+    private int paperColor;
+    private Template template;
+
+    private final StrokeIndex.IntList erasers = new StrokeIndex.IntList();
+
+    /**
+     * @param drawing strokes to export, copied
+     * @param width page width in pixels
+     * @param height page height in pixels
+     */
+    public VectorExport(StrokeStore drawing, int width, int height)
+    {
+        strokes.copyFrom(drawing);
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Adds the next ink layer up. Strokes on layers that are not added
+     * go on the base layer, as DrawingView draws them.
+     * @param exported false for hidden and scratch layers, whose strokes are left out
+     * @param alpha layer opacity, 0-255
+     * @param blendMode PDF blend mode name, e.g. "Multiply", or null for normal
+     */
+    public void addLayer(int id, boolean exported, int alpha, String blendMode) {
+        layers.add(new Layer(id, exported, alpha, blendMode));
+    }
+
+    /**
+     * @param color page color under the strokes when there is no template, 0 for none
+     */
+    public void setPaperColor(int color) {
+        paperColor = color;
+    }
+
+    /**
+     * @param template image under the strokes, or null
+     */
+    public void setTemplate(Template template) {
+        this.template = template;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getPaperColor() {
+        return paperColor;
+    }
+
+    public Template getTemplate() {
+        return template;
+    }
+
+    public StrokeStore getStrokes() {
+        return strokes;
+    }
+
+    /**
+     * writes the drawing as an SVG document; out is flushed, not closed
+     * @throws InterruptedIOException if the thread is interrupted meanwhile
+     */
+    public void writeSvg(OutputStream out) throws IOException
+    {
+        VectorOutput text = new VectorOutput(out, BUFFER_BYTES);
+        write(new SvgWriter(text));
+        text.flush();
+    }
+
+    /**
+     * writes the drawing as a one page PDF document; out is flushed, not closed
+     * @throws InterruptedIOException if the thread is interrupted meanwhile
+     */
+    public void writePdf(OutputStream out) throws IOException
+    {
+        VectorOutput text = new VectorOutput(out, BUFFER_BYTES);
+        write(new PdfWriter(text));
+        text.flush();
+    }
+
+    void write(Backend out) throws IOException
+    {
+        out.begin(this);
+        if(layers.isEmpty()) addLayer(BASE_LAYER, true, 255, null);
+        for(int l = 0; l < layers.size(); l++) {
+            Layer layer = layers.get(l);
+            if(!layer.exported) continue;
+            erasers.clear();
+            for(int i = 0; i < strokes.size(); i++) {
+                if(strokes.isErase(i) && strokes.isVisible(i) && layerOf(i) == layer.id) erasers.add(i);
+            }
+            out.beginLayer(layer, erasers);
+            for(int i = 0; i < strokes.size(); i++) {
+                if(i % CANCEL_CHECK_STROKES == 0 && Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("export cancelled");
+                }
+                if(!strokes.isVisible(i) || layerOf(i) != layer.id) continue;
+                if(strokes.isErase(i)) out.erase(strokes, i);
+                else out.stroke(strokes, i);
+            }
+            out.endLayer();
+        }
+        out.end();
+    }
+
+    /**
+     * @return id of the added layer a stroke is drawn on
+     */
+    private int layerOf(int stroke)
+    {
+        int id = strokes.getLayer(stroke);
+        for(int l = 0; l < layers.size(); l++) {
+            if(layers.get(l).id == id) return id;
+        }
+        return BASE_LAYER;
+    }
+}
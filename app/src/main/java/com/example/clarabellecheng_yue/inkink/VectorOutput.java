@@ -0,0 +1,201 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffered 8 bit text output for the vector exporters (SVG and PDF are
+ * both plain ASCII apart from embedded images), with compact numbers:
+ * at most two decimals, no trailing zeros and no leading zero, so 12.5,
+ * .25 and -3 rather than 12.500000, 0.25 and -3.0. Numbers are written
+ * digit by digit into the buffer, nothing is allocated per number.
+ *
+ * Write errors are kept instead of thrown, so path data can be written
+ * from a StrokeBuilder.Sink; check() throws the first one. The position
+ * counts every byte written, for the PDF cross-reference table.
+ */
+public class VectorOutput
+{
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int used;
+    private long flushed; //bytes handed to out
+    private IOException error;
+
+    private static final long[] SCALES = {1, 10, 100, 1000, 10000};
+
+    private final byte[] digits = new byte[20];
+
+    /**
+     * @param out stream written to, not closed
+     * @param bufferSize bytes collected before out is written
+     */
+    public VectorOutput(OutputStream out, int bufferSize)
+    {
+        this.out = out;
+        buffer = new byte[bufferSize];
+    }
+
+    /**
+     * writes the low 8 bits of every char
+     */
+    public VectorOutput write(String text)
+    {
+        for(int i = 0; i < text.length(); i++) {
+            write(text.charAt(i));
+        }
+        return this;
+    }
+
+    public VectorOutput write(char c)
+    {
+        if(used == buffer.length) drain();
+        buffer[used++] = (byte)c;
+        return this;
+    }
+
+    /**
+     * writes an integer in decimal
+     */
+    public VectorOutput write(long value)
+    {
+        if(value < 0) {
+            write('-');
+            value = -value;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte)('0' + value % 10);
+            value /= 10;
+        } while(value > 0);
+        while(n > 0) write((char)digits[--n]);
+        return this;
+    }
+
+    /**
+     * writes a number rounded to two decimals in the compact form, 0 for NaN and infinities
+     */
+    public VectorOutput number(float value) {
+        return number(value, 2);
+    }
+
+    /**
+     * writes a number in the compact form, 0 for NaN and infinities
+     * @param decimals 0 to 4
+     */
+    public VectorOutput number(float value, int decimals)
+    {
+        if(Float.isNaN(value) || Float.isInfinite(value)) return write('0');
+        long scale = SCALES[decimals];
+        long scaled = Math.round(value * (double)scale);
+        if(scaled < 0) {
+            write('-');
+            scaled = -scaled;
+        }
+        long whole = scaled / scale;
+        long fraction = scaled % scale;
+        if(whole > 0 || fraction == 0) write(whole);
+        if(fraction != 0) {
+            write('.');
+            for(long digit = scale / 10; fraction != 0; digit /= 10) {
+                write((char)('0' + fraction / digit));
+                fraction %= digit;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * writes a color as #rrggbb, alpha left out
+     */
+    public VectorOutput hexColor(int color)
+    {
+        write('#');
+        for(int shift = 20; shift >= 0; shift -= 4) {
+            write(Character.forDigit((color >> shift) & 0xF, 16));
+        }
+        return this;
+    }
+
+    /**
+     * writes bytes as they are, e.g. an image
+     */
+    public void write(byte[] bytes, int offset, int length)
+    {
+        if(length > buffer.length - used) drain();
+        if(length > buffer.length) {
+            if(error != null) return;
+            try {
+                out.write(bytes, offset, length);
+                flushed += length;
+            }
+            catch(IOException e) {
+                error = e;
+            }
+            return;
+        }
+        System.arraycopy(bytes, offset, buffer, used, length);
+        used += length;
+    }
+
+    /**
+     * @return a stream writing through this output, for images written by other code; not to be closed
+     */
+    public OutputStream asStream()
+    {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                VectorOutput.this.write((char)(b & 0xFF));
+                check();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                VectorOutput.this.write(b, off, len);
+                check();
+            }
+        };
+    }
+
+    /**
+     * @return bytes written so far, buffered ones included
+     */
+    public long position() {
+        return flushed + used;
+    }
+
+    /**
+     * @throws IOException the first write error, if there was one
+     */
+    public void check() throws IOException
+    {
+        if(error != null) throw error;
+    }
+
+    /**
+     * writes out the buffer and flushes the stream
+     * @throws IOException the first write error, if there was one
+     */
+    public void flush() throws IOException
+    {
+        drain();
+        check();
+        out.flush();
+    }
+
+    private void drain()
+    {
+        if(used == 0) return;
+        if(error == null) {
+            try {
+                out.write(buffer, 0, used);
+            }
+            catch(IOException e) {
+                error = e;
+            }
+        }
+        flushed += used;
+        used = 0;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the undo snapshot cache, run on the JVM.
+ */
+public class CheckpointCacheTest {
+
+    @Test
+    public void wantsEveryInterval() throws Exception {
+        CheckpointCache<String> cache = new CheckpointCache<>(10, 100);
+        assertFalse(cache.wants(0));
+        assertFalse(cache.wants(5));
+        assertTrue(cache.wants(10));
+        cache.put(10, "ten", 1);
+        assertFalse(cache.wants(10));
+        assertTrue(cache.wants(20));
+    }
+
+    @Test
+    public void floorFindsClosestSnapshotBelow() throws Exception {
+        CheckpointCache<String> cache = new CheckpointCache<>(10, 100);
+        cache.put(10, "ten", 1);
+        cache.put(20, "twenty", 1);
+        cache.put(30, "thirty", 1);
+        assertEquals(0, cache.floorKey(9));
+        assertEquals(10, cache.floorKey(19));
+        assertEquals(20, cache.floorKey(20));
+        assertEquals(30, cache.floorKey(1000));
+        assertEquals("twenty", cache.get(20));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedPastBudget() throws Exception {
+        final ArrayList<String> removed = new ArrayList<>();
+        CheckpointCache<String> cache = new CheckpointCache<>(10, 30);
+        cache.setListener(new CheckpointCache.Listener<String>() {
+            @Override
+            public void onRemoved(String snapshot) {
+                removed.add(snapshot);
+            }
+        });
+        cache.put(10, "ten", 10);
+        cache.put(20, "twenty", 10);
+        cache.put(30, "thirty", 10);
+        cache.get(10); //ten is now the most recently used
+        cache.put(40, "forty", 10);
+
+        assertEquals(3, cache.size());
+        assertEquals(30, cache.getUsedBytes());
+        assertEquals(1, removed.size());
+        assertEquals("twenty", removed.get(0));
+        assertNull(cache.get(20));
+    }
+
+    @Test
+    public void invalidateAboveDropsRedoSnapshots() throws Exception {
+        CheckpointCache<String> cache = new CheckpointCache<>(10, 100);
+        cache.put(10, "ten", 5);
+        cache.put(20, "twenty", 5);
+        cache.put(30, "thirty", 5);
+        cache.invalidateAbove(20);
+        assertEquals(2, cache.size());
+        assertEquals(10, cache.getUsedBytes());
+        assertEquals(20, cache.floorKey(25));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getUsedBytes());
+    }
+
+    @Test
+    public void zeroBudgetKeepsNothing() throws Exception {
+        CheckpointCache<String> cache = new CheckpointCache<>(10, 0);
+        assertFalse(cache.wants(10));
+        cache.put(10, "ten", 1);
+        assertEquals(0, cache.size());
+    }
+}
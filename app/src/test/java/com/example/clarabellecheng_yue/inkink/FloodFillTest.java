@@ -0,0 +1,154 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the bucket fill, run on the JVM.
+ */
+public class FloodFillTest {
+
+    private static final int WHITE = 0xFFFFFFFF, BLACK = 0xFF000000;
+
+    /**
+     * a w x h white canvas with a black square outline from (a, a) to (b, b)
+     */
+    private static int[] ring(FloodFill fill, int w, int h, int a, int b) {
+        int[] pixels = fill.getPixels(w, h);
+        for(int i = 0; i < w * h; i++) pixels[i] = WHITE;
+        for(int i = a; i <= b; i++) {
+            pixels[a * w + i] = pixels[b * w + i] = BLACK;
+            pixels[i * w + a] = pixels[i * w + b] = BLACK;
+        }
+        return pixels;
+    }
+
+    @Test
+    public void staysInsideTheOutline() throws Exception {
+        FloodFill fill = new FloodFill(null, 1);
+        ring(fill, 20, 20, 5, 14);
+        assertTrue(fill.fill(10, 10, 0));
+        assertEquals(8 * 8, fill.getFilledPixels());
+        assertEquals(6, fill.getLeft());
+        assertEquals(6, fill.getTop());
+        assertEquals(14, fill.getRight());
+        assertEquals(14, fill.getBottom());
+        assertTrue(fill.isFilled(6, 13));
+        assertFalse(fill.isFilled(5, 10));
+        //a square is one rectangle
+        assertEquals(1, fill.getRectCount());
+        //outside, around the ring
+        assertTrue(fill.fill(0, 0, 0));
+        assertEquals(20 * 20 - 10 * 10, fill.getFilledPixels());
+        assertFalse(fill.isFilled(10, 10));
+    }
+
+    @Test
+    public void toleranceTakesInCloseColors() throws Exception {
+        FloodFill fill = new FloodFill(null, 1);
+        int[] pixels = fill.getPixels(10, 1);
+        for(int x = 0; x < 10; x++) pixels[x] = 0xFF000000 | (x * 10) << 16; //red steps of 10
+        fill.fill(0, 0, 25);
+        assertEquals(3, fill.getFilledPixels());
+        fill.fill(0, 0, 255);
+        assertEquals(10, fill.getFilledPixels());
+        assertFalse(fill.fill(10, 0, 0));
+        assertEquals(0, fill.getFilledPixels());
+    }
+
+    @Test
+    public void rectanglesCoverExactlyTheFilledPixels() throws Exception {
+        FloodFill fill = new FloodFill(null, 1);
+        int w = 64, h = 48;
+        noise(fill, w, h, 7);
+        fill.fill(w / 2, h / 2, 0);
+        assertEquals(fill.getFilledPixels(), coverage(fill, w, h, true));
+        assertEquals(0, coverage(fill, w, h, false));
+    }
+
+    @Test
+    public void bandsGiveTheSameFill() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            FloodFill serial = new FloodFill(null, 1);
+            FloodFill banded = new FloodFill(pool, 4);
+            int w = 700, h = 500; //over PARALLEL_PIXELS
+            noise(serial, w, h, 3);
+            noise(banded, w, h, 3);
+            serial.fill(1, 1, 0);
+            banded.fill(1, 1, 0);
+            assertEquals(serial.getFilledPixels(), banded.getFilledPixels());
+            assertEquals(serial.getRectCount(), banded.getRectCount());
+
+            int boxWidth = banded.getRight() - banded.getLeft();
+            int boxHeight = banded.getBottom() - banded.getTop();
+            int[] box = new int[boxWidth * boxHeight];
+            banded.apply(box, 0xFF123456);
+            int written = 0;
+            for(int i = 0; i < box.length; i++) {
+                if(box[i] == 0xFF123456) written++;
+            }
+            assertEquals(banded.getFilledPixels(), written);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void fillIsReplayedAsItsRectangles() throws Exception {
+        FloodFill fill = new FloodFill(null, 1);
+        ring(fill, 20, 20, 5, 14);
+        fill.fill(0, 0, 0);
+        StrokeStore store = new StrokeStore();
+        store.add(fill.getRects(), 2 * fill.getRectCount(), BLACK, 0, StrokeStore.FLAG_FILL);
+        StrokeBuilderTest.CountingSink sink = new StrokeBuilderTest.CountingSink();
+        store.replay(0, sink);
+        assertEquals(fill.getRectCount(), sink.moves);
+        assertEquals(3 * fill.getRectCount(), sink.lines);
+        assertEquals(0, sink.quads);
+        float[] bounds = new float[4];
+        store.getBounds(0, bounds);
+        assertArrayEquals(new float[]{0, 0, 20, 20}, bounds, 0f);
+    }
+
+    /**
+     * white with black dots, about one pixel in four
+     */
+    private static void noise(FloodFill fill, int w, int h, long seed) {
+        int[] pixels = fill.getPixels(w, h);
+        Random random = new Random(seed);
+        for(int i = 0; i < w * h; i++) pixels[i] = random.nextInt(4) == 0 ? BLACK : WHITE;
+        pixels[w * (h / 2) + w / 2] = WHITE;
+        pixels[w + 1] = WHITE;
+    }
+
+    /**
+     * @param filled true to count the pixels both the rectangles and the
+     * fill cover, false for those only the rectangles cover
+     */
+    private static int coverage(FloodFill fill, int w, int h, boolean filled) {
+        boolean[] covered = new boolean[w * h];
+        float[] rects = fill.getRects();
+        for(int r = 0; r < fill.getRectCount(); r++) {
+            for(int y = (int)rects[4 * r + 1]; y < rects[4 * r + 3]; y++) {
+                for(int x = (int)rects[4 * r]; x < rects[4 * r + 2]; x++) {
+                    assertFalse("rectangles overlap", covered[y * w + x]);
+                    covered[y * w + x] = true;
+                }
+            }
+        }
+        int count = 0;
+        for(int y = 0; y < h; y++) {
+            for(int x = 0; x < w; x++) {
+                if(covered[y * w + x] && fill.isFilled(x, y) == filled) count++;
+            }
+        }
+        return count;
+    }
+}
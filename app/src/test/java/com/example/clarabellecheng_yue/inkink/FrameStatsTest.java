@@ -0,0 +1,86 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the instrumentation counters, run on the JVM.
+ */
+public class FrameStatsTest {
+
+    @Test
+    public void histogramBucketsArePowersOfTwo() throws Exception {
+        FrameStats.Histogram h = new FrameStats.Histogram("t", "us");
+        h.record(0);
+        h.record(1);
+        h.record(3);
+        h.record(1000);
+        assertEquals(1, h.getBucket(0));
+        assertEquals(1, h.getBucket(1));
+        assertEquals(1, h.getBucket(2)); //2 and 3
+        assertEquals(1, h.getBucket(10)); //512 to 1023
+        assertEquals(4, h.getCount());
+        assertEquals(1000, h.getMax());
+        assertEquals(251f, h.getMean(), 0f);
+    }
+
+    @Test
+    public void percentilesComeFromBuckets() throws Exception {
+        FrameStats.Histogram h = new FrameStats.Histogram("t", "us");
+        assertEquals(0, h.getPercentile(0.5));
+        for(int i = 0; i < 95; i++) h.record(5000); //a 5 ms frame
+        for(int i = 0; i < 5; i++) h.record(40000); //jank
+        assertEquals(8191, h.getPercentile(0.5));
+        assertEquals(8191, h.getPercentile(0.95));
+        assertEquals(40000, h.getPercentile(0.99)); //capped at the max
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+    }
+
+    @Test
+    public void framesReachTheListener() throws Exception {
+        FrameStats stats = new FrameStats();
+        final int[] calls = new int[1];
+        stats.setListener(new FrameStats.Listener() {
+            @Override
+            public void onFrame(FrameStats s) {
+                calls[0]++;
+            }
+        });
+        stats.recordFrame(2500000, 40, 3);
+        stats.recordFrame(1500000, 10, -1);
+        assertEquals(2, calls[0]);
+        assertEquals(2, stats.getFrames());
+        assertEquals(1500, stats.getLastDrawMicros());
+        assertEquals(2, stats.getDrawTime().getCount());
+        assertEquals(1, stats.getAllocations().getCount()); //-1 is not counted
+        stats.recordTouch(200000, 7);
+        assertEquals(7000, stats.getTouchLatency().getMax());
+        stats.recordOperation(FrameStats.OP_UNDO, 3000000);
+        assertEquals(3000, stats.getOperation(FrameStats.OP_UNDO).getMax());
+        assertEquals(0, stats.getOperation(FrameStats.OP_REDO).getCount());
+    }
+
+    @Test
+    public void dumpsListEveryHistogram() throws Exception {
+        FrameStats stats = new FrameStats();
+        stats.recordFrame(2000000, 40, 0);
+        stats.recordDocument(12, 1 << 20);
+        StringWriter json = new StringWriter();
+        stats.writeJson(json);
+        assertTrue(json.toString().startsWith("{\"frames\":1,\"strokes\":12,\"bitmap_bytes\":1048576,"));
+        assertTrue(json.toString().contains("\"draw\":{\"unit\":\"us\",\"count\":1,"));
+        assertTrue(json.toString().contains("\"undo\":{"));
+
+        StringWriter csv = new StringWriter();
+        stats.writeCsv(csv);
+        String[] lines = csv.toString().split("\n");
+        assertEquals(1 + 9 + 2, lines.length);
+        assertTrue(lines[0].startsWith("name,unit,count,mean,p50,p95,p99,max,b0"));
+        assertTrue(lines[1].startsWith("draw,us,1,2000.00,2000,2000,2000,2000"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the touch point prediction, run on the JVM.
+ */
+public class InkPredictorTest {
+
+    @Test
+    public void steadyMotionIsExtrapolated() throws Exception {
+        InkPredictor predictor = new InkPredictor(100);
+        //1 px per ms to the right
+        for(int t = 0; t <= 32; t += 8) {
+            predictor.add(t, 50, t);
+        }
+        float[] out = new float[2];
+        assertTrue(predictor.predict(16, out));
+        assertEquals(48f, out[0], 0.01f);
+        assertEquals(50f, out[1], 0.01f);
+    }
+
+    @Test
+    public void accelerationIsFollowed() throws Exception {
+        InkPredictor predictor = new InkPredictor(1000);
+        //x = t * t / 16: speeding up
+        for(int t = 0; t <= 32; t += 8) {
+            predictor.add(t * t / 16f, 0, t);
+        }
+        float[] out = new float[2];
+        assertTrue(predictor.predict(8, out));
+        float linear = 64 + 8 * (64 - 36) / 8f; //last velocity only
+        assertTrue(out[0] > linear);
+    }
+
+    @Test
+    public void predictionIsCapped() throws Exception {
+        InkPredictor predictor = new InkPredictor(10);
+        predictor.add(0, 0, 0);
+        predictor.add(100, 0, 8);
+        float[] out = new float[2];
+        assertTrue(predictor.predict(16, out));
+        assertEquals(110f, out[0], 0.01f);
+    }
+
+    @Test
+    public void noGuessWhenResting() throws Exception {
+        InkPredictor predictor = new InkPredictor(100);
+        float[] out = new float[2];
+        assertFalse(predictor.predict(16, out)); //no samples
+        predictor.add(10, 10, 0);
+        assertFalse(predictor.predict(16, out)); //one sample
+        predictor.add(10, 10, 8);
+        assertFalse(predictor.predict(16, out)); //not moving
+        predictor.add(30, 10, 200);
+        assertFalse(predictor.predict(16, out)); //too long since the last sample
+        predictor.reset();
+        assertFalse(predictor.predict(16, out));
+    }
+}
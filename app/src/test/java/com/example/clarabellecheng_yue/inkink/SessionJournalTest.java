@@ -0,0 +1,193 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes sessions to a temporary directory and reads them back.
+ */
+public class SessionJournalTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("journal", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] files = dir.listFiles();
+        if(files != null) {
+            for(File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    static void appendLine(SessionJournal journal, int i) {
+        float[] xy = {i, 0, i, 10, i, 20};
+        journal.appendStroke(xy, 3, i, 4f, 0);
+    }
+
+    static StrokeStore restore(File dir, int compactRecords) throws Exception {
+        final StrokeStore[] result = new StrokeStore[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        SessionJournal journal = new SessionJournal(dir, compactRecords);
+        journal.restore(new SessionJournal.RestoreCallback() {
+            @Override
+            public void onRestored(StrokeStore restored, long millis) {
+                result[0] = restored;
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        journal.close();
+        assertTrue(journal.awaitClosed(5000));
+        assertNull(journal.getFailure());
+        return result[0];
+    }
+
+    static void write(File dir, int compactRecords, int strokes, int undos) throws Exception {
+        SessionJournal journal = new SessionJournal(dir, compactRecords);
+        for(int i = 0; i < strokes; i++) {
+            appendLine(journal, i);
+        }
+        for(int i = 0; i < undos; i++) {
+            journal.appendUndo();
+        }
+        journal.close();
+        assertTrue(journal.awaitClosed(5000));
+        assertNull(journal.getFailure());
+    }
+
+    @Test
+    public void emptyDirectoryRestoresEmptyDrawing() throws Exception {
+        assertEquals(0, restore(dir, 100).size());
+    }
+
+    @Test
+    public void journalTailIsReplayed() throws Exception {
+        write(dir, 1000, 10, 3);
+        StrokeStore restored = restore(dir, 1000);
+        assertEquals(7, restored.size());
+        assertEquals(0, restored.redoCount());
+        assertEquals(6, restored.getColor(6));
+        assertEquals(20f, restored.getY(6, 2), 0f);
+    }
+
+    @Test
+    public void compactionKeepsOneGeneration() throws Exception {
+        write(dir, 10, 25, 1);
+        String[] names = dir.list();
+        assertEquals(2, names.length); //snapshot-2.ink and journal-2.log
+
+        StrokeStore restored = restore(dir, 10);
+        assertEquals(24, restored.size());
+        assertEquals(23, restored.getColor(23));
+
+        //keep drawing in the restored session
+        write(dir, 10, 3, 0);
+        assertEquals(27, restore(dir, 10).size());
+    }
+
+    @Test
+    public void clearStartsOver() throws Exception {
+        SessionJournal journal = new SessionJournal(dir, 100);
+        appendLine(journal, 1);
+        journal.appendClear();
+        appendLine(journal, 2);
+        journal.close();
+        assertTrue(journal.awaitClosed(5000));
+
+        StrokeStore restored = restore(dir, 100);
+        assertEquals(1, restored.size());
+        assertEquals(2, restored.getColor(0));
+    }
+
+    @Test
+    public void tornTailIsDropped() throws Exception {
+        write(dir, 1000, 5, 0);
+        File log = new File(dir, "journal-0.log");
+        RandomAccessFile file = new RandomAccessFile(log, "rw");
+        file.setLength(file.length() - 3); //crash in the middle of the last record
+        file.close();
+
+        assertEquals(4, restore(dir, 1000).size());
+        //the torn record is gone, new records follow the intact ones
+        write(dir, 1000, 1, 0);
+        assertEquals(5, restore(dir, 1000).size());
+    }
+
+    @Test
+    public void timingAndLayerAreJournaled() throws Exception {
+        SessionJournal journal = new SessionJournal(dir, 100);
+        appendLine(journal, 1);
+        journal.appendStroke(new float[]{0, 0, 5, 5}, 2, 3, 4f, 0, 300, 900, 2);
+        journal.close();
+        assertTrue(journal.awaitClosed(5000));
+        StrokeStore restored = restore(dir, 100);
+        assertEquals(2, restored.size());
+        assertEquals(0, restored.getDurationMillis(0));
+        assertEquals(300, restored.getGapMillis(1));
+        assertEquals(900, restored.getDurationMillis(1));
+        assertEquals(0, restored.getLayer(0));
+        assertEquals(2, restored.getLayer(1));
+    }
+
+    @Test
+    public void unreadableSessionStillCallsBack() throws Exception {
+        //a record with an intact checksum but a negative point count
+        ByteBuffer record = ByteBuffer.allocate(8 + 20).order(ByteOrder.LITTLE_ENDIAN);
+        record.position(8);
+        record.putInt(SessionJournal.REC_ADD).putInt(0).putInt(Float.floatToIntBits(4f)).putInt(0).putInt(-1);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, 20);
+        record.putInt(0, 20).putInt(4, (int)crc.getValue());
+        FileOutputStream out = new FileOutputStream(new File(dir, "journal-0.log"));
+        out.write(record.array());
+        out.close();
+
+        final StrokeStore[] result = new StrokeStore[1];
+        final AtomicReference<IOException> told = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        SessionJournal journal = new SessionJournal(dir, 100);
+        journal.setFailureListener(new SessionJournal.FailureListener() {
+            @Override
+            public void onJournalFailed(IOException error) {
+                told.set(error);
+            }
+        });
+        journal.restore(new SessionJournal.RestoreCallback() {
+            @Override
+            public void onRestored(StrokeStore restored, long millis) {
+                result[0] = restored;
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        appendLine(journal, 1);
+        journal.close();
+        assertTrue(journal.awaitClosed(5000));
+        assertEquals(0, result[0].size());
+        assertNotNull(journal.getFailure());
+        assertSame(journal.getFailure(), told.get());
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds recorded sample arrays through StrokeBuilder on the JVM.
+ */
+public class StrokeBuilderTest {
+
+    /**
+     * counts the curves and remembers where the stroke ends
+     */
+    static class CountingSink implements StrokeBuilder.Sink {
+        int moves, quads, cubics, lines;
+        float lastX, lastY;
+
+        @Override
+        public void moveTo(float x, float y) {
+            moves++;
+            lastX = x;
+            lastY = y;
+        }
+
+        @Override
+        public void quadTo(float cx, float cy, float x, float y) {
+            quads++;
+            lastX = x;
+            lastY = y;
+        }
+
+        @Override
+        public void cubicTo(float x1, float y1, float x2, float y2, float x, float y) {
+            cubics++;
+            lastX = x;
+            lastY = y;
+        }
+
+        @Override
+        public void lineTo(float x, float y) {
+            lines++;
+            lastX = x;
+            lastY = y;
+        }
+    }
+
+    /**
+     * samples a circle the way a fast finger would be reported
+     */
+    static float[] circle(float cx, float cy, float r, int samples) {
+        float[] xy = new float[samples * 2];
+        for(int i = 0; i < samples; i++) {
+            double a = 2 * Math.PI * i / samples;
+            xy[2 * i] = (float)(cx + r * Math.cos(a));
+            xy[2 * i + 1] = (float)(cy + r * Math.sin(a));
+        }
+        return xy;
+    }
+
+    @Test
+    public void samplesInsideToleranceAreDropped() throws Exception {
+        StrokeBuilder builder = new StrokeBuilder();
+        CountingSink sink = new CountingSink();
+        builder.start(10, 10, sink);
+        assertFalse(builder.move(12, 13, sink));
+        assertTrue(builder.move(14, 10, sink));
+        builder.end(sink);
+
+        assertEquals(1, sink.moves);
+        assertEquals(1, sink.quads);
+        assertEquals(1, sink.lines);
+        assertEquals(2, builder.getPointCount());
+        assertEquals(3, builder.getSampleCount());
+        assertEquals(14f, sink.lastX, 0f);
+        assertEquals(10f, sink.lastY, 0f);
+    }
+
+    @Test
+    public void batchKeepsEveryPointOutsideTolerance() throws Exception {
+        float[] xy = circle(500, 500, 300, 1000);
+        StrokeBuilder builder = new StrokeBuilder();
+        CountingSink sink = new CountingSink();
+        builder.start(xy[0], xy[1], sink);
+        int accepted = builder.move(xy, 2, 999, sink);
+        builder.end(sink);
+
+        //circumference ~1885px, one point every 4px at most
+        assertEquals(accepted, sink.quads);
+        assertEquals(accepted + 1, builder.getPointCount());
+        assertTrue(accepted > 300);
+        assertTrue(accepted < 999);
+
+        //accepted points lie on the circle
+        float[] points = builder.getPoints();
+        for(int i = 0; i < builder.getPointCount(); i++) {
+            double d = Math.hypot(points[2 * i] - 500, points[2 * i + 1] - 500);
+            assertEquals(300, d, 0.01);
+        }
+    }
+
+    @Test
+    public void dirtyBoundsCoverNewCurvesOnly() throws Exception {
+        StrokeBuilder builder = new StrokeBuilder();
+        CountingSink sink = new CountingSink();
+        builder.start(0, 0, sink);
+        builder.move(100, 0, sink);
+        builder.clearDirty();
+        assertFalse(builder.isDirty());
+
+        builder.move(100, 100, sink);
+        assertTrue(builder.isDirty());
+        //curve from (50,0) through (100,0) to (100,50)
+        assertEquals(50f, builder.getDirtyLeft(), 0f);
+        assertEquals(0f, builder.getDirtyTop(), 0f);
+        assertEquals(100f, builder.getDirtyRight(), 0f);
+        assertEquals(50f, builder.getDirtyBottom(), 0f);
+    }
+
+    @Test
+    public void pointArrayGrowsForLongStrokes() throws Exception {
+        StrokeBuilder builder = new StrokeBuilder();
+        CountingSink sink = new CountingSink();
+        builder.start(0, 0, sink);
+        for(int i = 1; i <= 5000; i++) {
+            builder.move(i * 5, 0, sink);
+        }
+        assertEquals(5001, builder.getPointCount());
+        assertEquals(25000f, builder.getPoints()[2 * 5000], 0f);
+    }
+
+    @Test
+    public void interleavedFingersStayApart() throws Exception {
+        //ten fingers, their samples arriving interleaved as in one MotionEvent each
+        StrokeBuilder[] builders = new StrokeBuilder[10];
+        CountingSink[] sinks = new CountingSink[10];
+        for(int f = 0; f < 10; f++) {
+            builders[f] = new StrokeBuilder();
+            sinks[f] = new CountingSink();
+            builders[f].start(0, f * 100, sinks[f]);
+        }
+        for(int i = 1; i <= 200; i++) {
+            for(int f = 0; f < 10; f++) {
+                builders[f].move(i * 5, f * 100 + i, sinks[f]);
+            }
+        }
+        for(int f = 0; f < 10; f++) {
+            builders[f].end(sinks[f]);
+            assertEquals(201, builders[f].getPointCount());
+            assertEquals(f * 100 + 200f, builders[f].getPoints()[2 * 200 + 1], 0f);
+            assertEquals(1, sinks[f].moves);
+            assertEquals(200, sinks[f].quads);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the stroke grid index, run on the JVM.
+ */
+public class StrokeIndexTest {
+
+    private static int[] toArray(StrokeIndex.IntList list) {
+        int[] values = new int[list.size()];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = list.get(i);
+        }
+        return values;
+    }
+
+    @Test
+    public void queryFindsOverlappingStrokesInOrder() throws Exception {
+        StrokeIndex index = new StrokeIndex(100);
+        index.add(0, 10, 10, 50, 50);      //one cell
+        index.add(1, 150, 150, 180, 180);  //another cell
+        index.add(2, 0, 0, 300, 300);      //spans many cells
+        index.add(3, -250, -250, -200, -200);
+
+        StrokeIndex.IntList found = new StrokeIndex.IntList();
+        index.query(0, 0, 400, 400, index.size(), found);
+        assertArrayEquals(new int[]{0, 1, 2}, toArray(found));
+
+        index.query(140, 140, 160, 160, index.size(), found);
+        assertArrayEquals(new int[]{1, 2}, toArray(found));
+
+        index.query(-300, -300, -100, -100, index.size(), found);
+        assertArrayEquals(new int[]{3}, toArray(found));
+    }
+
+    @Test
+    public void cellsAloneDoNotMatch() throws Exception {
+        StrokeIndex index = new StrokeIndex(100);
+        index.add(0, 10, 10, 20, 20);
+        StrokeIndex.IntList found = new StrokeIndex.IntList();
+        //same cell, boxes apart
+        index.query(60, 60, 90, 90, index.size(), found);
+        assertEquals(0, found.size());
+        assertFalse(index.any(60, 60, 90, 90, index.size()));
+        assertTrue(index.any(0, 0, 15, 15, index.size()));
+    }
+
+    @Test
+    public void limitHidesUndoneStrokes() throws Exception {
+        StrokeIndex index = new StrokeIndex(100);
+        index.add(0, 10, 10, 20, 20);
+        index.add(1, 10, 10, 20, 20);
+        StrokeIndex.IntList found = new StrokeIndex.IntList();
+        index.query(0, 0, 50, 50, 1, found);
+        assertArrayEquals(new int[]{0}, toArray(found));
+        assertFalse(index.any(0, 0, 50, 50, 0));
+    }
+
+    @Test
+    public void truncateForgetsReplacedStrokes() throws Exception {
+        StrokeIndex index = new StrokeIndex(100);
+        index.add(0, 10, 10, 20, 20);
+        index.add(1, 10, 10, 250, 250);
+        index.truncate(1);
+        assertEquals(1, index.size());
+        assertFalse(index.any(200, 200, 260, 260, 10));
+
+        //the next stroke takes the freed id
+        index.add(1, 210, 210, 220, 220);
+        StrokeIndex.IntList found = new StrokeIndex.IntList();
+        index.query(0, 0, 300, 300, index.size(), found);
+        assertArrayEquals(new int[]{0, 1}, toArray(found));
+        float[] bounds = new float[4];
+        index.getBounds(1, bounds);
+        assertArrayEquals(new float[]{210, 210, 220, 220}, bounds, 0f);
+    }
+
+    @Test
+    public void updateMovesAStrokeBetweenCells() throws Exception {
+        StrokeIndex index = new StrokeIndex(100);
+        index.add(0, 10, 10, 20, 20);
+        index.add(1, 150, 10, 160, 20);
+        index.add(2, 10, 10, 20, 20);
+        index.update(0, 140, 10, 170, 20);
+        StrokeIndex.IntList found = new StrokeIndex.IntList();
+        index.query(0, 0, 50, 50, index.size(), found);
+        assertArrayEquals(new int[]{2}, toArray(found));
+        index.query(100, 0, 200, 50, index.size(), found);
+        assertArrayEquals(new int[]{0, 1}, toArray(found));
+        //cell lists stay in order, truncate still works
+        index.truncate(1);
+        index.query(100, 0, 200, 50, index.size(), found);
+        assertArrayEquals(new int[]{0}, toArray(found));
+    }
+
+    @Test
+    public void segmentDistance() throws Exception {
+        //crossing
+        assertEquals(0f, StrokeIndex.segmentDistanceSq(0, 0, 10, 10, 0, 10, 10, 0), 0f);
+        //parallel, 5 apart
+        assertEquals(25f, StrokeIndex.segmentDistanceSq(0, 0, 10, 0, 0, 5, 10, 5), 1e-4f);
+        //point to the middle of a segment
+        assertEquals(9f, StrokeIndex.pointDistanceSq(5, 3, 0, 0, 10, 0), 1e-4f);
+        //point past the end
+        assertEquals(25f, StrokeIndex.pointDistanceSq(13, 4, 0, 0, 10, 0), 1e-4f);
+    }
+
+    private static StrokeIndex indexOf(StrokeStore store) {
+        StrokeIndex index = new StrokeIndex(64);
+        float[] bounds = new float[4];
+        for(int i = 0; i < store.size(); i++) {
+            store.getBounds(i, bounds);
+            index.add(i, bounds[0], bounds[1], bounds[2], bounds[3]);
+        }
+        return index;
+    }
+
+    @Test
+    public void hitTestUsesSegmentsNotBoxes() throws Exception {
+        StrokeStore store = new StrokeStore();
+        //a diagonal whose box covers the empty corner at 90,10
+        store.add(new float[]{0, 0, 100, 100}, 2, 1, 4f, 0);
+        StrokeIndex index = indexOf(store);
+        StrokeIndex.IntList hits = new StrokeIndex.IntList();
+        index.hitTest(store, 90, 10, 90, 10, 5, hits);
+        assertEquals(0, hits.size());
+        index.hitTest(store, 50, 55, 50, 55, 5, hits);
+        assertArrayEquals(new int[]{0}, toArray(hits));
+        //a fast finger crossing the stroke between two samples
+        index.hitTest(store, 0, 100, 100, 0, 1, hits);
+        assertArrayEquals(new int[]{0}, toArray(hits));
+    }
+
+    @Test
+    public void hitTestFindsInsideFills() throws Exception {
+        StrokeStore store = new StrokeStore();
+        //two rectangles, 0,0-100,10 and 0,10-10,100: an L
+        store.add(new float[]{0, 0, 100, 10, 0, 10, 10, 100}, 4, 1, 0, StrokeStore.FLAG_FILL);
+        StrokeIndex index = indexOf(store);
+        StrokeIndex.IntList hits = new StrokeIndex.IntList();
+        index.hitTest(store, 5, 50, 5, 50, 1, hits);
+        assertArrayEquals(new int[]{0}, toArray(hits));
+        //inside the box, outside the L
+        index.hitTest(store, 60, 60, 60, 60, 5, hits);
+        assertEquals(0, hits.size());
+        index.hitTest(store, 60, 14, 60, 14, 5, hits);
+        assertArrayEquals(new int[]{0}, toArray(hits));
+    }
+
+    @Test
+    public void hitTestUsesPressureWidths() throws Exception {
+        StrokeStore store = new StrokeStore();
+        //along y = 50, 2 pixels wide on the left and 20 on the right
+        store.add(new float[]{0, 50, 2, 0, 50, 50, 2, 0, 100, 50, 20, 0}, 6, 1, 20f, StrokeStore.FLAG_PRESSURE);
+        StrokeIndex index = indexOf(store);
+        StrokeIndex.IntList hits = new StrokeIndex.IntList();
+        index.hitTest(store, 10, 58, 10, 58, 2, hits);
+        assertEquals(0, hits.size());
+        index.hitTest(store, 90, 58, 90, 58, 2, hits);
+        assertArrayEquals(new int[]{0}, toArray(hits));
+    }
+
+    @Test
+    public void hitTestSkipsRemovedAndEraserStrokes() throws Exception {
+        StrokeStore store = new StrokeStore();
+        store.add(new float[]{0, 50, 100, 50}, 2, 1, 4f, 0);
+        store.add(new float[]{0, 50, 100, 50}, 2, 0, 4f, StrokeStore.FLAG_ERASE);
+        store.add(new float[]{0, 50, 100, 50}, 2, 2, 4f, 0);
+        StrokeIndex.IntList removed = new StrokeIndex.IntList();
+        removed.add(2);
+        store.addDelete(removed);
+        StrokeIndex index = indexOf(store);
+        StrokeIndex.IntList hits = new StrokeIndex.IntList();
+        index.hitTest(store, 50, 50, 50, 50, 2, hits);
+        assertArrayEquals(new int[]{0}, toArray(hits));
+        store.undo();
+        index.hitTest(store, 50, 50, 50, 50, 2, hits);
+        assertArrayEquals(new int[]{0, 2}, toArray(hits));
+    }
+
+    @Test
+    public void hitTestScalesWithTheAreaNotTheDrawing() throws Exception {
+        StrokeStore store = new StrokeStore();
+        //a 200 x 200 grid of short strokes, 40000 in all
+        for(int y = 0; y < 200; y++) {
+            for(int x = 0; x < 200; x++) {
+                store.add(new float[]{x * 50, y * 50, x * 50 + 10, y * 50}, 2, 1, 2f, 0);
+            }
+        }
+        StrokeIndex index = indexOf(store);
+        StrokeIndex.IntList hits = new StrokeIndex.IntList();
+        index.hitTest(store, 5005, 5000, 5005, 5000, 3, hits);
+        assertArrayEquals(new int[]{100 * 200 + 100}, toArray(hits));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void strokesMustBeAddedInOrder() throws Exception {
+        StrokeIndex index = new StrokeIndex(100);
+        index.add(1, 0, 0, 1, 1);
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the pressure brush: widths, tessellation and the strip cache, run on the JVM.
+ */
+public class StrokeMeshTest {
+
+    /**
+     * a line along y = 0 with a sample every 10 pixels, widths growing from 2 to 12
+     */
+    private static void taperedLine(StrokeMesh mesh) {
+        mesh.start(0, 0, 2);
+        for(int i = 1; i <= 10; i++) mesh.add(10 * i, 0, 2 + i);
+        mesh.end();
+    }
+
+    @Test
+    public void oneSampleIsADot() throws Exception {
+        StrokeMesh mesh = new StrokeMesh();
+        mesh.start(50, 50, 10);
+        mesh.end();
+        //tip, pairs round the start cap, the pair across, pairs round the end cap, tip
+        assertEquals(4 * StrokeMesh.CAP_STEPS, mesh.getVertexCount());
+        float[] v = mesh.getVertices();
+        for(int i = 0; i < mesh.getVertexCount(); i++) {
+            float dx = v[2 * i] - 50, dy = v[2 * i + 1] - 50;
+            assertEquals(5, Math.sqrt(dx * dx + dy * dy), 1e-4);
+        }
+        assertEquals(1, mesh.getSampleCount());
+        assertEquals(2, mesh.getPointCount());
+    }
+
+    @Test
+    public void widthFollowsTheSamples() throws Exception {
+        StrokeMesh mesh = new StrokeMesh();
+        taperedLine(mesh);
+        float[] v = mesh.getVertices();
+        float startWidth = 0, endWidth = 0;
+        for(int i = 0; i < mesh.getVertexCount(); i++) {
+            float x = v[2 * i], y = Math.abs(v[2 * i + 1]);
+            assertTrue("outside the widest sample", y <= 6 + 1e-4f);
+            if(x < 10) startWidth = Math.max(startWidth, 2 * y);
+            if(x > 90) endWidth = Math.max(endWidth, 2 * y);
+        }
+        assertEquals(2.5f, startWidth, 0.5f); //the first curve widens halfway to 3
+        assertEquals(12, endWidth, 1e-4f);
+    }
+
+    @Test
+    public void stripOnlyGrowsWhileDrawing() throws Exception {
+        //the live stroke draws each new piece once, joined on to the old ones
+        StrokeMesh mesh = new StrokeMesh();
+        mesh.start(0, 0, 4);
+        float[] before = new float[0];
+        for(int i = 1; i <= 50; i++) {
+            mesh.add(10 * i, (i % 7) * 5, 4 + i % 3);
+            assertArrayEquals(before, Arrays.copyOf(mesh.getVertices(), before.length), 0f);
+            before = Arrays.copyOf(mesh.getVertices(), 2 * mesh.getVertexCount());
+        }
+        mesh.end();
+        assertArrayEquals(before, Arrays.copyOf(mesh.getVertices(), before.length), 0f);
+        assertEquals(0, StrokeMesh.getJoinStart(0));
+        assertEquals(8, StrokeMesh.getJoinStart(10));
+    }
+
+    @Test
+    public void storedStrokeBuildsTheSameStrip() throws Exception {
+        StrokeMesh live = new StrokeMesh();
+        taperedLine(live);
+        StrokeStore store = new StrokeStore();
+        store.add(live.getPoints(), live.getPointCount(), 0xFF000000, 12, StrokeStore.FLAG_PRESSURE);
+        assertEquals(11, store.getSampleCount(0));
+        assertEquals(11, store.getSegmentCount(0)); //10 curves and the last line
+
+        StrokeMesh built = new StrokeMesh();
+        built.build(store, 0, store.getPointCount(0));
+        assertEquals(live.getVertexCount(), built.getVertexCount());
+        assertArrayEquals(Arrays.copyOf(live.getVertices(), 2 * live.getVertexCount()),
+                Arrays.copyOf(built.getVertices(), 2 * built.getVertexCount()), 0f);
+
+        //bounds hold the whole strip, the centre line is replayed without the widths
+        float[] bounds = new float[4];
+        store.getBounds(0, bounds);
+        float[] v = built.getVertices();
+        for(int i = 0; i < built.getVertexCount(); i++) {
+            assertTrue(v[2 * i] >= bounds[0] && v[2 * i] <= bounds[2]);
+            assertTrue(v[2 * i + 1] >= bounds[1] && v[2 * i + 1] <= bounds[3]);
+        }
+        StrokeBuilderTest.CountingSink sink = new StrokeBuilderTest.CountingSink();
+        store.replay(0, sink);
+        assertEquals(1, sink.moves);
+        assertEquals(10, sink.quads);
+        assertEquals(100, sink.lastX, 0f);
+    }
+
+    @Test
+    public void fasterAndLighterIsThinner() throws Exception {
+        BrushDynamics slow = new BrushDynamics(), fast = new BrushDynamics(), light = new BrushDynamics();
+        slow.start(20, 0, 0, 1, 0);
+        fast.start(20, 0, 0, 1, 0);
+        light.start(20, 0, 0, 0.2f, 0);
+        for(int i = 1; i <= 30; i++) {
+            slow.update(i, 0, 1, 10 * i); //0.1 pixels per millisecond
+            fast.update(20 * i, 0, 1, 10 * i); //2
+            light.update(i, 0, 0.2f, 10 * i);
+        }
+        assertTrue(slow.getWidth() <= 20);
+        assertTrue(fast.getWidth() < slow.getWidth());
+        assertTrue(fast.getWidth() >= 20 * BrushDynamics.MIN_SPEED_SCALE);
+        assertTrue(light.getWidth() < slow.getWidth());
+        //pressure over 1 is reported by some screens, it does not widen further
+        assertEquals(20, new BrushDynamics().start(20, 0, 0, 1.5f, 0), 0f);
+    }
+
+    @Test
+    public void cacheKeepsRecentStripsWithinBudget() throws Exception {
+        MeshCache cache = new MeshCache(3 * 400); //three strips of 50 vertices
+        float[] strip = new float[100];
+        for(int stroke = 0; stroke < 3; stroke++) cache.put(stroke, strip, 50);
+        assertEquals(3, cache.size());
+        assertNotNull(cache.get(0)); //now the most recent
+        float[] copy = cache.put(3, strip, 50);
+        assertEquals(100, copy.length);
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(0));
+        assertEquals(3 * 400, cache.getUsedBytes());
+        cache.truncate(3);
+        assertNull(cache.get(3));
+        assertEquals(2, cache.size());
+        cache.clear();
+        assertEquals(0, cache.getUsedBytes());
+    }
+}
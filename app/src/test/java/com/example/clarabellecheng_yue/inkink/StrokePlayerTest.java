@@ -0,0 +1,131 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for drawing playback, run on the JVM.
+ */
+public class StrokePlayerTest {
+
+    /**
+     * remembers what the player committed, in order
+     */
+    static class LogRenderer implements StrokePlayer.Renderer {
+        final List<Integer> committed = new ArrayList<>();
+        final List<Integer> removals = new ArrayList<>();
+
+        @Override
+        public void commitStroke(StrokeStore strokes, int stroke) {
+            committed.add(stroke);
+        }
+
+        @Override
+        public void removeStrokes(StrokeStore strokes, int removal) {
+            removals.add(removal);
+        }
+    }
+
+    /**
+     * three 11 point strokes: 0 to 1000 ms, 1500 to 2500 ms, 2500 to 3500 ms
+     */
+    static StrokeStore timedDrawing() {
+        StrokeStore store = new StrokeStore();
+        for(int i = 0; i < 3; i++) {
+            StrokeStoreTest.addLine(store, 0, 10 * i, 11, i);
+        }
+        store.setTiming(0, 0, 1000);
+        store.setTiming(1, 500, 1000);
+        store.setTiming(2, 0, 1000);
+        return store;
+    }
+
+    @Test
+    public void strokesCommitWhenFinished() throws Exception {
+        StrokePlayer player = new StrokePlayer(timedDrawing(), 10000);
+        LogRenderer renderer = new LogRenderer();
+        assertEquals(3500, player.getDurationMillis());
+        assertEquals(0, player.getStrokes().size());
+
+        assertEquals(0, player.advance(500, Long.MAX_VALUE, renderer));
+        assertEquals(0, player.getPartialStroke());
+        assertEquals(6, player.getPartialPoints()); //halfway through 11 points
+
+        assertEquals(1, player.advance(700, Long.MAX_VALUE, renderer)); //1200 ms
+        assertEquals(-1, player.getPartialStroke()); //in the pause
+        assertEquals(0, player.getPartialPoints());
+
+        assertEquals(2, player.advance(5000, Long.MAX_VALUE, renderer));
+        assertTrue(player.isFinished());
+        assertEquals(3500, player.getPositionMillis());
+        assertEquals("[0, 1, 2]", renderer.committed.toString());
+    }
+
+    @Test
+    public void speedAndPausesAreLimited() throws Exception {
+        StrokePlayer player = new StrokePlayer(timedDrawing(), 100);
+        assertEquals(3100, player.getDurationMillis()); //the 500 ms pause became 100
+        player.setSpeed(1000);
+        assertEquals(StrokePlayer.MAX_SPEED, player.getSpeed(), 0f);
+        player.setSpeed(0);
+        assertEquals(StrokePlayer.MIN_SPEED, player.getSpeed(), 0f);
+
+        player.setSpeed(10);
+        LogRenderer renderer = new LogRenderer();
+        player.advance(100, Long.MAX_VALUE, renderer); //1000 ms at 10x
+        assertEquals(1, renderer.committed.size());
+    }
+
+    @Test
+    public void budgetHoldsThePlayHead() throws Exception {
+        StrokePlayer player = new StrokePlayer(timedDrawing(), 10000);
+        player.setSpeed(100);
+        LogRenderer renderer = new LogRenderer();
+        //no time to spare: one stroke per frame, the play head waits for the rest
+        assertEquals(1, player.advance(1000, 0, renderer));
+        assertEquals(2500, player.getPositionMillis()); //end of stroke 1
+        assertEquals(1, player.advance(0, 0, renderer)); //stroke 1 was due
+        assertEquals(0, player.advance(0, 0, renderer)); //stroke 2 is not, the time was dropped
+        assertEquals(1, player.advance(10, 0, renderer));
+        assertTrue(player.isFinished());
+        assertEquals(0, player.advance(1000, 0, renderer));
+    }
+
+    @Test
+    public void removalsAreReplayedInOrder() throws Exception {
+        StrokeStore store = timedDrawing();
+        store.addDelete(StrokeStoreTest.list(1));
+        store.setTiming(3, 200, 300);
+        StrokeStoreTest.addLine(store, 0, 50, 5, 9); //untimed, 8 ms a point
+        StrokePlayer player = new StrokePlayer(store, 10000);
+        assertEquals(3500 + 500 + 40, player.getDurationMillis());
+
+        LogRenderer renderer = new LogRenderer();
+        player.advance(3900, Long.MAX_VALUE, renderer);
+        assertEquals("[0, 1, 2]", renderer.committed.toString());
+        assertEquals(-1, player.getPartialStroke()); //removals have nothing to draw
+        assertTrue(player.getStrokes().isVisible(1));
+
+        player.advance(100, Long.MAX_VALUE, renderer);
+        assertEquals("[3]", renderer.removals.toString());
+        assertFalse(player.getStrokes().isVisible(1));
+        assertEquals(4, player.getPartialStroke());
+
+        StrokeBuilderTest.CountingSink sink = new StrokeBuilderTest.CountingSink();
+        assertTrue(player.replayPartial(sink));
+        assertEquals(1, sink.moves);
+    }
+
+    @Test
+    public void emptyDrawingIsFinished() throws Exception {
+        StrokePlayer player = new StrokePlayer(new StrokeStore(), 1000);
+        assertTrue(player.isFinished());
+        assertEquals(0, player.getDurationMillis());
+        assertEquals(-1, player.getPartialStroke());
+        assertEquals(0, player.advance(100, Long.MAX_VALUE, new LogRenderer()));
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the cubic stroke fit, run on the JVM.
+ */
+public class StrokeSimplifierTest {
+
+    /**
+     * @return farthest distance from a point the drawn curve passes
+     * through (start, midpoints, end) to the fitted curve
+     */
+    static float maxDeviation(float[] xy, int count, float[] fitted, int fittedCount) {
+        float max = 0;
+        for(int i = 0; i <= count; i++) {
+            float px, py;
+            if(i == 0) {
+                px = xy[0];
+                py = xy[1];
+            }
+            else if(i == count) {
+                px = xy[2 * count - 2];
+                py = xy[2 * count - 1];
+            }
+            else {
+                px = (xy[2 * i - 2] + xy[2 * i]) / 2;
+                py = (xy[2 * i - 1] + xy[2 * i + 1]) / 2;
+            }
+            float best = Float.MAX_VALUE;
+            for(int s = 0; s + 3 < fittedCount; s += 3) {
+                for(int step = 0; step <= 200; step++) {
+                    float t = step / 200f, mt = 1 - t;
+                    float bx = mt * mt * mt * fitted[2 * s] + 3 * t * mt * mt * fitted[2 * s + 2]
+                            + 3 * t * t * mt * fitted[2 * s + 4] + t * t * t * fitted[2 * s + 6];
+                    float by = mt * mt * mt * fitted[2 * s + 1] + 3 * t * mt * mt * fitted[2 * s + 3]
+                            + 3 * t * t * mt * fitted[2 * s + 5] + t * t * t * fitted[2 * s + 7];
+                    best = Math.min(best, (float)Math.hypot(bx - px, by - py));
+                }
+            }
+            max = Math.max(max, best);
+        }
+        return max;
+    }
+
+    @Test
+    public void straightLineIsOneSegment() throws Exception {
+        float[] xy = new float[2 * 100];
+        for(int i = 0; i < 100; i++) {
+            xy[2 * i] = 5 * i;
+            xy[2 * i + 1] = 2 * i;
+        }
+        StrokeSimplifier simplifier = new StrokeSimplifier();
+        int fitted = simplifier.fit(xy, 100, 1f);
+        assertEquals(4, fitted);
+        assertEquals(1, StrokeSimplifier.cubicSegments(fitted));
+        float[] out = simplifier.getOutput();
+        assertEquals(0f, out[0], 0f);
+        assertEquals(495f, out[6], 1e-3f);
+        assertEquals(198f, out[7], 1e-3f);
+    }
+
+    @Test
+    public void circleStaysWithinTheErrorBound() throws Exception {
+        float[] xy = StrokeBuilderTest.circle(200, 200, 150, 300);
+        StrokeSimplifier simplifier = new StrokeSimplifier();
+        int fitted = simplifier.fit(xy, 300, 1f);
+        int segments = StrokeSimplifier.cubicSegments(fitted);
+        assertTrue("segments " + segments, segments >= 4 && segments < 30);
+        float[] out = Arrays.copyOf(simplifier.getOutput(), 2 * fitted);
+        //the bound holds at the fitted points, a little slack in between
+        assertTrue(maxDeviation(xy, 300, out, fitted) <= 1.5f);
+    }
+
+    @Test
+    public void tighterBoundGivesMoreSegments() throws Exception {
+        float[] xy = StrokeBuilderTest.circle(200, 200, 150, 300);
+        StrokeSimplifier simplifier = new StrokeSimplifier();
+        int loose = StrokeSimplifier.cubicSegments(simplifier.fit(xy, 300, 4f));
+        int tight = StrokeSimplifier.cubicSegments(simplifier.fit(xy, 300, 0.25f));
+        assertTrue(tight > loose);
+    }
+
+    @Test
+    public void shortStrokesAreLeftAlone() throws Exception {
+        StrokeSimplifier simplifier = new StrokeSimplifier();
+        assertEquals(0, simplifier.fit(new float[]{0, 0, 10, 10}, 2, 1f));
+    }
+
+    @Test
+    public void simplifiedStrokeReplaysAsCubics() throws Exception {
+        StrokeStore store = new StrokeStore();
+        float[] xy = StrokeBuilderTest.circle(200, 200, 150, 300);
+        StrokeStoreTest.addLine(store, 0, 0, 50, 1);
+        int stroke = store.add(xy, 300, 2, 6f, 0);
+        StrokeStoreTest.addLine(store, 0, 500, 50, 3);
+        StrokeSimplifier simplifier = new StrokeSimplifier();
+        int fitted = simplifier.fit(xy, 300, 1f);
+
+        assertTrue(store.samePoints(stroke, xy, 300));
+        store.replacePoints(stroke, simplifier.getOutput(), fitted, StrokeStore.FLAG_CUBIC);
+        assertFalse(store.samePoints(stroke, xy, 300));
+        assertTrue(store.isCubic(stroke));
+        assertEquals(StrokeSimplifier.cubicSegments(fitted), store.getSegmentCount(stroke));
+
+        StrokeBuilderTest.CountingSink sink = new StrokeBuilderTest.CountingSink();
+        store.replay(stroke, sink);
+        assertEquals(1, sink.moves);
+        assertEquals(0, sink.quads);
+        assertEquals(StrokeSimplifier.cubicSegments(fitted), sink.cubics);
+
+        //the freed space was reclaimed, later strokes kept their points
+        assertTrue(store.getCapacityBytes() > 0);
+        assertEquals(500f, store.getY(2, 49), 0f);
+        StrokeStore loaded = StrokeStoreTest.load(StrokeStoreTest.save(store));
+        assertTrue(loaded.isCubic(stroke));
+        assertEquals(500f, loaded.getY(2, 0), 0f);
+        assertEquals(store.getDocumentBytes(), StrokeStoreTest.save(loaded).length);
+    }
+
+    @Test
+    public void statsEstimateSavings() throws Exception {
+        SimplifyStats stats = new SimplifyStats();
+        stats.recordSimplified(100, 10, 5000);
+        assertEquals(0.9f, stats.getReduction(), 1e-6f);
+        stats.recordRender(false, 100, 1000); //10 ns per curve as drawn
+        stats.recordRender(true, 10, 200); //the simplified stroke, once
+        assertEquals(10f, stats.getNanosPerSegment(false), 0f);
+        assertEquals(20f, stats.getNanosPerSegment(true), 0f);
+        assertEquals(1000 - 200, stats.getEstimatedSavedNanos());
+    }
+}
@@ -0,0 +1,311 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the packed stroke storage and its binary format.
+ */
+public class StrokeStoreTest {
+
+    static int addLine(StrokeStore store, float x0, float y0, int points, int color) {
+        float[] xy = new float[points * 2];
+        for(int i = 0; i < points; i++) {
+            xy[2 * i] = x0 + 10 * i;
+            xy[2 * i + 1] = y0;
+        }
+        return store.add(xy, points, color, 20f, 0);
+    }
+
+    static byte[] save(StrokeStore store) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        store.write(Channels.newChannel(bytes));
+        return bytes.toByteArray();
+    }
+
+    static StrokeStore load(byte[] data) throws IOException {
+        StrokeStore store = new StrokeStore();
+        store.read(Channels.newChannel(new ByteArrayInputStream(data)));
+        return store;
+    }
+
+    @Test
+    public void undoRedoMoveTheSize() throws Exception {
+        StrokeStore store = new StrokeStore();
+        addLine(store, 0, 0, 3, 0xFF000000);
+        addLine(store, 0, 50, 4, 0xFFFF0000);
+        assertTrue(store.undo());
+        assertEquals(1, store.size());
+        assertEquals(1, store.redoCount());
+        assertTrue(store.redo());
+        assertFalse(store.redo());
+        assertEquals(0xFFFF0000, store.getColor(1));
+        assertEquals(4, store.getPointCount(1));
+    }
+
+    @Test
+    public void addAfterUndoReusesThePoints() throws Exception {
+        StrokeStore store = new StrokeStore();
+        addLine(store, 0, 0, 3, 1);
+        addLine(store, 0, 50, 4, 2);
+        store.undo();
+        addLine(store, 0, 100, 2, 3);
+        assertEquals(2, store.size());
+        assertEquals(0, store.redoCount());
+        assertEquals(100f, store.getY(1, 0), 0f);
+        assertEquals(4 * (StrokeStore.FILE_HEADER_INTS + 2 * StrokeStore.HEADER_INTS + 10),
+                store.getDocumentBytes());
+    }
+
+    @Test
+    public void replayMatchesStrokeBuilder() throws Exception {
+        float[] samples = StrokeBuilderTest.circle(200, 200, 80, 300);
+        StrokeBuilder builder = new StrokeBuilder();
+        RecordingSink live = new RecordingSink();
+        builder.start(samples[0], samples[1], live);
+        builder.move(samples, 2, 299, live);
+        builder.end(live);
+
+        StrokeStore store = new StrokeStore();
+        store.add(builder.getPoints(), builder.getPointCount(), 0xFF00FF00, 5f, StrokeStore.FLAG_ERASE);
+        RecordingSink replayed = new RecordingSink();
+        store.replay(0, replayed);
+
+        assertEquals(live.log.toString(), replayed.log.toString());
+        assertTrue(store.isErase(0));
+        assertEquals(5f, store.getWidth(0), 0f);
+    }
+
+    @Test
+    public void roundTripKeepsTheDrawingButNotRedo() throws Exception {
+        StrokeStore store = new StrokeStore();
+        for(int i = 0; i < 500; i++) {
+            addLine(store, i, i, 1 + i % 7, i);
+        }
+        store.undo();
+
+        byte[] data = save(store);
+        assertEquals(store.getDocumentBytes(), data.length);
+        StrokeStore copy = load(data);
+
+        assertEquals(499, copy.size());
+        assertEquals(0, copy.redoCount());
+        for(int i = 0; i < 499; i++) {
+            assertEquals(i, copy.getColor(i));
+            assertEquals(1 + i % 7, copy.getPointCount(i));
+            assertEquals(store.getX(i, copy.getPointCount(i) - 1),
+                    copy.getX(i, copy.getPointCount(i) - 1), 0f);
+        }
+    }
+
+    @Test
+    public void boundsIncludeHalfTheWidth() throws Exception {
+        StrokeStore store = new StrokeStore();
+        addLine(store, 5, 7, 4, 1); //x 5..35, width 20
+        float[] bounds = new float[4];
+        store.getBounds(0, bounds);
+        assertEquals(-5f, bounds[0], 0f);
+        assertEquals(-3f, bounds[1], 0f);
+        assertEquals(45f, bounds[2], 0f);
+        assertEquals(17f, bounds[3], 0f);
+        assertFalse(store.hasFlag(StrokeStore.FLAG_ERASE));
+    }
+
+    static StrokeIndex.IntList list(int... values) {
+        StrokeIndex.IntList list = new StrokeIndex.IntList();
+        for(int v : values) {
+            list.add(v);
+        }
+        return list;
+    }
+
+    @Test
+    public void deleteHidesStrokesUntilUndone() throws Exception {
+        StrokeStore store = new StrokeStore();
+        addLine(store, 0, 0, 3, 1);
+        addLine(store, 0, 50, 3, 2);
+        addLine(store, 0, 100, 3, 3);
+        int entry = store.addDelete(list(0, 2));
+        assertEquals(3, entry);
+        assertFalse(store.isVisible(0));
+        assertTrue(store.isVisible(1));
+        assertFalse(store.isVisible(2));
+        assertFalse(store.isVisible(entry));
+        assertEquals(0, store.lowestDeleted(0, store.size()));
+        assertEquals(3, store.lowestDeleted(0, 3));
+
+        //bounds of the entry cover what it removed
+        float[] bounds = new float[4];
+        store.getBounds(entry, bounds);
+        assertArrayEquals(new float[]{-10, -10, 30, 110}, bounds, 0f);
+
+        store.undo();
+        assertTrue(store.isVisible(0));
+        assertTrue(store.isVisible(2));
+        store.redo();
+        assertFalse(store.isVisible(0));
+
+        //a new stroke after undo drops the removal for good
+        store.undo();
+        addLine(store, 0, 150, 3, 4);
+        assertTrue(store.isVisible(0));
+        assertTrue(store.isVisible(2));
+    }
+
+    @Test
+    public void deleteSurvivesTheFileFormat() throws Exception {
+        StrokeStore store = new StrokeStore();
+        addLine(store, 0, 0, 3, 1);
+        addLine(store, 0, 50, 3, 2);
+        store.addDelete(list(1));
+        StrokeStore loaded = load(save(store));
+        assertEquals(3, loaded.size());
+        assertTrue(loaded.isVisible(0));
+        assertFalse(loaded.isVisible(1));
+        loaded.undo();
+        assertTrue(loaded.isVisible(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deleteOnlyNamesEarlierStrokes() throws Exception {
+        StrokeStore store = new StrokeStore();
+        addLine(store, 0, 0, 3, 1);
+        store.addDelete(list(1));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws Exception {
+        load(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20});
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedFiles() throws Exception {
+        StrokeStore store = new StrokeStore();
+        addLine(store, 0, 0, 3, 1);
+        byte[] data = save(store);
+        byte[] cut = new byte[data.length - 4];
+        System.arraycopy(data, 0, cut, 0, cut.length);
+        load(cut);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsHugeHeaders() throws Exception {
+        //4 * strokes * headerInts overflows an int
+        ByteBuffer data = ByteBuffer.allocate(4 * 5).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(StrokeStore.MAGIC).putInt(StrokeStore.VERSION).putInt(8).putInt(Integer.MAX_VALUE / 8).putInt(0);
+        load(data.array());
+    }
+
+    @Test
+    public void failedReadKeepsTheDrawing() throws Exception {
+        StrokeStore store = new StrokeStore();
+        addLine(store, 0, 0, 3, 1);
+        //a stroke whose offset + 2 * count overflows an int
+        ByteBuffer data = ByteBuffer.allocate(4 * (5 + 8 + 2)).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(StrokeStore.MAGIC).putInt(StrokeStore.VERSION).putInt(8).putInt(1).putInt(2);
+        data.putInt(1).putInt(Integer.MAX_VALUE).putInt(7).putInt(Float.floatToIntBits(3f))
+                .putInt(0).putInt(0).putInt(0).putInt(0);
+        data.putFloat(1).putFloat(2);
+        try {
+            store.read(Channels.newChannel(new ByteArrayInputStream(data.array())));
+            fail("corrupt stroke read");
+        }
+        catch(IOException e) {
+            //expected
+        }
+        assertEquals(1, store.size());
+        assertEquals(1, store.getColor(0));
+        assertEquals(20f, store.getX(0, 2), 0f);
+    }
+
+    @Test
+    public void timingSurvivesTheFileFormat() throws Exception {
+        StrokeStore store = new StrokeStore();
+        addLine(store, 0, 0, 3, 1);
+        addLine(store, 0, 10, 3, 2);
+        store.setTiming(1, 450, 1200);
+        StrokeStore loaded = load(save(store));
+        assertEquals(0, loaded.getGapMillis(0));
+        assertEquals(0, loaded.getDurationMillis(0));
+        assertEquals(450, loaded.getGapMillis(1));
+        assertEquals(1200, loaded.getDurationMillis(1));
+    }
+
+    @Test
+    public void layersSurviveTheFileFormat() throws Exception {
+        StrokeStore store = new StrokeStore();
+        addLine(store, 0, 0, 3, 1);
+        addLine(store, 0, 10, 3, 2);
+        store.setLayer(1, 3);
+        store.setTiming(1, 450, 1200);
+        StrokeStore loaded = load(save(store));
+        assertEquals(0, loaded.getLayer(0));
+        assertEquals(3, loaded.getLayer(1));
+        assertEquals(1200, loaded.getDurationMillis(1));
+    }
+
+    @Test
+    public void readsVersion2Drawings() throws Exception {
+        //one stroke of two points with the 5 int header version 2 had
+        ByteBuffer data = ByteBuffer.allocate(4 * (5 + 5 + 4)).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(StrokeStore.MAGIC).putInt(2).putInt(5).putInt(1).putInt(4);
+        data.putInt(0).putInt(2).putInt(7).putInt(Float.floatToIntBits(3f)).putInt(0);
+        data.putFloat(1).putFloat(2).putFloat(3).putFloat(4);
+        StrokeStore store = load(data.array());
+        assertEquals(1, store.size());
+        assertEquals(7, store.getColor(0));
+        assertEquals(3f, store.getWidth(0), 0f);
+        assertEquals(4f, store.getY(0, 1), 0f);
+        assertEquals(0, store.getDurationMillis(0));
+        assertEquals(0, store.getLayer(0));
+    }
+
+    @Test
+    public void replayStopsAtThePointLimit() throws Exception {
+        StrokeStore store = new StrokeStore();
+        addLine(store, 0, 0, 10, 1);
+        StrokeBuilderTest.CountingSink sink = new StrokeBuilderTest.CountingSink();
+        store.replay(0, sink, 4);
+        assertEquals(1, sink.moves);
+        assertEquals(3, sink.quads);
+        sink = new StrokeBuilderTest.CountingSink();
+        store.replay(0, sink, 0);
+        assertEquals(0, sink.moves);
+    }
+
+    /**
+     * writes every curve as text so two strokes can be compared
+     */
+    static class RecordingSink implements StrokeBuilder.Sink {
+        final StringBuilder log = new StringBuilder();
+
+        @Override
+        public void moveTo(float x, float y) {
+            log.append("M").append(x).append(',').append(y);
+        }
+
+        @Override
+        public void quadTo(float cx, float cy, float x, float y) {
+            log.append("Q").append(cx).append(',').append(cy).append(' ').append(x).append(',').append(y);
+        }
+
+        @Override
+        public void cubicTo(float x1, float y1, float x2, float y2, float x, float y) {
+            log.append("C").append(x1).append(',').append(y1).append(' ').append(x2).append(',').append(y2)
+                    .append(' ').append(x).append(',').append(y);
+        }
+
+        @Override
+        public void lineTo(float x, float y) {
+            log.append("L").append(x).append(',').append(y);
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the shared canvas: wire format, encoder and decoder, and
+ * many clients drawing at once through an in-process relay, run on the JVM.
+ */
+public class SyncTest {
+
+    /**
+     * Records what a decoder reports: the samples of every stroke, by
+     * sender and stroke id, and which strokes ended or were cancelled.
+     */
+    private static class Recorder implements SyncClient.Listener {
+        final HashMap<Long, List<float[]>> samples = new HashMap<>();
+        final HashMap<Long, int[]> starts = new HashMap<>(); //color, flags, layer, width in quanta
+        final List<Long> ended = new ArrayList<>();
+        final List<Long> cancelled = new ArrayList<>();
+        volatile int endCount;
+
+        @Override
+        public synchronized void onRemoteStart(int sender, int stroke, int color, float width, int flags, int layer,
+                                               float x, float y, float w) {
+            List<float[]> list = new ArrayList<>();
+            list.add(new float[]{x, y, w});
+            samples.put(key(sender, stroke), list);
+            starts.put(key(sender, stroke), new int[]{color, flags, layer, (int)(width * 8)});
+        }
+
+        @Override
+        public synchronized void onRemotePoint(int sender, int stroke, float x, float y, float w) {
+            samples.get(key(sender, stroke)).add(new float[]{x, y, w});
+        }
+
+        @Override
+        public synchronized void onRemoteEnd(int sender, int stroke, boolean cancel) {
+            if(cancel) {
+                cancelled.add(key(sender, stroke));
+            }
+            else {
+                ended.add(key(sender, stroke));
+                endCount++;
+            }
+        }
+
+        @Override
+        public void onSyncClosed(IOException error) {
+        }
+
+        static long key(int sender, int stroke) {
+            return ((long)sender << 32) | (stroke & 0xFFFFFFFFL);
+        }
+    }
+
+    /**
+     * @return the frame's payload, after its length prefix
+     */
+    private static ByteBuffer payload(ByteBuffer frame)
+    {
+        ByteBuffer payload = frame.duplicate();
+        assertEquals(payload.remaining() - 4, payload.getInt());
+        return payload;
+    }
+
+    /**
+     * @return number of messages of each type in a frame, by type byte
+     */
+    private static int[] countMessages(ByteBuffer frame) throws IOException
+    {
+        ByteBuffer in = payload(frame);
+        int[] counts = new int[8];
+        SyncProtocol.getVarint(in);
+        SyncProtocol.getVarlong(in);
+        while(in.hasRemaining()) {
+            byte type = in.get();
+            counts[type]++;
+            SyncProtocol.getVarint(in);
+            if(type == SyncProtocol.START) {
+                SyncProtocol.getInt(in);
+                for(int i = 0; i < 6; i++) SyncProtocol.getVarint(in); //width, flags, layer, x, y, w
+            }
+            else if(type == SyncProtocol.POINTS) {
+                int header = SyncProtocol.getVarint(in);
+                int values = (header >>> 1) * ((header & 1) != 0 ? 3 : 2);
+                for(int i = 0; i < values; i++) SyncProtocol.getVarint(in);
+            }
+        }
+        return counts;
+    }
+
+    @Test
+    public void varintsAndZigzagRoundTrip() throws IOException {
+        int[] values = {0, 1, -1, 63, -64, 64, 127, 128, 300, -300, 1 << 20, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        for(int value : values) {
+            SyncProtocol.putZigzag(buffer, value);
+            SyncProtocol.putVarint(buffer, value);
+        }
+        SyncProtocol.putVarlong(buffer, Long.MAX_VALUE);
+        buffer.flip();
+        for(int value : values) {
+            assertEquals(value, SyncProtocol.getZigzag(buffer));
+            assertEquals(value, SyncProtocol.getVarint(buffer));
+        }
+        assertEquals(Long.MAX_VALUE, SyncProtocol.getVarlong(buffer));
+        assertFalse(buffer.hasRemaining());
+
+        //small differences, the usual case, take one byte
+        buffer.clear();
+        SyncProtocol.putZigzag(buffer, -40);
+        assertEquals(1, buffer.position());
+    }
+
+    @Test
+    public void strokeRoundTripsWithinQuantum() throws IOException {
+        SyncEncoder encoder = new SyncEncoder(42, null);
+        Random random = new Random(1);
+        float[] xy = new float[2 * 100];
+        float x = 100.3f, y = 200.7f;
+        for(int i = 0; i < 100; i++) {
+            x += random.nextFloat() * 10 - 5;
+            y += random.nextFloat() * 10 - 5;
+            xy[2 * i] = x;
+            xy[2 * i + 1] = y;
+        }
+        encoder.start(7, 0xFF336699, 12.5f, 0, 3, xy[0], xy[1], 0);
+        for(int i = 1; i < 100; i++) encoder.point(7, xy[2 * i], xy[2 * i + 1], 0);
+        encoder.end(7);
+        ByteBuffer frame = encoder.flush(123456789L);
+        assertNotNull(frame);
+        //two bytes or so per sample instead of eight
+        assertTrue("frame of " + frame.remaining() + " bytes", frame.remaining() < 100 * 3 + 40);
+
+        Recorder recorder = new Recorder();
+        SyncDecoder decoder = new SyncDecoder();
+        assertEquals(123456789L, decoder.decode(payload(frame), recorder));
+        long key = Recorder.key(42, 7);
+        assertArrayEquals(new int[]{0xFF336699, 0, 3, 100}, recorder.starts.get(key));
+        List<float[]> got = recorder.samples.get(key);
+        assertEquals(100, got.size());
+        for(int i = 0; i < 100; i++) {
+            assertEquals(xy[2 * i], got.get(i)[0], 0.5f / SyncProtocol.QUANTUM + 1e-4f);
+            assertEquals(xy[2 * i + 1], got.get(i)[1], 0.5f / SyncProtocol.QUANTUM + 1e-4f);
+        }
+        assertEquals(1, recorder.ended.size());
+        assertEquals(0, decoder.getOpenStrokes());
+        assertNull("nothing left to send", encoder.flush(0));
+    }
+
+    @Test
+    public void samplesAreCoalescedPerStrokeAndFrame() throws IOException {
+        SyncEncoder encoder = new SyncEncoder(1, null);
+        encoder.start(1, 0xFF000000, 4, 0, 0, 0, 0, 0);
+        encoder.start(2, 0xFF000000, 4, 0, 0, 50, 50, 0);
+        //two fingers, samples interleaved
+        for(int i = 1; i <= 20; i++) {
+            encoder.point(1, i, 0, 0);
+            encoder.point(2, 50 + i, 50, 0);
+        }
+        int[] counts = countMessages(encoder.flush(0));
+        assertEquals(2, counts[SyncProtocol.START]);
+        assertEquals(2, counts[SyncProtocol.POINTS]);
+
+        //the next frame continues from the last sample sent
+        for(int i = 21; i <= 30; i++) encoder.point(1, i, 0, 0);
+        encoder.end(1);
+        encoder.cancel(2);
+        ByteBuffer frame = encoder.flush(0);
+        counts = countMessages(frame);
+        assertEquals(0, counts[SyncProtocol.START]);
+        assertEquals(1, counts[SyncProtocol.POINTS]);
+        assertEquals(1, counts[SyncProtocol.END]);
+        assertEquals(1, counts[SyncProtocol.CANCEL]);
+        assertNull(encoder.flush(0));
+    }
+
+    @Test
+    public void pressureWidthsRoundTrip() throws IOException {
+        SyncEncoder encoder = new SyncEncoder(5, null);
+        encoder.start(1, 0xFF000000, 10, StrokeStore.FLAG_PRESSURE, 0, 10, 10, 3);
+        encoder.point(1, 20, 10, 6.25f);
+        encoder.point(1, 30, 12, 2.5f);
+        encoder.end(1);
+        Recorder recorder = new Recorder();
+        SyncDecoder decoder = new SyncDecoder();
+        decoder.decode(payload(encoder.flush(0)), recorder);
+        List<float[]> got = recorder.samples.get(Recorder.key(5, 1));
+        assertEquals(3, got.size());
+        assertEquals(3, got.get(0)[2], 0);
+        assertEquals(6.25f, got.get(1)[2], 0);
+        assertEquals(2.5f, got.get(2)[2], 0);
+        assertEquals(StrokeStore.FLAG_PRESSURE, recorder.starts.get(Recorder.key(5, 1))[1]);
+    }
+
+    @Test
+    public void leaveCancelsTheSendersStrokes() throws IOException {
+        SyncDecoder decoder = new SyncDecoder();
+        Recorder recorder = new Recorder();
+        SyncEncoder a = new SyncEncoder(1, null), b = new SyncEncoder(2, null);
+        a.start(1, 0, 4, 0, 0, 0, 0, 0);
+        a.start(2, 0, 4, 0, 0, 0, 0, 0);
+        b.start(1, 0, 4, 0, 0, 0, 0, 0);
+        decoder.decode(payload(a.flush(0)), recorder);
+        decoder.decode(payload(b.flush(0)), recorder);
+        assertEquals(3, decoder.getOpenStrokes());
+
+        ByteBuffer leave = ByteBuffer.allocate(32);
+        SyncProtocol.putVarint(leave, 1);
+        SyncProtocol.putVarlong(leave, 0);
+        leave.put(SyncProtocol.LEAVE);
+        SyncProtocol.putVarint(leave, 0);
+        leave.flip();
+        decoder.decode(leave, recorder);
+        assertEquals(2, recorder.cancelled.size());
+        assertEquals(1, decoder.getOpenStrokes());
+
+        decoder.cancelAll(recorder);
+        assertEquals(3, recorder.cancelled.size());
+        assertTrue(recorder.cancelled.contains(Recorder.key(2, 1)));
+        assertEquals(0, decoder.getOpenStrokes());
+    }
+
+    @Test
+    public void samplesOfUnknownStrokesAreSkipped() throws IOException {
+        SyncEncoder encoder = new SyncEncoder(9, null);
+        encoder.start(1, 0, 4, 0, 0, 0, 0, 0);
+        encoder.flush(0); //lost: this device joined after it
+        encoder.point(1, 5, 5, 0);
+        encoder.end(1);
+        Recorder recorder = new Recorder();
+        new SyncDecoder().decode(payload(encoder.flush(0)), recorder);
+        assertTrue(recorder.samples.isEmpty());
+        assertTrue(recorder.ended.isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFrameIsRejected() throws IOException {
+        SyncEncoder encoder = new SyncEncoder(3, null);
+        encoder.start(1, 0, 4, 0, 0, 100, 100, 0);
+        ByteBuffer payload = payload(encoder.flush(0));
+        payload.limit(payload.limit() - 2);
+        new SyncDecoder().decode(payload, new Recorder());
+    }
+
+    /**
+     * Twelve clients draw at once through an in-process relay: every
+     * client gets every other client's strokes, sample for sample, and
+     * the bandwidth and latency numbers are there to read.
+     */
+    @Test(timeout = 30000)
+    public void manyDrawersThroughRelay() throws Exception {
+        final int clientCount = 12, strokeCount = 5, sampleCount = 40;
+        SyncRelay relay = new SyncRelay(0);
+        relay.start();
+        final SyncClient[] clients = new SyncClient[clientCount];
+        final Recorder[] recorders = new Recorder[clientCount];
+        try {
+            for(int i = 0; i < clientCount; i++) {
+                recorders[i] = new Recorder();
+                clients[i] = new SyncClient("127.0.0.1", relay.getPort(), recorders[i]);
+                clients[i].start();
+            }
+            //frames sent before a client is connected do not reach it
+            while(relay.getConnectionCount() < clientCount) Thread.sleep(5);
+            for(int i = 0; i < clientCount; i++) {
+                while(!clients[i].isConnected()) Thread.sleep(5);
+            }
+
+            //every client draws from its own thread, a sample a millisecond
+            Thread[] drawers = new Thread[clientCount];
+            for(int i = 0; i < clientCount; i++) {
+                final int c = i;
+                drawers[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        SyncEncoder encoder = clients[c].getEncoder();
+                        try {
+                            for(int s = 1; s <= strokeCount; s++) {
+                                encoder.start(s, 0xFF000000 | c, 4, 0, 0, 10 * c, 10 * s, 0);
+                                for(int k = 1; k < sampleCount; k++) {
+                                    encoder.point(s, 10 * c + 2.5f * k, 10 * s + k % 7, 0);
+                                    Thread.sleep(1);
+                                }
+                                encoder.end(s);
+                            }
+                        }
+                        catch(InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+                drawers[i].start();
+            }
+            for(Thread drawer : drawers) drawer.join();
+
+            int expected = (clientCount - 1) * strokeCount;
+            for(int i = 0; i < clientCount; i++) {
+                while(recorders[i].endCount < expected) Thread.sleep(5);
+            }
+            for(int i = 0; i < clientCount; i++) {
+                Recorder recorder = recorders[i];
+                synchronized(recorder) {
+                    assertEquals(expected, recorder.ended.size());
+                    assertTrue(recorder.cancelled.isEmpty());
+                    for(int c = 0; c < clientCount; c++) {
+                        int sender = clients[c].getEncoder().getSender();
+                        for(int s = 1; s <= strokeCount; s++) {
+                            List<float[]> got = recorder.samples.get(Recorder.key(sender, s));
+                            if(c == i) {
+                                assertNull("own strokes do not come back", got);
+                                continue;
+                            }
+                            assertEquals(sampleCount, got.size());
+                            float[] last = got.get(sampleCount - 1);
+                            assertEquals(10 * c + 2.5f * (sampleCount - 1), last[0], 0);
+                            assertEquals(10 * s + (sampleCount - 1) % 7, last[1], 0);
+                        }
+                    }
+                }
+                SyncStats stats = clients[i].getStats();
+                assertEquals(strokeCount, stats.getStrokesSent());
+                assertEquals(expected, stats.getStrokesReceived());
+                //a few bytes per sample, frame headers included
+                assertTrue("bytes per stroke " + stats.getBytesPerStroke(),
+                        stats.getBytesPerStroke() < 4 * sampleCount);
+                assertTrue(stats.getStrokeBytesPercentile(0.5) >= sampleCount);
+                assertTrue(stats.getFramesReceived() > 0);
+                assertTrue(stats.getLatencyPercentile(0.95) >= 0);
+                assertTrue("max latency " + stats.getMaxLatency(), stats.getMaxLatency() < 10000000);
+            }
+            assertTrue(relay.getFramesRelayed() > 0);
+        }
+        finally {
+            for(SyncClient client : clients) {
+                if(client != null) client.close();
+            }
+            relay.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void disconnectCancelsStrokesInProgress() throws Exception {
+        SyncRelay relay = new SyncRelay(0);
+        relay.start();
+        Recorder a = new Recorder(), b = new Recorder();
+        SyncClient drawing = new SyncClient("127.0.0.1", relay.getPort(), a);
+        SyncClient watching = new SyncClient("127.0.0.1", relay.getPort(), b);
+        try {
+            drawing.start();
+            watching.start();
+            while(relay.getConnectionCount() < 2 || !drawing.isConnected() || !watching.isConnected()) {
+                Thread.sleep(5);
+            }
+            drawing.getEncoder().start(1, 0, 4, 0, 0, 0, 0, 0);
+            drawing.getEncoder().point(1, 10, 10, 0);
+            while(true) {
+                synchronized(b) {
+                    List<float[]> got = b.samples.get(Recorder.key(drawing.getEncoder().getSender(), 1));
+                    if(got != null && got.size() == 2) break;
+                }
+                Thread.sleep(5);
+            }
+            //the relay tells the others the stroke will never end
+            drawing.close();
+            while(true) {
+                synchronized(b) {
+                    if(!b.cancelled.isEmpty()) break;
+                }
+                Thread.sleep(5);
+            }
+            assertTrue(b.ended.isEmpty());
+        }
+        finally {
+            drawing.close();
+            watching.close();
+            relay.close();
+        }
+    }
+}
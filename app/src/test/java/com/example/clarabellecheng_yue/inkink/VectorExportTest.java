@@ -0,0 +1,216 @@
+package com.example.clarabellecheng_yue.inkink;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the SVG and PDF exporters, run on the JVM.
+ */
+public class VectorExportTest {
+
+    private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+
+    private static final byte[] JPEG = {(byte)0xFF, (byte)0xD8, 1, 2, 3, (byte)0xFF, (byte)0xD9};
+
+    private static class FakeTemplate implements VectorExport.Template {
+        int written;
+
+        @Override
+        public int getWidth() {
+            return 40;
+        }
+
+        @Override
+        public int getHeight() {
+            return 30;
+        }
+
+        @Override
+        public String getHref() {
+            return "template-7.jpg";
+        }
+
+        @Override
+        public void writeJpeg(OutputStream out) throws IOException {
+            written++;
+            out.write(JPEG);
+        }
+    }
+
+    private static String number(float value, int decimals) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        VectorOutput out = new VectorOutput(bytes, 4);
+        out.number(value, decimals).flush();
+        return new String(bytes.toByteArray(), LATIN_1);
+    }
+
+    private static int count(String text, String part) {
+        int n = 0;
+        for(int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) n++;
+        return n;
+    }
+
+    /**
+     * a stroke, a fill, a pressure stroke and an eraser on the base layer,
+     * a deleted stroke, and a translucent multiply layer with a stroke
+     */
+    private static VectorExport drawing() {
+        StrokeStore store = new StrokeStore();
+        store.add(new float[]{10, 10, 50, 20, 90, -10}, 3, 0xFF112233, 6, 0);
+        store.add(new float[]{0, 0, 20, 5, 0, 5, 5, 20}, 4, 0xFFFF0000, 0, StrokeStore.FLAG_FILL);
+        store.add(new float[]{20, 40, 4, 0, 60, 40, 8, 0}, 4, 0x80000000, 8, StrokeStore.FLAG_PRESSURE);
+        store.add(new float[]{0, 0, 100, 100}, 2, 0, 10, StrokeStore.FLAG_ERASE);
+        int removed = store.add(new float[]{5, 5, 6, 6}, 2, 0xFF000000, 2, 0);
+        StrokeIndex.IntList targets = new StrokeIndex.IntList();
+        targets.add(removed);
+        store.addDelete(targets);
+        int onTop = store.add(new float[]{1, 2, 3, 4}, 2, 0xFF00FF00, 3, 0);
+        store.setLayer(onTop, 5);
+        VectorExport export = new VectorExport(store, 120, 80);
+        export.addLayer(0, true, 255, null);
+        export.addLayer(9, false, 255, null); //hidden
+        export.addLayer(5, true, 128, "Multiply");
+        return export;
+    }
+
+    @Test
+    public void numbersAreCompact() throws Exception {
+        assertEquals("3", number(3, 2));
+        assertEquals(".5", number(0.5f, 2));
+        assertEquals("-.25", number(-0.25f, 2));
+        assertEquals("12.35", number(12.346f, 2));
+        assertEquals("1.05", number(1.05f, 2));
+        assertEquals("0", number(0.001f, 2));
+        assertEquals("0", number(-0.001f, 2));
+        assertEquals("-1200", number(-1200, 2));
+        assertEquals(".502", number(128 / 255f, 3));
+        assertEquals("0", number(Float.NaN, 2));
+    }
+
+    @Test
+    public void svgHasEveryVisibleStroke() throws Exception {
+        VectorExport export = drawing();
+        FakeTemplate template = new FakeTemplate();
+        export.setTemplate(template);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        export.writeSvg(bytes);
+        String svg = new String(bytes.toByteArray(), LATIN_1);
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals("svg", document.getDocumentElement().getTagName());
+        //three strokes on the base layer, the eraser's mask, one on the top layer
+        assertEquals(5, document.getElementsByTagName("path").getLength());
+        assertEquals(1, document.getElementsByTagName("mask").getLength());
+        assertEquals(2, count(svg, "<g id=\"layer"));
+        assertEquals(1, count(svg, "template-7.jpg"));
+        assertEquals(0, template.written); //the SVG only refers to the file
+
+        assertTrue(svg.contains("d=\"M10 10Q10 10 30 15 50 20 70 5L90-10\""));
+        assertTrue(svg.contains("d=\"M0 0L20 0 20 5 0 5ZM0 5L5 5 5 20 0 20Z\""));
+        assertTrue(svg.contains("<path fill=\"#000000\" fill-opacity=\".5\""));
+        assertTrue(svg.contains("opacity=\".5\" style=\"mix-blend-mode:multiply\""));
+        //the eraser masks the strokes before it
+        int mask = svg.indexOf("<g mask=\"url(#erase3)\">");
+        assertTrue(mask >= 0 && mask < svg.indexOf("M10 10"));
+        assertTrue(svg.indexOf("<mask id=\"erase3\"") > svg.indexOf("M20"));
+    }
+
+    @Test
+    public void pdfOffsetsAndLengthsMatch() throws Exception {
+        VectorExport export = drawing();
+        FakeTemplate template = new FakeTemplate();
+        export.setTemplate(template);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        export.writePdf(bytes);
+        String pdf = new String(bytes.toByteArray(), LATIN_1);
+        assertTrue(pdf.startsWith("%PDF-1.4\n"));
+        assertTrue(pdf.endsWith("%%EOF\n"));
+        assertEquals(1, template.written);
+        assertEquals(1, count(pdf, new String(JPEG, LATIN_1)));
+
+        //every xref entry points at its object
+        int start = Integer.parseInt(pdf.substring(pdf.lastIndexOf("startxref\n") + 10, pdf.lastIndexOf("\n%%EOF")));
+        assertTrue(pdf.startsWith("xref\n", start));
+        Matcher size = Pattern.compile("xref\n0 (\\d+)\n").matcher(pdf);
+        assertTrue(size.find(start));
+        int objects = Integer.parseInt(size.group(1));
+        int entries = size.end() + 20; //past the free entry
+        for(int n = 1; n < objects; n++) {
+            int offset = Integer.parseInt(pdf.substring(entries + 20 * (n - 1), entries + 20 * (n - 1) + 10));
+            assertTrue("object " + n, pdf.startsWith(n + " 0 obj\n", offset));
+        }
+        //every stream's length object holds its length
+        Matcher stream = Pattern.compile("/Length (\\d+) 0 R >>\nstream\n").matcher(pdf);
+        int streams = 0;
+        while(stream.find()) {
+            int end = pdf.indexOf("\nendstream", stream.end());
+            Matcher length = Pattern.compile("\n" + stream.group(1) + " 0 obj\n(\\d+)\n").matcher(pdf);
+            assertTrue(length.find());
+            assertEquals(end - stream.end(), Integer.parseInt(length.group(1)));
+            streams++;
+        }
+        //template, two layer forms and a mask form for the base layer, one form for the top one, the page
+        assertEquals(6, streams);
+        assertTrue(pdf.contains("/SMask"));
+        assertTrue(pdf.contains("/BM /Multiply"));
+        assertTrue(pdf.contains("/CA .502"));
+    }
+
+    @Test
+    public void largeDrawingStreams() throws Exception {
+        StrokeStore store = new StrokeStore();
+        float[] xy = new float[64];
+        for(int s = 0; s < 10000; s++) {
+            for(int i = 0; i < 32; i++) {
+                xy[2 * i] = (s % 100) * 10 + i;
+                xy[2 * i + 1] = (s / 100) * 10 + (i % 5);
+            }
+            store.add(xy, 32, 0xFF000000 | s, 3, s % 500 == 0 ? StrokeStore.FLAG_ERASE : 0);
+        }
+        VectorExport export = new VectorExport(store, 1000, 1000);
+        final long[] written = new long[2];
+        OutputStream counter = new OutputStream() {
+            @Override
+            public void write(int b) {
+                written[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                written[0] += len;
+                written[1] = Math.max(written[1], len);
+            }
+        };
+        export.writeSvg(counter);
+        long svg = written[0];
+        export.writePdf(counter);
+        assertTrue(svg > 10000 * 32 * 4);
+        assertTrue(written[0] - svg > svg / 2);
+        //everything went out in buffer sized pieces
+        assertTrue(written[1] <= VectorExport.BUFFER_BYTES);
+    }
+
+    @Test(expected = java.io.InterruptedIOException.class)
+    public void interruptCancels() throws Exception {
+        Thread.currentThread().interrupt();
+        try {
+            drawing().writeSvg(new ByteArrayOutputStream());
+        }
+        finally {
+            Thread.interrupted();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.clarabellecheng_yue.inkink.benchmark;
+
+import com.example.clarabellecheng_yue.inkink.FloodFill;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bucket fill of a whole empty page, the worst case: every pixel is
+ * compared, filled and written back. Getting the pixels out of and back
+ * into the Bitmap is not part of it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FloodFillBenchmark
+{
+    private static final int WIDTH = (int)TouchTrace.PAGE_WIDTH, HEIGHT = (int)TouchTrace.PAGE_HEIGHT;
+
+    @Param({"1", "4"})
+    public int bands;
+
+    private ExecutorService pool;
+    private FloodFill fill;
+    private int[] box;
+
+    @Setup
+    public void setup()
+    {
+        pool = bands > 1 ? Executors.newFixedThreadPool(bands) : null;
+        fill = new FloodFill(pool, bands);
+        int[] pixels = fill.getPixels(WIDTH, HEIGHT);
+        for(int i = 0; i < WIDTH * HEIGHT; i++) pixels[i] = 0xFFFFFFFF;
+        box = new int[WIDTH * HEIGHT];
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        if(pool != null) pool.shutdown();
+    }
+
+    @Benchmark
+    public int fillPage()
+    {
+        fill.fill(WIDTH / 2, HEIGHT / 2, 32);
+        fill.apply(box, 0xFF660000);
+        return fill.getRectCount();
+    }
+}
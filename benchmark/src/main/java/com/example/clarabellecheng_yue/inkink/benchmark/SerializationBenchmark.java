@@ -0,0 +1,74 @@
+package com.example.clarabellecheng_yue.inkink.benchmark;
+
+import com.example.clarabellecheng_yue.inkink.StrokeBuilder;
+import com.example.clarabellecheng_yue.inkink.StrokeStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and loading a drawing in the binary format, in memory so the
+ * numbers are not disk speed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark
+{
+    @Param({"100", "1000"})
+    public int strokes;
+
+    private final StrokeStore store = new StrokeStore();
+    private final StrokeStore loaded = new StrokeStore();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final WritableByteChannel outChannel = Channels.newChannel(out);
+    private byte[] saved;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        TouchTrace.record(18, strokes, 200).drawInto(store, new StrokeBuilder(), new SumSink());
+        saved = write();
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException
+    {
+        out.reset();
+        store.write(outChannel);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public StrokeStore read() throws IOException
+    {
+        loaded.read(Channels.newChannel(new ByteArrayInputStream(saved)));
+        return loaded;
+    }
+
+    @Benchmark
+    public StrokeStore roundTrip() throws IOException
+    {
+        loaded.read(Channels.newChannel(new ByteArrayInputStream(write())));
+        return loaded;
+    }
+}
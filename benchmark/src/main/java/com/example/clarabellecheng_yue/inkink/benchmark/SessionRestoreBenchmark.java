@@ -0,0 +1,99 @@
+package com.example.clarabellecheng_yue.inkink.benchmark;
+
+import com.example.clarabellecheng_yue.inkink.SessionJournal;
+import com.example.clarabellecheng_yue.inkink.StrokeBuilder;
+import com.example.clarabellecheng_yue.inkink.StrokeStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading an autosaved session back, the way the app does after rotation
+ * or process death: the newest snapshot plus the journal after it.
+ * With compactRecords at 500 most strokes come from the snapshot; with
+ * a compactRecords larger than the drawing every stroke is replayed from
+ * the journal. Each restore starts and stops the journal's writer thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionRestoreBenchmark
+{
+    @Param({"100", "1000", "10000"})
+    public int strokes;
+
+    @Param({"500", "1000000"})
+    public int compactRecords;
+
+    private File dir;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException
+    {
+        dir = File.createTempFile("session", "");
+        if(!dir.delete() || !dir.mkdirs()) throw new IOException("could not create " + dir);
+        StrokeStore store = new StrokeStore();
+        TouchTrace.record(8, strokes, 60).drawInto(store, new StrokeBuilder(), new SumSink());
+        SessionJournal journal = new SessionJournal(dir, compactRecords);
+        for(int i = 0; i < store.size(); i++) {
+            journal.appendStroke(store, i);
+        }
+        journal.close();
+        if(!journal.awaitClosed(60000) || journal.getFailure() != null) {
+            throw new IOException("could not write the session", journal.getFailure());
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        File[] files = dir.listFiles();
+        if(files != null) {
+            for(File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * @return strokes read back
+     */
+    @Benchmark
+    public int restore() throws IOException, InterruptedException
+    {
+        final StrokeStore[] result = new StrokeStore[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        SessionJournal journal = new SessionJournal(dir, compactRecords);
+        journal.restore(new SessionJournal.RestoreCallback() {
+            @Override
+            public void onRestored(StrokeStore restored, long millis) {
+                result[0] = restored;
+                done.countDown();
+            }
+        });
+        done.await();
+        journal.close();
+        journal.awaitClosed(60000);
+        if(journal.getFailure() != null) throw journal.getFailure();
+        return result[0].size();
+    }
+}
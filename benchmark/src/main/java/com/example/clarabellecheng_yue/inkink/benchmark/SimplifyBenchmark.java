@@ -0,0 +1,69 @@
+package com.example.clarabellecheng_yue.inkink.benchmark;
+
+import com.example.clarabellecheng_yue.inkink.StrokeBuilder;
+import com.example.clarabellecheng_yue.inkink.StrokeSimplifier;
+import com.example.clarabellecheng_yue.inkink.StrokeStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fitting a finished stroke with cubic curves at the error DrawingView
+ * uses by default. 400 samples is where DrawingView moves the fit to its
+ * worker thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimplifyBenchmark
+{
+    private static final int STROKES = 16;
+
+    @Param({"100", "400", "2000"})
+    public int samples;
+
+    private final StrokeStore store = new StrokeStore();
+    private final StrokeSimplifier simplifier = new StrokeSimplifier();
+    private float[][] points;
+    private int[] counts;
+    private int next;
+
+    @Setup
+    public void setup()
+    {
+        TouchTrace.record(19, STROKES, samples).drawInto(store, new StrokeBuilder(), new SumSink());
+        //the accepted points, as touch_up hands them over
+        points = new float[STROKES][];
+        counts = new int[STROKES];
+        for(int s = 0; s < STROKES; s++) {
+            counts[s] = store.getPointCount(s);
+            points[s] = new float[2 * counts[s]];
+            for(int i = 0; i < counts[s]; i++) {
+                points[s][2 * i] = store.getX(s, i);
+                points[s][2 * i + 1] = store.getY(s, i);
+            }
+        }
+    }
+
+    @Benchmark
+    public int fit()
+    {
+        int s = next;
+        next = (next + 1) % STROKES;
+        return simplifier.fit(points[s], counts[s], 1f);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.clarabellecheng_yue.inkink.benchmark;
+
+import com.example.clarabellecheng_yue.inkink.StrokeBuilder;
+import com.example.clarabellecheng_yue.inkink.StrokeIndex;
+import com.example.clarabellecheng_yue.inkink.StrokeStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One stroke from finger down to finger up, as DrawingView's touch_start,
+ * touch_move and touch_up handle it without the Android parts: every
+ * sample goes through the StrokeBuilder, then the stroke is committed to
+ * the StrokeStore and the StrokeIndex.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrokeBuildBenchmark
+{
+    private static final int STROKES = 32;
+
+    @Param({"100", "1000"})
+    public int samples;
+
+    private TouchTrace trace;
+    private final StrokeBuilder builder = new StrokeBuilder();
+    private final SumSink sink = new SumSink();
+    private final StrokeStore store = new StrokeStore();
+    private final StrokeIndex index = new StrokeIndex(256);
+    private final float[] bounds = new float[4];
+    private int next;
+
+    @Setup
+    public void setup()
+    {
+        trace = TouchTrace.record(16, STROKES, samples);
+        //a drawing already under way, so the stroke is not the first
+        trace.drawInto(store, builder, sink);
+        for(int i = 0; i < store.size(); i++) {
+            store.getBounds(i, bounds);
+            index.add(i, bounds[0], bounds[1], bounds[2], bounds[3]);
+        }
+    }
+
+    @Benchmark
+    public void touchStroke(Blackhole blackhole)
+    {
+        float[] xy = trace.getSamples(next);
+        int count = trace.getSampleCount(next);
+        next = (next + 1) % STROKES;
+
+        //touch_start
+        builder.start(xy[0], xy[1], sink);
+        //touch_move, one sample at a time as MotionEvent history is fed
+        for(int i = 1; i < count; i++) {
+            builder.move(xy[2 * i], xy[2 * i + 1], sink);
+        }
+        //touch_up
+        builder.end(sink);
+        int stroke = store.add(builder.getPoints(), builder.getPointCount(), 0xFF000000, 10, 0);
+        store.getBounds(stroke, bounds);
+        index.add(stroke, bounds[0], bounds[1], bounds[2], bounds[3]);
+        blackhole.consume(sink.sum);
+
+        //undone and replaced by the next stroke, so the drawing stays the same size
+        store.undo();
+        store.discardRedo();
+        index.truncate(store.size());
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.clarabellecheng_yue.inkink.benchmark;
+
+import com.example.clarabellecheng_yue.inkink.BrushDynamics;
+import com.example.clarabellecheng_yue.inkink.StrokeBuilder;
+import com.example.clarabellecheng_yue.inkink.StrokeMesh;
+import com.example.clarabellecheng_yue.inkink.StrokeStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The pressure brush: a whole stroke fed sample by sample as DrawingView's
+ * touch_move does (width, decimation, one piece of strip per accepted
+ * sample), and a stored stroke tessellated again, what a replay costs
+ * when its strip is not cached.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrokeMeshBenchmark
+{
+    private static final int STROKES = 32;
+
+    @Param({"100", "1000"})
+    public int samples;
+
+    private TouchTrace trace;
+    private final StrokeBuilder builder = new StrokeBuilder();
+    private final SumSink sink = new SumSink();
+    private final BrushDynamics dynamics = new BrushDynamics();
+    private final StrokeMesh mesh = new StrokeMesh();
+    private final StrokeStore store = new StrokeStore();
+    private int next;
+
+    @Setup
+    public void setup()
+    {
+        trace = TouchTrace.record(16, STROKES, samples);
+        for(int s = 0; s < STROKES; s++) {
+            drawStroke(s);
+            store.add(mesh.getPoints(), mesh.getPointCount(), 0xFF000000, 20, StrokeStore.FLAG_PRESSURE);
+        }
+    }
+
+    @Benchmark
+    public int touchStroke()
+    {
+        drawStroke(next);
+        next = (next + 1) % STROKES;
+        return mesh.getVertexCount();
+    }
+
+    @Benchmark
+    public int rebuildStroke()
+    {
+        mesh.build(store, next, store.getPointCount(next));
+        next = (next + 1) % STROKES;
+        return mesh.getVertexCount();
+    }
+
+    private void drawStroke(int stroke)
+    {
+        float[] xy = trace.getSamples(stroke);
+        long[] times = trace.getTimes(stroke);
+        int count = trace.getSampleCount(stroke);
+        builder.start(xy[0], xy[1], sink);
+        mesh.start(xy[0], xy[1], dynamics.start(20, xy[0], xy[1], 0.8f, times[0]));
+        for(int i = 1; i < count; i++) {
+            float x = xy[2 * i], y = xy[2 * i + 1];
+            float width = dynamics.update(x, y, 0.8f, times[i]);
+            if(builder.move(x, y, sink)) mesh.add(x, y, width);
+        }
+        builder.end(sink);
+        mesh.end();
+    }
+}
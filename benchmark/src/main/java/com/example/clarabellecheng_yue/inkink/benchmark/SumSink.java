@@ -0,0 +1,37 @@
+package com.example.clarabellecheng_yue.inkink.benchmark;
+
+import com.example.clarabellecheng_yue.inkink.StrokeBuilder;
+
+/**
+ * Stands in for android.graphics.Path: folds every coordinate it gets
+ * into a sum, which the benchmarks hand to the Blackhole so the JIT
+ * cannot drop the work that produced the curves.
+ */
+public class SumSink implements StrokeBuilder.Sink
+{
+    public float sum;
+    public int curves;
+
+    @Override
+    public void moveTo(float x, float y) {
+        sum += x + y;
+    }
+
+    @Override
+    public void quadTo(float cx, float cy, float x, float y) {
+        sum += cx + cy + x + y;
+        curves++;
+    }
+
+    @Override
+    public void cubicTo(float x1, float y1, float x2, float y2, float x, float y) {
+        sum += x1 + y1 + x2 + y2 + x + y;
+        curves++;
+    }
+
+    @Override
+    public void lineTo(float x, float y) {
+        sum += x + y;
+        curves++;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.clarabellecheng_yue.inkink.benchmark;
+
+import com.example.clarabellecheng_yue.inkink.StrokeBuilder;
+import com.example.clarabellecheng_yue.inkink.SyncDecoder;
+import com.example.clarabellecheng_yue.inkink.SyncEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The shared canvas without the network: a trace drawn the way
+ * DrawingView sends it (the samples StrokeBuilder accepts, a frame every
+ * two samples at 120 Hz) encoded into frames, and those frames decoded
+ * the way a receiving device does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyncBenchmark
+{
+    private static final int SAMPLES_PER_FRAME = 2; //16 ms frames, 8 ms samples
+
+    @Param({"100", "1000"})
+    public int strokes;
+
+    private TouchTrace trace;
+    private final StrokeBuilder builder = new StrokeBuilder();
+    private final SumSink sink = new SumSink();
+    private final ArrayList<ByteBuffer> frames = new ArrayList<>();
+    private SyncDecoder decoder;
+
+    private final SyncDecoder.Listener counting = new SyncDecoder.Listener() {
+        @Override
+        public void onRemoteStart(int sender, int stroke, int color, float width, int flags, int layer,
+                                  float x, float y, float w) {
+            sum += x + y;
+        }
+
+        @Override
+        public void onRemotePoint(int sender, int stroke, float x, float y, float w) {
+            sum += x + y;
+        }
+
+        @Override
+        public void onRemoteEnd(int sender, int stroke, boolean cancelled) {
+            sum++;
+        }
+    };
+    private float sum;
+
+    @Setup
+    public void setup()
+    {
+        trace = TouchTrace.record(23, strokes, 60);
+        //the frames a receiver gets, copied out of the encoder
+        SyncEncoder encoder = new SyncEncoder(1, null);
+        frames.clear();
+        for(int s = 0; s < trace.getStrokeCount(); s++) {
+            float[] xy = trace.getSamples(s);
+            encoder.start(s, 0xFF000000, 10, 0, 0, xy[0], xy[1], 0);
+            builder.start(xy[0], xy[1], sink);
+            for(int k = 1; k < trace.getSampleCount(s); k++) {
+                if(builder.move(xy[2 * k], xy[2 * k + 1], sink)) encoder.point(s, xy[2 * k], xy[2 * k + 1], 0);
+                if(k % SAMPLES_PER_FRAME == 0) keep(encoder.flush(0));
+            }
+            encoder.end(s);
+            keep(encoder.flush(0));
+        }
+    }
+
+    private void keep(ByteBuffer frame)
+    {
+        if(frame == null) return;
+        ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+        copy.put(frame);
+        copy.flip();
+        frames.add(copy);
+    }
+
+    /**
+     * @return bytes sent, length prefixes included
+     */
+    @Benchmark
+    public long encode()
+    {
+        SyncEncoder encoder = new SyncEncoder(1, null);
+        long bytes = 0;
+        for(int s = 0; s < trace.getStrokeCount(); s++) {
+            float[] xy = trace.getSamples(s);
+            encoder.start(s, 0xFF000000, 10, 0, 0, xy[0], xy[1], 0);
+            builder.start(xy[0], xy[1], sink);
+            for(int k = 1; k < trace.getSampleCount(s); k++) {
+                if(builder.move(xy[2 * k], xy[2 * k + 1], sink)) encoder.point(s, xy[2 * k], xy[2 * k + 1], 0);
+                if(k % SAMPLES_PER_FRAME == 0) bytes += size(encoder.flush(0));
+            }
+            encoder.end(s);
+            bytes += size(encoder.flush(0));
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public float decode() throws IOException
+    {
+        decoder = new SyncDecoder();
+        sum = 0;
+        for(int i = 0; i < frames.size(); i++) {
+            ByteBuffer payload = frames.get(i).duplicate();
+            payload.position(4); //length prefix
+            decoder.decode(payload, counting);
+        }
+        return sum;
+    }
+
+    private static int size(ByteBuffer frame) {
+        return frame == null ? 0 : frame.remaining();
+    }
+}
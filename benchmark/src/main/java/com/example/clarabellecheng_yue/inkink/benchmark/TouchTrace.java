@@ -0,0 +1,111 @@
+package com.example.clarabellecheng_yue.inkink.benchmark;
+
+import com.example.clarabellecheng_yue.inkink.StrokeBuilder;
+import com.example.clarabellecheng_yue.inkink.StrokeStore;
+
+import java.util.Random;
+
+/**
+ * Synthetic touch input for the benchmarks: strokes of samples as a
+ * touchscreen reports them at 120 Hz, from a pen that curves and changes
+ * speed like handwriting, with a little sensor jitter. The same seed
+ * always records the same trace, so runs compare like with like.
+ */
+public class TouchTrace
+{
+    public static final int SAMPLE_MILLIS = 8; //120 Hz
+    public static final float PAGE_WIDTH = 1080, PAGE_HEIGHT = 1920;
+
+    private final float[][] samples; //x,y pairs of each stroke
+    private final long[][] times;
+
+    private TouchTrace(float[][] samples, long[][] times)
+    {
+        this.samples = samples;
+        this.times = times;
+    }
+
+    /**
+     * @param seed same seed, same trace
+     * @param strokes number of strokes
+     * @param samplesPerStroke touch samples in each stroke
+     */
+    public static TouchTrace record(long seed, int strokes, int samplesPerStroke)
+    {
+        Random random = new Random(seed);
+        float[][] samples = new float[strokes][];
+        long[][] times = new long[strokes][];
+        long time = 0;
+        for(int s = 0; s < strokes; s++) {
+            float[] xy = new float[2 * samplesPerStroke];
+            long[] t = new long[samplesPerStroke];
+            float x = PAGE_WIDTH * (0.1f + 0.8f * random.nextFloat());
+            float y = PAGE_HEIGHT * (0.1f + 0.8f * random.nextFloat());
+            double heading = 2 * Math.PI * random.nextDouble();
+            double turn = 0; //radians per sample
+            float speed = 1f; //pixels per millisecond
+            for(int i = 0; i < samplesPerStroke; i++) {
+                xy[2 * i] = x + (random.nextFloat() - 0.5f); //sub-pixel jitter
+                xy[2 * i + 1] = y + (random.nextFloat() - 0.5f);
+                t[i] = time;
+                time += SAMPLE_MILLIS;
+
+                //the pen's turning and speed drift, so strokes loop and straighten
+                turn = Math.max(-0.3, Math.min(0.3, turn + 0.05 * random.nextGaussian()));
+                heading += turn;
+                speed = Math.max(0.1f, Math.min(2.5f, speed + 0.1f * (float)random.nextGaussian()));
+                x += speed * SAMPLE_MILLIS * (float)Math.cos(heading);
+                y += speed * SAMPLE_MILLIS * (float)Math.sin(heading);
+                //bounce off the page edges
+                if(x < 0 || x > PAGE_WIDTH) heading = Math.PI - heading;
+                if(y < 0 || y > PAGE_HEIGHT) heading = -heading;
+                x = Math.max(0, Math.min(PAGE_WIDTH, x));
+                y = Math.max(0, Math.min(PAGE_HEIGHT, y));
+            }
+            samples[s] = xy;
+            times[s] = t;
+            time += 200; //pen up between strokes
+        }
+        return new TouchTrace(samples, times);
+    }
+
+    public int getStrokeCount() {
+        return samples.length;
+    }
+
+    public int getSampleCount(int stroke) {
+        return times[stroke].length;
+    }
+
+    /**
+     * @return x,y pairs of the samples of a stroke, not to be modified
+     */
+    public float[] getSamples(int stroke) {
+        return samples[stroke];
+    }
+
+    /**
+     * @return uptime in milliseconds of each sample of a stroke, not to be modified
+     */
+    public long[] getTimes(int stroke) {
+        return times[stroke];
+    }
+
+    /**
+     * Draws the trace the way DrawingView does: each stroke goes through
+     * a StrokeBuilder and its accepted points are added to store.
+     * @param store receives one stroke per trace stroke
+     * @param builder reused for every stroke
+     * @param sink receives the curves
+     */
+    public void drawInto(StrokeStore store, StrokeBuilder builder, StrokeBuilder.Sink sink)
+    {
+        for(int s = 0; s < samples.length; s++) {
+            float[] xy = samples[s];
+            builder.start(xy[0], xy[1], sink);
+            builder.move(xy, 2, getSampleCount(s) - 1, sink);
+            builder.end(sink);
+            store.add(builder.getPoints(), builder.getPointCount(), 0xFF000000 | s, 10, 0);
+        }
+    }
+}
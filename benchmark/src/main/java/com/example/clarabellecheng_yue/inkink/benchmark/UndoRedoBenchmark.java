@@ -0,0 +1,93 @@
+package com.example.clarabellecheng_yue.inkink.benchmark;
+
+import com.example.clarabellecheng_yue.inkink.CheckpointCache;
+import com.example.clarabellecheng_yue.inkink.StrokeBuilder;
+import com.example.clarabellecheng_yue.inkink.StrokeStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Undo and redo against a growing history: the work DrawingView's
+ * redrawCommitted does besides drawing pixels, i.e. finding the snapshot
+ * to start from and replaying the strokes after it. Without checkpoints
+ * every stroke is replayed, so the cost grows with the history; with them
+ * it should stay flat.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UndoRedoBenchmark
+{
+    @Param({"100", "1000", "10000"})
+    public int history;
+
+    private final StrokeStore store = new StrokeStore();
+    private final SumSink sink = new SumSink();
+    private final CheckpointCache<Object> checkpoints = new CheckpointCache<>(20, Long.MAX_VALUE);
+
+    @Setup
+    public void setup()
+    {
+        TouchTrace.record(17, history, 60).drawInto(store, new StrokeBuilder(), sink);
+        //the snapshots themselves are pixels, only where they are matters here
+        for(int count = 1; count <= history; count++) {
+            if(checkpoints.wants(count)) checkpoints.put(count, new Object(), 1);
+        }
+    }
+
+    @Benchmark
+    public void undoRedoFromCheckpoint(Blackhole blackhole)
+    {
+        store.undo();
+        blackhole.consume(replayFrom(checkpointFor(store.size())));
+        store.redo();
+        blackhole.consume(replayFrom(checkpointFor(store.size())));
+    }
+
+    @Benchmark
+    public void undoRedoFullReplay(Blackhole blackhole)
+    {
+        store.undo();
+        blackhole.consume(replayFrom(0));
+        store.redo();
+        blackhole.consume(replayFrom(0));
+    }
+
+    /**
+     * the snapshot redrawCommitted would start from
+     */
+    private int checkpointFor(int count)
+    {
+        int start = checkpoints.floorKey(count);
+        int deleted = store.lowestDeleted(start, count);
+        while(deleted < start) {
+            start = checkpoints.floorKey(deleted);
+            deleted = Math.min(deleted, store.lowestDeleted(start, count));
+        }
+        return start;
+    }
+
+    private float replayFrom(int start)
+    {
+        for(int i = start; i < store.size(); i++) {
+            if(store.isVisible(i)) store.replay(i, sink);
+        }
+        return sink.sum;
+    }
+}
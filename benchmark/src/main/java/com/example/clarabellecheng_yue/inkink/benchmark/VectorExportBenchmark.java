@@ -0,0 +1,78 @@
+package com.example.clarabellecheng_yue.inkink.benchmark;
+
+import com.example.clarabellecheng_yue.inkink.StrokeBuilder;
+import com.example.clarabellecheng_yue.inkink.StrokeStore;
+import com.example.clarabellecheng_yue.inkink.VectorExport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a drawing as SVG and as PDF into a stream that only counts the
+ * bytes, so the numbers are path formatting and not disk speed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorExportBenchmark
+{
+    @Param({"1000", "10000"})
+    public int strokes;
+
+    private VectorExport export;
+    private final CountingStream out = new CountingStream();
+
+    private static class CountingStream extends OutputStream {
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+
+    @Setup
+    public void setup()
+    {
+        StrokeStore store = new StrokeStore();
+        TouchTrace.record(22, strokes, 60).drawInto(store, new StrokeBuilder(), new SumSink());
+        export = new VectorExport(store, (int)TouchTrace.PAGE_WIDTH, (int)TouchTrace.PAGE_HEIGHT);
+    }
+
+    @Benchmark
+    public long svg() throws IOException
+    {
+        out.bytes = 0;
+        export.writeSvg(out);
+        return out.bytes;
+    }
+
+    @Benchmark
+    public long pdf() throws IOException
+    {
+        out.bytes = 0;
+        export.writePdf(out);
+        return out.bytes;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.clarabellecheng_yue.inkink.benchmark;
+
+import com.example.clarabellecheng_yue.inkink.StrokeBuilder;
+import com.example.clarabellecheng_yue.inkink.StrokeStore;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the synthetic benchmark input.
+ */
+public class TouchTraceTest {
+
+    @Test
+    public void sameSeedSameTrace() throws Exception {
+        TouchTrace a = TouchTrace.record(1, 5, 100);
+        TouchTrace b = TouchTrace.record(1, 5, 100);
+        TouchTrace c = TouchTrace.record(2, 5, 100);
+        for(int s = 0; s < 5; s++) {
+            assertArrayEquals(a.getSamples(s), b.getSamples(s), 0f);
+            assertArrayEquals(a.getTimes(s), b.getTimes(s));
+        }
+        assertFalse(Arrays.equals(a.getSamples(0), c.getSamples(0)));
+    }
+
+    @Test
+    public void samplesLookLikeATouchscreen() throws Exception {
+        TouchTrace trace = TouchTrace.record(3, 3, 500);
+        for(int s = 0; s < 3; s++) {
+            float[] xy = trace.getSamples(s);
+            long[] times = trace.getTimes(s);
+            assertEquals(500, trace.getSampleCount(s));
+            for(int i = 1; i < 500; i++) {
+                assertEquals(TouchTrace.SAMPLE_MILLIS, times[i] - times[i - 1]);
+                //never faster than 2.5 px/ms, plus jitter
+                assertTrue(Math.hypot(xy[2 * i] - xy[2 * i - 2], xy[2 * i + 1] - xy[2 * i - 1]) < 22);
+                assertTrue(xy[2 * i] > -1 && xy[2 * i] < TouchTrace.PAGE_WIDTH + 1);
+                assertTrue(xy[2 * i + 1] > -1 && xy[2 * i + 1] < TouchTrace.PAGE_HEIGHT + 1);
+            }
+        }
+    }
+
+    @Test
+    public void drawIntoAddsOneStrokePerTraceStroke() throws Exception {
+        StrokeStore store = new StrokeStore();
+        SumSink sink = new SumSink();
+        TouchTrace.record(4, 10, 200).drawInto(store, new StrokeBuilder(), sink);
+        assertEquals(10, store.size());
+        for(int s = 0; s < 10; s++) {
+            //most samples move farther than the touch tolerance
+            assertTrue(store.getPointCount(s) > 100);
+        }
+        assertTrue(sink.curves > 1000);
+    }
+}